@@ -0,0 +1,55 @@
+package com.sparrowwallet.sparrow.io;
+
+import com.sparrowwallet.drongo.wallet.Wallet;
+import com.sparrowwallet.sparrow.SyntheticWalletGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures storing and loading a wallet in the legacy JSON format
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonPersistenceBenchmark {
+    @Param({"1000", "10000"})
+    public int transactions;
+
+    @Param({"0.0", "0.5"})
+    public double labelDensity;
+
+    private Wallet wallet;
+    private JsonPersistence persistence;
+    private Storage storage;
+
+    @Setup
+    public void setup() throws IOException {
+        wallet = new SyntheticWalletGenerator(transactions).generate(Math.max(transactions / 5, 20), transactions, labelDensity, false).wallet();
+        File walletFile = new File(Files.createTempDirectory("sparrow-jmh").toFile(), "benchmark.json");
+        persistence = new JsonPersistence();
+        storage = new Storage(persistence, walletFile);
+        persistence.storeWallet(storage, wallet);
+    }
+
+    @TearDown
+    public void tearDown() {
+        storage.getWalletFile().delete();
+    }
+
+    @Benchmark
+    public File storeWallet() throws IOException {
+        return persistence.storeWallet(storage, wallet);
+    }
+
+    @Benchmark
+    public WalletAndKey loadWallet() throws IOException, StorageException {
+        return persistence.loadWallet(storage);
+    }
+}
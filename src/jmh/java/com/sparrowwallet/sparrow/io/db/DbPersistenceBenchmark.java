@@ -0,0 +1,115 @@
+package com.sparrowwallet.sparrow.io.db;
+
+import com.sparrowwallet.drongo.wallet.Wallet;
+import com.sparrowwallet.drongo.wallet.WalletNode;
+import com.sparrowwallet.sparrow.EventManager;
+import com.sparrowwallet.sparrow.SyntheticWalletGenerator;
+import com.sparrowwallet.sparrow.event.WalletBlockHeightChangedEvent;
+import com.sparrowwallet.sparrow.event.WalletHistoryChangedEvent;
+import com.sparrowwallet.sparrow.io.Storage;
+import com.sparrowwallet.sparrow.io.StorageException;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures writing a wallet to a new database, and updating the history of changed address nodes in an existing one
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DbPersistenceBenchmark {
+    @Param({"1000", "10000"})
+    public int transactions;
+
+    @Param({"10", "100"})
+    public int changedNodes;
+
+    private Wallet wallet;
+    private List<WalletNode> historyChangedNodes;
+    private File benchmarkDir;
+    private DbPersistence persistence;
+    private Storage storage;
+    private Handle handle;
+
+    @Setup
+    public void setup() throws IOException, StorageException {
+        SyntheticWalletGenerator.SyntheticWallet syntheticWallet = new SyntheticWalletGenerator(transactions).generate(Math.max(transactions / 5, 20), transactions, 0.2, false);
+        wallet = syntheticWallet.wallet();
+        historyChangedNodes = new ArrayList<>(syntheticWallet.nodeTransactionMap().keySet()).subList(0, Math.min(changedNodes, syntheticWallet.nodeTransactionMap().size()));
+
+        benchmarkDir = Files.createTempDirectory("sparrow-jmh").toFile();
+        persistence = new DbPersistence();
+        storage = new Storage(persistence, new File(benchmarkDir, "benchmark"));
+        storage.saveWallet(wallet);
+
+        //A second connection to the same in-process database, used to observe when an update has been committed
+        handle = Jdbi.create("jdbc:h2:" + new File(benchmarkDir, "benchmark").getAbsolutePath() + ";DATABASE_TO_UPPER=false", "sa", "").open();
+    }
+
+    @TearDown
+    public void tearDown() {
+        handle.close();
+        persistence.close();
+        File[] files = benchmarkDir.listFiles();
+        if(files != null) {
+            for(File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    @Benchmark
+    public void updateHistory() throws StorageException {
+        //The block height is written in the same transaction as the history, so the update is complete once it is visible
+        int blockHeight = wallet.getStoredBlockHeight() + 1;
+        wallet.setStoredBlockHeight(blockHeight);
+        EventManager.get().post(new WalletHistoryChangedEvent(wallet, storage, historyChangedNodes, Collections.emptyList()));
+        EventManager.get().post(new WalletBlockHeightChangedEvent(wallet, blockHeight));
+        persistence.updateWallet(storage, wallet);
+
+        while(getPersistedBlockHeight() != blockHeight) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private int getPersistedBlockHeight() {
+        return handle.createQuery("select storedBlockHeight from wallet_master.wallet where id = :id").bind("id", wallet.getId()).mapTo(Integer.class).one();
+    }
+
+    @Benchmark
+    public void storeWallet(StoreState storeState) throws IOException, StorageException {
+        storeState.persistence.storeWallet(storeState.storage, storeState.wallet);
+    }
+
+    @State(Scope.Thread)
+    public static class StoreState {
+        private DbPersistence persistence;
+        private Storage storage;
+        private Wallet wallet;
+        private int count;
+
+        @Setup(Level.Invocation)
+        public void setup(DbPersistenceBenchmark benchmark) {
+            wallet = benchmark.wallet.copy();
+            persistence = new DbPersistence();
+            storage = new Storage(persistence, new File(benchmark.benchmarkDir, "store-" + count++));
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            persistence.close();
+        }
+    }
+}
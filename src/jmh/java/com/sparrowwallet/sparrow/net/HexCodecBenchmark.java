@@ -0,0 +1,62 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.sparrowwallet.drongo.Utils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the hex conversions on the server hot paths against the general purpose drongo utilities.
+ * Payload sizes are a single input transaction, a large multisig transaction, a block header and a full chunk of headers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HexCodecBenchmark {
+    @Param({"80", "225", "1500", "161280"})
+    public int payloadBytes;
+
+    private String hex;
+    private byte[] buffer;
+    private byte[] scriptHash;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(payloadBytes);
+        byte[] payload = new byte[payloadBytes];
+        random.nextBytes(payload);
+        hex = Utils.bytesToHex(payload);
+        buffer = new byte[payloadBytes];
+        scriptHash = new byte[32];
+        random.nextBytes(scriptHash);
+    }
+
+    @Benchmark
+    public byte[] utilsHexToBytes() {
+        return Utils.hexToBytes(hex);
+    }
+
+    @Benchmark
+    public byte[] codecDecode() {
+        return HexCodec.decode(hex);
+    }
+
+    @Benchmark
+    public int codecDecodeIntoBuffer() {
+        return HexCodec.decode(hex, buffer);
+    }
+
+    @Benchmark
+    public String utilsReversedScriptHash() {
+        return Utils.bytesToHex(Utils.reverseBytes(scriptHash));
+    }
+
+    @Benchmark
+    public String codecReversedScriptHash() {
+        return HexCodec.encodeReversed(scriptHash);
+    }
+}
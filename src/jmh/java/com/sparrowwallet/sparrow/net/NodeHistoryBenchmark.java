@@ -0,0 +1,40 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.sparrowwallet.sparrow.SyntheticWalletGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures calculating the transaction outputs of every address node from the wallet transactions, as done after each history refresh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NodeHistoryBenchmark {
+    @Param({"100", "1000"})
+    public int addresses;
+
+    @Param({"500", "5000"})
+    public int transactions;
+
+    @Param({"false", "true"})
+    public boolean multisig;
+
+    private SyntheticWalletGenerator.SyntheticWallet syntheticWallet;
+    private ElectrumServer electrumServer;
+
+    @Setup
+    public void setup() {
+        syntheticWallet = new SyntheticWalletGenerator(addresses * 31L + transactions).generate(addresses, transactions, 0.2, multisig);
+        electrumServer = new ElectrumServer();
+    }
+
+    @Benchmark
+    public void calculateNodeHistory() {
+        electrumServer.calculateNodeHistory(syntheticWallet.wallet(), syntheticWallet.nodeTransactionMap());
+    }
+}
@@ -0,0 +1,168 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.sparrowwallet.drongo.KeyPurpose;
+import com.sparrowwallet.drongo.protocol.Transaction;
+import com.sparrowwallet.drongo.wallet.Wallet;
+import com.sparrowwallet.drongo.wallet.WalletNode;
+import com.sparrowwallet.sparrow.SparrowWallet;
+import com.sparrowwallet.sparrow.SyntheticWalletGenerator;
+import javafx.application.Platform;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a full history sync, a reconnect with resubscription, and a storm of script hash notifications against the fake Electrum server over a local socket
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServerSyncBenchmark {
+    private static final String[] SUPPORTED_VERSIONS = new String[]{"1.3", "1.4.2"};
+
+    @Param({"1000"})
+    public int addresses;
+
+    @Param({"1000", "10000"})
+    public int transactions;
+
+    @Param({"0", "20"})
+    public long latencyMillis;
+
+    @Param({"500"})
+    public int notifications;
+
+    private File benchmarkDir;
+    private SyntheticWalletGenerator generator;
+    private Wallet wallet;
+    private FakeElectrumServer server;
+    private final Map<String, String> pathScriptHashes = new LinkedHashMap<>();
+    private BatchedElectrumServerRpc electrumServerRpc;
+    private TcpTransport transport;
+
+    @Setup
+    public void setup() throws IOException, ServerException {
+        //Keep the batch settings learned from the fake server out of the user's config
+        benchmarkDir = Files.createTempDirectory("sparrow-jmh").toFile();
+        System.setProperty(SparrowWallet.APP_HOME_PROPERTY, benchmarkDir.getAbsolutePath());
+
+        //Notifications are posted to the FX thread after the subscribed status is updated, which is what the storm benchmark waits for
+        try {
+            Platform.startup(() -> {});
+        } catch(RuntimeException e) {
+            //No display is available, so notification events fail to post after the status is updated
+        }
+
+        generator = new SyntheticWalletGenerator(transactions);
+        SyntheticWalletGenerator.SyntheticWallet syntheticWallet = generator.generate(addresses, transactions, 0, false);
+        wallet = syntheticWallet.wallet();
+        for(KeyPurpose keyPurpose : List.of(KeyPurpose.RECEIVE, KeyPurpose.CHANGE)) {
+            for(WalletNode node : wallet.getNode(keyPurpose).getChildren()) {
+                pathScriptHashes.put(node.getDerivationPath(), ElectrumServer.getScriptHash(node));
+            }
+        }
+
+        server = new FakeElectrumServer(new FakeChain(syntheticWallet)).start();
+        server.setLatencyMillis(latencyMillis);
+        electrumServerRpc = new BatchedElectrumServerRpc(0, 25);
+        transport = connect();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        transport.close();
+        server.close();
+    }
+
+    private TcpTransport connect() throws ServerException {
+        TcpTransport tcpTransport = new TcpTransport(server.getHostAndPort());
+        tcpTransport.connect();
+        tcpTransport.setPipelined(true);
+
+        Thread reader = new Thread(() -> {
+            try {
+                tcpTransport.readInputLoop();
+            } catch(ServerException e) {
+                //Transport has been closed
+            }
+        }, "ServerSyncBenchmarkReadThread");
+        reader.setDaemon(true);
+        reader.start();
+
+        return tcpTransport;
+    }
+
+    @Benchmark
+    public Map<String, String> fullSync() {
+        Map<String, ScriptHashTx[]> histories = electrumServerRpc.getScriptHashHistory(transport, wallet, pathScriptHashes, true);
+
+        Set<String> txids = new HashSet<>();
+        Set<Integer> heights = new HashSet<>();
+        for(ScriptHashTx[] history : histories.values()) {
+            for(ScriptHashTx scriptHashTx : history) {
+                txids.add(scriptHashTx.tx_hash);
+                if(scriptHashTx.height > 0) {
+                    heights.add(scriptHashTx.height);
+                }
+            }
+        }
+
+        electrumServerRpc.getBlockHeaders(transport, wallet, heights);
+        return electrumServerRpc.getTransactions(transport, wallet, txids);
+    }
+
+    @Benchmark
+    public Map<String, String> reconnect() throws IOException, ServerException {
+        transport.close();
+        transport = connect();
+        electrumServerRpc.getServerVersion(transport, SparrowWallet.APP_NAME, SUPPORTED_VERSIONS);
+        electrumServerRpc.subscribeBlockHeaders(transport);
+        return electrumServerRpc.subscribeScriptHashes(transport, wallet, pathScriptHashes);
+    }
+
+    @Benchmark
+    public void notificationStorm(StormState stormState) throws InterruptedException {
+        server.addMempoolTransactions(stormState.transactions, 1000);
+
+        FakeChain chain = server.getChain();
+        for(String scriptHash : stormState.scriptHashes) {
+            String status = chain.getStatus(scriptHash);
+            while(!status.equals(ElectrumServer.getSubscribedScriptHashStatus(scriptHash))) {
+                Thread.sleep(0, 100000);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class StormState {
+        private final List<Transaction> transactions = new ArrayList<>();
+        private final Set<String> scriptHashes = new LinkedHashSet<>();
+
+        @Setup(Level.Trial)
+        public void subscribe(ServerSyncBenchmark benchmark) {
+            Map<String, String> statuses = benchmark.electrumServerRpc.subscribeScriptHashes(benchmark.transport, benchmark.wallet, benchmark.pathScriptHashes);
+            for(Map.Entry<String, String> entry : statuses.entrySet()) {
+                ElectrumServer.updateSubscribedScriptHashStatus(benchmark.pathScriptHashes.get(entry.getKey()), entry.getValue());
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void setup(ServerSyncBenchmark benchmark) {
+            transactions.clear();
+            scriptHashes.clear();
+            List<WalletNode> receiveNodes = new ArrayList<>(benchmark.wallet.getNode(KeyPurpose.RECEIVE).getChildren());
+            for(int i = 0; i < benchmark.notifications; i++) {
+                WalletNode node = receiveNodes.get(i % receiveNodes.size());
+                transactions.add(benchmark.generator.createIncomingTransaction(node));
+                scriptHashes.add(ElectrumServer.getScriptHash(node));
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.sparrowwallet.sparrow.wallet;
+
+import com.sparrowwallet.drongo.KeyPurpose;
+import com.sparrowwallet.drongo.wallet.*;
+import com.sparrowwallet.sparrow.SyntheticWalletGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures creating a transaction with the same selector chain as the send tab, from privacy optimized Stonewall through branch and bound to knapsack
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UtxoSelectionBenchmark {
+    private static final double FEE_RATE = 5d;
+    private static final double MINIMUM_FEE_RATE = 1d;
+
+    @Param({"200", "2000"})
+    public int transactions;
+
+    @Param({"false", "true"})
+    public boolean multisig;
+
+    @Param({"false", "true"})
+    public boolean privacy;
+
+    private Wallet wallet;
+    private List<Payment> payments;
+
+    @Setup
+    public void setup() {
+        SyntheticWalletGenerator generator = new SyntheticWalletGenerator(transactions);
+        wallet = generator.generate(Math.max(transactions / 2, 20), transactions, 0.2, multisig).wallet();
+
+        long balance = wallet.getWalletUtxos().keySet().stream().mapToLong(BlockTransactionHashIndex::getValue).sum();
+        payments = List.of(new Payment(generator.getExternalAddress(wallet), "Benchmark payment", balance / 3, false));
+    }
+
+    @Benchmark
+    public WalletTransaction createWalletTransaction() throws InsufficientFundsException {
+        long noInputsFee = wallet.getNoInputsFee(payments, FEE_RATE);
+        long costOfChange = wallet.getCostOfChange(FEE_RATE, MINIMUM_FEE_RATE);
+
+        List<UtxoSelector> selectors = privacy && payments.getFirst().getAddress().getScriptType() == wallet.getFreshNode(KeyPurpose.RECEIVE).getAddress().getScriptType() ?
+                List.of(new StonewallUtxoSelector(payments.getFirst().getAddress().getScriptType(), noInputsFee), new BnBUtxoSelector(noInputsFee, costOfChange), new KnapsackUtxoSelector(noInputsFee)) :
+                List.of(new BnBUtxoSelector(noInputsFee, costOfChange), new KnapsackUtxoSelector(noInputsFee));
+        List<TxoFilter> txoFilters = List.of(new SpentTxoFilter(null), new FrozenTxoFilter(), new CoinbaseTxoFilter(wallet));
+
+        TransactionParameters params = new TransactionParameters(selectors, txoFilters, payments, Collections.emptyList(), Collections.emptySet(),
+                FEE_RATE, MINIMUM_FEE_RATE, MINIMUM_FEE_RATE, null, wallet.getStoredBlockHeight(), false, true, true);
+        return wallet.createWalletTransaction(params);
+    }
+}
@@ -0,0 +1,45 @@
+package com.sparrowwallet.sparrow.wallet;
+
+import com.sparrowwallet.drongo.wallet.Wallet;
+import com.sparrowwallet.sparrow.SyntheticWalletGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures updating the transactions table entry when new transactions arrive in a wallet with a long history
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WalletTransactionsEntryBenchmark {
+    //Number of transactions that are new to the entry on each update
+    private static final int NEW_TRANSACTIONS = 5;
+
+    @Param({"1000", "10000"})
+    public int transactions;
+
+    private Wallet wallet;
+    private WalletTransactionsEntry walletTransactionsEntry;
+
+    @Setup(Level.Trial)
+    public void setupWallet() {
+        wallet = new SyntheticWalletGenerator(transactions).generate(Math.max(transactions / 5, 20), transactions, 0.2, false).wallet();
+    }
+
+    @Setup(Level.Invocation)
+    public void setupEntry() {
+        walletTransactionsEntry = new WalletTransactionsEntry(wallet);
+        int size = walletTransactionsEntry.getChildren().size();
+        walletTransactionsEntry.getChildren().remove(size - NEW_TRANSACTIONS, size);
+    }
+
+    @Benchmark
+    public WalletTransactionsEntry updateTransactions() {
+        walletTransactionsEntry.updateTransactions();
+        return walletTransactionsEntry;
+    }
+}
@@ -533,6 +533,12 @@ public class AppController implements Initializable {
         }
     }
 
+    public void showCacheDiagnostics(ActionEvent event) {
+        CacheDiagnosticsDialog cacheDiagnosticsDialog = new CacheDiagnosticsDialog();
+        cacheDiagnosticsDialog.initOwner(rootStack.getScene().getWindow());
+        cacheDiagnosticsDialog.showAndWait();
+    }
+
     public void openSupport(ActionEvent event) {
         AppServices.get().getApplication().getHostServices().showDocument("https://sparrowwallet.com/opensupport");
     }
@@ -200,6 +200,7 @@ public class AppServices {
                 .subscribe(this::fetchBlockSummaries, exception -> log.error("Error fetching block summaries", exception));
 
         EventManager.get().register(this);
+        ScriptHashIndex.subscribe();
     }
 
     public void start() {
@@ -281,6 +282,9 @@ public class AppServices {
         if(Tor.getDefault() != null) {
             Tor.getDefault().close();
         }
+
+        BlockchainCache.close();
+        HeaderChainStore.close();
     }
 
     private ElectrumServer.ConnectionService createConnectionService() {
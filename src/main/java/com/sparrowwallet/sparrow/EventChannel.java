@@ -0,0 +1,108 @@
+package com.sparrowwallet.sparrow;
+
+import com.google.common.reflect.TypeToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * A set of typed event handlers, dispatched directly without the reflective lookup of the Guava EventBus.
+ * A channel is either global, or scoped to a single wallet so that its handlers only receive events for that wallet.
+ * Handlers run on the posting thread unless an executor is supplied when subscribing.
+ */
+public class EventChannel {
+    private static final Logger log = LoggerFactory.getLogger(EventChannel.class);
+
+    private static final ClassValue<List<Class<?>>> EVENT_TYPES = new ClassValue<>() {
+        @Override
+        protected List<Class<?>> computeValue(Class<?> type) {
+            return List.copyOf(TypeToken.of(type).getTypes().rawTypes());
+        }
+    };
+
+    private final String walletId;
+    private final Map<Class<?>, List<Handler<?>>> handlers = new ConcurrentHashMap<>();
+
+    EventChannel(String walletId) {
+        this.walletId = walletId;
+    }
+
+    /**
+     * Returns the id of the wallet this channel is scoped to, or null for the global channel
+     */
+    public String getWalletId() {
+        return walletId;
+    }
+
+    /**
+     * Subscribes a handler on the posting thread for events of the given type and its subtypes
+     */
+    public <E> void subscribe(Object owner, Class<E> eventType, Consumer<? super E> consumer) {
+        subscribe(owner, eventType, consumer, null);
+    }
+
+    /**
+     * Subscribes a handler for events of the given type and its subtypes, run on the given executor if it is not null
+     */
+    public <E> void subscribe(Object owner, Class<E> eventType, Consumer<? super E> consumer, Executor executor) {
+        handlers.computeIfAbsent(eventType, k -> new CopyOnWriteArrayList<>()).add(new Handler<>(owner, eventType, consumer, executor));
+    }
+
+    /**
+     * Removes all handlers subscribed by the given owner
+     */
+    public void unsubscribe(Object owner) {
+        for(List<Handler<?>> typeHandlers : handlers.values()) {
+            typeHandlers.removeIf(handler -> handler.owner() == owner);
+        }
+        handlers.values().removeIf(List::isEmpty);
+    }
+
+    public boolean isEmpty() {
+        return handlers.isEmpty();
+    }
+
+    void dispatch(Object event) {
+        if(handlers.isEmpty()) {
+            return;
+        }
+
+        for(Class<?> type : EVENT_TYPES.get(event.getClass())) {
+            List<Handler<?>> typeHandlers = handlers.get(type);
+            if(typeHandlers != null) {
+                for(Handler<?> handler : typeHandlers) {
+                    handler.handle(event);
+                }
+            }
+        }
+    }
+
+    private record Handler<E>(Object owner, Class<E> eventType, Consumer<? super E> consumer, Executor executor) {
+        void handle(Object event) {
+            E typedEvent = eventType.cast(event);
+            try {
+                if(executor == null) {
+                    consumer.accept(typedEvent);
+                } else {
+                    executor.execute(() -> accept(typedEvent));
+                }
+            } catch(RuntimeException e) {
+                log.error("Error handling " + event.getClass().getSimpleName() + " in " + owner.getClass().getSimpleName(), e);
+            }
+        }
+
+        private void accept(E typedEvent) {
+            try {
+                consumer.accept(typedEvent);
+            } catch(RuntimeException e) {
+                log.error("Error handling " + typedEvent.getClass().getSimpleName() + " in " + owner.getClass().getSimpleName(), e);
+            }
+        }
+    }
+}
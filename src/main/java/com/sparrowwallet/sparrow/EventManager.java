@@ -1,13 +1,11 @@
 package com.sparrowwallet.sparrow;
 
-import com.google.common.eventbus.EventBus;
-
 public class EventManager {
-    private static EventBus SINGLETON = new EventBus();
+    private static final RoutedEventBus SINGLETON = new RoutedEventBus();
 
     private EventManager() {}
 
-    public static EventBus get() {
+    public static RoutedEventBus get() {
         return SINGLETON;
     }
 }
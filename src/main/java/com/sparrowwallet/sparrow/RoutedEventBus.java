@@ -0,0 +1,204 @@
+package com.sparrowwallet.sparrow;
+
+import com.google.common.collect.MapMaker;
+import com.google.common.eventbus.EventBus;
+import com.sparrowwallet.drongo.wallet.Wallet;
+import com.sparrowwallet.sparrow.event.WalletChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * An EventBus that routes wallet events to per-wallet channels before dispatching them to the reflective @Subscribe methods of the Guava EventBus.
+ * Wallet events are delivered only to the channel of the wallet they concern, identified by the event's wallet id or by the wallet instance it carries.
+ * Handlers for events not scoped to a wallet may subscribe to the global channel, optionally on their own executor.
+ * As with the Guava EventBus, events posted while handling an event are queued and dispatched once the current event has been delivered to all subscribers.
+ */
+public class RoutedEventBus extends EventBus {
+    private static final Logger log = LoggerFactory.getLogger(RoutedEventBus.class);
+
+    private static final long SLOW_DISPATCH_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+
+    private final EventChannel globalChannel = new EventChannel(null);
+    private final Map<String, EventChannel> walletChannels = new ConcurrentHashMap<>();
+    private final Map<WalletEventSubscriber, EventChannel> subscriberChannels = new ConcurrentHashMap<>();
+    private final Map<Wallet, String> boundWallets = new MapMaker().weakKeys().makeMap();
+    private final Map<Class<?>, EventStats> eventStats = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<Queue<Object>> queue = ThreadLocal.withInitial(ArrayDeque::new);
+    private final ThreadLocal<Boolean> dispatching = ThreadLocal.withInitial(() -> false);
+
+    @Override
+    public void register(Object object) {
+        super.register(object);
+
+        if(object instanceof WalletEventSubscriber subscriber) {
+            //A subscriber without a wallet id, such as a wallet that has not been stored yet, receives events on the global channel
+            String walletId = subscriber.getWalletId();
+            bindWallet(subscriber.getWallet(), walletId);
+            EventChannel channel = walletId == null ? globalChannel : walletChannels.computeIfAbsent(walletId, EventChannel::new);
+            subscriberChannels.put(subscriber, channel);
+            subscriber.subscribe(channel);
+        }
+    }
+
+    @Override
+    public void unregister(Object object) {
+        if(object instanceof WalletEventSubscriber subscriber) {
+            EventChannel channel = subscriberChannels.remove(subscriber);
+            if(channel != null) {
+                channel.unsubscribe(subscriber);
+                if(channel != globalChannel) {
+                    if(subscriber.getWallet() != null) {
+                        boundWallets.remove(subscriber.getWallet(), channel.getWalletId());
+                    }
+                    walletChannels.computeIfPresent(channel.getWalletId(), (walletId, existing) -> existing.isEmpty() ? null : existing);
+                }
+            }
+        }
+
+        super.unregister(object);
+    }
+
+    /**
+     * Associates a wallet instance with its wallet id, so that events carrying the wallet but not its id are routed to the wallet's channel
+     */
+    public void bindWallet(Wallet wallet, String walletId) {
+        if(wallet != null && walletId != null) {
+            boundWallets.put(wallet, walletId);
+        }
+    }
+
+    /**
+     * Returns the wallet id bound to a wallet instance, or null if the wallet is not open in a wallet form
+     */
+    public String getWalletId(Wallet wallet) {
+        return wallet == null ? null : boundWallets.get(wallet);
+    }
+
+    /**
+     * Subscribes a handler on the posting thread for events of the given type and its subtypes, regardless of the wallet they concern
+     */
+    public <E> void subscribe(Object owner, Class<E> eventType, Consumer<? super E> consumer) {
+        globalChannel.subscribe(owner, eventType, consumer);
+    }
+
+    /**
+     * Subscribes a handler on the given executor for events of the given type and its subtypes, regardless of the wallet they concern
+     */
+    public <E> void subscribe(Object owner, Class<E> eventType, Consumer<? super E> consumer, Executor executor) {
+        globalChannel.subscribe(owner, eventType, consumer, executor);
+    }
+
+    /**
+     * Subscribes a handler on the given executor for events of the given type and its subtypes concerning the wallet with the given id
+     */
+    public <E> void subscribe(String walletId, Object owner, Class<E> eventType, Consumer<? super E> consumer, Executor executor) {
+        walletChannels.compute(walletId, (id, existing) -> {
+            EventChannel channel = existing == null ? new EventChannel(id) : existing;
+            channel.subscribe(owner, eventType, consumer, executor);
+            return channel;
+        });
+    }
+
+    /**
+     * Removes all handlers subscribed by the given owner, to the global channel and to any wallet channel
+     */
+    public void unsubscribe(Object owner) {
+        globalChannel.unsubscribe(owner);
+        for(String walletId : walletChannels.keySet()) {
+            walletChannels.computeIfPresent(walletId, (id, channel) -> {
+                channel.unsubscribe(owner);
+                return channel.isEmpty() ? null : channel;
+            });
+        }
+    }
+
+    @Override
+    public void post(Object event) {
+        Queue<Object> events = queue.get();
+        events.offer(event);
+
+        if(!dispatching.get()) {
+            dispatching.set(true);
+            try {
+                Object nextEvent;
+                while((nextEvent = events.poll()) != null) {
+                    dispatch(nextEvent);
+                }
+            } finally {
+                dispatching.remove();
+                queue.remove();
+            }
+        }
+    }
+
+    private void dispatch(Object event) {
+        long start = System.nanoTime();
+
+        EventChannel walletChannel = getWalletChannel(event);
+        if(walletChannel != null) {
+            walletChannel.dispatch(event);
+        }
+        globalChannel.dispatch(event);
+        super.post(event);
+
+        long elapsed = System.nanoTime() - start;
+        eventStats.computeIfAbsent(event.getClass(), k -> new EventStats()).record(elapsed);
+        if(elapsed > SLOW_DISPATCH_NANOS && log.isDebugEnabled()) {
+            log.debug("Dispatching " + event.getClass().getSimpleName() + " took " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms");
+        }
+    }
+
+    private EventChannel getWalletChannel(Object event) {
+        if(walletChannels.isEmpty() || !(event instanceof WalletChangedEvent walletChangedEvent)) {
+            return null;
+        }
+
+        String walletId = walletChangedEvent.getWalletId();
+        if(walletId == null && walletChangedEvent.getWallet() != null) {
+            walletId = boundWallets.get(walletChangedEvent.getWallet());
+        }
+
+        return walletId == null ? null : walletChannels.get(walletId);
+    }
+
+    /**
+     * Returns the number of events dispatched and the time taken to deliver them to all subscribers, for each event type posted so far
+     */
+    public List<DispatchMetrics> getDispatchMetrics() {
+        List<DispatchMetrics> metrics = new ArrayList<>();
+        for(Map.Entry<Class<?>, EventStats> entry : eventStats.entrySet()) {
+            EventStats stats = entry.getValue();
+            metrics.add(new DispatchMetrics(entry.getKey(), stats.count.sum(), stats.totalNanos.sum(), stats.maxNanos.get()));
+        }
+
+        metrics.sort(Comparator.comparingLong(DispatchMetrics::totalNanos).reversed());
+        return metrics;
+    }
+
+    public record DispatchMetrics(Class<?> eventType, long count, long totalNanos, long maxNanos) {
+        public long meanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+    }
+
+    private static class EventStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+    }
+}
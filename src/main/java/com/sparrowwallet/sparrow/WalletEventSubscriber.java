@@ -0,0 +1,15 @@
+package com.sparrowwallet.sparrow;
+
+import com.sparrowwallet.drongo.wallet.Wallet;
+
+/**
+ * Implemented by objects registered with the EventManager that handle events for a single wallet.
+ * On registration the subscriber is given the channel for its wallet id, and only receives the wallet events subscribed there for that wallet.
+ */
+public interface WalletEventSubscriber {
+    String getWalletId();
+
+    Wallet getWallet();
+
+    void subscribe(EventChannel channel);
+}
@@ -0,0 +1,92 @@
+package com.sparrowwallet.sparrow.control;
+
+import com.google.common.cache.CacheStats;
+import com.sparrowwallet.sparrow.AppServices;
+import com.sparrowwallet.sparrow.net.ServerCache;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.collections.FXCollections;
+import javafx.event.ActionEvent;
+import javafx.scene.control.*;
+
+import java.util.Locale;
+
+public class CacheDiagnosticsDialog extends Dialog<Void> {
+    private final TableView<CacheRow> table;
+
+    public CacheDiagnosticsDialog() {
+        final DialogPane dialogPane = getDialogPane();
+        dialogPane.getStylesheets().add(AppServices.class.getResource("general.css").toExternalForm());
+        dialogPane.getStylesheets().add(AppServices.class.getResource("dialog.css").toExternalForm());
+
+        AppServices.setStageIcon(dialogPane.getScene().getWindow());
+        dialogPane.setHeaderText("Server Cache Diagnostics");
+        dialogPane.setGraphic(new DialogImage(DialogImage.Type.SPARROW));
+
+        table = new TableView<>();
+        table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
+        table.setPrefSize(700, 220);
+
+        TableColumn<CacheRow, String> nameColumn = new TableColumn<>("Cache");
+        nameColumn.setCellValueFactory(param -> new ReadOnlyStringWrapper(param.getValue().name()));
+        nameColumn.setPrefWidth(200);
+        table.getColumns().add(nameColumn);
+
+        TableColumn<CacheRow, Number> entriesColumn = new TableColumn<>("Entries");
+        entriesColumn.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue().entries()));
+        table.getColumns().add(entriesColumn);
+
+        TableColumn<CacheRow, String> sizeColumn = new TableColumn<>("Estimated Size");
+        sizeColumn.setCellValueFactory(param -> new ReadOnlyStringWrapper(formatBytes(param.getValue().estimatedBytes())));
+        table.getColumns().add(sizeColumn);
+
+        TableColumn<CacheRow, String> hitRateColumn = new TableColumn<>("Hit Rate");
+        hitRateColumn.setCellValueFactory(param -> new ReadOnlyStringWrapper(formatHitRate(param.getValue().stats())));
+        table.getColumns().add(hitRateColumn);
+
+        TableColumn<CacheRow, Number> evictionsColumn = new TableColumn<>("Evictions");
+        evictionsColumn.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue().stats().evictionCount()));
+        table.getColumns().add(evictionsColumn);
+
+        refresh();
+        dialogPane.setContent(table);
+
+        ButtonType refreshButtonType = new ButtonType("Refresh", ButtonBar.ButtonData.LEFT);
+        ButtonType doneButtonType = new ButtonType("Done", ButtonBar.ButtonData.OK_DONE);
+        dialogPane.getButtonTypes().addAll(refreshButtonType, doneButtonType);
+
+        Button refreshButton = (Button)dialogPane.lookupButton(refreshButtonType);
+        refreshButton.addEventFilter(ActionEvent.ACTION, event -> {
+            refresh();
+            event.consume();
+        });
+
+        setResizable(true);
+        AppServices.moveToActiveWindowScreen(this);
+    }
+
+    private void refresh() {
+        table.setItems(FXCollections.observableList(ServerCache.getCaches().stream()
+                .map(cache -> new CacheRow(cache.getName(), cache.size(), cache.getEstimatedBytes(), cache.getStats())).toList()));
+    }
+
+    private static String formatBytes(long bytes) {
+        if(bytes < 1024) {
+            return bytes + " B";
+        } else if(bytes < 1024 * 1024) {
+            return String.format(Locale.ENGLISH, "%.1f KB", bytes / 1024d);
+        }
+
+        return String.format(Locale.ENGLISH, "%.1f MB", bytes / (1024d * 1024d));
+    }
+
+    private static String formatHitRate(CacheStats stats) {
+        if(stats.requestCount() == 0) {
+            return "-";
+        }
+
+        return String.format(Locale.ENGLISH, "%.1f%% of %d", stats.hitRate() * 100, stats.requestCount());
+    }
+
+    private record CacheRow(String name, long entries, long estimatedBytes, CacheStats stats) {}
+}
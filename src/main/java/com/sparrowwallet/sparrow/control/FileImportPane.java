@@ -125,7 +125,7 @@ public abstract class FileImportPane extends TitledDescriptionPane {
                     setContent(getPasswordEntry(file));
                     importButton.setDisable(true);
                     setExpanded(true);
-                } else {
+                } else if(!importFileInBackground(file)) {
                     try(InputStream inputStream = new BufferedInputStream(new FileInputStream(file))) {
                         importFile(file.getName(), inputStream, password);
                     };
@@ -218,6 +218,15 @@ public abstract class FileImportPane extends TitledDescriptionPane {
 
     protected abstract void importFile(String fileName, InputStream inputStream, String password) throws ImportException;
 
+    /**
+     * Starts importing a file that is streamed on a background thread, rather than read from an input stream that is closed on return
+     *
+     * @return false if the file should be read from an input stream instead
+     */
+    protected boolean importFileInBackground(File file) {
+        return false;
+    }
+
     private Node getPasswordEntry(File file) {
         CustomPasswordField passwordField = new ViewPasswordField();
         passwordField.setPromptText("Password");
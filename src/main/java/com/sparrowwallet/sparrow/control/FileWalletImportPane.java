@@ -5,10 +5,17 @@ import com.sparrowwallet.sparrow.EventManager;
 import com.sparrowwallet.sparrow.event.WalletImportEvent;
 import com.sparrowwallet.sparrow.io.ImportException;
 import com.sparrowwallet.sparrow.io.WalletImport;
+import com.sparrowwallet.sparrow.io.WalletLabels;
+import javafx.scene.control.ProgressIndicator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.InputStream;
 
 public class FileWalletImportPane extends FileImportPane {
+    private static final Logger log = LoggerFactory.getLogger(FileWalletImportPane.class);
+
     private final WalletImport importer;
 
     public FileWalletImportPane(WalletImport importer) {
@@ -25,9 +32,55 @@ public class FileWalletImportPane extends FileImportPane {
             wallet = importer.importWallet(inputStream, password);
         }
 
+        importWallet(fileName, wallet);
+    }
+
+    private void importWallet(String fileName, Wallet wallet) {
         if(wallet.getName() == null) {
             wallet.setName(fileName);
         }
         EventManager.get().post(new WalletImportEvent(wallet));
     }
+
+    @Override
+    protected boolean importFileInBackground(File file) {
+        if(importer instanceof WalletLabels walletLabels && (getScannedWallets() == null || getScannedWallets().isEmpty())) {
+            importLabels(file.getName(), walletLabels, file);
+            return true;
+        }
+
+        return false;
+    }
+
+    private void importLabels(String fileName, WalletLabels walletLabels, File file) {
+        importButton.setDisable(true);
+        importButton.setMaxHeight(importButton.getHeight());
+        ProgressIndicator progressIndicator = new ProgressIndicator(0);
+        progressIndicator.getStyleClass().add("button-progress");
+        importButton.setGraphic(progressIndicator);
+
+        WalletLabels.ImportLabelsService importLabelsService = new WalletLabels.ImportLabelsService(walletLabels, file);
+        importLabelsService.setOnSucceeded(_ -> {
+            importButton.setGraphic(null);
+            importButton.setDisable(false);
+            showHideLink.setVisible(true);
+            importWallet(fileName, importLabelsService.getValue().apply());
+        });
+        importLabelsService.setOnFailed(_ -> {
+            Throwable e = importLabelsService.getException();
+            log.error("Error importing labels", e);
+            String errorMessage = e.getMessage();
+            if(e.getCause() != null && e.getCause().getMessage() != null && !e.getCause().getMessage().isEmpty()) {
+                errorMessage = e.getCause().getMessage();
+            }
+            importButton.setGraphic(null);
+            importButton.setDisable(false);
+            showHideLink.setVisible(true);
+            setError("Import Error", errorMessage);
+        });
+        progressIndicator.progressProperty().bind(importLabelsService.progressProperty());
+        importLabelsService.progressProperty().addListener((_, _, newValue) -> setDescription("Importing... (" + Math.round(newValue.doubleValue() * 100) + "%)"));
+        showHideLink.setVisible(false);
+        importLabelsService.start();
+    }
 }
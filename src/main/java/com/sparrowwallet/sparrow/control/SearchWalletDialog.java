@@ -16,6 +16,8 @@ import com.sparrowwallet.sparrow.wallet.*;
 import javafx.application.Platform;
 import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.ListChangeListener;
+import javafx.concurrent.Service;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
@@ -42,6 +44,7 @@ public class SearchWalletDialog extends Dialog<Entry> {
     private final List<WalletForm> walletForms;
     private final TextField search;
     private final CoinTreeTable results;
+    private final SearchService searchService = new SearchService();
 
     public SearchWalletDialog(List<WalletForm> walletForms) {
         this.walletForms = walletForms;
@@ -164,6 +167,10 @@ public class SearchWalletDialog extends Dialog<Entry> {
                     || walletForms.stream().map(WalletForm::getWallet).noneMatch(wallet -> wallet == results.getSelectionModel().getSelectedItem().getValue().getWallet()));
         });
 
+        searchService.setOnSucceeded(event -> setResults(searchService.getValue()));
+        searchService.setOnFailed(event -> log.error("Error searching wallets", event.getSource().getException()));
+        setOnHidden(event -> searchService.cancel());
+
         search.textProperty().addListener((observable, oldValue, newValue) -> {
             searchWallets(newValue);
         });
@@ -185,83 +192,34 @@ public class SearchWalletDialog extends Dialog<Entry> {
     }
 
     private void searchWallets(String searchPhrase) {
-        Set<Entry> matchingEntries = new LinkedHashSet<>();
-
-        if(!searchPhrase.isEmpty()) {
-            Set<String> searchWords = new LinkedHashSet<>(Arrays.stream(searchPhrase.split("\\s+"))
-                    .filter(text -> isAddress(text) || isHash(text) || isHashIndex(text)).toList());
-            String freeText = removeOccurrences(searchPhrase, searchWords).trim();
-            if(!freeText.isEmpty()) {
-                searchWords.add(freeText);
-            }
+        if(searchPhrase.isEmpty()) {
+            searchService.cancel();
+            setResults(Collections.emptyList());
+            return;
+        }
 
-            for(String searchText : searchWords) {
-                Long searchValue = getSearchValue(searchText);
-                Address searchAddress = getSearchAddress(searchText);
-                searchText = searchText.toLowerCase(Locale.ROOT);
-
-                for(WalletForm walletForm : walletForms) {
-                    WalletTransactionsEntry walletTransactionsEntry = walletForm.getWalletTransactionsEntry();
-                    for(Entry entry : walletTransactionsEntry.getChildren()) {
-                        if(entry instanceof TransactionEntry transactionEntry) {
-                            if(transactionEntry.getBlockTransaction().getHash().toString().equals(searchText) ||
-                                    (transactionEntry.getLabel() != null && transactionEntry.getLabel().toLowerCase(Locale.ROOT).contains(searchText)) ||
-                                    (transactionEntry.getValue() != null && searchValue != null && Math.abs(transactionEntry.getValue()) == searchValue) ||
-                                    (searchAddress != null && transactionEntry.getBlockTransaction().getTransaction().getOutputs().stream().map(output -> output.getScript().getToAddress()).filter(Objects::nonNull).anyMatch(address -> address.equals(searchAddress)))) {
-                                matchingEntries.add(entry);
-                            }
-                        }
-                    }
+        Set<String> searchWords = new LinkedHashSet<>(Arrays.stream(searchPhrase.split("\\s+"))
+                .filter(text -> isAddress(text) || isHash(text) || isHashIndex(text)).toList());
+        String freeText = removeOccurrences(searchPhrase, searchWords).trim();
+        if(!freeText.isEmpty()) {
+            searchWords.add(freeText);
+        }
 
-                    for(KeyPurpose keyPurpose : KeyPurpose.DEFAULT_PURPOSES) {
-                        NodeEntry purposeEntry = walletForm.getNodeEntry(keyPurpose);
-                        for(Entry entry : purposeEntry.getChildren()) {
-                            if(entry instanceof NodeEntry nodeEntry) {
-                                if(nodeEntry.getAddress().toString().toLowerCase(Locale.ROOT).contains(searchText) ||
-                                        (nodeEntry.getLabel() != null && nodeEntry.getLabel().toLowerCase(Locale.ROOT).contains(searchText)) ||
-                                        (nodeEntry.getValue() != null && searchValue != null && Math.abs(nodeEntry.getValue()) == searchValue)) {
-                                    matchingEntries.add(entry);
-                                }
-                            }
-                        }
-                    }
+        //Entries are captured on the FX thread if the wallet has changed since the last search, while indexing and matching is done in the background
+        List<WalletSearchIndex> searchIndexes = walletForms.stream().map(WalletSearchIndex::get).toList();
+        searchIndexes.forEach(WalletSearchIndex::prepare);
 
-                    for(WalletForm nestedWalletForm : walletForm.getNestedWalletForms()) {
-                        for(KeyPurpose keyPurpose : nestedWalletForm.getWallet().getWalletKeyPurposes()) {
-                            NodeEntry purposeEntry = nestedWalletForm.getNodeEntry(keyPurpose);
-                            for(Entry entry : purposeEntry.getChildren()) {
-                                if(entry instanceof NodeEntry nodeEntry) {
-                                    if(nodeEntry.getAddress().toString().toLowerCase(Locale.ROOT).contains(searchText) ||
-                                            (nodeEntry.getLabel() != null && nodeEntry.getLabel().toLowerCase(Locale.ROOT).contains(searchText)) ||
-                                            (nodeEntry.getValue() != null && searchValue != null && Math.abs(nodeEntry.getValue()) == searchValue)) {
-                                        matchingEntries.add(entry);
-                                    }
-                                }
-                            }
-                        }
-                    }
-
-                    WalletUtxosEntry walletUtxosEntry = walletForm.getWalletUtxosEntry();
-                    for(Entry entry : walletUtxosEntry.getChildren()) {
-                        if(entry instanceof HashIndexEntry hashIndexEntry) {
-                            if(hashIndexEntry.getBlockTransaction().getHash().toString().toLowerCase(Locale.ROOT).equals(searchText) ||
-                                    hashIndexEntry.getHashIndex().toString().toLowerCase(Locale.ROOT).equals(searchText) ||
-                                    (hashIndexEntry.getLabel() != null && hashIndexEntry.getLabel().toLowerCase(Locale.ROOT).contains(searchText)) ||
-                                    (hashIndexEntry.getValue() != null && searchValue != null && Math.abs(hashIndexEntry.getValue()) == searchValue)) {
-                                matchingEntries.add(entry);
-                            }
-                        }
-                    }
-                }
-            }
-        }
+        searchService.setSearch(searchIndexes, searchWords);
+        searchService.restart();
+    }
 
+    private void setResults(List<Entry> matchingEntries) {
         SearchWalletEntry rootEntry = new SearchWalletEntry(walletForms.iterator().next().getWallet(), new ArrayList<>(matchingEntries));
         RecursiveTreeItem<Entry> rootItem = new RecursiveTreeItem<>(rootEntry, Entry::getChildren);
         results.setRoot(rootItem);
     }
 
-    private Long getSearchValue(String searchText) {
+    private static Long getSearchValue(String searchText) {
         try {
             return Math.abs(Long.parseLong(searchText));
         } catch(NumberFormatException e) {
@@ -269,14 +227,6 @@ public class SearchWalletDialog extends Dialog<Entry> {
         }
     }
 
-    private Address getSearchAddress(String searchText) {
-        try {
-            return Address.fromString(searchText);
-        } catch(InvalidAddressException e) {
-            return null;
-        }
-    }
-
     private boolean isAddress(String text) {
         try {
             Address.fromString(text);
@@ -366,6 +316,44 @@ public class SearchWalletDialog extends Dialog<Entry> {
         return BitcoinUnit.BTC.equals(results.getBitcoinUnit()) ? format.tableFormatBtcValue(value) : String.format(Locale.ENGLISH, "%d", value);
     }
 
+    private static class SearchService extends Service<List<Entry>> {
+        private List<WalletSearchIndex> searchIndexes;
+        private Set<String> searchWords;
+
+        public void setSearch(List<WalletSearchIndex> searchIndexes, Set<String> searchWords) {
+            this.searchIndexes = searchIndexes;
+            this.searchWords = searchWords;
+        }
+
+        @Override
+        protected Task<List<Entry>> createTask() {
+            List<WalletSearchIndex> taskIndexes = searchIndexes;
+            Set<String> taskWords = searchWords;
+            return new Task<>() {
+                protected List<Entry> call() {
+                    //Entries matched by more than one search word keep the closest rank, and matches are ordered by rank, then by wallet and position
+                    Map<Entry, WalletSearchIndex.Rank> entryRanks = new LinkedHashMap<>();
+                    for(String searchWord : taskWords) {
+                        Long searchValue = getSearchValue(searchWord);
+                        for(WalletSearchIndex searchIndex : taskIndexes) {
+                            if(isCancelled()) {
+                                return Collections.emptyList();
+                            }
+
+                            for(WalletSearchIndex.Match match : searchIndex.search(searchWord, searchValue, this::isCancelled)) {
+                                entryRanks.merge(match.entry(), match.rank(), (previous, current) -> previous.compareTo(current) <= 0 ? previous : current);
+                            }
+                        }
+                    }
+
+                    List<Map.Entry<Entry, WalletSearchIndex.Rank>> rankedEntries = new ArrayList<>(entryRanks.entrySet());
+                    rankedEntries.sort(Map.Entry.comparingByValue());
+                    return rankedEntries.stream().map(Map.Entry::getKey).toList();
+                }
+            };
+        }
+    }
+
     private static class SearchWalletEntry extends Entry {
         public SearchWalletEntry(Wallet wallet, List<Entry> entries) {
             super(wallet, wallet.getName(), entries);
@@ -16,6 +16,14 @@ public class WalletChangedEvent {
         return wallet;
     }
 
+    /**
+     * Returns the id of the wallet this event concerns, if known when the event is created.
+     * Events without an id are routed by their wallet instance instead.
+     */
+    public String getWalletId() {
+        return null;
+    }
+
     public boolean fromThisOrNested(Wallet targetWallet) {
         if(wallet.equals(targetWallet)) {
             return true;
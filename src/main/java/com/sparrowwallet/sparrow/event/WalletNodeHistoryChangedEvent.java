@@ -1,12 +1,8 @@
 package com.sparrowwallet.sparrow.event;
 
-import com.sparrowwallet.drongo.KeyPurpose;
 import com.sparrowwallet.drongo.wallet.Wallet;
 import com.sparrowwallet.drongo.wallet.WalletNode;
-import com.sparrowwallet.sparrow.net.ElectrumServer;
-
-import java.util.ArrayList;
-import java.util.List;
+import com.sparrowwallet.sparrow.net.ScriptHashIndex;
 
 /**
  * Used to notify that a wallet node (identified by it's script hash) has been updated on the blockchain.
@@ -27,51 +23,7 @@ public class WalletNodeHistoryChangedEvent {
     }
 
     public WalletNode getWalletNode(Wallet wallet) {
-        WalletNode changedNode = getNode(wallet);
-        if(changedNode != null) {
-            return changedNode;
-        }
-
-        for(Wallet childWallet : wallet.getChildWallets()) {
-            if(childWallet.isNested()) {
-                changedNode = getNode(childWallet);
-                if(changedNode != null) {
-                    return changedNode;
-                }
-            }
-        }
-
-        Wallet notificationWallet = wallet.getNotificationWallet();
-        if(notificationWallet != null) {
-            WalletNode notificationNode = notificationWallet.getNode(KeyPurpose.NOTIFICATION);
-            if(ElectrumServer.getScriptHash(notificationNode).equals(scriptHash)) {
-                return notificationNode;
-            }
-        }
-
-        return null;
-    }
-
-    private WalletNode getNode(Wallet wallet) {
-        for(KeyPurpose keyPurpose : KeyPurpose.DEFAULT_PURPOSES) {
-            WalletNode changedNode = getWalletNode(wallet, keyPurpose);
-            if(changedNode != null) {
-                return changedNode;
-            }
-        }
-
-        return null;
-    }
-
-    private WalletNode getWalletNode(Wallet wallet, KeyPurpose keyPurpose) {
-        WalletNode purposeNode = wallet.getNode(keyPurpose);
-        for(WalletNode addressNode : new ArrayList<>(purposeNode.getChildren())) {
-            if(ElectrumServer.getScriptHash(addressNode).equals(scriptHash)) {
-                return addressNode;
-            }
-        }
-
-        return null;
+        return ScriptHashIndex.getWalletNode(wallet, scriptHash);
     }
 
     public String getScriptHash() {
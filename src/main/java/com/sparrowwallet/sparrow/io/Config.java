@@ -12,16 +12,24 @@ import com.sparrowwallet.sparrow.control.WebcamResolution;
 import com.sparrowwallet.sparrow.net.*;
 import com.sparrowwallet.sparrow.wallet.FeeRatesSelection;
 import com.sparrowwallet.sparrow.wallet.OptimizationStrategy;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import static com.sparrowwallet.sparrow.AppServices.ENUMERATE_HW_PERIOD_SECS;
-import static com.sparrowwallet.sparrow.net.PagedBatchRequestBuilder.DEFAULT_PAGE_SIZE;
+import static com.sparrowwallet.sparrow.net.cormorant.bitcoind.BitcoindClient.DEFAULT_CORE_PAGE_SIZE;
 import static com.sparrowwallet.sparrow.net.TcpTransport.DEFAULT_MAX_TIMEOUT;
 import static com.sparrowwallet.sparrow.wallet.WalletUtxosEntry.DUST_ATTACK_THRESHOLD_SATS;
 
@@ -29,6 +37,10 @@ public class Config {
     private static final Logger log = LoggerFactory.getLogger(Config.class);
 
     public static final String CONFIG_FILENAME = "config";
+    private static final String TEMP_CONFIG_FILENAME = CONFIG_FILENAME + ".tmp";
+
+    //Changes made within this window are coalesced into a single write
+    private static final long FLUSH_DELAY_MILLIS = 500;
 
     private Mode mode;
     private BitcoinUnit bitcoinUnit;
@@ -88,7 +100,10 @@ public class Config {
     private String proxyServer;
     private boolean autoSwitchProxy = true;
     private int maxServerTimeout = DEFAULT_MAX_TIMEOUT;
-    private int maxPageSize = DEFAULT_PAGE_SIZE;
+    //Only set when the batch page size has been explicitly limited
+    private Integer maxPageSize;
+    private int maxCorePageSize = DEFAULT_CORE_PAGE_SIZE;
+    private Map<String, BatchSettings> serverBatchSettings;
     private boolean usePayNym;
     private boolean mempoolFullRbf;
     private double minRelayFeeRate = Transaction.DEFAULT_MIN_RELAY_FEE;
@@ -96,14 +111,33 @@ public class Config {
     private Double appHeight;
 
     private static Config INSTANCE;
+    private static Gson GSON;
+    private static ScheduledExecutorService flushExecutor;
+    //Orders writes of the config file, which are made outside the lock held by setters
+    private static final Object WRITE_LOCK = new Object();
+
+    private final transient AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private static synchronized Gson getGson() {
+        if(GSON == null) {
+            GsonBuilder gsonBuilder = new GsonBuilder();
+            gsonBuilder.registerTypeAdapter(File.class, new FileSerializer());
+            gsonBuilder.registerTypeAdapter(File.class, new FileDeserializer());
+            gsonBuilder.registerTypeAdapter(Server.class, new ServerSerializer());
+            gsonBuilder.registerTypeAdapter(Server.class, new ServerDeserializer());
+            GSON = gsonBuilder.setPrettyPrinting().disableHtmlEscaping().create();
+        }
+
+        return GSON;
+    }
 
-    private static Gson getGson() {
-        GsonBuilder gsonBuilder = new GsonBuilder();
-        gsonBuilder.registerTypeAdapter(File.class, new FileSerializer());
-        gsonBuilder.registerTypeAdapter(File.class, new FileDeserializer());
-        gsonBuilder.registerTypeAdapter(Server.class, new ServerSerializer());
-        gsonBuilder.registerTypeAdapter(Server.class, new ServerDeserializer());
-        return gsonBuilder.setPrettyPrinting().disableHtmlEscaping().create();
+    private static synchronized ScheduledExecutorService getFlushExecutor() {
+        if(flushExecutor == null) {
+            BasicThreadFactory factory = BasicThreadFactory.builder().namingPattern("ConfigFlush").daemon(true).priority(Thread.NORM_PRIORITY).build();
+            flushExecutor = Executors.newSingleThreadScheduledExecutor(factory);
+        }
+
+        return flushExecutor;
     }
 
     private static File getConfigFile() {
@@ -143,7 +177,7 @@ public class Config {
         return mode;
     }
 
-    public void setMode(Mode mode) {
+    public synchronized void setMode(Mode mode) {
         this.mode = mode;
         flush();
     }
@@ -152,7 +186,7 @@ public class Config {
         return bitcoinUnit;
     }
 
-    public void setBitcoinUnit(BitcoinUnit bitcoinUnit) {
+    public synchronized void setBitcoinUnit(BitcoinUnit bitcoinUnit) {
         this.bitcoinUnit = bitcoinUnit;
         flush();
     }
@@ -161,7 +195,7 @@ public class Config {
         return unitFormat;
     }
 
-    public void setUnitFormat(UnitFormat unitFormat) {
+    public synchronized void setUnitFormat(UnitFormat unitFormat) {
         this.unitFormat = unitFormat;
         flush();
     }
@@ -174,7 +208,7 @@ public class Config {
         return blockExplorer;
     }
 
-    public void setBlockExplorer(Server blockExplorer) {
+    public synchronized void setBlockExplorer(Server blockExplorer) {
         this.blockExplorer = blockExplorer;
         flush();
     }
@@ -183,7 +217,7 @@ public class Config {
         return feeRatesSource;
     }
 
-    public void setFeeRatesSource(FeeRatesSource feeRatesSource) {
+    public synchronized void setFeeRatesSource(FeeRatesSource feeRatesSource) {
         this.feeRatesSource = feeRatesSource;
         flush();
     }
@@ -192,7 +226,7 @@ public class Config {
         return feeRatesSelection;
     }
 
-    public void setFeeRatesSelection(FeeRatesSelection feeRatesSelection) {
+    public synchronized void setFeeRatesSelection(FeeRatesSelection feeRatesSelection) {
         this.feeRatesSelection = feeRatesSelection;
         flush();
     }
@@ -201,7 +235,7 @@ public class Config {
         return sendOptimizationStrategy;
     }
 
-    public void setSendOptimizationStrategy(OptimizationStrategy sendOptimizationStrategy) {
+    public synchronized void setSendOptimizationStrategy(OptimizationStrategy sendOptimizationStrategy) {
         this.sendOptimizationStrategy = sendOptimizationStrategy;
         flush();
     }
@@ -210,7 +244,7 @@ public class Config {
         return fiatCurrency;
     }
 
-    public void setFiatCurrency(Currency fiatCurrency) {
+    public synchronized void setFiatCurrency(Currency fiatCurrency) {
         this.fiatCurrency = fiatCurrency;
         flush();
     }
@@ -223,7 +257,7 @@ public class Config {
         return exchangeSource;
     }
 
-    public void setExchangeSource(ExchangeSource exchangeSource) {
+    public synchronized void setExchangeSource(ExchangeSource exchangeSource) {
         this.exchangeSource = exchangeSource;
         flush();
     }
@@ -232,7 +266,7 @@ public class Config {
         return loadRecentWallets;
     }
 
-    public void setLoadRecentWallets(boolean loadRecentWallets) {
+    public synchronized void setLoadRecentWallets(boolean loadRecentWallets) {
         this.loadRecentWallets = loadRecentWallets;
         flush();
     }
@@ -241,7 +275,7 @@ public class Config {
         return validateDerivationPaths;
     }
 
-    public void setValidateDerivationPaths(boolean validateDerivationPaths) {
+    public synchronized void setValidateDerivationPaths(boolean validateDerivationPaths) {
         this.validateDerivationPaths = validateDerivationPaths;
         flush();
     }
@@ -250,7 +284,7 @@ public class Config {
         return groupByAddress;
     }
 
-    public void setGroupByAddress(boolean groupByAddress) {
+    public synchronized void setGroupByAddress(boolean groupByAddress) {
         this.groupByAddress = groupByAddress;
         flush();
     }
@@ -259,7 +293,7 @@ public class Config {
         return includeMempoolOutputs;
     }
 
-    public void setIncludeMempoolOutputs(boolean includeMempoolOutputs) {
+    public synchronized void setIncludeMempoolOutputs(boolean includeMempoolOutputs) {
         this.includeMempoolOutputs = includeMempoolOutputs;
         flush();
     }
@@ -268,7 +302,7 @@ public class Config {
         return notifyNewTransactions;
     }
 
-    public void setNotifyNewTransactions(boolean notifyNewTransactions) {
+    public synchronized void setNotifyNewTransactions(boolean notifyNewTransactions) {
         this.notifyNewTransactions = notifyNewTransactions;
         flush();
     }
@@ -277,7 +311,7 @@ public class Config {
         return checkNewVersions;
     }
 
-    public void setCheckNewVersions(boolean checkNewVersions) {
+    public synchronized void setCheckNewVersions(boolean checkNewVersions) {
         this.checkNewVersions = checkNewVersions;
         flush();
     }
@@ -286,7 +320,7 @@ public class Config {
         return theme;
     }
 
-    public void setTheme(Theme theme) {
+    public synchronized void setTheme(Theme theme) {
         this.theme = theme;
         flush();
     }
@@ -295,7 +329,7 @@ public class Config {
         return openWalletsInNewWindows;
     }
 
-    public void setOpenWalletsInNewWindows(boolean openWalletsInNewWindows) {
+    public synchronized void setOpenWalletsInNewWindows(boolean openWalletsInNewWindows) {
         this.openWalletsInNewWindows = openWalletsInNewWindows;
         flush();
     }
@@ -304,7 +338,7 @@ public class Config {
         return chunkAddresses;
     }
 
-    public void setChunkAddresses(boolean chunkAddresses) {
+    public synchronized void setChunkAddresses(boolean chunkAddresses) {
         this.chunkAddresses = chunkAddresses;
         flush();
     }
@@ -313,7 +347,7 @@ public class Config {
         return hideEmptyUsedAddresses;
     }
 
-    public void setHideEmptyUsedAddresses(boolean hideEmptyUsedAddresses) {
+    public synchronized void setHideEmptyUsedAddresses(boolean hideEmptyUsedAddresses) {
         this.hideEmptyUsedAddresses = hideEmptyUsedAddresses;
         flush();
     }
@@ -322,7 +356,7 @@ public class Config {
         return hideAmounts;
     }
 
-    public void setHideAmounts(boolean hideAmounts) {
+    public synchronized void setHideAmounts(boolean hideAmounts) {
         this.hideAmounts = hideAmounts;
         flush();
     }
@@ -331,7 +365,7 @@ public class Config {
         return showTransactionHex;
     }
 
-    public void setShowTransactionHex(boolean showTransactionHex) {
+    public synchronized void setShowTransactionHex(boolean showTransactionHex) {
         this.showTransactionHex = showTransactionHex;
         flush();
     }
@@ -340,7 +374,7 @@ public class Config {
         return showLoadingLog;
     }
 
-    public void setShowLoadingLog(boolean showLoadingLog) {
+    public synchronized void setShowLoadingLog(boolean showLoadingLog) {
         this.showLoadingLog = showLoadingLog;
         flush();
     }
@@ -349,7 +383,7 @@ public class Config {
         return showAddressTransactionCount;
     }
 
-    public void setShowAddressTransactionCount(boolean showAddressTransactionCount) {
+    public synchronized void setShowAddressTransactionCount(boolean showAddressTransactionCount) {
         this.showAddressTransactionCount = showAddressTransactionCount;
         flush();
     }
@@ -358,7 +392,7 @@ public class Config {
         return showDeprecatedImportExport;
     }
 
-    public void setShowDeprecatedImportExport(boolean showDeprecatedImportExport) {
+    public synchronized void setShowDeprecatedImportExport(boolean showDeprecatedImportExport) {
         this.showDeprecatedImportExport = showDeprecatedImportExport;
         flush();
     }
@@ -367,7 +401,7 @@ public class Config {
         return signBsmsExports;
     }
 
-    public void setSignBsmsExports(boolean signBsmsExports) {
+    public synchronized void setSignBsmsExports(boolean signBsmsExports) {
         this.signBsmsExports = signBsmsExports;
         flush();
     }
@@ -376,7 +410,7 @@ public class Config {
         return preventSleep;
     }
 
-    public void setPreventSleep(boolean preventSleep) {
+    public synchronized void setPreventSleep(boolean preventSleep) {
         this.preventSleep = preventSleep;
         flush();
     }
@@ -385,7 +419,7 @@ public class Config {
         return connectToBroadcast;
     }
 
-    public void setConnectToBroadcast(Boolean connectToBroadcast) {
+    public synchronized void setConnectToBroadcast(Boolean connectToBroadcast) {
         this.connectToBroadcast = connectToBroadcast;
         flush();
     }
@@ -394,7 +428,7 @@ public class Config {
         return connectToResolve;
     }
 
-    public void setConnectToResolve(Boolean connectToResolve) {
+    public synchronized void setConnectToResolve(Boolean connectToResolve) {
         this.connectToResolve = connectToResolve;
         flush();
     }
@@ -403,7 +437,7 @@ public class Config {
         return suggestSendToMany;
     }
 
-    public void setSuggestSendToMany(Boolean suggestSendToMany) {
+    public synchronized void setSuggestSendToMany(Boolean suggestSendToMany) {
         this.suggestSendToMany = suggestSendToMany;
         flush();
     }
@@ -412,7 +446,7 @@ public class Config {
         return suggestChangeWalletsDir;
     }
 
-    public void setSuggestChangeWalletsDir(Boolean suggestChangeWalletsDir) {
+    public synchronized void setSuggestChangeWalletsDir(Boolean suggestChangeWalletsDir) {
         this.suggestChangeWalletsDir = suggestChangeWalletsDir;
         flush();
     }
@@ -421,7 +455,7 @@ public class Config {
         return walletsDir;
     }
 
-    public void setWalletsDir(File walletsDir) {
+    public synchronized void setWalletsDir(File walletsDir) {
         this.walletsDir = walletsDir;
         flush();
     }
@@ -430,7 +464,7 @@ public class Config {
         return recentWalletFiles;
     }
 
-    public void setRecentWalletFiles(List<File> recentWalletFiles) {
+    public synchronized void setRecentWalletFiles(List<File> recentWalletFiles) {
         this.recentWalletFiles = recentWalletFiles;
         flush();
     }
@@ -439,7 +473,7 @@ public class Config {
         return keyDerivationPeriod;
     }
 
-    public void setKeyDerivationPeriod(Integer keyDerivationPeriod) {
+    public synchronized void setKeyDerivationPeriod(Integer keyDerivationPeriod) {
         this.keyDerivationPeriod = keyDerivationPeriod;
         flush();
     }
@@ -456,7 +490,7 @@ public class Config {
         return qrDensity == null ? QRDensity.NORMAL : qrDensity;
     }
 
-    public void setQrDensity(QRDensity qrDensity) {
+    public synchronized void setQrDensity(QRDensity qrDensity) {
         this.qrDensity = qrDensity;
         flush();
     }
@@ -465,7 +499,7 @@ public class Config {
         return qrEncoding;
     }
 
-    public void setQrEncoding(QREncoding qrEncoding) {
+    public synchronized void setQrEncoding(QREncoding qrEncoding) {
         this.qrEncoding = qrEncoding;
         flush();
     }
@@ -474,7 +508,7 @@ public class Config {
         return webcamResolution;
     }
 
-    public void setWebcamResolution(WebcamResolution webcamResolution) {
+    public synchronized void setWebcamResolution(WebcamResolution webcamResolution) {
         this.webcamResolution = webcamResolution;
         flush();
     }
@@ -483,7 +517,7 @@ public class Config {
         return mirrorCapture;
     }
 
-    public void setMirrorCapture(boolean mirrorCapture) {
+    public synchronized void setMirrorCapture(boolean mirrorCapture) {
         this.mirrorCapture = mirrorCapture;
         flush();
     }
@@ -496,7 +530,7 @@ public class Config {
         return webcamDevice;
     }
 
-    public void setWebcamDevice(String webcamDevice) {
+    public synchronized void setWebcamDevice(String webcamDevice) {
         this.webcamDevice = webcamDevice;
         flush();
     }
@@ -505,7 +539,7 @@ public class Config {
         return webcamDeviceId;
     }
 
-    public void setWebcamDeviceId(String webcamDeviceId) {
+    public synchronized void setWebcamDeviceId(String webcamDeviceId) {
         this.webcamDeviceId = webcamDeviceId;
         flush();
     }
@@ -514,7 +548,7 @@ public class Config {
         return serverType;
     }
 
-    public void setServerType(ServerType serverType) {
+    public synchronized void setServerType(ServerType serverType) {
         this.serverType = serverType;
         flush();
     }
@@ -551,7 +585,7 @@ public class Config {
         return publicElectrumServer;
     }
 
-    public void setPublicElectrumServer(Server publicElectrumServer) {
+    public synchronized void setPublicElectrumServer(Server publicElectrumServer) {
         this.publicElectrumServer = publicElectrumServer;
         flush();
     }
@@ -567,7 +601,7 @@ public class Config {
         return coreServer;
     }
 
-    public void setCoreServer(Server coreServer) {
+    public synchronized void setCoreServer(Server coreServer) {
         this.coreServer = coreServer;
         flush();
     }
@@ -576,7 +610,7 @@ public class Config {
         return recentCoreServers == null ? new ArrayList<>() : recentCoreServers;
     }
 
-    public boolean addRecentCoreServer(Server coreServer) {
+    public synchronized boolean addRecentCoreServer(Server coreServer) {
         if(recentCoreServers == null) {
             recentCoreServers = new ArrayList<>();
         }
@@ -592,7 +626,7 @@ public class Config {
         return false;
     }
 
-    public void removeRecentCoreServer(Server server) {
+    public synchronized void removeRecentCoreServer(Server server) {
         int index = getRecentCoreServers().indexOf(server);
         if(index >= 0) {
             recentCoreServers.remove(index);
@@ -600,7 +634,7 @@ public class Config {
         }
     }
 
-    public void setCoreServerAlias(Server server) {
+    public synchronized void setCoreServerAlias(Server server) {
         int index = getRecentCoreServers().indexOf(server);
         if(index >= 0) {
             recentCoreServers.set(index, server);
@@ -612,7 +646,7 @@ public class Config {
         return coreAuthType;
     }
 
-    public void setCoreAuthType(CoreAuthType coreAuthType) {
+    public synchronized void setCoreAuthType(CoreAuthType coreAuthType) {
         this.coreAuthType = coreAuthType;
         flush();
     }
@@ -621,7 +655,7 @@ public class Config {
         return coreDataDir;
     }
 
-    public void setCoreDataDir(File coreDataDir) {
+    public synchronized void setCoreDataDir(File coreDataDir) {
         this.coreDataDir = coreDataDir;
         flush();
     }
@@ -630,7 +664,7 @@ public class Config {
         return coreAuth;
     }
 
-    public void setCoreAuth(String coreAuth) {
+    public synchronized void setCoreAuth(String coreAuth) {
         this.coreAuth = coreAuth;
         flush();
     }
@@ -639,7 +673,7 @@ public class Config {
         return useLegacyCoreWallet;
     }
 
-    public void setUseLegacyCoreWallet(boolean useLegacyCoreWallet) {
+    public synchronized void setUseLegacyCoreWallet(boolean useLegacyCoreWallet) {
         this.useLegacyCoreWallet = useLegacyCoreWallet;
         flush();
     }
@@ -648,7 +682,7 @@ public class Config {
         return legacyServer;
     }
 
-    public void setLegacyServer(boolean legacyServer) {
+    public synchronized void setLegacyServer(boolean legacyServer) {
         this.legacyServer = legacyServer;
         flush();
     }
@@ -657,7 +691,7 @@ public class Config {
         return electrumServer;
     }
 
-    public void setElectrumServer(Server electrumServer) {
+    public synchronized void setElectrumServer(Server electrumServer) {
         this.electrumServer = electrumServer;
         flush();
     }
@@ -676,7 +710,7 @@ public class Config {
         return false;
     }
 
-    public boolean addRecentElectrumServer(Server electrumServer) {
+    public synchronized boolean addRecentElectrumServer(Server electrumServer) {
         if(recentElectrumServers == null) {
             recentElectrumServers = new ArrayList<>();
         }
@@ -693,7 +727,7 @@ public class Config {
         return false;
     }
 
-    public void removeRecentElectrumServer(Server server) {
+    public synchronized void removeRecentElectrumServer(Server server) {
         int index = getRecentElectrumServers().indexOf(server);
         if(index >= 0) {
             recentElectrumServers.remove(index);
@@ -701,7 +735,7 @@ public class Config {
         }
     }
 
-    public void setElectrumServerAlias(Server server) {
+    public synchronized void setElectrumServerAlias(Server server) {
         int index = getRecentElectrumServers().indexOf(server);
         if(index >= 0) {
             recentElectrumServers.set(index, server);
@@ -713,7 +747,7 @@ public class Config {
         return electrumServerCert;
     }
 
-    public void setElectrumServerCert(File electrumServerCert) {
+    public synchronized void setElectrumServerCert(File electrumServerCert) {
         this.electrumServerCert = electrumServerCert;
         flush();
     }
@@ -722,7 +756,7 @@ public class Config {
         return useProxy;
     }
 
-    public void setUseProxy(boolean useProxy) {
+    public synchronized void setUseProxy(boolean useProxy) {
         this.useProxy = useProxy;
         flush();
     }
@@ -731,7 +765,7 @@ public class Config {
         return proxyServer;
     }
 
-    public void setProxyServer(String proxyServer) {
+    public synchronized void setProxyServer(String proxyServer) {
         this.proxyServer = proxyServer;
         flush();
     }
@@ -740,7 +774,7 @@ public class Config {
         return autoSwitchProxy;
     }
 
-    public void setAutoSwitchProxy(boolean autoSwitchProxy) {
+    public synchronized void setAutoSwitchProxy(boolean autoSwitchProxy) {
         this.autoSwitchProxy = autoSwitchProxy;
         flush();
     }
@@ -749,15 +783,32 @@ public class Config {
         return maxServerTimeout;
     }
 
-    public int getMaxPageSize() {
+    public Integer getMaxPageSize() {
         return maxPageSize;
     }
 
+    public int getMaxCorePageSize() {
+        //An edited config may contain a page size that cannot be used to partition requests
+        return maxCorePageSize > 0 ? maxCorePageSize : DEFAULT_CORE_PAGE_SIZE;
+    }
+
+    public BatchSettings getServerBatchSettings(String server) {
+        return serverBatchSettings == null ? null : serverBatchSettings.get(server);
+    }
+
+    public synchronized void setServerBatchSettings(String server, BatchSettings batchSettings) {
+        if(serverBatchSettings == null) {
+            serverBatchSettings = new LinkedHashMap<>();
+        }
+        serverBatchSettings.put(server, batchSettings);
+        flush();
+    }
+
     public boolean isUsePayNym() {
         return usePayNym;
     }
 
-    public void setUsePayNym(boolean usePayNym) {
+    public synchronized void setUsePayNym(boolean usePayNym) {
         this.usePayNym = usePayNym;
         flush();
     }
@@ -766,7 +817,7 @@ public class Config {
         return mempoolFullRbf;
     }
 
-    public void setMempoolFullRbf(boolean mempoolFullRbf) {
+    public synchronized void setMempoolFullRbf(boolean mempoolFullRbf) {
         this.mempoolFullRbf = mempoolFullRbf;
         flush();
     }
@@ -775,7 +826,7 @@ public class Config {
         return minRelayFeeRate;
     }
 
-    public void setMinRelayFeeRate(double minRelayFeeRate) {
+    public synchronized void setMinRelayFeeRate(double minRelayFeeRate) {
         this.minRelayFeeRate = minRelayFeeRate;
     }
 
@@ -783,7 +834,7 @@ public class Config {
         return appWidth;
     }
 
-    public void setAppWidth(Double appWidth) {
+    public synchronized void setAppWidth(Double appWidth) {
         this.appWidth = appWidth;
         flush();
     }
@@ -792,25 +843,58 @@ public class Config {
         return appHeight;
     }
 
-    public void setAppHeight(Double appHeight) {
+    public synchronized void setAppHeight(Double appHeight) {
         this.appHeight = appHeight;
         flush();
     }
 
-    private synchronized void flush() {
-        Gson gson = getGson();
+    private void flush() {
+        if(flushScheduled.compareAndSet(false, true)) {
+            getFlushExecutor().schedule(this::write, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes any pending changes synchronously, for use on shutdown
+     */
+    public void flushNow() {
+        write();
+    }
+
+    private void write() {
+        if(!flushScheduled.getAndSet(false)) {
+            return;
+        }
+
+        JsonElement snapshot;
         try {
-            File configFile = getConfigFile();
-            if(!configFile.exists()) {
-                Storage.createOwnerOnlyFile(configFile);
+            //Setters hold the same lock, so the state is not modified while it is captured
+            synchronized(this) {
+                snapshot = getGson().toJsonTree(this);
             }
+        } catch(RuntimeException e) {
+            log.error("Error serializing config", e);
+            return;
+        }
 
-            Writer writer = new FileWriter(configFile);
-            gson.toJson(this, writer);
-            writer.flush();
-            writer.close();
-        } catch (IOException e) {
-            //Ignore
+        synchronized(WRITE_LOCK) {
+            File configFile = getConfigFile();
+            File tempFile = new File(configFile.getParentFile(), TEMP_CONFIG_FILENAME);
+            try {
+                if(tempFile.exists() && !tempFile.delete()) {
+                    throw new IOException("Could not delete " + tempFile.getAbsolutePath());
+                }
+                Storage.createOwnerOnlyFile(tempFile);
+
+                try(Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8))) {
+                    getGson().toJson(snapshot, writer);
+                }
+
+                //Replace the config file in a single step so it is never left partially written
+                Files.move(tempFile.toPath(), configFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch(IOException | RuntimeException e) {
+                log.error("Error writing " + configFile.getAbsolutePath(), e);
+            }
         }
     }
 
@@ -44,6 +44,8 @@ public class Storage {
     public static final String WALLETS_DIR = "wallets";
     public static final String WALLETS_BACKUP_DIR = "backup";
     public static final String CERTS_DIR = "certs";
+    public static final String CORMORANT_DIR = "cormorant";
+    public static final String CACHE_DIR = "cache";
     public static final List<String> RESERVED_WALLET_NAMES = List.of("temp");
 
     private Persistence persistence;
@@ -557,6 +559,24 @@ public class Storage {
         return certsDir;
     }
 
+    public static File getCormorantDir() {
+        File cormorantDir = new File(getSparrowDir(), CORMORANT_DIR);
+        if(!cormorantDir.exists()) {
+            createOwnerOnlyDirectory(cormorantDir);
+        }
+
+        return cormorantDir;
+    }
+
+    public static File getCacheDir() {
+        File cacheDir = new File(getSparrowDir(), CACHE_DIR);
+        if(!cacheDir.exists()) {
+            createOwnerOnlyDirectory(cacheDir);
+        }
+
+        return cacheDir;
+    }
+
     public static File getSparrowDir() {
         File sparrowDir;
         Network network = Network.get();
@@ -1,6 +1,7 @@
 package com.sparrowwallet.sparrow.io;
 
 import com.csvreader.CsvReader;
+import com.google.common.io.CountingInputStream;
 import com.google.gson.*;
 import com.sparrowwallet.drongo.KeyDerivation;
 import com.sparrowwallet.drongo.KeyPurpose;
@@ -15,6 +16,8 @@ import com.sparrowwallet.sparrow.event.WalletEntryLabelsChangedEvent;
 import com.sparrowwallet.sparrow.event.WalletUtxoStatusChangedEvent;
 import com.sparrowwallet.sparrow.net.ExchangeSource;
 import com.sparrowwallet.sparrow.wallet.*;
+import javafx.concurrent.Service;
+import javafx.concurrent.Task;
 import org.apache.commons.lang3.time.DateUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,6 +30,7 @@ import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.function.LongConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -35,6 +39,7 @@ import java.util.stream.Stream;
 public class WalletLabels implements WalletImport, WalletExport {
     private static final Logger log = LoggerFactory.getLogger(WalletLabels.class);
     private static final long ONE_DAY = 24*60*60*1000L;
+    private static final int PROGRESS_LINES = 1000;
 
     private final List<WalletForm> walletForms;
 
@@ -149,188 +154,131 @@ public class WalletLabels implements WalletImport, WalletExport {
 
     @Override
     public Wallet importWallet(InputStream inputStream, String password) throws ImportException {
+        return readLabels(inputStream).apply();
+    }
+
+    ImportedLabels readLabels(InputStream inputStream) throws ImportException {
+        return readLabels(inputStream, getLabelTargets(), null);
+    }
+
+    /**
+     * Indexes the entries of each valid wallet by the references labels may refer to. Must be called on the FX thread.
+     */
+    private List<LabelTargets> getLabelTargets() {
         if(walletForms.isEmpty()) {
             throw new IllegalStateException("No wallets to import labels for");
         }
 
+        List<LabelTargets> walletTargets = new ArrayList<>();
+        for(WalletForm walletForm : walletForms) {
+            if(walletForm.getWallet().isValid()) {
+                walletTargets.add(new LabelTargets(walletForm));
+            }
+        }
+
+        return walletTargets;
+    }
+
+    /**
+     * Reads labels one line at a time, keeping only those that match an entry in one of the indexed wallets. Entries are not changed, so this may be called on a background thread.
+     */
+    private ImportedLabels readLabels(InputStream inputStream, List<LabelTargets> walletTargets, LongConsumer bytesRead) throws ImportException {
         Gson gson = new Gson();
-        List<Label> labels = new ArrayList<>();
+        Map<String, Origin> origins = new HashMap<>();
+        List<MatchedLabel> matchedLabels = new ArrayList<>();
         try {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            CountingInputStream countingInputStream = new CountingInputStream(inputStream);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(countingInputStream, StandardCharsets.UTF_8));
             String line;
+            int lines = 0;
             while((line = reader.readLine()) != null) {
-                Label label;
-                try {
-                    label = gson.fromJson(line, Label.class);
-                } catch(Exception e) {
-                    //Try parse Electrum history CSV, or any CSV with txid,label entries
-                    try {
-                        CsvReader csvReader = new CsvReader(new StringReader(line));
-                        if(csvReader.readRecord() && csvReader.getColumnCount() > 1 && csvReader.get(0).length() == 64 && Utils.isHex(csvReader.get(0))) {
-                            label = new Label(Type.tx, csvReader.get(0), csvReader.get(1), null, null);
-                        } else {
-                            continue;
-                        }
-                    } catch(Exception ex) {
-                        continue;
-                    }
+                if(bytesRead != null && ++lines % PROGRESS_LINES == 0) {
+                    bytesRead.accept(countingInputStream.getCount());
                 }
 
-                if(label == null || label.type == null || label.ref == null) {
+                Label label = parseLabel(gson, line);
+                if(label == null) {
                     continue;
                 }
 
-                if(label.type == Type.output) {
-                    if((label.label == null || label.label.isEmpty()) && label.spendable == null) {
-                        continue;
+                Origin labelOrigin = label.origin == null ? null : origins.computeIfAbsent(label.origin, Origin::fromString);
+                for(LabelTargets targets : walletTargets) {
+                    if((labelOrigin == null || labelOrigin.equals(targets.origin)) && targets.contains(label)) {
+                        matchedLabels.add(new MatchedLabel(targets.walletForm, label));
                     }
-                } else if(label.label == null || label.label.isEmpty()) {
-                    continue;
                 }
+            }
 
-                labels.add(label);
+            if(bytesRead != null) {
+                bytesRead.accept(countingInputStream.getCount());
             }
         } catch(Exception e) {
             throw new ImportException("Error importing labels file", e);
         }
 
-        Map<Wallet, List<Keystore>> changedWalletKeystores = new LinkedHashMap<>();
-        Map<Wallet, List<Entry>> changedWalletEntries = new LinkedHashMap<>();
-        Map<Wallet, List<BlockTransactionHashIndex>> changedWalletUtxoStatuses = new LinkedHashMap<>();
-
-        for(WalletForm walletForm : walletForms) {
-            Wallet wallet = walletForm.getWallet();
-            if(!wallet.isValid()) {
-                continue;
-            }
-
-            OutputDescriptor outputDescriptor = OutputDescriptor.getOutputDescriptor(wallet);
-            Origin origin = Origin.fromOutputDescriptor(outputDescriptor);
-
-            List<Entry> transactionEntries = walletForm.getWalletTransactionsEntry().getChildren();
-            List<Entry> addressEntries = new ArrayList<>();
-            addressEntries.addAll(walletForm.getNodeEntry(KeyPurpose.RECEIVE).getChildren());
-            addressEntries.addAll(walletForm.getNodeEntry(KeyPurpose.CHANGE).getChildren());
-            List<Entry> utxoEntries = walletForm.getWalletUtxosEntry().getChildren();
-
-            for(Label label : labels) {
-                if(label.origin != null && !Origin.fromString(label.origin).equals(origin)) {
-                    continue;
-                }
-
-                if(label.type == Type.xpub) {
-                    for(Keystore keystore : wallet.getKeystores()) {
-                        if(keystore.getExtendedPublicKey().toString().equals(label.ref)) {
-                            keystore.setLabel(label.label);
-                            List<Keystore> changedKeystores = changedWalletKeystores.computeIfAbsent(wallet, w -> new ArrayList<>());
-                            changedKeystores.add(keystore);
-                        }
-                    }
-                }
-
-                if(label.type == Type.tx) {
-                    for(Entry entry : transactionEntries) {
-                        if(entry instanceof TransactionEntry transactionEntry) {
-                            BlockTransaction blkTx = transactionEntry.getBlockTransaction();
-                            if(blkTx.getHashAsString().equals(label.ref)) {
-                                transactionEntry.getBlockTransaction().setLabel(label.label);
-                                transactionEntry.labelProperty().set(label.label);
-                                addChangedEntry(changedWalletEntries, entry);
-                            }
-                        }
-                    }
-                }
-
-                if(label.type == Type.addr) {
-                    for(Entry addressEntry : addressEntries) {
-                        if(addressEntry instanceof NodeEntry nodeEntry) {
-                            WalletNode addressNode = nodeEntry.getNode();
-                            if(addressNode.getAddress().toString().equals(label.ref)) {
-                                nodeEntry.getNode().setLabel(label.label);
-                                nodeEntry.labelProperty().set(label.label);
-                                addChangedEntry(changedWalletEntries, addressEntry);
-                            }
-                        }
-                    }
-                }
+        return new ImportedLabels(walletForms.get(0), matchedLabels);
+    }
 
-                if(label.type == Type.output || label.type == Type.input) {
-                    for(Entry entry : transactionEntries) {
-                        for(Entry hashIndexEntry : entry.getChildren()) {
-                            if(hashIndexEntry instanceof TransactionHashIndexEntry txioEntry) {
-                                BlockTransactionHashIndex reference = txioEntry.getHashIndex();
-                                if((label.type == Type.output && txioEntry.getType() == HashIndexEntry.Type.OUTPUT && reference.toString().equals(label.ref))
-                                        || (label.type == Type.input && txioEntry.getType() == HashIndexEntry.Type.INPUT && reference.toString().equals(label.ref))) {
-                                    if(label.label != null && !label.label.isEmpty()) {
-                                        reference.setLabel(label.label);
-                                        txioEntry.labelProperty().set(label.label);
-                                        addChangedEntry(changedWalletEntries, txioEntry);
-                                    }
-
-                                    if(label.type == Type.output && !reference.isSpent() && label.spendable != null) {
-                                        if(!label.spendable && reference.getStatus() != Status.FROZEN) {
-                                            reference.setStatus(Status.FROZEN);
-                                            addChangedUtxo(changedWalletUtxoStatuses, txioEntry);
-                                        } else if(label.spendable && reference.getStatus() == Status.FROZEN) {
-                                            reference.setStatus(null);
-                                            addChangedUtxo(changedWalletUtxoStatuses, txioEntry);
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
-                    for(Entry addressEntry : addressEntries) {
-                        for(Entry entry : addressEntry.getChildren()) {
-                            updateHashIndexEntryLabel(label, entry);
-                            for(Entry spentEntry : entry.getChildren()) {
-                                updateHashIndexEntryLabel(label, spentEntry);
-                            }
-                        }
-                    }
-                    for(Entry entry : utxoEntries) {
-                        updateHashIndexEntryLabel(label, entry);
-                    }
+    private static Label parseLabel(Gson gson, String line) {
+        Label label;
+        try {
+            label = gson.fromJson(line, Label.class);
+        } catch(Exception e) {
+            //Try parse Electrum history CSV, or any CSV with txid,label entries
+            try {
+                CsvReader csvReader = new CsvReader(new StringReader(line));
+                if(csvReader.readRecord() && csvReader.getColumnCount() > 1 && csvReader.get(0).length() == 64 && Utils.isHex(csvReader.get(0))) {
+                    label = new Label(Type.tx, csvReader.get(0), csvReader.get(1), null, null);
+                } else {
+                    return null;
                 }
+            } catch(Exception ex) {
+                return null;
             }
         }
 
-        for(Map.Entry<Wallet, List<Keystore>> walletKeystores : changedWalletKeystores.entrySet()) {
-            Wallet wallet = walletKeystores.getKey();
-            Storage storage = AppServices.get().getOpenWallets().get(wallet);
-            EventManager.get().post(new KeystoreLabelsChangedEvent(wallet, wallet, storage.getWalletId(wallet), walletKeystores.getValue()));
-        }
-
-        for(Map.Entry<Wallet, List<Entry>> walletEntries : changedWalletEntries.entrySet()) {
-            EventManager.get().post(new WalletEntryLabelsChangedEvent(walletEntries.getKey(), walletEntries.getValue(), false));
+        if(label == null || label.type == null || label.ref == null) {
+            return null;
         }
 
-        for(Map.Entry<Wallet, List<BlockTransactionHashIndex>> walletUtxos : changedWalletUtxoStatuses.entrySet()) {
-            EventManager.get().post(new WalletUtxoStatusChangedEvent(walletUtxos.getKey(), walletUtxos.getValue()));
+        if(label.type == Type.output) {
+            if((label.label == null || label.label.isEmpty()) && label.spendable == null) {
+                return null;
+            }
+        } else if(label.label == null || label.label.isEmpty()) {
+            return null;
         }
 
-        return walletForms.get(0).getWallet();
+        return label;
     }
 
-    private static void updateHashIndexEntryLabel(Label label, Entry entry) {
-        if(entry instanceof HashIndexEntry hashIndexEntry) {
-            BlockTransactionHashIndex reference = hashIndexEntry.getHashIndex();
-            if((label.type == Type.output && hashIndexEntry.getType() == HashIndexEntry.Type.OUTPUT && reference.toString().equals(label.ref))
-                    || (label.type == Type.input && hashIndexEntry.getType() == HashIndexEntry.Type.INPUT && reference.toString().equals(label.ref))) {
-                if(label.label != null && !label.label.isEmpty()) {
-                    hashIndexEntry.labelProperty().set(label.label);
-                }
+    private static void applyTransactionHashIndexLabel(Label label, TransactionHashIndexEntry txioEntry, Map<Wallet, Set<Entry>> changedWalletEntries,
+                                                       Map<Wallet, Set<BlockTransactionHashIndex>> changedWalletUtxoStatuses) {
+        BlockTransactionHashIndex reference = txioEntry.getHashIndex();
+        if(label.label != null && !label.label.isEmpty()) {
+            reference.setLabel(label.label);
+            txioEntry.labelProperty().set(label.label);
+            addChangedEntry(changedWalletEntries, txioEntry);
+        }
+
+        if(label.type == Type.output && !reference.isSpent() && label.spendable != null) {
+            if(!label.spendable && reference.getStatus() != Status.FROZEN) {
+                reference.setStatus(Status.FROZEN);
+                addChangedUtxo(changedWalletUtxoStatuses, txioEntry);
+            } else if(label.spendable && reference.getStatus() == Status.FROZEN) {
+                reference.setStatus(null);
+                addChangedUtxo(changedWalletUtxoStatuses, txioEntry);
             }
         }
     }
 
-    private static void addChangedEntry(Map<Wallet, List<Entry>> changedEntries, Entry entry) {
-        List<Entry> entries = changedEntries.computeIfAbsent(entry.getWallet(), wallet -> new ArrayList<>());
+    private static void addChangedEntry(Map<Wallet, Set<Entry>> changedEntries, Entry entry) {
+        Set<Entry> entries = changedEntries.computeIfAbsent(entry.getWallet(), wallet -> new LinkedHashSet<>());
         entries.add(entry);
     }
 
-    private static void addChangedUtxo(Map<Wallet, List<BlockTransactionHashIndex>> changedUtxos, TransactionHashIndexEntry utxoEntry) {
-        List<BlockTransactionHashIndex> utxos = changedUtxos.computeIfAbsent(utxoEntry.getWallet(), w -> new ArrayList<>());
+    private static void addChangedUtxo(Map<Wallet, Set<BlockTransactionHashIndex>> changedUtxos, TransactionHashIndexEntry utxoEntry) {
+        Set<BlockTransactionHashIndex> utxos = changedUtxos.computeIfAbsent(utxoEntry.getWallet(), w -> new LinkedHashSet<>());
         utxos.add(utxoEntry.getHashIndex());
     }
 
@@ -435,6 +383,153 @@ public class WalletLabels implements WalletImport, WalletExport {
         tx, addr, pubkey, input, output, xpub
     }
 
+    /**
+     * The keystores and entries of a wallet that labels may be applied to, indexed by the label reference that identifies them
+     */
+    private static class LabelTargets {
+        private final WalletForm walletForm;
+        private final Wallet wallet;
+        private final Origin origin;
+        private final Map<String, List<Keystore>> keystores = new HashMap<>();
+        private final Map<String, TransactionEntry> transactions = new HashMap<>();
+        private final Map<String, NodeEntry> addresses = new HashMap<>();
+        private final Map<String, List<HashIndexEntry>> outputs = new HashMap<>();
+        private final Map<String, List<HashIndexEntry>> inputs = new HashMap<>();
+
+        public LabelTargets(WalletForm walletForm) {
+            this.walletForm = walletForm;
+            this.wallet = walletForm.getWallet();
+            this.origin = Origin.fromOutputDescriptor(OutputDescriptor.getOutputDescriptor(wallet));
+
+            for(Keystore keystore : wallet.getKeystores()) {
+                keystores.computeIfAbsent(keystore.getExtendedPublicKey().toString(), k -> new ArrayList<>()).add(keystore);
+            }
+
+            for(Entry entry : walletForm.getWalletTransactionsEntry().getChildren()) {
+                if(entry instanceof TransactionEntry transactionEntry) {
+                    transactions.put(transactionEntry.getBlockTransaction().getHashAsString(), transactionEntry);
+                }
+                for(Entry hashIndexEntry : entry.getChildren()) {
+                    addHashIndexEntry(hashIndexEntry);
+                }
+            }
+
+            List<Entry> addressEntries = new ArrayList<>();
+            addressEntries.addAll(walletForm.getNodeEntry(KeyPurpose.RECEIVE).getChildren());
+            addressEntries.addAll(walletForm.getNodeEntry(KeyPurpose.CHANGE).getChildren());
+            for(Entry addressEntry : addressEntries) {
+                if(addressEntry instanceof NodeEntry nodeEntry) {
+                    addresses.put(nodeEntry.getNode().getAddress().toString(), nodeEntry);
+                }
+                for(Entry entry : addressEntry.getChildren()) {
+                    addHashIndexEntry(entry);
+                    for(Entry spentEntry : entry.getChildren()) {
+                        addHashIndexEntry(spentEntry);
+                    }
+                }
+            }
+
+            for(Entry entry : walletForm.getWalletUtxosEntry().getChildren()) {
+                addHashIndexEntry(entry);
+            }
+        }
+
+        private void addHashIndexEntry(Entry entry) {
+            if(entry instanceof HashIndexEntry hashIndexEntry) {
+                Map<String, List<HashIndexEntry>> references = hashIndexEntry.getType() == HashIndexEntry.Type.OUTPUT ? outputs : inputs;
+                references.computeIfAbsent(hashIndexEntry.getHashIndex().toString(), k -> new ArrayList<>()).add(hashIndexEntry);
+            }
+        }
+
+        public boolean contains(Label label) {
+            return switch(label.type) {
+                case xpub -> keystores.containsKey(label.ref);
+                case tx -> transactions.containsKey(label.ref);
+                case addr -> addresses.containsKey(label.ref);
+                case output -> outputs.containsKey(label.ref);
+                case input -> inputs.containsKey(label.ref);
+                default -> false;
+            };
+        }
+    }
+
+    private record MatchedLabel(WalletForm walletForm, Label label) {}
+
+    /**
+     * Labels read from a file that match entries in the wallets being imported to, in the order they were read so that later labels for the same reference take precedence
+     */
+    public static class ImportedLabels {
+        private final WalletForm walletForm;
+        private final List<MatchedLabel> matchedLabels;
+
+        private ImportedLabels(WalletForm walletForm, List<MatchedLabel> matchedLabels) {
+            this.walletForm = walletForm;
+            this.matchedLabels = matchedLabels;
+        }
+
+        /**
+         * Sets the labels on the matching keystores and entries, posting a single event per wallet for each kind of change. Must be called on the FX thread.
+         * The wallets may have been refreshed while the labels were read, so their current entries are indexed again and labels are applied to those that still match.
+         *
+         * @return the first wallet labels were imported to
+         */
+        public Wallet apply() {
+            Map<WalletForm, LabelTargets> currentTargets = new HashMap<>();
+            Map<LabelTargets, List<Keystore>> changedWalletKeystores = new LinkedHashMap<>();
+            Map<Wallet, Set<Entry>> changedWalletEntries = new LinkedHashMap<>();
+            Map<Wallet, Set<BlockTransactionHashIndex>> changedWalletUtxoStatuses = new LinkedHashMap<>();
+
+            for(MatchedLabel matchedLabel : matchedLabels) {
+                LabelTargets targets = currentTargets.computeIfAbsent(matchedLabel.walletForm(), LabelTargets::new);
+                Label label = matchedLabel.label();
+                if(!targets.contains(label)) {
+                    continue;
+                }
+
+                if(label.type == Type.xpub) {
+                    for(Keystore keystore : targets.keystores.get(label.ref)) {
+                        keystore.setLabel(label.label);
+                        changedWalletKeystores.computeIfAbsent(targets, t -> new ArrayList<>()).add(keystore);
+                    }
+                } else if(label.type == Type.tx) {
+                    TransactionEntry transactionEntry = targets.transactions.get(label.ref);
+                    transactionEntry.getBlockTransaction().setLabel(label.label);
+                    transactionEntry.labelProperty().set(label.label);
+                    addChangedEntry(changedWalletEntries, transactionEntry);
+                } else if(label.type == Type.addr) {
+                    NodeEntry nodeEntry = targets.addresses.get(label.ref);
+                    nodeEntry.getNode().setLabel(label.label);
+                    nodeEntry.labelProperty().set(label.label);
+                    addChangedEntry(changedWalletEntries, nodeEntry);
+                } else if(label.type == Type.output || label.type == Type.input) {
+                    List<HashIndexEntry> hashIndexEntries = (label.type == Type.output ? targets.outputs : targets.inputs).get(label.ref);
+                    for(HashIndexEntry hashIndexEntry : hashIndexEntries) {
+                        if(hashIndexEntry instanceof TransactionHashIndexEntry txioEntry) {
+                            applyTransactionHashIndexLabel(label, txioEntry, changedWalletEntries, changedWalletUtxoStatuses);
+                        } else if(label.label != null && !label.label.isEmpty()) {
+                            hashIndexEntry.labelProperty().set(label.label);
+                        }
+                    }
+                }
+            }
+
+            for(Map.Entry<LabelTargets, List<Keystore>> walletKeystores : changedWalletKeystores.entrySet()) {
+                LabelTargets targets = walletKeystores.getKey();
+                EventManager.get().post(new KeystoreLabelsChangedEvent(targets.wallet, targets.wallet, targets.walletForm.getWalletId(), walletKeystores.getValue()));
+            }
+
+            for(Map.Entry<Wallet, Set<Entry>> walletEntries : changedWalletEntries.entrySet()) {
+                EventManager.get().post(new WalletEntryLabelsChangedEvent(walletEntries.getKey(), new ArrayList<>(walletEntries.getValue()), false));
+            }
+
+            for(Map.Entry<Wallet, Set<BlockTransactionHashIndex>> walletUtxos : changedWalletUtxoStatuses.entrySet()) {
+                EventManager.get().post(new WalletUtxoStatusChangedEvent(walletUtxos.getKey(), new ArrayList<>(walletUtxos.getValue())));
+            }
+
+            return walletForm.getWallet();
+        }
+    }
+
     private static class Label {
         public Label(Type type, String ref, String label, String origin, Boolean spendable) {
             this.type = type;
@@ -496,6 +591,36 @@ public class WalletLabels implements WalletImport, WalletExport {
         Map<Currency, BigDecimal> fmv;
     }
 
+    /**
+     * Streams and matches labels from a file on a background thread, reporting progress through the bytes read. The wallets are indexed when the service is started,
+     * and the returned labels should be applied on success.
+     */
+    public static class ImportLabelsService extends Service<ImportedLabels> {
+        private final WalletLabels walletLabels;
+        private final File labelsFile;
+
+        public ImportLabelsService(WalletLabels walletLabels, File labelsFile) {
+            this.walletLabels = walletLabels;
+            this.labelsFile = labelsFile;
+        }
+
+        @Override
+        protected Task<ImportedLabels> createTask() {
+            List<LabelTargets> walletTargets = walletLabels.getLabelTargets();
+            return new Task<>() {
+                protected ImportedLabels call() throws ImportException {
+                    long length = labelsFile.length();
+                    updateProgress(0, length);
+                    try(InputStream inputStream = new BufferedInputStream(new FileInputStream(labelsFile))) {
+                        return walletLabels.readLabels(inputStream, walletTargets, bytesRead -> updateProgress(bytesRead, length));
+                    } catch(IOException e) {
+                        throw new ImportException("Error reading labels file", e);
+                    }
+                }
+            };
+        }
+    }
+
     public static class GsonUTCDateAdapter implements JsonSerializer<Date>, JsonDeserializer<Date> {
         private final DateFormat dateFormat;
 
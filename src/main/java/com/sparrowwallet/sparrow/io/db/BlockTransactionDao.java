@@ -1,33 +1,55 @@
 package com.sparrowwallet.sparrow.io.db;
 
+import com.google.common.collect.Lists;
 import com.sparrowwallet.drongo.protocol.Sha256Hash;
 import com.sparrowwallet.drongo.wallet.BlockTransaction;
 import com.sparrowwallet.drongo.wallet.Wallet;
 import org.jdbi.v3.sqlobject.config.RegisterRowMapper;
 import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.customizer.BindList;
+import org.jdbi.v3.sqlobject.customizer.BindMethods;
 import org.jdbi.v3.sqlobject.statement.GetGeneratedKeys;
+import org.jdbi.v3.sqlobject.statement.SqlBatch;
 import org.jdbi.v3.sqlobject.statement.SqlQuery;
 import org.jdbi.v3.sqlobject.statement.SqlUpdate;
 
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
 public interface BlockTransactionDao {
+    int MAX_TXIDS_PER_QUERY = 1000;
+    int LAZY_LOAD_TRANSACTIONS_THRESHOLD = 1000;
+
     @SqlQuery("select id, txid, hash, height, date, fee, label, transaction, blockHash from blockTransaction where wallet = ? order by id")
     @RegisterRowMapper(BlockTransactionMapper.class)
     Map<Sha256Hash, BlockTransaction> getForWalletId(Long id);
 
+    @SqlQuery("select id, txid, hash, height, date, fee, label, blockHash from blockTransaction where wallet = ? order by id")
+    @RegisterRowMapper(LazyBlockTransactionMapper.class)
+    Map<Sha256Hash, BlockTransaction> getLazyForWalletId(Long id);
+
+    @SqlQuery("select count(*) from blockTransaction where wallet = ?")
+    int getCountForWalletId(Long id);
+
+    @SqlQuery("select transaction from blockTransaction where txid = ? limit 1")
+    byte[] getTransactionForTxId(byte[] id);
+
     @SqlQuery("select id, txid, hash, height, date, fee, label, transaction, blockHash from blockTransaction where txid = ?")
     @RegisterRowMapper(BlockTransactionMapper.class)
     Map<Sha256Hash, BlockTransaction> getForTxId(byte[] id);
 
-    @SqlUpdate("insert into blockTransaction (txid, hash, height, date, fee, label, transaction, blockHash, wallet) values (?, ?, ?, ?, ?, ?, ?, ?, ?)")
+    @SqlQuery("select id, txid from blockTransaction where txid in (<txids>)")
+    @RegisterRowMapper(BlockTransactionIdMapper.class)
+    Map<Sha256Hash, Long> getIdsForTxIds(@BindList("txids") List<byte[]> txids);
+
+    @SqlBatch("insert into blockTransaction (txid, hash, height, date, fee, label, transaction, blockHash, wallet) values (:txid, :hash, :height, :date, :fee, :label, :transaction, :blockHash, :wallet)")
     @GetGeneratedKeys("id")
-    long insertBlockTransaction(byte[] txid, byte[] hash, int height, Date date, Long fee, String label, byte[] transaction, byte[] blockHash, long wallet);
+    long[] insertBlockTransactions(@BindMethods List<BlockTransactionRow> blockTransactions);
+
+    @SqlBatch("update blockTransaction set txid = :txid, hash = :hash, height = :height, date = :date, fee = :fee, label = :label, transaction = :transaction, blockHash = :blockHash, wallet = :wallet where id = :id")
+    void updateBlockTransactions(@BindMethods List<BlockTransactionRow> blockTransactions);
 
-    @SqlUpdate("update blockTransaction set txid = ?, hash = ?, height = ?, date = ?, fee = ?, label = ?, transaction = ?, blockHash = ?, wallet = ? where id = ?")
-    void updateBlockTransaction(byte[] txid, byte[] hash, int height, Date date, Long fee, String label, byte[] transaction, byte[] blockHash, long wallet, long id);
+    @SqlBatch("update blockTransaction set txid = :txid, hash = :hash, height = :height, date = :date, fee = :fee, label = :label, blockHash = :blockHash, wallet = :wallet where id = :id")
+    void updateBlockTransactionsMetadata(@BindMethods List<BlockTransactionRow> blockTransactions);
 
     @SqlUpdate("update blockTransaction set label = :label where id = :id")
     void updateLabel(@Bind("id") long id, @Bind("label") String label);
@@ -35,32 +57,84 @@ public interface BlockTransactionDao {
     @SqlUpdate("delete from blockTransaction where wallet = ?")
     void clear(long wallet);
 
+    default Map<Sha256Hash, BlockTransaction> loadForWalletId(Long id) {
+        //Defer loading and parsing raw transactions for large wallets until they are accessed
+        if(getCountForWalletId(id) > LAZY_LOAD_TRANSACTIONS_THRESHOLD) {
+            return getLazyForWalletId(id);
+        }
+
+        return getForWalletId(id);
+    }
+
     default void addBlockTransactions(Wallet wallet) {
         Map<Sha256Hash, BlockTransaction> walletTransactions = new HashMap<>(wallet.getTransactions());
-        for(Map.Entry<Sha256Hash, BlockTransaction> blkTxEntry : walletTransactions.entrySet()) {
-            blkTxEntry.getValue().setId(null);
-            addOrUpdate(wallet, blkTxEntry.getKey(), blkTxEntry.getValue());
+        for(BlockTransaction blkTx : walletTransactions.values()) {
+            blkTx.setId(null);
         }
+        addOrUpdateAll(wallet, walletTransactions);
     }
 
-    default void addOrUpdate(Wallet wallet, Sha256Hash txid, BlockTransaction blkTx) {
-        Map<Sha256Hash, BlockTransaction> existing = getForTxId(txid.getBytes());
-
-        if(existing.isEmpty() && blkTx.getId() == null) {
-            long id = insertBlockTransaction(txid.getBytes(), blkTx.getHash().getBytes(), blkTx.getHeight(), blkTx.getDate(), blkTx.getFee(), truncate(blkTx.getLabel()),
-                    blkTx.getTransaction() == null ? null : blkTx.getTransaction().bitcoinSerialize(),
-                    blkTx.getBlockHash() == null ? null : blkTx.getBlockHash().getBytes(), wallet.getId());
-            blkTx.setId(id);
-        } else {
-            Long existingId = existing.get(txid) != null ? existing.get(txid).getId() : blkTx.getId();
-            updateBlockTransaction(txid.getBytes(), blkTx.getHash().getBytes(), blkTx.getHeight(), blkTx.getDate(), blkTx.getFee(), truncate(blkTx.getLabel()),
-                    blkTx.getTransaction() == null ? null : blkTx.getTransaction().bitcoinSerialize(),
-                    blkTx.getBlockHash() == null ? null : blkTx.getBlockHash().getBytes(), wallet.getId(), existingId);
-            blkTx.setId(existingId);
+    /**
+     * Inserts or updates the provided transactions using a set based existence check and batched statements, returning the number of rows written.
+     */
+    default int addOrUpdateAll(Wallet wallet, Map<Sha256Hash, BlockTransaction> blockTransactions) {
+        Map<Sha256Hash, Long> existingIds = new HashMap<>();
+        for(List<Sha256Hash> txids : Lists.partition(new ArrayList<>(blockTransactions.keySet()), MAX_TXIDS_PER_QUERY)) {
+            existingIds.putAll(getIdsForTxIds(txids.stream().map(Sha256Hash::getBytes).toList()));
+        }
+
+        List<BlockTransaction> insertTxs = new ArrayList<>();
+        List<BlockTransactionRow> insertRows = new ArrayList<>();
+        List<BlockTransactionRow> updateRows = new ArrayList<>();
+        List<BlockTransactionRow> metadataRows = new ArrayList<>();
+        for(Map.Entry<Sha256Hash, BlockTransaction> blkTxEntry : blockTransactions.entrySet()) {
+            Sha256Hash txid = blkTxEntry.getKey();
+            BlockTransaction blkTx = blkTxEntry.getValue();
+            Long existingId = existingIds.get(txid) != null ? existingIds.get(txid) : blkTx.getId();
+
+            //An existing row already holds the raw transaction, so lazy transactions are not loaded just to write it back
+            byte[] transaction = null;
+            if(existingId == null || !(blkTx instanceof LazyBlockTransaction lazyBlkTx) || lazyBlkTx.isLoaded()) {
+                transaction = blkTx.getTransaction() == null ? null : blkTx.getTransaction().bitcoinSerialize();
+            }
+
+            BlockTransactionRow row = new BlockTransactionRow(txid.getBytes(), blkTx.getHash().getBytes(), blkTx.getHeight(), blkTx.getDate(), blkTx.getFee(), truncate(blkTx.getLabel()),
+                    transaction, blkTx.getBlockHash() == null ? null : blkTx.getBlockHash().getBytes(), wallet.getId(), existingId);
+            if(existingId == null) {
+                insertTxs.add(blkTx);
+                insertRows.add(row);
+            } else {
+                //Never overwrite a stored raw transaction with null
+                if(transaction == null) {
+                    metadataRows.add(row);
+                } else {
+                    updateRows.add(row);
+                }
+                blkTx.setId(existingId);
+            }
         }
+
+        if(!insertRows.isEmpty()) {
+            long[] ids = insertBlockTransactions(insertRows);
+            for(int i = 0; i < ids.length; i++) {
+                insertTxs.get(i).setId(ids[i]);
+            }
+        }
+
+        if(!updateRows.isEmpty()) {
+            updateBlockTransactions(updateRows);
+        }
+
+        if(!metadataRows.isEmpty()) {
+            updateBlockTransactionsMetadata(metadataRows);
+        }
+
+        return blockTransactions.size();
     }
 
     default String truncate(String label) {
         return (label != null && label.length() > BlockTransaction.MAX_LABEL_LENGTH ? label.substring(0, BlockTransaction.MAX_LABEL_LENGTH) : label);
     }
+
+    record BlockTransactionRow(byte[] txid, byte[] hash, int height, Date date, Long fee, String label, byte[] transaction, byte[] blockHash, long wallet, Long id) {}
 }
@@ -1,6 +1,5 @@
 package com.sparrowwallet.sparrow.io.db;
 
-import com.google.common.eventbus.Subscribe;
 import com.sparrowwallet.drongo.IOUtils;
 import com.sparrowwallet.drongo.Utils;
 import com.sparrowwallet.drongo.crypto.Argon2KeyDeriver;
@@ -10,6 +9,7 @@ import com.sparrowwallet.drongo.crypto.InvalidPasswordException;
 import com.sparrowwallet.drongo.protocol.Sha256Hash;
 import com.sparrowwallet.drongo.wallet.*;
 import com.sparrowwallet.sparrow.EventManager;
+import com.sparrowwallet.sparrow.RoutedEventBus;
 import com.sparrowwallet.sparrow.event.*;
 import com.sparrowwallet.sparrow.io.*;
 import com.sparrowwallet.sparrow.wallet.*;
@@ -62,12 +62,9 @@ public class DbPersistence implements Persistence {
 
     private Wallet masterWallet;
     private final Map<Wallet, DirtyPersistables> dirtyPersistablesMap = new HashMap<>();
+    private final Set<String> subscribedWalletIds = new HashSet<>();
     private ExecutorService updateExecutor;
 
-    public DbPersistence() {
-        EventManager.get().register(this);
-    }
-
     @Override
     public WalletAndKey loadWallet(Storage storage) throws IOException, StorageException {
         return loadWallet(storage, null, null);
@@ -98,7 +95,16 @@ public class DbPersistence implements Persistence {
         Map<WalletAndKey, Storage> childWallets = loadChildWallets(storage, masterWallet, encryptionKey);
         masterWallet.setChildWallets(childWallets.keySet().stream().map(WalletAndKey::getWallet).collect(Collectors.toList()));
 
+        setTransactionLoader(storage, masterWallet);
+        for(Wallet childWallet : masterWallet.getChildWallets()) {
+            setTransactionLoader(storage, childWallet);
+        }
+
         createUpdateExecutor(masterWallet);
+        subscribe(storage, masterWallet);
+        for(Wallet childWallet : masterWallet.getChildWallets()) {
+            subscribe(storage, childWallet);
+        }
 
         return new WalletAndKey(masterWallet, encryptionKey, keyDeriver, childWallets);
     }
@@ -182,6 +188,13 @@ public class DbPersistence implements Persistence {
         });
     }
 
+    private void executeUpdate(Runnable runnable) {
+        ExecutorService executor = updateExecutor;
+        if(executor != null && !executor.isShutdown()) {
+            executor.execute(runnable);
+        }
+    }
+
     private synchronized void createUpdateExecutor(Wallet masterWallet) {
         if(updateExecutor == null) {
             BasicThreadFactory factory = BasicThreadFactory.builder().namingPattern(masterWallet.getFullName() + "-dbupdater").daemon(true).priority(Thread.NORM_PRIORITY).build();
@@ -189,6 +202,37 @@ public class DbPersistence implements Persistence {
         }
     }
 
+    /**
+     * Subscribes to the events of a wallet persisted in this file on the wallet's channel, so that only its own events are queued on the update executor.
+     * Dirty persistables are only accessed on the update executor, so events are handled there rather than on the posting thread.
+     */
+    private synchronized void subscribe(Storage storage, Wallet wallet) {
+        String walletId = getWalletId(storage, wallet);
+        if(!subscribedWalletIds.add(walletId)) {
+            return;
+        }
+
+        //Events carrying only the wallet instance are routed by it, including those posted before the wallet form is registered
+        RoutedEventBus eventBus = EventManager.get();
+        eventBus.bindWallet(wallet, walletId);
+        eventBus.subscribe(walletId, this, WalletDeletedEvent.class, this::walletDeleted, this::executeUpdate);
+        eventBus.subscribe(walletId, this, WalletHistoryClearedEvent.class, this::walletHistoryCleared, this::executeUpdate);
+        eventBus.subscribe(walletId, this, WalletHistoryChangedEvent.class, this::walletHistoryChanged, this::executeUpdate);
+        eventBus.subscribe(walletId, this, WalletLabelChangedEvent.class, this::walletLabelChanged, this::executeUpdate);
+        eventBus.subscribe(walletId, this, WalletBlockHeightChangedEvent.class, this::walletBlockHeightChanged, this::executeUpdate);
+        eventBus.subscribe(walletId, this, WalletGapLimitChangedEvent.class, this::walletGapLimitChanged, this::executeUpdate);
+        eventBus.subscribe(walletId, this, WalletEntryLabelsChangedEvent.class, this::walletEntryLabelsChanged, this::executeUpdate);
+        eventBus.subscribe(walletId, this, WalletUtxoStatusChangedEvent.class, this::walletUtxoStatusChanged, this::executeUpdate);
+        eventBus.subscribe(walletId, this, WalletConfigChangedEvent.class, this::walletConfigChanged, this::executeUpdate);
+        eventBus.subscribe(walletId, this, WalletTableChangedEvent.class, this::walletTableChanged, this::executeUpdate);
+        eventBus.subscribe(walletId, this, WalletMixConfigChangedEvent.class, this::walletMixConfigChanged, this::executeUpdate);
+        eventBus.subscribe(walletId, this, WalletUtxoMixesChangedEvent.class, this::walletUtxoMixesChanged, this::executeUpdate);
+        eventBus.subscribe(walletId, this, KeystoreLabelsChangedEvent.class, this::keystoreLabelsChanged, this::executeUpdate);
+        eventBus.subscribe(walletId, this, KeystoreEncryptionChangedEvent.class, this::keystoreEncryptionChanged, this::executeUpdate);
+        eventBus.subscribe(walletId, this, KeystoreDeviceRegistrationsChangedEvent.class, this::keystoreDeviceRegistrationsChanged, this::executeUpdate);
+        eventBus.subscribe(walletId, this, WalletWatchLastChangedEvent.class, this::walletWatchLastChanged, this::executeUpdate);
+    }
+
     private File renameToDbFile(File walletFile) throws IOException {
         if(!walletFile.getName().endsWith("." + getType().getExtension())) {
             File dbFile = new File(walletFile.getParentFile(), walletFile.getName() + "." + getType().getExtension());
@@ -222,7 +266,8 @@ public class DbPersistence implements Persistence {
             return;
         }
 
-        jdbi.useHandle(handle -> {
+        long start = System.currentTimeMillis();
+        jdbi.useTransaction(handle -> {
             WalletDao walletDao = handle.attach(WalletDao.class);
             try {
                 if(dirtyPersistables.deleteAccount && !wallet.isMasterWallet()) {
@@ -242,10 +287,15 @@ public class DbPersistence implements Persistence {
                 }
 
                 if(!dirtyPersistables.historyNodes.isEmpty()) {
+                    long historyStart = System.currentTimeMillis();
                     WalletNodeDao walletNodeDao = handle.attach(WalletNodeDao.class);
                     BlockTransactionDao blockTransactionDao = handle.attach(BlockTransactionDao.class);
-                    Set<Sha256Hash> referencedTxIds = new HashSet<>();
-                    for(WalletNode addressNode : dirtyPersistables.historyNodes) {
+                    Set<WalletNode> historyNodes = new LinkedHashSet<>(dirtyPersistables.historyNodes);
+
+                    Map<WalletNode, List<WalletNode>> newNodes = new LinkedHashMap<>();
+                    List<Long> addressDataIds = new ArrayList<>();
+                    List<byte[]> addressData = new ArrayList<>();
+                    for(WalletNode addressNode : historyNodes) {
                         if(addressNode.getId() == null) {
                             WalletNode purposeNode = wallet.getNode(addressNode.getKeyPurpose());
                             if(purposeNode.getId() == null) {
@@ -253,32 +303,47 @@ public class DbPersistence implements Persistence {
                                 purposeNode.setId(purposeNodeId);
                             }
 
-                            long nodeId = walletNodeDao.insertWalletNode(addressNode.getDerivationPath(), addressNode.getLabel(), wallet.getId(), purposeNode.getId(), addressNode.getAddressData());
-                            addressNode.setId(nodeId);
+                            newNodes.computeIfAbsent(purposeNode, k -> new ArrayList<>()).add(addressNode);
                         } else if(addressNode.getAddress() != null) {
-                            walletNodeDao.updateNodeAddressData(addressNode.getId(), addressNode.getAddressData());
+                            addressDataIds.add(addressNode.getId());
+                            addressData.add(addressNode.getAddressData());
                         }
+                    }
+                    for(Map.Entry<WalletNode, List<WalletNode>> purposeEntry : newNodes.entrySet()) {
+                        walletNodeDao.addWalletNodes(wallet, purposeEntry.getKey(), purposeEntry.getValue());
+                    }
+                    if(!addressDataIds.isEmpty()) {
+                        walletNodeDao.updateNodesAddressData(addressDataIds, addressData);
+                    }
 
+                    Map<Long, List<Long>> nodeTxoIds = new LinkedHashMap<>();
+                    Set<Sha256Hash> referencedTxIds = new HashSet<>();
+                    for(WalletNode addressNode : historyNodes) {
                         List<BlockTransactionHashIndex> txos = addressNode.getTransactionOutputs().stream().flatMap(txo -> txo.isSpent() ? Stream.of(txo, txo.getSpentBy()) : Stream.of(txo)).collect(Collectors.toList());
-                        List<Long> existingIds = txos.stream().map(Persistable::getId).filter(Objects::nonNull).collect(Collectors.toList());
+                        nodeTxoIds.put(addressNode.getId(), txos.stream().map(Persistable::getId).filter(Objects::nonNull).collect(Collectors.toList()));
                         referencedTxIds.addAll(txos.stream().map(BlockTransactionHash::getHash).collect(Collectors.toSet()));
-
-                        walletNodeDao.deleteNodeTxosNotInList(addressNode, existingIds.isEmpty() ? List.of(-1L) : existingIds);
-                        for(BlockTransactionHashIndex txo : addressNode.getTransactionOutputs()) {
-                            walletNodeDao.addOrUpdate(addressNode, txo);
-                        }
                     }
+
+                    int deletedTxos = walletNodeDao.deleteNodesTxosNotInList(nodeTxoIds);
+                    int txoRows = walletNodeDao.addOrUpdateTransactionOutputs(historyNodes);
+
+                    Map<Sha256Hash, BlockTransaction> referencedTransactions = new HashMap<>();
                     for(Sha256Hash txid : referencedTxIds) {
                         BlockTransaction blkTx = wallet.getTransactions().get(txid);
                         //May be null for a nested wallet if still updating
                         if(blkTx != null) {
-                            blockTransactionDao.addOrUpdate(wallet, txid, blkTx);
+                            referencedTransactions.put(txid, blkTx);
                         }
                     }
+                    int txRows = blockTransactionDao.addOrUpdateAll(wallet, referencedTransactions);
+
                     if(!dirtyPersistables.clearHistory) {
                         DetachedLabelDao detachedLabelDao = handle.attach(DetachedLabelDao.class);
                         detachedLabelDao.clearAndAddAll(wallet);
                     }
+
+                    log.debug("Persisted history for " + historyNodes.size() + " nodes (" + newNodes.values().stream().mapToInt(List::size).sum() + " new) of " + wallet.getFullName() +
+                            ": " + txoRows + " txos written, " + deletedTxos + " deleted, " + txRows + " transactions written in " + (System.currentTimeMillis() - historyStart) + "ms");
                 }
 
                 if(dirtyPersistables.label != null) {
@@ -386,22 +451,65 @@ public class DbPersistence implements Persistence {
                 walletDao.setSchema(DEFAULT_SCHEMA);
             }
         });
+        log.debug("Updated " + wallet.getFullName() + " in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private void setTransactionLoader(Storage storage, Wallet wallet) {
+        for(BlockTransaction blkTx : wallet.getTransactions().values()) {
+            if(blkTx instanceof LazyBlockTransaction lazyBlockTransaction) {
+                lazyBlockTransaction.setTransactionLoader(txid -> loadTransaction(storage, wallet, txid));
+            }
+        }
+    }
+
+    private byte[] loadTransaction(Storage storage, Wallet wallet, Sha256Hash txid) {
+        if(dataSource == null || dataSource.isClosed()) {
+            log.warn("Cannot load transaction " + txid + " for closed wallet " + wallet.getFullName());
+            return null;
+        }
+
+        try {
+            Jdbi jdbi = getJdbi(storage, getDatasourcePassword());
+            return jdbi.withHandle(handle -> {
+                WalletDao walletDao = handle.attach(WalletDao.class);
+                try {
+                    walletDao.setSchema(getSchema(wallet));
+                    return handle.attach(BlockTransactionDao.class).getTransactionForTxId(txid.getBytes());
+                } finally {
+                    walletDao.setSchema(DEFAULT_SCHEMA);
+                }
+            });
+        } catch(StorageException e) {
+            log.error("Error loading transaction " + txid + " for " + wallet.getFullName(), e);
+            return null;
+        }
     }
 
     private void cleanAndAddWallet(Storage storage, Wallet wallet, String password) throws StorageException {
         String schema = getSchema(wallet);
-        cleanAndMigrate(storage, schema, password);
 
-        Jdbi jdbi = getJdbi(storage, password);
-        jdbi.useHandle(handle -> {
-            WalletDao walletDao = handle.attach(WalletDao.class);
-            walletDao.addWallet(schema, wallet);
-        });
+        //Lazily loaded transactions must be read before the schema is cleaned
+        List<LazyBlockTransaction> lazyTransactions = wallet.getTransactions().values().stream()
+                .filter(blkTx -> blkTx instanceof LazyBlockTransaction).map(blkTx -> (LazyBlockTransaction)blkTx).collect(Collectors.toList());
+        lazyTransactions.forEach(LazyBlockTransaction::pin);
+
+        try {
+            cleanAndMigrate(storage, schema, password);
+
+            Jdbi jdbi = getJdbi(storage, password);
+            jdbi.useHandle(handle -> {
+                WalletDao walletDao = handle.attach(WalletDao.class);
+                walletDao.addWallet(schema, wallet);
+            });
+        } finally {
+            lazyTransactions.forEach(LazyBlockTransaction::unpin);
+        }
 
         if(wallet.isMasterWallet()) {
             masterWallet = wallet;
             createUpdateExecutor(masterWallet);
         }
+        subscribe(storage, wallet);
     }
 
     private void migrate(Storage storage, String schema, ECKey encryptionKey) throws StorageException {
@@ -663,7 +771,7 @@ public class DbPersistence implements Persistence {
 
     @Override
     public void close() {
-        EventManager.get().unregister(this);
+        EventManager.get().unsubscribe(this);
         if(updateExecutor != null) {
             updateExecutor.shutdown();
             try {
@@ -773,118 +881,100 @@ public class DbPersistence implements Persistence {
         return false;
     }
 
-    @Subscribe
-    public void walletDeleted(WalletDeletedEvent event) {
+    private void walletDeleted(WalletDeletedEvent event) {
         if(persistsFor(event.getWallet())) {
-            updateExecutor.execute(() -> dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).deleteAccount = true);
+            dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).deleteAccount = true;
         }
     }
 
-    @Subscribe
-    public void walletHistoryCleared(WalletHistoryClearedEvent event) {
+    private void walletHistoryCleared(WalletHistoryClearedEvent event) {
         if(persistsFor(event.getWallet())) {
-            updateExecutor.execute(() -> dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).clearHistory = true);
+            dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).clearHistory = true;
         }
     }
 
-    @Subscribe
-    public void walletHistoryChanged(WalletHistoryChangedEvent event) {
+    private void walletHistoryChanged(WalletHistoryChangedEvent event) {
         if(persistsFor(event.getWallet()) && !event.getHistoryChangedNodes().isEmpty()) {
-            updateExecutor.execute(() -> dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).historyNodes.addAll(event.getHistoryChangedNodes()));
+            dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).historyNodes.addAll(event.getHistoryChangedNodes());
         }
     }
 
-    @Subscribe
-    public void walletLabelChanged(WalletLabelChangedEvent event) {
+    private void walletLabelChanged(WalletLabelChangedEvent event) {
         if(persistsFor(event.getWallet())) {
-            updateExecutor.execute(() -> dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).label = event.getLabel());
+            dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).label = event.getLabel();
         }
     }
 
-    @Subscribe
-    public void walletBlockHeightChanged(WalletBlockHeightChangedEvent event) {
+    private void walletBlockHeightChanged(WalletBlockHeightChangedEvent event) {
         if(persistsFor(event.getWallet())) {
-            updateExecutor.execute(() -> dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).blockHeight = event.getBlockHeight());
+            dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).blockHeight = event.getBlockHeight();
         }
     }
 
-    @Subscribe
-    public void walletGapLimitChanged(WalletGapLimitChangedEvent event) {
+    private void walletGapLimitChanged(WalletGapLimitChangedEvent event) {
         if(persistsFor(event.getWallet())) {
-            updateExecutor.execute(() -> dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).gapLimit = event.getGapLimit());
+            dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).gapLimit = event.getGapLimit();
         }
     }
 
-    @Subscribe
-    public void walletEntryLabelsChanged(WalletEntryLabelsChangedEvent event) {
+    private void walletEntryLabelsChanged(WalletEntryLabelsChangedEvent event) {
         if(persistsFor(event.getWallet())) {
-            updateExecutor.execute(() -> dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).labelEntries.addAll(event.getEntries()));
+            dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).labelEntries.addAll(event.getEntries());
         }
     }
 
-    @Subscribe
-    public void walletUtxoStatusChanged(WalletUtxoStatusChangedEvent event) {
+    private void walletUtxoStatusChanged(WalletUtxoStatusChangedEvent event) {
         if(persistsFor(event.getWallet())) {
-            updateExecutor.execute(() -> dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).utxoStatuses.addAll(event.getUtxos()));
+            dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).utxoStatuses.addAll(event.getUtxos());
         }
     }
 
-    @Subscribe
-    public void walletConfigChanged(WalletConfigChangedEvent event) {
+    private void walletConfigChanged(WalletConfigChangedEvent event) {
         if(persistsFor(event.getWallet()) && event.getWallet().getWalletConfig() != null) {
-            updateExecutor.execute(() -> dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).walletConfig = true);
+            dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).walletConfig = true;
         }
     }
 
-    @Subscribe
-    public void walletTableChanged(WalletTableChangedEvent event) {
+    private void walletTableChanged(WalletTableChangedEvent event) {
         if(persistsFor(event.getWallet()) && event.getTableType() != null && event.getWallet().getWalletTable(event.getTableType()) != null) {
-            updateExecutor.execute(() -> dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).walletTable = event.getWalletTable());
+            dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).walletTable = event.getWalletTable();
         }
     }
 
-    @Subscribe
-    public void walletMixConfigChanged(WalletMixConfigChangedEvent event) {
+    private void walletMixConfigChanged(WalletMixConfigChangedEvent event) {
         if(persistsFor(event.getWallet()) && event.getWallet().getMixConfig() != null) {
-            updateExecutor.execute(() -> dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).mixConfig = true);
+            dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).mixConfig = true;
         }
     }
 
-    @Subscribe
-    public void walletUtxoMixesChanged(WalletUtxoMixesChangedEvent event) {
+    private void walletUtxoMixesChanged(WalletUtxoMixesChangedEvent event) {
         if(persistsFor(event.getWallet())) {
-            updateExecutor.execute(() -> {
-                dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).changedUtxoMixes.putAll(event.getChangedUtxoMixes());
-                dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).removedUtxoMixes.putAll(event.getRemovedUtxoMixes());
-            });
+            dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).changedUtxoMixes.putAll(event.getChangedUtxoMixes());
+            dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).removedUtxoMixes.putAll(event.getRemovedUtxoMixes());
         }
     }
 
-    @Subscribe
-    public void keystoreLabelsChanged(KeystoreLabelsChangedEvent event) {
+    private void keystoreLabelsChanged(KeystoreLabelsChangedEvent event) {
         if(persistsFor(event.getWallet())) {
-            updateExecutor.execute(() -> dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).labelKeystores.addAll(event.getChangedKeystores()));
+            dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).labelKeystores.addAll(event.getChangedKeystores());
         }
     }
 
-    @Subscribe
-    public void keystoreEncryptionChanged(KeystoreEncryptionChangedEvent event) {
+    private void keystoreEncryptionChanged(KeystoreEncryptionChangedEvent event) {
         if(persistsFor(event.getWallet())) {
-            updateExecutor.execute(() -> dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).encryptionKeystores.addAll(event.getChangedKeystores()));
+            dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).encryptionKeystores.addAll(event.getChangedKeystores());
         }
     }
 
-    @Subscribe
-    public void keystoreDeviceRegistrationsChanged(KeystoreDeviceRegistrationsChangedEvent event) {
+    private void keystoreDeviceRegistrationsChanged(KeystoreDeviceRegistrationsChangedEvent event) {
         if(persistsFor(event.getWallet())) {
-            updateExecutor.execute(() -> dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).registrationKeystores.addAll(event.getChangedKeystores()));
+            dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).registrationKeystores.addAll(event.getChangedKeystores());
         }
     }
 
-    @Subscribe
-    public void walletWatchLastChanged(WalletWatchLastChangedEvent event) {
+    private void walletWatchLastChanged(WalletWatchLastChangedEvent event) {
         if(persistsFor(event.getWallet())) {
-            updateExecutor.execute(() -> dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).watchLast = event.getWatchLast());
+            dirtyPersistablesMap.computeIfAbsent(event.getWallet(), key -> new DirtyPersistables()).watchLast = event.getWatchLast();
         }
     }
 
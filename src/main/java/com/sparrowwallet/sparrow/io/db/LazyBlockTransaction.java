@@ -0,0 +1,103 @@
+package com.sparrowwallet.sparrow.io.db;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.sparrowwallet.drongo.protocol.Sha256Hash;
+import com.sparrowwallet.drongo.protocol.Transaction;
+import com.sparrowwallet.drongo.wallet.BlockTransaction;
+
+import java.util.Date;
+import java.util.function.Function;
+
+/**
+ * A block transaction loaded from the wallet database without its raw transaction, which is retrieved and parsed on first access.
+ * Parsed transactions are held in a cache bounded by their serialized size, so resident memory scales with the transactions actually used.
+ */
+public class LazyBlockTransaction extends BlockTransaction {
+    private static final long MAX_CACHED_TRANSACTION_BYTES = 32 * 1024 * 1024;
+
+    private static final Cache<LazyBlockTransaction, Transaction> transactionCache = CacheBuilder.newBuilder()
+            .weakKeys()
+            .maximumWeight(MAX_CACHED_TRANSACTION_BYTES)
+            .weigher((LazyBlockTransaction blkTx, Transaction transaction) -> blkTx.size)
+            .build();
+
+    private Function<Sha256Hash, byte[]> transactionLoader;
+    private volatile int size;
+    private Transaction pinnedTransaction;
+
+    public LazyBlockTransaction(Sha256Hash hash, int height, Date date, Long fee, Sha256Hash blockHash, String label) {
+        super(hash, height, date, fee, null, blockHash, label);
+    }
+
+    public void setTransactionLoader(Function<Sha256Hash, byte[]> transactionLoader) {
+        this.transactionLoader = transactionLoader;
+    }
+
+    /**
+     * Holds the transaction in memory outside the cache, for when the database row may become unavailable
+     */
+    public void pin() {
+        pinnedTransaction = getTransaction();
+    }
+
+    public void unpin() {
+        pinnedTransaction = null;
+    }
+
+    /**
+     * Returns true if the transaction is held in memory, so that it can be retrieved without reading the database
+     */
+    public boolean isLoaded() {
+        return pinnedTransaction != null || transactionCache.getIfPresent(this) != null;
+    }
+
+    @Override
+    public Transaction getTransaction() {
+        if(pinnedTransaction != null) {
+            return pinnedTransaction;
+        }
+
+        Transaction transaction = transactionCache.getIfPresent(this);
+        if(transaction == null && transactionLoader != null) {
+            byte[] txBytes = transactionLoader.apply(getHash());
+            if(txBytes != null) {
+                transaction = new Transaction(txBytes);
+                size = txBytes.length;
+                transactionCache.put(this, transaction);
+            }
+        }
+
+        return transaction;
+    }
+
+    /**
+     * Returns the transaction, reading it from the database without adding it to the cache if it is not held in memory.
+     * Used when every transaction is read once, such as when indexing, so that the transactions in use are not evicted.
+     */
+    public Transaction getUncachedTransaction() {
+        if(pinnedTransaction != null) {
+            return pinnedTransaction;
+        }
+
+        Transaction transaction = transactionCache.getIfPresent(this);
+        if(transaction == null && transactionLoader != null) {
+            byte[] txBytes = transactionLoader.apply(getHash());
+            if(txBytes != null) {
+                transaction = new Transaction(txBytes);
+            }
+        }
+
+        return transaction;
+    }
+
+    @Override
+    public Double getFeeRate() {
+        Transaction transaction = getTransaction();
+        if(getFee() != null && transaction != null) {
+            return getFee() / transaction.getVirtualSize();
+        }
+
+        return null;
+    }
+}
@@ -115,7 +115,7 @@ public interface WalletDao {
         wallet.getPurposeNodes().addAll(walletNodes.stream().filter(walletNode -> walletNode.getDerivation().size() == 1).collect(Collectors.toList()));
         wallet.getPurposeNodes().forEach(walletNode -> walletNode.setWallet(wallet));
 
-        Map<Sha256Hash, BlockTransaction> blockTransactions = createBlockTransactionDao().getForWalletId(wallet.getId());
+        Map<Sha256Hash, BlockTransaction> blockTransactions = createBlockTransactionDao().loadForWalletId(wallet.getId());
         wallet.updateTransactions(blockTransactions);
 
         Map<String, String> detachedLabels = createDetachedLabelDao().getAll();
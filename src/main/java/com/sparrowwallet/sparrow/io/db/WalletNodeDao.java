@@ -6,16 +6,14 @@ import com.sparrowwallet.drongo.wallet.WalletNode;
 import org.jdbi.v3.sqlobject.config.RegisterRowMapper;
 import org.jdbi.v3.sqlobject.customizer.Bind;
 import org.jdbi.v3.sqlobject.customizer.BindList;
-import org.jdbi.v3.sqlobject.statement.GetGeneratedKeys;
-import org.jdbi.v3.sqlobject.statement.SqlQuery;
-import org.jdbi.v3.sqlobject.statement.SqlUpdate;
-import org.jdbi.v3.sqlobject.statement.UseRowReducer;
+import org.jdbi.v3.sqlobject.customizer.BindMethods;
+import org.jdbi.v3.sqlobject.statement.*;
 
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
+import java.util.*;
 
 public interface WalletNodeDao {
+    int MAX_IDS_PER_QUERY = 1000;
+
     @SqlQuery("select walletNode.id, walletNode.derivationPath, walletNode.label, walletNode.parent, walletNode.addressData, ?, " +
             "blockTransactionHashIndex.id, blockTransactionHashIndex.hash, blockTransactionHashIndex.height, blockTransactionHashIndex.date, blockTransactionHashIndex.fee, blockTransactionHashIndex.label, " +
             "blockTransactionHashIndex.index, blockTransactionHashIndex.outputValue, blockTransactionHashIndex.status, blockTransactionHashIndex.spentBy, blockTransactionHashIndex.node " +
@@ -29,12 +27,16 @@ public interface WalletNodeDao {
     @GetGeneratedKeys("id")
     long insertWalletNode(String derivationPath, String label, long wallet, Long parent, byte[] addressData);
 
-    @SqlUpdate("insert into blockTransactionHashIndex (hash, height, date, fee, label, index, outputValue, status, spentBy, node) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")
+    @SqlBatch("insert into walletNode (derivationPath, label, wallet, parent, addressData) values (:derivationPath, :label, :wallet, :parent, :addressData)")
+    @GetGeneratedKeys("id")
+    long[] insertWalletNodes(@BindMethods List<WalletNodeRow> walletNodes);
+
+    @SqlBatch("insert into blockTransactionHashIndex (hash, height, date, fee, label, index, outputValue, status, spentBy, node) values (:hash, :height, :date, :fee, :label, :index, :outputValue, :status, :spentBy, :node)")
     @GetGeneratedKeys("id")
-    long insertBlockTransactionHashIndex(byte[] hash, int height, Date date, Long fee, String label, long index, long value, Integer status, Long spentBy, long node);
+    long[] insertBlockTransactionHashIndexes(@BindMethods List<TxoRow> txos);
 
-    @SqlUpdate("update blockTransactionHashIndex set hash = ?, height = ?, date = ?, fee = ?, label = ?, index = ?, outputValue = ?, status = ?, spentBy = ?, node = ? where id = ?")
-    void updateBlockTransactionHashIndex(byte[] hash, int height, Date date, Long fee, String label, long index, long value, Integer status, Long spentBy, long node, long id);
+    @SqlBatch("update blockTransactionHashIndex set hash = :hash, height = :height, date = :date, fee = :fee, label = :label, index = :index, outputValue = :outputValue, status = :status, spentBy = :spentBy, node = :node where id = :id")
+    void updateBlockTransactionHashIndexes(@BindMethods List<TxoRow> txos);
 
     @SqlUpdate("update walletNode set label = :label where id = :id")
     void updateNodeLabel(@Bind("id") long id, @Bind("label") String label);
@@ -42,6 +44,9 @@ public interface WalletNodeDao {
     @SqlUpdate("update walletNode set addressData = :addressData where id = :id and addressData is null")
     void updateNodeAddressData(@Bind("id") long id, @Bind("addressData") byte[] addressData);
 
+    @SqlBatch("update walletNode set addressData = :addressData where id = :id and addressData is null")
+    void updateNodesAddressData(@Bind("id") List<Long> ids, @Bind("addressData") List<byte[]> addressData);
+
     @SqlUpdate("update blockTransactionHashIndex set label = :label where id = :id")
     void updateTxoLabel(@Bind("id") long id, @Bind("label") String label);
 
@@ -54,65 +59,129 @@ public interface WalletNodeDao {
     @SqlUpdate("delete from blockTransactionHashIndex where blockTransactionHashIndex.node in (select walletNode.id from walletNode where walletNode.wallet = ?) and blockTransactionHashIndex.spentBy is not null")
     void clearSpentHistory(long wallet);
 
-    @SqlUpdate("delete from blockTransactionHashIndex where node = :nodeId and id not in (<ids>)")
-    void deleteUnreferencedNodeTxos(@Bind("nodeId") Long nodeId, @BindList("ids") List<Long> ids);
+    @SqlUpdate("delete from blockTransactionHashIndex where node in (<nodeIds>) and id not in (<ids>)")
+    int deleteUnreferencedNodesTxos(@BindList("nodeIds") List<Long> nodeIds, @BindList("ids") List<Long> ids);
 
-    @SqlUpdate("delete from blockTransactionHashIndex where node = :nodeId and id not in (<ids>) and spentBy is not null")
-    void deleteUnreferencedNodeSpentTxos(@Bind("nodeId") Long nodeId, @BindList("ids") List<Long> ids);
+    @SqlUpdate("delete from blockTransactionHashIndex where node in (<nodeIds>) and id not in (<ids>) and spentBy is not null")
+    int deleteUnreferencedNodesSpentTxos(@BindList("nodeIds") List<Long> nodeIds, @BindList("ids") List<Long> ids);
 
     default void addWalletNodes(Wallet wallet) {
         for(WalletNode purposeNode : wallet.getPurposeNodes()) {
             long purposeNodeId = insertWalletNode(purposeNode.getDerivationPath(), truncate(purposeNode.getLabel()), wallet.getId(), null, null);
             purposeNode.setId(purposeNodeId);
-            addTransactionOutputs(purposeNode);
             List<WalletNode> childNodes = new ArrayList<>(purposeNode.getChildren());
-            for(WalletNode addressNode : childNodes) {
-                long addressNodeId = insertWalletNode(addressNode.getDerivationPath(), truncate(addressNode.getLabel()), wallet.getId(), purposeNodeId, addressNode.getAddressData());
-                addressNode.setId(addressNodeId);
-                addTransactionOutputs(addressNode);
+            addWalletNodes(wallet, purposeNode, childNodes);
+
+            List<WalletNode> nodes = new ArrayList<>();
+            nodes.add(purposeNode);
+            nodes.addAll(childNodes);
+            for(WalletNode node : nodes) {
+                for(BlockTransactionHashIndex txo : node.getTransactionOutputs()) {
+                    txo.setId(null);
+                    if(txo.isSpent()) {
+                        txo.getSpentBy().setId(null);
+                    }
+                }
             }
+            addOrUpdateTransactionOutputs(nodes);
         }
     }
 
-    default void addTransactionOutputs(WalletNode addressNode) {
-        for(BlockTransactionHashIndex txo : addressNode.getTransactionOutputs()) {
-            txo.setId(null);
-            if(txo.isSpent()) {
-                txo.getSpentBy().setId(null);
-            }
+    default void addWalletNodes(Wallet wallet, WalletNode purposeNode, List<WalletNode> addressNodes) {
+        if(addressNodes.isEmpty()) {
+            return;
+        }
 
-            addOrUpdate(addressNode, txo);
+        List<WalletNodeRow> rows = addressNodes.stream().map(addressNode -> new WalletNodeRow(addressNode.getDerivationPath(), truncate(addressNode.getLabel()), wallet.getId(), purposeNode.getId(), addressNode.getAddressData())).toList();
+        long[] ids = insertWalletNodes(rows);
+        for(int i = 0; i < ids.length; i++) {
+            addressNodes.get(i).setId(ids[i]);
         }
     }
 
-    default void addOrUpdate(WalletNode addressNode, BlockTransactionHashIndex txo) {
-        Long spentById = null;
-        if(txo.isSpent()) {
-            BlockTransactionHashIndex spentBy = txo.getSpentBy();
-            if(spentBy.getId() == null) {
-                spentById = insertBlockTransactionHashIndex(spentBy.getHash().getBytes(), spentBy.getHeight(), spentBy.getDate(), spentBy.getFee(), truncate(spentBy.getLabel()), spentBy.getIndex(), spentBy.getValue(),
-                        spentBy.getStatus() == null ? null : spentBy.getStatus().ordinal(), null, addressNode.getId());
-                spentBy.setId(spentById);
+    /**
+     * Inserts or updates all transaction outputs of the provided nodes using batched statements, returning the number of rows written.
+     * Spending txos are written first so that their ids are available to the txos they spend.
+     */
+    default int addOrUpdateTransactionOutputs(Collection<WalletNode> addressNodes) {
+        List<BlockTransactionHashIndex> spentByTxos = new ArrayList<>();
+        List<Long> spentByNodeIds = new ArrayList<>();
+        List<BlockTransactionHashIndex> txos = new ArrayList<>();
+        List<Long> txoNodeIds = new ArrayList<>();
+        for(WalletNode addressNode : addressNodes) {
+            for(BlockTransactionHashIndex txo : addressNode.getTransactionOutputs()) {
+                if(txo.isSpent()) {
+                    spentByTxos.add(txo.getSpentBy());
+                    spentByNodeIds.add(addressNode.getId());
+                }
+                txos.add(txo);
+                txoNodeIds.add(addressNode.getId());
+            }
+        }
+
+        return addOrUpdateTxos(spentByTxos, spentByNodeIds) + addOrUpdateTxos(txos, txoNodeIds);
+    }
+
+    default int addOrUpdateTxos(List<BlockTransactionHashIndex> txos, List<Long> nodeIds) {
+        List<BlockTransactionHashIndex> insertTxos = new ArrayList<>();
+        List<TxoRow> insertRows = new ArrayList<>();
+        List<TxoRow> updateRows = new ArrayList<>();
+        for(int i = 0; i < txos.size(); i++) {
+            BlockTransactionHashIndex txo = txos.get(i);
+            TxoRow row = new TxoRow(txo.getHash().getBytes(), txo.getHeight(), txo.getDate(), txo.getFee(), truncate(txo.getLabel()), txo.getIndex(), txo.getValue(),
+                    txo.getStatus() == null ? null : txo.getStatus().ordinal(), txo.isSpent() ? txo.getSpentBy().getId() : null, nodeIds.get(i), txo.getId());
+            if(txo.getId() == null) {
+                insertTxos.add(txo);
+                insertRows.add(row);
             } else {
-                updateBlockTransactionHashIndex(spentBy.getHash().getBytes(), spentBy.getHeight(), spentBy.getDate(), spentBy.getFee(), truncate(spentBy.getLabel()), spentBy.getIndex(), spentBy.getValue(),
-                        spentBy.getStatus() == null ? null : spentBy.getStatus().ordinal(), null, addressNode.getId(), spentBy.getId());
-                spentById = spentBy.getId();
+                updateRows.add(row);
+            }
+        }
+
+        if(!insertRows.isEmpty()) {
+            long[] ids = insertBlockTransactionHashIndexes(insertRows);
+            for(int i = 0; i < ids.length; i++) {
+                insertTxos.get(i).setId(ids[i]);
+            }
+        }
+
+        if(!updateRows.isEmpty()) {
+            updateBlockTransactionHashIndexes(updateRows);
+        }
+
+        return txos.size();
+    }
+
+    /**
+     * Deletes the txos of each node that are not in its list of txo ids, querying for groups of nodes so that each bound list stays within MAX_IDS_PER_QUERY where possible.
+     * The txo ids of a node are never split across queries, as the spending txos of a node are stored against the same node.
+     */
+    default int deleteNodesTxosNotInList(Map<Long, List<Long>> nodeTxoIds) {
+        int deleted = 0;
+        List<Long> nodeIds = new ArrayList<>();
+        List<Long> txoIds = new ArrayList<>();
+        for(Map.Entry<Long, List<Long>> entry : nodeTxoIds.entrySet()) {
+            if(!nodeIds.isEmpty() && (nodeIds.size() == MAX_IDS_PER_QUERY || txoIds.size() + entry.getValue().size() > MAX_IDS_PER_QUERY)) {
+                deleted += deleteNodesTxosNotInList(nodeIds, txoIds);
+                nodeIds = new ArrayList<>();
+                txoIds = new ArrayList<>();
             }
+            nodeIds.add(entry.getKey());
+            txoIds.addAll(entry.getValue());
         }
 
-        if(txo.getId() == null) {
-            long txoId = insertBlockTransactionHashIndex(txo.getHash().getBytes(), txo.getHeight(), txo.getDate(), txo.getFee(), truncate(txo.getLabel()), txo.getIndex(), txo.getValue(),
-                    txo.getStatus() == null ? null : txo.getStatus().ordinal(), spentById, addressNode.getId());
-            txo.setId(txoId);
-        } else {
-            updateBlockTransactionHashIndex(txo.getHash().getBytes(), txo.getHeight(), txo.getDate(), txo.getFee(), truncate(txo.getLabel()), txo.getIndex(), txo.getValue(),
-                    txo.getStatus() == null ? null : txo.getStatus().ordinal(), spentById, addressNode.getId(), txo.getId());
+        if(!nodeIds.isEmpty()) {
+            deleted += deleteNodesTxosNotInList(nodeIds, txoIds);
         }
+
+        return deleted;
     }
 
-    default void deleteNodeTxosNotInList(WalletNode addressNode, List<Long> txoIds) {
-        deleteUnreferencedNodeSpentTxos(addressNode.getId(), txoIds);
-        deleteUnreferencedNodeTxos(addressNode.getId(), txoIds);
+    default int deleteNodesTxosNotInList(List<Long> nodeIds, List<Long> txoIds) {
+        List<Long> ids = txoIds.isEmpty() ? List.of(-1L) : txoIds;
+        //Delete spending txos first as they are referenced by the txos they spend
+        int deleted = deleteUnreferencedNodesSpentTxos(nodeIds, ids);
+        return deleted + deleteUnreferencedNodesTxos(nodeIds, ids);
     }
 
     default void clearHistory(Wallet wallet) {
@@ -123,4 +192,8 @@ public interface WalletNodeDao {
     default String truncate(String label) {
         return (label != null && label.length() > WalletNode.MAX_LABEL_LENGTH ? label.substring(0, WalletNode.MAX_LABEL_LENGTH) : label);
     }
+
+    record WalletNodeRow(String derivationPath, String label, long wallet, Long parent, byte[] addressData) {}
+
+    record TxoRow(byte[] hash, int height, Date date, Long fee, String label, long index, long outputValue, Integer status, Long spentBy, long node, Long id) {}
 }
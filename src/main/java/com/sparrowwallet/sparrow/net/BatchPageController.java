@@ -0,0 +1,144 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.github.arteam.simplejsonrpc.client.Transport;
+import com.sparrowwallet.sparrow.io.Config;
+import com.sparrowwallet.sparrow.io.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.Consumer;
+
+import static com.sparrowwallet.sparrow.net.PagedBatchRequestBuilder.DEFAULT_PAGE_SIZE;
+
+/**
+ * Tunes the page size and number of concurrently outstanding pages of batched requests to the connected server.
+ * Pages grow while they complete quickly, and shrink when they are slow, fail or cause read timeouts. Learned settings are stored per server.
+ */
+public class BatchPageController {
+    private static final Logger log = LoggerFactory.getLogger(BatchPageController.class);
+
+    public static final int MIN_PAGE_SIZE = 10;
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final int MAX_CONCURRENT_PAGES = 4;
+
+    //Full pages faster than this grow the page size, and any page slower than the upper limit shrinks it
+    private static final long FAST_PAGE_MILLIS = 1000;
+    private static final long SLOW_PAGE_MILLIS = 3000;
+
+    //Consecutive fast pages required before another page may be outstanding at once
+    private static final int FAST_PAGES_PER_CONCURRENT_PAGE = 4;
+
+    private static BatchPageController current;
+
+    private final String serverKey;
+    private final int maxPageSize;
+    private final Consumer<BatchSettings> settingsStore;
+    private int pageSize;
+    private int concurrentPages;
+    private int fastPages;
+    private int observedTimeouts;
+
+    /**
+     * @param configuredPageSize the page size explicitly configured as the upper limit, or null if none has been configured
+     * @param batchSettings the settings previously learned for the server, or null
+     * @param settingsStore called with the learned settings when they change
+     */
+    BatchPageController(String serverKey, Integer configuredPageSize, BatchSettings batchSettings, Consumer<BatchSettings> settingsStore) {
+        this.serverKey = serverKey;
+        this.settingsStore = settingsStore;
+        this.maxPageSize = configuredPageSize != null && configuredPageSize > 0 ? configuredPageSize : MAX_PAGE_SIZE;
+
+        if(batchSettings != null) {
+            this.pageSize = clamp(batchSettings.pageSize(), Math.min(MIN_PAGE_SIZE, maxPageSize), maxPageSize);
+            this.concurrentPages = clamp(batchSettings.concurrentPages(), 1, MAX_CONCURRENT_PAGES);
+        } else {
+            this.pageSize = Math.min(DEFAULT_PAGE_SIZE, maxPageSize);
+            this.concurrentPages = 1;
+        }
+    }
+
+    /**
+     * Returns the controller for the currently configured server
+     */
+    public static synchronized BatchPageController get() {
+        String serverKey = getServerKey();
+        if(current == null || !current.serverKey.equals(serverKey)) {
+            current = new BatchPageController(serverKey, Config.get().getMaxPageSize(), Config.get().getServerBatchSettings(serverKey),
+                    batchSettings -> Config.get().setServerBatchSettings(serverKey, batchSettings));
+        }
+
+        return current;
+    }
+
+    private static String getServerKey() {
+        Server server = Config.get().getServer();
+        String url = server == null ? "" : server.getUrl();
+        return Config.get().isUseProxy() ? url + " (proxy)" : url;
+    }
+
+    public synchronized int getPageSize(Transport transport) {
+        checkTimeouts(transport);
+        return pageSize;
+    }
+
+    /**
+     * Returns the number of pages that may be outstanding at once. Pages are only sent concurrently to a pipelined transport.
+     */
+    public synchronized int getConcurrentPages(Transport transport) {
+        return transport instanceof TcpTransport tcpTransport && tcpTransport.isPipelined() ? concurrentPages : 1;
+    }
+
+    public synchronized void pageSucceeded(Transport transport, int pageRequests, long millis) {
+        if(checkTimeouts(transport)) {
+            return;
+        }
+
+        if(millis > SLOW_PAGE_MILLIS) {
+            update(pageSize * 3 / 4, concurrentPages - 1);
+        } else if(millis < FAST_PAGE_MILLIS && pageRequests >= pageSize) {
+            fastPages++;
+            boolean addConcurrentPage = fastPages >= FAST_PAGES_PER_CONCURRENT_PAGE && getConcurrentPages(transport) == concurrentPages;
+            update(pageSize + Math.max(pageSize / 4, 1), addConcurrentPage ? concurrentPages + 1 : concurrentPages);
+        }
+    }
+
+    public synchronized void pageFailed(Transport transport) {
+        checkTimeouts(transport);
+        update(pageSize / 2, 1);
+    }
+
+    private boolean checkTimeouts(Transport transport) {
+        if(transport instanceof TimeoutCounter timeoutCounter) {
+            int timeouts = timeoutCounter.getTimeoutCount();
+            if(timeouts > observedTimeouts) {
+                observedTimeouts = timeouts;
+                update(pageSize / 2, 1);
+                return true;
+            }
+
+            //A new transport starts its count again
+            observedTimeouts = timeouts;
+        }
+
+        return false;
+    }
+
+    private void update(int newPageSize, int newConcurrentPages) {
+        newPageSize = clamp(newPageSize, Math.min(MIN_PAGE_SIZE, maxPageSize), maxPageSize);
+        newConcurrentPages = clamp(newConcurrentPages, 1, MAX_CONCURRENT_PAGES);
+        if(newConcurrentPages != concurrentPages || newPageSize < pageSize) {
+            fastPages = 0;
+        }
+
+        if(newPageSize != pageSize || newConcurrentPages != concurrentPages) {
+            log.debug("Batch page size for " + serverKey + " now " + newPageSize + " with " + newConcurrentPages + " concurrent pages");
+            pageSize = newPageSize;
+            concurrentPages = newConcurrentPages;
+            settingsStore.accept(new BatchSettings(pageSize, concurrentPages));
+        }
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,6 @@
+package com.sparrowwallet.sparrow.net;
+
+/**
+ * The batch page size and number of concurrently outstanding pages learned for a server
+ */
+public record BatchSettings(int pageSize, int concurrentPages) {}
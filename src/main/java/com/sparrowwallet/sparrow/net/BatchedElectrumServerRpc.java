@@ -190,6 +190,17 @@ public class BatchedElectrumServerRpc implements ElectrumServerRpc {
         }
     }
 
+    @Override
+    public BlockHeaderChunk getBlockHeaderChunk(Transport transport, int startHeight, int count) {
+        try {
+            JsonRpcClient client = new JsonRpcClient(transport);
+            return new RetryLogic<BlockHeaderChunk>(DEFAULT_MAX_ATTEMPTS, RETRY_DELAY_SECS, IllegalStateException.class).getResult(() ->
+                    client.createRequest().returnAs(BlockHeaderChunk.class).method("blockchain.block.headers").id(idCounter.incrementAndGet()).params(startHeight, count).execute());
+        } catch(Exception e) {
+            throw new ElectrumServerRpcException("Failed to retrieve block headers from height " + startHeight, e);
+        }
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public Map<Integer, BlockStats> getBlockStats(Transport transport, Set<Integer> blockHeights) {
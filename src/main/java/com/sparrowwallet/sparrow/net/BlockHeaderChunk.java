@@ -0,0 +1,17 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BlockHeaderChunk {
+    public int count;
+    public String hex;
+    public int max;
+
+    /**
+     * Decodes the headers into the start of the buffer, returning the number of bytes written
+     */
+    public int getHeaderBytes(byte[] buffer) {
+        return hex == null ? 0 : HexCodec.decode(hex, buffer);
+    }
+}
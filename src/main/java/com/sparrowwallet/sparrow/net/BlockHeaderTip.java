@@ -1,6 +1,5 @@
 package com.sparrowwallet.sparrow.net;
 
-import com.sparrowwallet.drongo.Utils;
 import com.sparrowwallet.drongo.protocol.BlockHeader;
 import com.sparrowwallet.drongo.protocol.Sha256Hash;
 
@@ -13,7 +12,7 @@ public class BlockHeaderTip {
             return new BlockHeader(0, Sha256Hash.ZERO_HASH, Sha256Hash.ZERO_HASH, Sha256Hash.ZERO_HASH, 0, 0, 0);
         }
 
-        byte[] blockHeaderBytes = Utils.hexToBytes(hex);
+        byte[] blockHeaderBytes = HexCodec.decode(hex);
         return new BlockHeader(blockHeaderBytes);
     }
 }
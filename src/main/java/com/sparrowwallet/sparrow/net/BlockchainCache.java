@@ -0,0 +1,190 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.sparrowwallet.drongo.protocol.BlockHeader;
+import com.sparrowwallet.drongo.protocol.Sha256Hash;
+import com.sparrowwallet.drongo.protocol.Transaction;
+import com.sparrowwallet.drongo.wallet.BlockTransaction;
+import com.sparrowwallet.sparrow.io.Storage;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * An on-disk cache of confirmed transactions, shared by all wallets and kept across restarts.
+ * Entries are evicted least recently used first once the cache exceeds its size limit.
+ * Transactions are stored with the hash of their block, and are invalidated if the header store has a different header at that height.
+ */
+public class BlockchainCache {
+    private static final Logger log = LoggerFactory.getLogger(BlockchainCache.class);
+
+    public static final String CACHE_FILENAME = "blockchain.mv";
+    private static final long MAX_TRANSACTIONS_BYTES = 64 * 1024 * 1024;
+    private static final int HASH_LENGTH = 32;
+
+    private static BlockchainCache INSTANCE;
+
+    private final MVStore store;
+    private final MVMap<String, byte[]> transactions;
+
+    //Access ordered to track the least recently used entries, weighted by their encoded size
+    private final LinkedHashMap<String, Integer> transactionSizes = new LinkedHashMap<>(16, 0.75f, true);
+    private long transactionsBytes;
+
+    private BlockchainCache(File cacheFile) {
+        this.store = new MVStore.Builder().fileName(cacheFile.getAbsolutePath()).compress().open();
+        this.transactions = store.openMap("transactions");
+
+        for(Map.Entry<String, byte[]> entry : transactions.entrySet()) {
+            transactionSizes.put(entry.getKey(), entry.getValue().length);
+            transactionsBytes += entry.getValue().length;
+        }
+    }
+
+    /**
+     * Returns the shared cache, or null if the cache file could not be opened
+     */
+    public static synchronized BlockchainCache get() {
+        if(INSTANCE == null) {
+            File cacheFile = new File(Storage.getCacheDir(), CACHE_FILENAME);
+            try {
+                INSTANCE = new BlockchainCache(cacheFile);
+            } catch(Exception e) {
+                log.warn("Could not open blockchain cache at " + cacheFile.getAbsolutePath() + ", continuing without it", e);
+                return null;
+            }
+        }
+
+        return INSTANCE;
+    }
+
+    public static synchronized void close() {
+        if(INSTANCE != null) {
+            try {
+                INSTANCE.store.close();
+            } catch(Exception e) {
+                log.warn("Error closing blockchain cache", e);
+            }
+            INSTANCE = null;
+        }
+    }
+
+    public BlockTransaction getTransaction(Sha256Hash txid) {
+        String key = txid.toString();
+        BlockTransaction blockTransaction = readTransaction(key, txid);
+        if(blockTransaction == null) {
+            return null;
+        }
+
+        //Invalidate transactions from blocks that have since been reorged out. The header store is read outside this cache's lock, as it calls back into it.
+        HeaderChainStore headerChainStore = HeaderChainStore.get();
+        BlockHeader blockHeader = headerChainStore == null ? null : headerChainStore.getBlockHeader(blockTransaction.getHeight());
+        if(blockHeader != null && !getBlockHash(blockHeader).equals(blockTransaction.getBlockHash())) {
+            synchronized(this) {
+                removeTransaction(key);
+            }
+            return null;
+        }
+
+        return blockTransaction;
+    }
+
+    private synchronized BlockTransaction readTransaction(String key, Sha256Hash txid) {
+        byte[] value = transactions.get(key);
+        if(value == null) {
+            return null;
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(value);
+            int height = buffer.getInt();
+            long time = buffer.getLong();
+            long fee = buffer.getLong();
+            byte[] blockHashBytes = new byte[HASH_LENGTH];
+            buffer.get(blockHashBytes);
+            Sha256Hash blockHash = Sha256Hash.wrap(blockHashBytes);
+            byte[] txBytes = new byte[buffer.remaining()];
+            buffer.get(txBytes);
+
+            touch(key);
+            return new BlockTransaction(txid, height, new Date(time), fee < 0 ? null : fee, new Transaction(txBytes), blockHash);
+        } catch(Exception e) {
+            log.debug("Removing unreadable cached transaction " + key, e);
+            removeTransaction(key);
+            return null;
+        }
+    }
+
+    /**
+     * Marks an entry as the most recently used, moving it to the end of the access ordered eviction queue
+     */
+    private void touch(String key) {
+        transactionSizes.get(key);
+    }
+
+    /**
+     * Adds a confirmed transaction to the cache. Transactions without a height, date and block hash are ignored.
+     */
+    public synchronized void putTransaction(BlockTransaction blockTransaction) {
+        if(blockTransaction.getHeight() <= 0 || blockTransaction.getDate() == null || blockTransaction.getBlockHash() == null || blockTransaction.getTransaction() == null) {
+            return;
+        }
+
+        String key = blockTransaction.getHash().toString();
+        if(transactionSizes.containsKey(key)) {
+            return;
+        }
+
+        byte[] txBytes = blockTransaction.getTransaction().bitcoinSerialize();
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 8 + 8 + HASH_LENGTH + txBytes.length);
+        buffer.putInt(blockTransaction.getHeight());
+        buffer.putLong(blockTransaction.getDate().getTime());
+        buffer.putLong(blockTransaction.getFee() == null ? -1 : blockTransaction.getFee());
+        buffer.put(blockTransaction.getBlockHash().getBytes());
+        buffer.put(txBytes);
+        byte[] value = buffer.array();
+
+        transactions.put(key, value);
+        transactionSizes.put(key, value.length);
+        transactionsBytes += value.length;
+
+        Iterator<Map.Entry<String, Integer>> iter = transactionSizes.entrySet().iterator();
+        while(transactionsBytes > MAX_TRANSACTIONS_BYTES && iter.hasNext()) {
+            Map.Entry<String, Integer> eldest = iter.next();
+            transactions.remove(eldest.getKey());
+            transactionsBytes -= eldest.getValue();
+            iter.remove();
+        }
+    }
+
+    private void removeTransaction(String key) {
+        transactions.remove(key);
+        Integer size = transactionSizes.remove(key);
+        if(size != null) {
+            transactionsBytes -= size;
+        }
+    }
+
+    /**
+     * Returns the block hash for a header in the byte order used for BlockTransaction block hashes
+     */
+    public static Sha256Hash getBlockHash(BlockHeader blockHeader) {
+        return Sha256Hash.wrap(Sha256Hash.twiceOf(blockHeader.bitcoinSerialize()).getReversedBytes());
+    }
+
+    /**
+     * Removes transactions confirmed at or above the given height, following a change in the header chain
+     */
+    public synchronized void invalidateTransactionsFromHeight(int height) {
+        for(String key : new ArrayList<>(transactionSizes.keySet())) {
+            byte[] value = transactions.get(key);
+            if(value == null || ByteBuffer.wrap(value).getInt() >= height) {
+                removeTransaction(key);
+            }
+        }
+    }
+}
@@ -36,6 +36,7 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Matcher;
@@ -59,27 +60,40 @@ public class ElectrumServer {
 
     private static final int MINIMUM_BROADCASTS = 2;
 
+    private static final int PARALLEL_NODE_HISTORY_THRESHOLD = 100;
+
+    //Fetch a whole chunk of headers rather than individual headers when at least this many are required from it
+    private static final int MIN_HEADER_CHUNK_HEIGHTS = 3;
+
     public static final BlockTransaction UNFETCHABLE_BLOCK_TRANSACTION = new BlockTransaction(Sha256Hash.ZERO_HASH, 0, null, null, null);
 
     private static CloseableTransport transport;
 
+    //Only the most recent statuses of a subscribed script hash are kept to recognise repeated notifications
+    private static final int MAX_SUBSCRIBED_STATUSES = 10;
+
+    //Subscription state is not bounded, as a missing entry is taken to mean the script hash is not in an open wallet. Entries are removed when wallets are closed or the server disconnects.
     private static final Map<String, List<String>> subscribedScriptHashes = new ConcurrentHashMap<>();
 
     private static Server previousServer;
 
     private static final Map<String, String> retrievedScriptHashes = Collections.synchronizedMap(new HashMap<>());
 
-    private static final Map<Sha256Hash, BlockTransaction> retrievedTransactions = new ConcurrentHashMap<>();
+    private static final ServerCache<Sha256Hash, BlockTransaction> retrievedTransactions = ServerCache.ofWeight("Retrieved transactions", 64 * 1024 * 1024,
+            (txid, blkTx) -> ServerCache.estimateBytes(blkTx));
 
     private static final Map<Integer, BlockHeader> retrievedBlockHeaders = new ConcurrentHashMap<>();
 
-    private static final Map<Sha256Hash, BlockTransaction> broadcastedTransactions = new ConcurrentHashMap<>();
+    private static final ServerCache<Sha256Hash, BlockTransaction> broadcastedTransactions = ServerCache.ofWeight("Broadcasted transactions", 8 * 1024 * 1024,
+            (txid, blkTx) -> ServerCache.estimateBytes(blkTx));
 
     private static final Set<String> sameHeightTxioScriptHashes = ConcurrentHashMap.newKeySet();
 
-    private final static Map<String, Integer> subscribedRecent = new ConcurrentHashMap<>();
+    private final static ServerCache<String, Integer> subscribedRecent = ServerCache.ofSize("Recent subscriptions", 1000,
+            (scriptHash, height) -> ServerCache.estimateBytes(scriptHash) + 16);
 
-    private final static Map<String, String> broadcastRecent = new ConcurrentHashMap<>();
+    private final static ServerCache<String, String> broadcastRecent = ServerCache.ofSize("Recent broadcasts", 1000,
+            (scriptHash, status) -> ServerCache.estimateBytes(scriptHash) + ServerCache.estimateBytes(status));
 
     private static ElectrumServerRpc electrumServerRpc = new SimpleElectrumServerRpc();
 
@@ -130,6 +144,10 @@ public class ElectrumServer {
                     retrievedScriptHashes.clear();
                     retrievedTransactions.clear();
                     retrievedBlockHeaders.clear();
+                    HeaderChainStore headerChainStore = HeaderChainStore.get();
+                    if(headerChainStore != null) {
+                        headerChainStore.clear();
+                    }
                     TransactionHistoryService.walletLocks.values().forEach(walletLock -> walletLock.initialized = false);
                 }
                 previousServer = electrumServer;
@@ -224,8 +242,8 @@ public class ElectrumServer {
 
     private static Map<String, String> calculateScriptHashes(Wallet wallet, KeyPurpose keyPurpose) {
         Map<String, String> calculatedScriptHashes = new LinkedHashMap<>();
-        for(WalletNode walletNode : wallet.getNode(keyPurpose).getChildren()) {
-            addScriptHashStatus(calculatedScriptHashes, walletNode);
+        for(Map.Entry<String, WalletNode> entry : ScriptHashIndex.get(wallet).getScriptHashNodes(keyPurpose).entrySet()) {
+            calculatedScriptHashes.put(entry.getKey(), getScriptHashStatus(entry.getKey(), entry.getValue()));
         }
 
         return calculatedScriptHashes;
@@ -276,15 +294,14 @@ public class ElectrumServer {
                 scriptHashStatus.append(scriptHashTx.tx_hash).append(":").append(scriptHashTx.height).append(":");
             }
 
-            return Utils.bytesToHex(Sha256Hash.hash(scriptHashStatus.toString().getBytes(StandardCharsets.UTF_8)));
+            return HexCodec.encode(Sha256Hash.hash(scriptHashStatus.toString().getBytes(StandardCharsets.UTF_8)));
         } else {
             return null;
         }
     }
 
     public static void clearRetrievedScriptHashes(Wallet wallet) {
-        wallet.getNode(KeyPurpose.RECEIVE).getChildren().stream().map(ElectrumServer::getScriptHash).forEach(ElectrumServer::clearRetrievedScriptHash);
-        wallet.getNode(KeyPurpose.CHANGE).getChildren().stream().map(ElectrumServer::getScriptHash).forEach(ElectrumServer::clearRetrievedScriptHash);
+        ScriptHashIndex.get(wallet).getScriptHashNodes().keySet().forEach(ElectrumServer::clearRetrievedScriptHash);
         TransactionHistoryService.walletLocks.computeIfAbsent(wallet.hashCode(), w -> new WalletLock()).initialized = false;
     }
 
@@ -293,6 +310,43 @@ public class ElectrumServer {
         sameHeightTxioScriptHashes.remove(scriptHash);
     }
 
+    /**
+     * Evicts the cached script hashes and transactions of a closed wallet and its nested wallets, retaining those still used by other open wallets
+     */
+    public static void evictWalletCaches(Wallet wallet) {
+        List<Wallet> closedWallets = getWalletAndNestedWallets(wallet);
+        Set<String> retainedScriptHashes = new HashSet<>();
+        Set<Sha256Hash> retainedTxids = new HashSet<>();
+        for(Wallet openWallet : AppServices.get().getOpenWallets().keySet()) {
+            for(Wallet retainedWallet : getWalletAndNestedWallets(openWallet)) {
+                if(!closedWallets.contains(retainedWallet)) {
+                    retainedScriptHashes.addAll(ScriptHashIndex.get(retainedWallet).getScriptHashNodes().keySet());
+                    retainedTxids.addAll(retainedWallet.getTransactions().keySet());
+                }
+            }
+        }
+
+        for(Wallet closedWallet : closedWallets) {
+            Set<String> scriptHashes = new HashSet<>(ScriptHashIndex.get(closedWallet).getScriptHashNodes().keySet());
+            scriptHashes.removeAll(retainedScriptHashes);
+            subscribedScriptHashes.keySet().removeAll(scriptHashes);
+            retrievedScriptHashes.keySet().removeAll(scriptHashes);
+            sameHeightTxioScriptHashes.removeAll(scriptHashes);
+
+            Set<Sha256Hash> txids = new HashSet<>(closedWallet.getTransactions().keySet());
+            txids.removeAll(retainedTxids);
+            retrievedTransactions.removeAll(txids);
+            broadcastedTransactions.removeAll(txids);
+        }
+    }
+
+    private static List<Wallet> getWalletAndNestedWallets(Wallet wallet) {
+        List<Wallet> wallets = new ArrayList<>();
+        wallets.add(wallet);
+        wallet.getChildWallets().stream().filter(Wallet::isNested).forEach(wallets::add);
+        return wallets;
+    }
+
     public Map<WalletNode, Set<BlockTransactionHash>> getHistory(Wallet wallet) throws ServerException {
         Map<WalletNode, Set<BlockTransactionHash>> receiveTransactionMap = new TreeMap<>();
         getHistory(wallet, KeyPurpose.RECEIVE, receiveTransactionMap);
@@ -380,7 +434,7 @@ public class ElectrumServer {
         log.debug("Fetched history for: " + nodeTransactionMap.keySet());
 
         //Set the remaining WalletNode keys in nodeTransactionMap to empty sets to indicate no history (if no script hash history has already been retrieved in a previous call)
-        getAddressNodes(wallet, purposeNode).stream().filter(node -> !nodeTransactionMap.containsKey(node) && retrievedScriptHashes.get(getScriptHash(node)) == null).forEach(node -> nodeTransactionMap.put(node, Collections.emptySet()));
+        getAddressNodes(wallet, purposeNode).stream().filter(node -> !nodeTransactionMap.containsKey(node) && retrievedScriptHashes.get(getScriptHash(wallet, node)) == null).forEach(node -> nodeTransactionMap.put(node, Collections.emptySet()));
     }
 
     private void getHistoryToGapLimit(Wallet wallet, Map<WalletNode, Set<BlockTransactionHash>> nodeTransactionMap, WalletNode purposeNode) throws ServerException {
@@ -390,6 +444,7 @@ public class ElectrumServer {
         int gapLimitSize = getGapLimitSize(wallet, nodeTransactionMap, purposeNode);
         while(historySize < gapLimitSize) {
             purposeNode.fillToIndex(wallet, gapLimitSize - 1);
+            ScriptHashIndex.get(wallet).update();
             subscribeWalletNodes(wallet, getAddressNodes(wallet, purposeNode), nodeTransactionMap, historySize);
             getReferences(wallet, nodeTransactionMap.keySet(), nodeTransactionMap, historySize);
             getReferencedTransactions(wallet, nodeTransactionMap);
@@ -421,7 +476,7 @@ public class ElectrumServer {
             Map<String, String> pathScriptHashes = new LinkedHashMap<>(nodes.size());
             for(WalletNode node : nodes) {
                 if(node.getIndex() >= startIndex) {
-                    pathScriptHashes.put(node.getDerivationPath(), getScriptHash(node));
+                    pathScriptHashes.put(node.getDerivationPath(), getScriptHash(wallet, node));
                     nodeHashHistory.put(node, null);
                 }
             }
@@ -438,8 +493,9 @@ public class ElectrumServer {
 
                 if(statuses != null && !statuses.isEmpty()) {
                     //Optimize for new transactions that have been recently broadcasted
-                    for(Sha256Hash txid : broadcastedTransactions.keySet()) {
-                        BlockTransaction blkTx = broadcastedTransactions.get(txid);
+                    for(Map.Entry<Sha256Hash, BlockTransaction> broadcastedEntry : broadcastedTransactions.asMap().entrySet()) {
+                        Sha256Hash txid = broadcastedEntry.getKey();
+                        BlockTransaction blkTx = broadcastedEntry.getValue();
                         if(blkTx.getTransaction().getOutputs().stream().map(ElectrumServer::getScriptHash).anyMatch(scriptHash::equals) ||
                             blkTx.getTransaction().getInputs().stream().map(txInput -> getPrevOutput(wallet, txInput))
                                     .filter(Objects::nonNull).map(ElectrumServer::getScriptHash).anyMatch(scriptHash::equals)) {
@@ -477,14 +533,37 @@ public class ElectrumServer {
 
             if(!pathScriptHashes.isEmpty()) {
                 //Even if we have some successes, failure to retrieve all references will result in an incomplete wallet history. Don't proceed if that's the case.
-                Map<String, ScriptHashTx[]> result = electrumServerRpc.getScriptHashHistory(getTransport(), wallet, pathScriptHashes, true);
+                //Histories are shared by script hash with other wallets refreshing at the same time
+                Map<String, String> scriptHashPaths = new HashMap<>(pathScriptHashes.size());
+                pathScriptHashes.forEach((path, scriptHash) -> scriptHashPaths.putIfAbsent(scriptHash, path));
+                Transport rpcTransport = getTransport();
+                Map<String, ScriptHashTx[]> histories = HistoryRefreshCoordinator.getHistories(scriptHashPaths.keySet(), scriptHashes -> {
+                    Map<String, String> fetchPathScriptHashes = new LinkedHashMap<>();
+                    scriptHashes.forEach(scriptHash -> fetchPathScriptHashes.put(scriptHashPaths.get(scriptHash), scriptHash));
+                    Map<String, ScriptHashTx[]> fetched = new HashMap<>();
+                    electrumServerRpc.getScriptHashHistory(rpcTransport, wallet, fetchPathScriptHashes, true)
+                            .forEach((path, txes) -> fetched.put(fetchPathScriptHashes.get(path), txes));
+                    return fetched;
+                });
+
+                Map<String, ScriptHashTx[]> result = new HashMap<>(pathScriptHashes.size());
+                for(Map.Entry<String, String> pathScriptHash : pathScriptHashes.entrySet()) {
+                    ScriptHashTx[] txes = histories.get(pathScriptHash.getValue());
+                    if(txes != null) {
+                        result.put(pathScriptHash.getKey(), txes);
+                    }
+                }
+
+                Map<String, WalletNode> pathNodes = new HashMap<>(nodeHashHistory.size());
+                for(WalletNode node : nodeHashHistory.keySet()) {
+                    pathNodes.putIfAbsent(node.getDerivationPath(), node);
+                }
 
                 for(String path : result.keySet()) {
                     ScriptHashTx[] txes = result.get(path);
 
-                    Optional<WalletNode> optionalNode = nodes.stream().filter(n -> n.getDerivationPath().equals(path)).findFirst();
-                    if(optionalNode.isPresent()) {
-                        WalletNode node = optionalNode.get();
+                    WalletNode node = pathNodes.get(path);
+                    if(node != null) {
                         nodeHashHistory.put(node, txes);
                     }
                 }
@@ -494,18 +573,12 @@ public class ElectrumServer {
                 ScriptHashTx[] txes = nodeHashHistory.get(node);
 
                 //Some servers can return the same tx as multiple ScriptHashTx entries with different heights. Take the highest height only
-                Set<BlockTransactionHash> references = Arrays.stream(txes).map(ScriptHashTx::getBlockchainTransactionHash)
-                        .collect(TreeSet::new, (set, ref) -> {
-                            Optional<BlockTransactionHash> optExisting = set.stream().filter(prev -> prev.getHash().equals(ref.getHash())).findFirst();
-                            if(optExisting.isPresent()) {
-                                if(optExisting.get().getHeight() < ref.getHeight()) {
-                                    set.remove(optExisting.get());
-                                    set.add(ref);
-                                }
-                            } else {
-                                set.add(ref);
-                            }
-                        }, TreeSet::addAll);
+                Map<Sha256Hash, BlockTransactionHash> highestReferences = new HashMap<>(txes.length);
+                for(ScriptHashTx scriptHashTx : txes) {
+                    BlockTransactionHash ref = scriptHashTx.getBlockchainTransactionHash();
+                    highestReferences.merge(ref.getHash(), ref, (prev, next) -> prev.getHeight() < next.getHeight() ? next : prev);
+                }
+                Set<BlockTransactionHash> references = new TreeSet<>(highestReferences.values());
                 Set<BlockTransactionHash> existingReferences = nodeTransactionMap.get(node);
 
                 if(existingReferences == null) {
@@ -543,7 +616,7 @@ public class ElectrumServer {
                 }
 
                 if(node != null && node.getIndex() >= startIndex) {
-                    String scriptHash = getScriptHash(node);
+                    String scriptHash = getScriptHash(wallet, node);
                     String subscribedStatus = getSubscribedScriptHashStatus(scriptHash);
                     if(subscribedStatus != null) {
                         //Already subscribed, but still need to fetch history from a used node if not previously fetched or present
@@ -571,7 +644,7 @@ public class ElectrumServer {
 
                 WalletNode node = pathNodes.computeIfAbsent(path, p -> nodes.stream().filter(n -> n.getDerivationPath().equals(p)).findFirst().orElse(null));
                 if(node != null) {
-                    String scriptHash = getScriptHash(node);
+                    String scriptHash = getScriptHash(wallet, node);
 
                     //Check if there is history for this script hash, and if the history has changed since last fetched
                     if(status != null && !status.equals(retrievedScriptHashes.get(scriptHash))) {
@@ -653,8 +726,11 @@ public class ElectrumServer {
                 } else {
                     entry.setValue(blockTransaction.getTransaction());
                 }
-            } else if(broadcastedTransactions.containsKey(reference.getHash())) {
-                entry.setValue(broadcastedTransactions.get(reference.getHash()).getTransaction());
+            } else {
+                BlockTransaction broadcastedTransaction = broadcastedTransactions.get(reference.getHash());
+                if(broadcastedTransaction != null) {
+                    entry.setValue(broadcastedTransaction.getTransaction());
+                }
             }
         }
 
@@ -666,7 +742,7 @@ public class ElectrumServer {
 
         if(!transactionMap.equals(wallet.getTransactions())) {
             wallet.updateTransactions(transactionMap);
-            broadcastedTransactions.keySet().removeAll(transactionMap.entrySet().stream().filter(entry -> entry.getValue().getHeight() > 0)
+            broadcastedTransactions.removeAll(transactionMap.entrySet().stream().filter(entry -> entry.getValue().getHeight() > 0)
                     .map(Map.Entry::getKey).collect(Collectors.toSet()));
         }
     }
@@ -675,12 +751,19 @@ public class ElectrumServer {
         try {
             Map<Integer, BlockHeader> blockHeaderMap = new TreeMap<>();
             Set<Integer> blockHeights = new TreeSet<>();
+            HeaderChainStore headerChainStore = HeaderChainStore.get();
             for(BlockTransactionHash reference : references) {
                 if(reference.getHeight() > 0) {
                     if(retrievedBlockHeaders.containsKey(reference.getHeight())) {
                         blockHeaderMap.put(reference.getHeight(), retrievedBlockHeaders.get(reference.getHeight()));
                     } else {
-                        blockHeights.add(reference.getHeight());
+                        BlockHeader cachedBlockHeader = headerChainStore != null && isCacheable(reference.getHeight()) ? headerChainStore.getBlockHeader(reference.getHeight()) : null;
+                        if(cachedBlockHeader != null) {
+                            blockHeaderMap.put(reference.getHeight(), cachedBlockHeader);
+                            retrievedBlockHeaders.put(reference.getHeight(), cachedBlockHeader);
+                        } else {
+                            blockHeights.add(reference.getHeight());
+                        }
                     }
                 }
             }
@@ -689,13 +772,24 @@ public class ElectrumServer {
                 return blockHeaderMap;
             }
 
-            Map<Integer, String> result = electrumServerRpc.getBlockHeaders(getTransport(), wallet, blockHeights);
+            if(headerChainStore != null) {
+                getBlockHeaderChunks(headerChainStore, blockHeights, blockHeaderMap);
+                if(blockHeights.isEmpty()) {
+                    return blockHeaderMap;
+                }
+            }
+
+            Transport rpcTransport = getTransport();
+            Map<Integer, String> result = HistoryRefreshCoordinator.getBlockHeaders(blockHeights, heights -> electrumServerRpc.getBlockHeaders(rpcTransport, wallet, heights));
 
             for(Integer height : result.keySet()) {
-                byte[] blockHeaderBytes = Utils.hexToBytes(result.get(height));
+                byte[] blockHeaderBytes = HexCodec.decode(result.get(height));
                 BlockHeader blockHeader = new BlockHeader(blockHeaderBytes);
                 blockHeaderMap.put(height, blockHeader);
-                updateRetrievedBlockHeaders(height, blockHeader);
+                retrievedBlockHeaders.put(height, blockHeader);
+                if(headerChainStore != null) {
+                    headerChainStore.putBlockHeaders(height, blockHeaderBytes);
+                }
                 blockHeights.remove(height);
             }
 
@@ -713,20 +807,65 @@ public class ElectrumServer {
         }
     }
 
+    /**
+     * Fetches the headers for ranges where several heights are required in a single blockchain.block.headers call, filling the header store for later lookups
+     */
+    private void getBlockHeaderChunks(HeaderChainStore headerChainStore, Set<Integer> blockHeights, Map<Integer, BlockHeader> blockHeaderMap) {
+        Map<Integer, List<Integer>> chunkHeights = blockHeights.stream().collect(Collectors.groupingBy(height -> height / HeaderChainStore.CHUNK_SIZE, TreeMap::new, Collectors.toList()));
+        //Each chunk is decoded into the same buffer, since the header store copies the headers it keeps
+        byte[] chunkBuffer = null;
+        for(Map.Entry<Integer, List<Integer>> entry : chunkHeights.entrySet()) {
+            if(entry.getValue().size() < MIN_HEADER_CHUNK_HEIGHTS) {
+                continue;
+            }
+
+            int startHeight = entry.getKey() * HeaderChainStore.CHUNK_SIZE;
+            try {
+                BlockHeaderChunk blockHeaderChunk = electrumServerRpc.getBlockHeaderChunk(getTransport(), startHeight, HeaderChainStore.CHUNK_SIZE);
+                if(chunkBuffer == null) {
+                    chunkBuffer = new byte[HeaderChainStore.CHUNK_SIZE * HeaderChainStore.HEADER_LENGTH];
+                }
+                int chunkLength = blockHeaderChunk.getHeaderBytes(chunkBuffer);
+                if(headerChainStore.putBlockHeaders(startHeight, chunkBuffer, chunkLength)) {
+                    for(Integer height : entry.getValue()) {
+                        BlockHeader blockHeader = headerChainStore.getBlockHeader(height);
+                        if(blockHeader != null) {
+                            blockHeaderMap.put(height, blockHeader);
+                            retrievedBlockHeaders.put(height, blockHeader);
+                            blockHeights.remove(height);
+                        }
+                    }
+                }
+            } catch(Exception e) {
+                log.debug("Could not retrieve block headers from height " + startHeight + ", retrieving individually", e);
+            }
+        }
+    }
+
     public Map<Sha256Hash, BlockTransaction> getTransactions(Wallet wallet, Map<BlockTransactionHash, Transaction> references, Map<Integer, BlockHeader> blockHeaderMap) throws ServerException {
         try {
             Map<Sha256Hash, BlockTransaction> transactionMap = new HashMap<>();
             Set<BlockTransactionHash> checkReferences = new TreeSet<>(references.keySet());
 
             Set<String> txids = new LinkedHashSet<>(references.size());
+            Map<Sha256Hash, BlockTransactionHash> hashReferences = new HashMap<>(references.size());
+            BlockchainCache blockchainCache = BlockchainCache.get();
             for(BlockTransactionHash reference : references.keySet()) {
                 if(references.get(reference) == null) {
+                    BlockTransaction cachedTransaction = blockchainCache != null && isCacheable(reference.getHeight()) ? blockchainCache.getTransaction(reference.getHash()) : null;
+                    if(cachedTransaction != null && cachedTransaction.getHeight() == reference.getHeight()) {
+                        references.put(reference, cachedTransaction.getTransaction());
+                        continue;
+                    }
+
                     txids.add(reference.getHashAsString());
+                    hashReferences.putIfAbsent(reference.getHash(), reference);
                 }
             }
 
             if(!txids.isEmpty()) {
-                Map<String, String> result = electrumServerRpc.getTransactions(getTransport(), wallet, txids);
+                Transport rpcTransport = getTransport();
+                Map<String, String> result = HistoryRefreshCoordinator.getTransactions(txids, fetchTxids -> electrumServerRpc.getTransactions(rpcTransport, wallet, fetchTxids));
 
                 String strErrorTx = Sha256Hash.ZERO_HASH.toString();
                 for(String txid : result.keySet()) {
@@ -739,7 +878,7 @@ public class ElectrumServer {
                         continue;
                     }
 
-                    byte[] rawtx = Utils.hexToBytes(strRawTx);
+                    byte[] rawtx = HexCodec.decode(strRawTx);
                     Transaction transaction;
 
                     try {
@@ -749,11 +888,10 @@ public class ElectrumServer {
                         continue;
                     }
 
-                    Optional<BlockTransactionHash> optionalReference = references.keySet().stream().filter(reference -> reference.getHash().equals(hash)).findFirst();
-                    if(optionalReference.isEmpty()) {
+                    BlockTransactionHash reference = hashReferences.get(hash);
+                    if(reference == null) {
                         throw new IllegalStateException("Returned transaction " + hash.toString() + " that was not requested");
                     }
-                    BlockTransactionHash reference = optionalReference.get();
 
                     references.put(reference, transaction);
                 }
@@ -777,6 +915,11 @@ public class ElectrumServer {
 
                 transactionMap.put(reference.getHash(), blockchainTransaction);
                 checkReferences.remove(reference);
+
+                if(blockchainCache != null && transaction != null && isCacheable(reference.getHeight())) {
+                    Sha256Hash blockHash = BlockchainCache.getBlockHash(blockHeaderMap.get(reference.getHeight()));
+                    blockchainCache.putTransaction(new BlockTransaction(reference.getHash(), reference.getHeight(), blockDate, reference.getFee(), transaction, blockHash));
+                }
             }
 
             if(!checkReferences.isEmpty()) {
@@ -794,13 +937,31 @@ public class ElectrumServer {
     }
 
     public void calculateNodeHistory(Wallet wallet, Map<WalletNode, Set<BlockTransactionHash>> nodeTransactionMap) {
-        for(WalletNode node : nodeTransactionMap.keySet()) {
-            calculateNodeHistory(wallet, nodeTransactionMap, node);
+        calculateNodeHistory(wallet, nodeTransactionMap, (WalletHistoryJournal)null);
+    }
+
+    public void calculateNodeHistory(Wallet wallet, Map<WalletNode, Set<BlockTransactionHash>> nodeTransactionMap, WalletHistoryJournal historyJournal) {
+        //Calculating the outputs of each node only reads the wallet transactions, so is done in parallel for larger wallets before the nodes are updated in order
+        Stream<WalletNode> nodes = nodeTransactionMap.size() > PARALLEL_NODE_HISTORY_THRESHOLD ? nodeTransactionMap.keySet().parallelStream() : nodeTransactionMap.keySet().stream();
+        Map<WalletNode, Set<BlockTransactionHashIndex>> nodeTransactionOutputs = nodes
+                .collect(Collectors.toMap(node -> node, node -> getNodeTransactionOutputs(wallet, nodeTransactionMap, node), (u, v) -> u, LinkedHashMap::new));
+
+        for(Map.Entry<WalletNode, Set<BlockTransactionHashIndex>> entry : nodeTransactionOutputs.entrySet()) {
+            updateNodeHistory(wallet, entry.getKey(), entry.getValue(), historyJournal);
         }
     }
 
     public void calculateNodeHistory(Wallet wallet, Map<WalletNode, Set<BlockTransactionHash>> nodeTransactionMap, WalletNode node) {
+        calculateNodeHistory(wallet, nodeTransactionMap, node, null);
+    }
+
+    public void calculateNodeHistory(Wallet wallet, Map<WalletNode, Set<BlockTransactionHash>> nodeTransactionMap, WalletNode node, WalletHistoryJournal historyJournal) {
+        updateNodeHistory(wallet, node, getNodeTransactionOutputs(wallet, nodeTransactionMap, node), historyJournal);
+    }
+
+    private Set<BlockTransactionHashIndex> getNodeTransactionOutputs(Wallet wallet, Map<WalletNode, Set<BlockTransactionHash>> nodeTransactionMap, WalletNode node) {
         Set<BlockTransactionHashIndex> transactionOutputs = new TreeSet<>();
+        Map<HashIndex, BlockTransactionHashIndex> outpointTransactionOutputs = new HashMap<>();
 
         //First check all provided txes that pay to this node
         Script nodeScript = node.getOutputScript();
@@ -821,6 +982,7 @@ public class ElectrumServer {
                 if (output.getScript().equals(nodeScript)) {
                     BlockTransactionHashIndex receivingTXO = new BlockTransactionHashIndex(reference.getHash(), reference.getHeight(), blockTransaction.getDate(), reference.getFee(), output.getIndex(), output.getValue());
                     transactionOutputs.add(receivingTXO);
+                    outpointTransactionOutputs.put(new HashIndex(reference.getHash(), output.getIndex()), receivingTXO);
                 }
             }
         }
@@ -858,19 +1020,25 @@ public class ElectrumServer {
                     BlockTransactionHashIndex spendingTXI = new BlockTransactionHashIndex(reference.getHash(), reference.getHeight(), blockTransaction.getDate(), reference.getFee(), inputIndex, spentOutput.getValue());
                     BlockTransactionHashIndex spentTXO = new BlockTransactionHashIndex(spentTxHash.getHash(), spentTxHash.getHeight(), previousTransaction.getDate(), spentTxHash.getFee(), spentOutput.getIndex(), spentOutput.getValue(), spendingTXI);
 
-                    Optional<BlockTransactionHashIndex> optionalReference = transactionOutputs.stream().filter(receivedTXO -> receivedTXO.getHash().equals(spentTXO.getHash()) && receivedTXO.getIndex() == spentTXO.getIndex()).findFirst();
-                    if(optionalReference.isEmpty()) {
+                    BlockTransactionHashIndex receivedTXO = outpointTransactionOutputs.get(new HashIndex(spentTXO.getHash(), spentTXO.getIndex()));
+                    if(receivedTXO == null) {
                         throw new IllegalStateException("Found spent transaction output " + spentTXO + " but no record of receiving it");
                     }
 
-                    BlockTransactionHashIndex receivedTXO = optionalReference.get();
                     receivedTXO.setSpentBy(spendingTXI);
                 }
             }
         }
 
+        return transactionOutputs;
+    }
+
+    private void updateNodeHistory(Wallet wallet, WalletNode node, Set<BlockTransactionHashIndex> transactionOutputs, WalletHistoryJournal historyJournal) {
         if(!transactionOutputs.equals(node.getTransactionOutputs())) {
             node.updateTransactionOutputs(wallet, transactionOutputs);
+            if(historyJournal != null) {
+                historyJournal.recordChanged(node);
+            }
             copyPostmixLabels(wallet, transactionOutputs);
             copyBadbankLabels(wallet, transactionOutputs);
         }
@@ -1119,7 +1287,7 @@ public class ElectrumServer {
 
     public Sha256Hash broadcastTransaction(Transaction transaction) throws ServerException {
         byte[] rawtxBytes = transaction.bitcoinSerialize();
-        String rawtxHex = Utils.bytesToHex(rawtxBytes);
+        String rawtxHex = HexCodec.encode(rawtxBytes);
 
         try {
             String strTxHash = electrumServerRpc.broadcastTransaction(getTransport(), rawtxHex);
@@ -1137,7 +1305,7 @@ public class ElectrumServer {
     public Set<String> getMempoolScriptHashes(Wallet wallet, Sha256Hash txId, Set<WalletNode> transactionNodes) throws ServerException {
         Map<String, String> pathScriptHashes = new LinkedHashMap<>(transactionNodes.size());
         for(WalletNode node : transactionNodes) {
-            pathScriptHashes.put(node.getDerivationPath(), getScriptHash(node));
+            pathScriptHashes.put(node.getDerivationPath(), getScriptHash(wallet, node));
         }
 
         Set<String> mempoolScriptHashes = new LinkedHashSet<>();
@@ -1172,7 +1340,7 @@ public class ElectrumServer {
             }
 
             try {
-                Transaction transaction = new Transaction(Utils.hexToBytes(strRawTx));
+                Transaction transaction = new Transaction(HexCodec.decode(strRawTx));
                 for(TransactionOutput txOutput : transaction.getOutputs()) {
                     if(txOutput.getScript().equals(outputScript)) {
                         transactionOutputs.add(txOutput);
@@ -1194,14 +1362,7 @@ public class ElectrumServer {
     }
 
     public static Map<String, WalletNode> getAllScriptHashes(Wallet wallet) {
-        Map<String, WalletNode> scriptHashes = new HashMap<>();
-        for(KeyPurpose keyPurpose : KeyPurpose.DEFAULT_PURPOSES) {
-            for(WalletNode childNode : wallet.getNode(keyPurpose).getChildren()) {
-                scriptHashes.put(getScriptHash(childNode), childNode);
-            }
-        }
-
-        return scriptHashes;
+        return ScriptHashIndex.get(wallet).getScriptHashNodes();
     }
 
     private static TransactionOutput getPrevOutput(Wallet wallet, TransactionInput txInput) {
@@ -1212,26 +1373,24 @@ public class ElectrumServer {
         }
     }
 
+    private static String getScriptHash(Wallet wallet, WalletNode node) {
+        return ScriptHashIndex.get(wallet).getScriptHash(node);
+    }
+
     public static String getScriptHash(WalletNode node) {
-        byte[] hash = Sha256Hash.hash(node.getOutputScript().getProgram());
-        byte[] reversed = Utils.reverseBytes(hash);
-        return Utils.bytesToHex(reversed);
+        return HexCodec.encodeReversed(Sha256Hash.hash(node.getOutputScript().getProgram()));
     }
 
     public static String getScriptHash(TransactionOutput output) {
-        byte[] hash = Sha256Hash.hash(output.getScript().getProgram());
-        byte[] reversed = Utils.reverseBytes(hash);
-        return Utils.bytesToHex(reversed);
+        return HexCodec.encodeReversed(Sha256Hash.hash(output.getScript().getProgram()));
     }
 
     public static String getScriptHash(Address address) {
-        byte[] hash = Sha256Hash.hash(address.getOutputScript().getProgram());
-        byte[] reversed = Utils.reverseBytes(hash);
-        return Utils.bytesToHex(reversed);
+        return HexCodec.encodeReversed(Sha256Hash.hash(address.getOutputScript().getProgram()));
     }
 
-    public static Map<String, List<String>> getSubscribedScriptHashes() {
-        return subscribedScriptHashes;
+    public static List<String> getSubscribedScriptHashStatuses(String scriptHash) {
+        return subscribedScriptHashes.get(scriptHash);
     }
 
     public static String getSubscribedScriptHashStatus(String scriptHash) {
@@ -1244,12 +1403,31 @@ public class ElectrumServer {
     }
 
     public static void updateSubscribedScriptHashStatus(String scriptHash, String status) {
-        List<String> existingStatuses = subscribedScriptHashes.computeIfAbsent(scriptHash, k -> new ArrayList<>());
+        List<String> existingStatuses = subscribedScriptHashes.computeIfAbsent(scriptHash, k -> new CopyOnWriteArrayList<>());
+        if(!existingStatuses.isEmpty() && !Objects.equals(existingStatuses.getLast(), status)) {
+            HistoryRefreshCoordinator.invalidateHistory(scriptHash);
+        }
         existingStatuses.add(status);
+        while(existingStatuses.size() > MAX_SUBSCRIBED_STATUSES) {
+            existingStatuses.removeFirst();
+        }
     }
 
     public static void updateRetrievedBlockHeaders(Integer blockHeight, BlockHeader blockHeader) {
         retrievedBlockHeaders.put(blockHeight, blockHeader);
+
+        HeaderChainStore headerChainStore = HeaderChainStore.get();
+        if(headerChainStore != null) {
+            headerChainStore.putTipHeader(blockHeight, blockHeader);
+        }
+    }
+
+    /**
+     * Transactions with enough confirmations are not expected to change, and can be kept in the shared caches
+     */
+    private static boolean isCacheable(int height) {
+        Integer currentHeight = AppServices.getCurrentBlockHeight();
+        return height > 0 && currentHeight != null && currentHeight - height + 1 >= BlockTransactionHash.BLOCKS_TO_CONFIRM;
     }
 
     public static ServerCapability getServerCapability(List<String> serverVersion) {
@@ -1466,10 +1644,18 @@ public class ElectrumServer {
                             electrumServerRpc = new BatchedElectrumServerRpc(electrumServerRpc.getIdCounterValue(), serverCapability.getMaxTargetBlocks());
                         }
 
+                        //Servers that support batching also handle multiple requests in flight, so allow requests from different services to be pipelined
+                        if(getTransport() instanceof TcpTransport tcpTransport) {
+                            tcpTransport.setPipelined(serverCapability.supportsBatching());
+                        }
+
                         BlockHeaderTip tip;
                         if(subscribe) {
                             tip = electrumServer.subscribeBlockHeaders();
                             subscribedScriptHashes.clear();
+                            if(tip.hex != null) {
+                                updateRetrievedBlockHeaders(tip.height, tip.getBlockHeader());
+                            }
                         } else {
                             tip = new BlockHeaderTip();
                         }
@@ -1641,7 +1827,7 @@ public class ElectrumServer {
 
                 try {
                     electrumServerRpc.subscribeScriptHashes(transport, null, subscribeScriptHashes);
-                    subscribeScriptHashes.values().forEach(scriptHash -> subscribedRecent.put(scriptHash, AppServices.getCurrentBlockHeight()));
+                    subscribeScriptHashes.values().forEach(scriptHash -> subscribedRecent.put(scriptHash, AppServices.getCurrentBlockHeight() == null ? 0 : AppServices.getCurrentBlockHeight()));
                 } catch(ElectrumServerRpcException e) {
                     log.debug("Error subscribing to recent mempool transaction outputs", e);
                 }
@@ -1670,18 +1856,21 @@ public class ElectrumServer {
         private final Wallet mainWallet;
         private final List<Wallet> filterToWallets;
         private final Set<WalletNode> filterToNodes;
+        private final WalletHistoryJournal historyJournal;
         private final static Map<Integer, WalletLock> walletLocks = Collections.synchronizedMap(new HashMap<>());
 
         public TransactionHistoryService(Wallet wallet) {
             this.mainWallet = wallet;
             this.filterToWallets = null;
             this.filterToNodes = null;
+            this.historyJournal = null;
         }
 
-        public TransactionHistoryService(Wallet mainWallet, List<Wallet> filterToWallets, Set<WalletNode> filterToNodes) {
+        public TransactionHistoryService(Wallet mainWallet, List<Wallet> filterToWallets, Set<WalletNode> filterToNodes, WalletHistoryJournal historyJournal) {
             this.mainWallet = mainWallet;
             this.filterToWallets = filterToWallets;
             this.filterToNodes = filterToNodes;
+            this.historyJournal = historyJournal;
         }
 
         @Override
@@ -1694,14 +1883,20 @@ public class ElectrumServer {
                         }
                     }
 
-                    boolean historyFetched = getTransactionHistory(mainWallet);
-                    for(Wallet childWallet : new ArrayList<>(mainWallet.getChildWallets())) {
-                        if(childWallet.isNested()) {
-                            historyFetched |= getTransactionHistory(childWallet);
+                    //Wallets refreshing at the same time share the results of their requests
+                    HistoryRefreshCoordinator.beginRefresh();
+                    try {
+                        boolean historyFetched = getTransactionHistory(mainWallet);
+                        for(Wallet childWallet : new ArrayList<>(mainWallet.getChildWallets())) {
+                            if(childWallet.isNested()) {
+                                historyFetched |= getTransactionHistory(childWallet);
+                            }
                         }
-                    }
 
-                    return historyFetched;
+                        return historyFetched;
+                    } finally {
+                        HistoryRefreshCoordinator.endRefresh();
+                    }
                 }
             };
         }
@@ -1729,13 +1924,14 @@ public class ElectrumServer {
                     Map<String, String> previousScriptHashes = getCalculatedScriptHashes(wallet);
                     Map<WalletNode, Set<BlockTransactionHash>> nodeTransactionMap = (nodes == null ? electrumServer.getHistory(wallet) : electrumServer.getHistory(wallet, nodes));
                     electrumServer.getReferencedTransactions(wallet, nodeTransactionMap);
-                    electrumServer.calculateNodeHistory(wallet, nodeTransactionMap);
+                    electrumServer.calculateNodeHistory(wallet, nodeTransactionMap, historyJournal);
 
                     //Add all of the script hashes we have now fetched the history for so we don't need to fetch again until the script hash status changes
                     Set<WalletNode> updatedNodes = new HashSet<>();
                     Map<WalletNode, Set<BlockTransactionHashIndex>> walletNodes = wallet.getWalletNodes();
+                    ScriptHashIndex scriptHashIndex = ScriptHashIndex.get(wallet);
                     for(WalletNode node : (nodes == null ? walletNodes.keySet() : nodes)) {
-                        String scriptHash = getScriptHash(node);
+                        String scriptHash = scriptHashIndex.getScriptHash(node);
                         String subscribedStatus = getSubscribedScriptHashStatus(scriptHash);
                         if(!Objects.equals(subscribedStatus, retrievedScriptHashes.get(scriptHash))) {
                             updatedNodes.add(node);
@@ -1747,7 +1943,7 @@ public class ElectrumServer {
                     if(nodes == null && previousScriptHashes.values().stream().anyMatch(Objects::nonNull)) {
                         if(!updatedNodes.isEmpty()
                                 && updatedNodes.equals(walletNodes.entrySet().stream().filter(entry -> !entry.getValue().isEmpty()).map(Map.Entry::getKey).collect(Collectors.toSet()))
-                                && !sameHeightTxioScriptHashes.containsAll(updatedNodes.stream().map(ElectrumServer::getScriptHash).collect(Collectors.toSet()))) {
+                                && !sameHeightTxioScriptHashes.containsAll(updatedNodes.stream().map(scriptHashIndex::getScriptHash).collect(Collectors.toSet()))) {
                             //All used nodes on a non-empty wallet have changed history. Abort and trigger a full refresh.
                             log.info("All used nodes on a non-empty wallet have changed history. Triggering a full wallet refresh.");
                             throw new AllHistoryChangedException();
@@ -1757,10 +1953,13 @@ public class ElectrumServer {
                     //Clear transaction outputs for nodes that have no history - this is useful when a transaction is replaced in the mempool
                     if(nodes != null) {
                         for(WalletNode node : nodes) {
-                            String scriptHash = getScriptHash(node);
+                            String scriptHash = scriptHashIndex.getScriptHash(node);
                             if(retrievedScriptHashes.get(scriptHash) == null && !node.getTransactionOutputs().isEmpty()) {
                                 log.debug("Clearing transaction history for " + node);
                                 node.getTransactionOutputs().clear();
+                                if(historyJournal != null) {
+                                    historyJournal.recordChanged(node);
+                                }
                             }
                         }
                     }
@@ -1854,9 +2053,17 @@ public class ElectrumServer {
             return new Task<>() {
                 protected Map<Sha256Hash, BlockTransaction> call() throws ServerException {
                     Map<Sha256Hash, BlockTransaction> transactionMap = new HashMap<>();
+                    BlockchainCache blockchainCache = BlockchainCache.get();
                     for(Sha256Hash ref : references) {
-                        if(retrievedTransactions.containsKey(ref)) {
-                            transactionMap.put(ref, retrievedTransactions.get(ref));
+                        BlockTransaction retrievedTransaction = retrievedTransactions.get(ref);
+                        if(retrievedTransaction != null) {
+                            transactionMap.put(ref, retrievedTransaction);
+                        } else if(blockchainCache != null) {
+                            BlockTransaction cachedTransaction = blockchainCache.getTransaction(ref);
+                            if(cachedTransaction != null) {
+                                transactionMap.put(ref, cachedTransaction);
+                                retrievedTransactions.put(ref, cachedTransaction);
+                            }
                         }
                     }
 
@@ -1872,6 +2079,9 @@ public class ElectrumServer {
                             if(fetchedEntry.getValue() != null && !Sha256Hash.ZERO_HASH.equals(fetchedEntry.getValue().getBlockHash()) &&
                                     AppServices.getCurrentBlockHeight() != null && fetchedEntry.getValue().getConfirmations(AppServices.getCurrentBlockHeight()) >= BlockTransactionHash.BLOCKS_TO_CONFIRM) {
                                 retrievedTransactions.put(fetchedEntry.getKey(), fetchedEntry.getValue());
+                                if(blockchainCache != null) {
+                                    blockchainCache.putTransaction(fetchedEntry.getValue());
+                                }
                             }
                         }
                     }
@@ -2064,14 +2274,14 @@ public class ElectrumServer {
         }
 
         private void subscribeRecent(ElectrumServer electrumServer, int currentHeight) {
-            Set<String> unsubscribeScriptHashes = subscribedRecent.entrySet().stream().filter(entry -> entry.getValue() == null || entry.getValue() <= currentHeight - 3)
+            Set<String> unsubscribeScriptHashes = subscribedRecent.asMap().entrySet().stream().filter(entry -> entry.getValue() == null || entry.getValue() <= currentHeight - 3)
                     .map(Map.Entry::getKey).collect(Collectors.toSet());
             unsubscribeScriptHashes.removeIf(subscribedScriptHashes::containsKey);
             if(!unsubscribeScriptHashes.isEmpty() && serverCapability.supportsUnsubscribe()) {
                 electrumServerRpc.unsubscribeScriptHashes(transport, unsubscribeScriptHashes);
             }
-            subscribedRecent.keySet().removeAll(unsubscribeScriptHashes);
-            broadcastRecent.keySet().removeAll(unsubscribeScriptHashes);
+            subscribedRecent.removeAll(unsubscribeScriptHashes);
+            broadcastRecent.removeAll(unsubscribeScriptHashes);
 
             Map<String, String> subscribeScriptHashes = new HashMap<>();
             List<BlockTransaction> recentTransactions = electrumServer.getRecentMempoolTransactions();
@@ -0,0 +1,383 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.sparrowwallet.drongo.Network;
+import com.sparrowwallet.drongo.Utils;
+import com.sparrowwallet.drongo.protocol.BlockHeader;
+import com.sparrowwallet.drongo.protocol.Sha256Hash;
+import com.sparrowwallet.sparrow.io.Storage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * A local store of block headers, held as a memory-mapped file of 80 byte headers indexed by height.
+ * Headers are filled in by chunks as they are needed, so the store may have gaps. Missing headers are stored as zeros.
+ * Each header is checked for proof of work against the network's minimum difficulty, against the difficulty expected from the headers before it, against known checkpoints, and for linkage to its neighbours.
+ * Stored headers that no longer link are removed, so that a reorg replaces them. The store is cleared when changing server.
+ */
+public class HeaderChainStore {
+    private static final Logger log = LoggerFactory.getLogger(HeaderChainStore.class);
+
+    public static final String HEADERS_FILENAME = "headers.dat";
+    public static final int HEADER_LENGTH = 80;
+    public static final int CHUNK_SIZE = 2016;
+    private static final int GROWTH_HEADERS = CHUNK_SIZE * 50;
+
+    private static final int PREV_HASH_OFFSET = 4;
+    private static final int TIME_OFFSET = 68;
+    private static final int BITS_OFFSET = 72;
+    private static final int CLEAR_BLOCK_HEADERS = 16384;
+
+    private static final long TARGET_TIMESPAN = 14 * 24 * 60 * 60;
+
+    //The easiest target allowed on each network, as compact bits
+    private static final Map<Network, Long> POW_LIMITS = Map.of(
+            Network.MAINNET, 0x1d00ffffL,
+            Network.TESTNET, 0x1d00ffffL,
+            Network.TESTNET4, 0x1d00ffffL,
+            Network.SIGNET, 0x1e0377aeL,
+            Network.REGTEST, 0x207fffffL
+    );
+
+    private static final Map<Network, Map<Integer, String>> CHECKPOINTS = Map.of(
+            Network.MAINNET, Map.ofEntries(
+                    Map.entry(0, "000000000019d6689c085ae165831e934ff763ae46a2a6c172b3f1b60a8ce26f"),
+                    Map.entry(11111, "0000000069e244f73d78e8fd29ba2fd2ed618bd6fa2ee92559f542fdb26e7c1d"),
+                    Map.entry(33333, "000000002dd5588a74784eaa7ab0507a18ad16a236e7b1ce69f00d7ddfb5d0a6"),
+                    Map.entry(74000, "0000000000573993a3c9e41ce34471c079dcf5f52a0e824a81e7f953b8661a20"),
+                    Map.entry(105000, "00000000000291ce28027faea320c8d2b054b2e0fe44a773f3eefb151d6bdc97"),
+                    Map.entry(134444, "00000000000005b12ffd4cd315cd34ffd4a594f430ac814c91184a0d42d2b0fe"),
+                    Map.entry(168000, "000000000000099e61ea72015e79632f216fe6cb33d7899acb35b75c8303b763"),
+                    Map.entry(193000, "000000000000059f452a5f7340de6682a977387c17010ff6e6c3bd83ca8b1317"),
+                    Map.entry(210000, "000000000000048b95347e83192f69cf0366076336c639f9b7228e9ba171342e"),
+                    Map.entry(216116, "00000000000001b4f4b433e81ee46494af945cf96014816a4e2370f11b23df4e"),
+                    Map.entry(225430, "00000000000001c108384350f74090433e7fcf79a606b8e797f065b130575932"),
+                    Map.entry(250000, "000000000000003887df1f29024b06fc2200b55f8af8f35453d7be294df2d214"),
+                    Map.entry(279000, "0000000000000001ae8c72a0b0c301f67e3afca10e819efa9041e458e9bd7e40"),
+                    Map.entry(295000, "00000000000000004d9b4ef50f0f9d686fd69db2e03af35a100370c64632a983")
+            ),
+            Network.TESTNET, Map.of(
+                    0, "000000000933ea01ad0ee984209779baaec3ced90fa3f408719526f8d77f4943",
+                    546, "000000002a936ca763904c3c35fce2f3556c559c0214345d31b1bcebf76acb70"
+            ),
+            Network.SIGNET, Map.of(
+                    0, "00000008819873e925422c1ff0f99f7cc9bbb232af63a077a480a3633bee1ef6"
+            ),
+            Network.REGTEST, Map.of(
+                    0, "0f9188f13cb7b2c71f2a335e3a4fc328bf5beb436012afca590b1a11466e2206"
+            )
+    );
+
+    private static HeaderChainStore INSTANCE;
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int tipHeight;
+
+    HeaderChainStore(File headersFile) throws IOException {
+        this.channel = FileChannel.open(headersFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int storedHeaders = (int)(channel.size() / HEADER_LENGTH);
+        map(Math.max(storedHeaders, GROWTH_HEADERS));
+    }
+
+    /**
+     * Returns the shared store, or null if the headers file could not be opened
+     */
+    public static synchronized HeaderChainStore get() {
+        if(INSTANCE == null) {
+            File headersFile = new File(Storage.getCacheDir(), HEADERS_FILENAME);
+            try {
+                INSTANCE = new HeaderChainStore(headersFile);
+            } catch(Exception e) {
+                log.warn("Could not open header store at " + headersFile.getAbsolutePath() + ", continuing without it", e);
+                return null;
+            }
+        }
+
+        return INSTANCE;
+    }
+
+    public static synchronized void close() {
+        if(INSTANCE != null) {
+            INSTANCE.closeStore();
+            INSTANCE = null;
+        }
+    }
+
+    synchronized void closeStore() {
+        try {
+            buffer.force();
+            channel.close();
+        } catch(Exception e) {
+            log.warn("Error closing header store", e);
+        }
+    }
+
+    /**
+     * Removes all stored headers, so that headers from a previous server are not relied on
+     */
+    public synchronized void clear() {
+        clear(0, capacity - 1);
+        tipHeight = 0;
+    }
+
+    private void map(int headers) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long)headers * HEADER_LENGTH);
+        capacity = headers;
+    }
+
+    public synchronized BlockHeader getBlockHeader(int height) {
+        byte[] header = getHeaderBytes(height);
+        return header == null ? null : new BlockHeader(header);
+    }
+
+    public synchronized int getTipHeight() {
+        return tipHeight;
+    }
+
+    /**
+     * Stores the header at the tip of the chain as notified by the server, removing any stored headers that it replaces
+     */
+    public synchronized boolean putTipHeader(int height, BlockHeader blockHeader) {
+        byte[] header = blockHeader.bitcoinSerialize();
+        if(height < 0 || header.length != HEADER_LENGTH || !isValid(height, header, this::getHeaderBytes)) {
+            log.warn("Rejected invalid tip header at height " + height);
+            return false;
+        }
+
+        //A lower tip with a header already stored is from a server that is behind, while a changed header replaces the headers above it when stored
+        byte[] existing = getHeaderBytes(height);
+        putHeader(height, header);
+        if(height >= tipHeight || !Arrays.equals(existing, header)) {
+            tipHeight = height;
+        }
+
+        return true;
+    }
+
+    /**
+     * Stores a contiguous run of headers starting at the given height, as returned by blockchain.block.headers.
+     * The run is rejected if any header does not link to the previous one, fails proof of work, does not have the expected difficulty or does not match a checkpoint.
+     */
+    public synchronized boolean putBlockHeaders(int startHeight, byte[] headers) {
+        return putBlockHeaders(startHeight, headers, headers.length);
+    }
+
+    /**
+     * Stores the headers in the first length bytes of the array, which are copied so that the array may be reused
+     */
+    public synchronized boolean putBlockHeaders(int startHeight, byte[] headers, int length) {
+        if(length % HEADER_LENGTH != 0) {
+            return false;
+        }
+
+        if(startHeight < 0) {
+            return false;
+        }
+
+        int count = length / HEADER_LENGTH;
+        //Headers earlier in the run are used in preference to stored headers when checking the expected difficulty
+        IntFunction<byte[]> runHeaders = height -> height >= startHeight && height < startHeight + count ?
+                Arrays.copyOfRange(headers, (height - startHeight) * HEADER_LENGTH, (height - startHeight + 1) * HEADER_LENGTH) : getHeaderBytes(height);
+        byte[] previous = null;
+        for(int i = 0; i < count; i++) {
+            byte[] header = Arrays.copyOfRange(headers, i * HEADER_LENGTH, (i + 1) * HEADER_LENGTH);
+            if((previous != null && !linksTo(header, previous)) || !isValid(startHeight + i, header, runHeaders)) {
+                log.warn("Rejected invalid block headers from height " + startHeight + " at height " + (startHeight + i));
+                return false;
+            }
+            previous = header;
+        }
+
+        for(int i = 0; i < count; i++) {
+            putHeader(startHeight + i, Arrays.copyOfRange(headers, i * HEADER_LENGTH, (i + 1) * HEADER_LENGTH));
+        }
+
+        return true;
+    }
+
+    private void putHeader(int height, byte[] header) {
+        byte[] existing = getHeaderBytes(height);
+        if(Arrays.equals(existing, header)) {
+            return;
+        }
+
+        try {
+            ensureCapacity(height);
+        } catch(IOException e) {
+            log.warn("Could not extend header store", e);
+            return;
+        }
+
+        if(existing != null) {
+            log.info("Block header at height " + height + " has changed");
+            invalidate(height);
+        }
+
+        //Remove stored neighbours that do not link to this header, as they are from a different chain
+        byte[] previous = getHeaderBytes(height - 1);
+        if(previous != null && !linksTo(header, previous)) {
+            clear(height - 1, height - 1);
+        }
+        byte[] next = getHeaderBytes(height + 1);
+        if(next != null && !linksTo(next, header)) {
+            clear(height + 1, Math.max(height + 1, tipHeight));
+        }
+
+        buffer.put((int)((long)height * HEADER_LENGTH), header);
+    }
+
+    private byte[] getHeaderBytes(int height) {
+        if(height < 0 || height >= capacity) {
+            return null;
+        }
+
+        byte[] header = new byte[HEADER_LENGTH];
+        buffer.get((int)((long)height * HEADER_LENGTH), header);
+
+        //A valid header always has a non-zero difficulty target
+        for(int i = BITS_OFFSET; i < BITS_OFFSET + 4; i++) {
+            if(header[i] != 0) {
+                return header;
+            }
+        }
+
+        return null;
+    }
+
+    private void clear(int fromHeight, int toHeight) {
+        int from = Math.max(fromHeight, 0);
+        int to = Math.min(toHeight, capacity - 1);
+        if(from > to) {
+            return;
+        }
+
+        byte[] empty = new byte[Math.min(to - from + 1, CLEAR_BLOCK_HEADERS) * HEADER_LENGTH];
+        for(int height = from; height <= to; height += CLEAR_BLOCK_HEADERS) {
+            int headers = Math.min(to - height + 1, CLEAR_BLOCK_HEADERS);
+            buffer.put((int)((long)height * HEADER_LENGTH), empty, 0, headers * HEADER_LENGTH);
+        }
+        invalidate(from);
+    }
+
+    private void invalidate(int height) {
+        BlockchainCache blockchainCache = BlockchainCache.get();
+        if(blockchainCache != null) {
+            blockchainCache.invalidateTransactionsFromHeight(height);
+        }
+    }
+
+    private void ensureCapacity(int height) throws IOException {
+        if(height >= capacity) {
+            map(((height / GROWTH_HEADERS) + 1) * GROWTH_HEADERS);
+        }
+    }
+
+    private static boolean linksTo(byte[] header, byte[] previous) {
+        byte[] previousHash = Sha256Hash.twiceOf(previous).getBytes();
+        return Arrays.equals(header, PREV_HASH_OFFSET, PREV_HASH_OFFSET + 32, previousHash, 0, 32);
+    }
+
+    /**
+     * Checks a header at the given height, using the function to retrieve the headers before it on the same chain
+     */
+    private static boolean isValid(int height, byte[] header, IntFunction<byte[]> previousHeaders) {
+        return hasValidProofOfWork(header) && matchesCheckpoint(height, header) && hasExpectedDifficulty(height, header, previousHeaders);
+    }
+
+    static boolean hasValidProofOfWork(byte[] header) {
+        BigInteger target = decodeCompact(getBits(header));
+        Long powLimit = POW_LIMITS.get(Network.get());
+        if(target == null || (powLimit != null && target.compareTo(decodeCompact(powLimit)) > 0)) {
+            return false;
+        }
+
+        BigInteger hash = new BigInteger(1, Sha256Hash.twiceOf(header).getReversedBytes());
+        return hash.compareTo(target) <= 0;
+    }
+
+    static boolean matchesCheckpoint(int height, byte[] header) {
+        String checkpoint = CHECKPOINTS.getOrDefault(Network.get(), Map.of()).get(height);
+        return checkpoint == null || checkpoint.equals(Utils.bytesToHex(Sha256Hash.twiceOf(header).getReversedBytes()));
+    }
+
+    /**
+     * Checks the difficulty of a header against the header before it if available. Within a retarget period the difficulty must not change.
+     * At a retarget the new difficulty must be that calculated from the period before it, or if the start of that period is not available, within the factor of four a retarget allows.
+     * Testnets allow minimum difficulty blocks and have other exceptions to these rules, so are only checked against the minimum difficulty.
+     */
+    static boolean hasExpectedDifficulty(int height, byte[] header, IntFunction<byte[]> previousHeaders) {
+        Network network = Network.get();
+        if(network != Network.MAINNET && network != Network.SIGNET && network != Network.REGTEST) {
+            return true;
+        }
+
+        byte[] previous = height > 0 ? previousHeaders.apply(height - 1) : null;
+        if(previous == null || !linksTo(header, previous)) {
+            return true;
+        }
+
+        long bits = getBits(header);
+        long previousBits = getBits(previous);
+        if(height % CHUNK_SIZE != 0 || network == Network.REGTEST) {
+            return bits == previousBits;
+        }
+
+        BigInteger previousTarget = decodeCompact(previousBits);
+        BigInteger powLimit = decodeCompact(POW_LIMITS.get(network));
+        byte[] first = previousHeaders.apply(height - CHUNK_SIZE);
+        if(first != null) {
+            long timespan = Math.min(Math.max(getTime(previous) - getTime(first), TARGET_TIMESPAN / 4), TARGET_TIMESPAN * 4);
+            BigInteger expectedTarget = previousTarget.multiply(BigInteger.valueOf(timespan)).divide(BigInteger.valueOf(TARGET_TIMESPAN)).min(powLimit);
+            return bits == encodeCompact(expectedTarget);
+        }
+
+        BigInteger target = decodeCompact(bits);
+        BigInteger minTarget = decodeCompact(encodeCompact(previousTarget.shiftRight(2)));
+        return target != null && target.compareTo(minTarget) >= 0 && target.compareTo(previousTarget.shiftLeft(2).min(powLimit)) <= 0;
+    }
+
+    private static long getBits(byte[] header) {
+        return getUInt32(header, BITS_OFFSET);
+    }
+
+    private static long getTime(byte[] header) {
+        return getUInt32(header, TIME_OFFSET);
+    }
+
+    private static long getUInt32(byte[] header, int offset) {
+        return (header[offset] & 0xFFL) | ((header[offset + 1] & 0xFFL) << 8) | ((header[offset + 2] & 0xFFL) << 16) | ((header[offset + 3] & 0xFFL) << 24);
+    }
+
+    static BigInteger decodeCompact(long bits) {
+        int exponent = (int)(bits >>> 24);
+        BigInteger mantissa = BigInteger.valueOf(bits & 0x007fffffL);
+        if(mantissa.signum() == 0 || (bits & 0x00800000L) != 0) {
+            return null;
+        }
+
+        return exponent <= 3 ? mantissa.shiftRight(8 * (3 - exponent)) : mantissa.shiftLeft(8 * (exponent - 3));
+    }
+
+    static long encodeCompact(BigInteger target) {
+        int size = (target.bitLength() + 7) / 8;
+        long compact = size <= 3 ? target.longValue() << (8 * (3 - size)) : target.shiftRight(8 * (size - 3)).longValue();
+        //The mantissa is signed, so a set high bit is moved into the exponent
+        if((compact & 0x00800000L) != 0) {
+            compact >>= 8;
+            size++;
+        }
+
+        return compact | ((long)size << 24);
+    }
+}
@@ -0,0 +1,94 @@
+package com.sparrowwallet.sparrow.net;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Table driven hex conversion for the raw transactions, block headers and script hashes exchanged with the server.
+ * Decoding writes straight into the destination array, and encoding builds the string from a single Latin-1 byte array.
+ */
+public final class HexCodec {
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte)-1);
+        for(int i = 0; i < 10; i++) {
+            HEX_VALUES['0' + i] = (byte)i;
+        }
+        for(int i = 0; i < 6; i++) {
+            HEX_VALUES['a' + i] = (byte)(10 + i);
+            HEX_VALUES['A' + i] = (byte)(10 + i);
+        }
+    }
+
+    private HexCodec() {}
+
+    public static byte[] decode(CharSequence hex) {
+        byte[] bytes = new byte[getDecodedLength(hex)];
+        decodeInto(hex, bytes);
+        return bytes;
+    }
+
+    /**
+     * Decodes into the start of a buffer that may be reused between calls, returning the number of bytes written
+     */
+    public static int decode(CharSequence hex, byte[] buffer) {
+        int length = getDecodedLength(hex);
+        if(length > buffer.length) {
+            throw new IllegalArgumentException("Buffer of " + buffer.length + " bytes is too small to decode " + length + " bytes");
+        }
+
+        decodeInto(hex, buffer);
+        return length;
+    }
+
+    public static String encode(byte[] bytes) {
+        byte[] chars = new byte[bytes.length * 2];
+        for(int i = 0; i < bytes.length; i++) {
+            int value = bytes[i] & 0xff;
+            chars[i * 2] = HEX_DIGITS[value >>> 4];
+            chars[i * 2 + 1] = HEX_DIGITS[value & 0x0f];
+        }
+
+        return new String(chars, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Encodes the bytes in reverse order, as displayed for script hashes and txids, without first copying them into a reversed array
+     */
+    public static String encodeReversed(byte[] bytes) {
+        byte[] chars = new byte[bytes.length * 2];
+        for(int i = 0, j = bytes.length - 1; j >= 0; i += 2, j--) {
+            int value = bytes[j] & 0xff;
+            chars[i] = HEX_DIGITS[value >>> 4];
+            chars[i + 1] = HEX_DIGITS[value & 0x0f];
+        }
+
+        return new String(chars, StandardCharsets.ISO_8859_1);
+    }
+
+    private static int getDecodedLength(CharSequence hex) {
+        if(hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("Hex string has odd length " + hex.length());
+        }
+
+        return hex.length() / 2;
+    }
+
+    private static void decodeInto(CharSequence hex, byte[] dest) {
+        for(int i = 0, j = 0; i < hex.length(); i += 2, j++) {
+            int high = getValue(hex.charAt(i));
+            int low = getValue(hex.charAt(i + 1));
+            if((high | low) < 0) {
+                throw new IllegalArgumentException("Invalid hex character at index " + (high < 0 ? i : i + 1));
+            }
+
+            dest[j] = (byte)((high << 4) | low);
+        }
+    }
+
+    private static int getValue(char c) {
+        return c < HEX_VALUES.length ? HEX_VALUES[c] : -1;
+    }
+}
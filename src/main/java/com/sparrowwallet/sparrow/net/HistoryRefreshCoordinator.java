@@ -0,0 +1,171 @@
+package com.sparrowwallet.sparrow.net;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Coordinates the history refreshes of open wallets so that script hash histories, transactions and block headers requested by more than one wallet are fetched once.
+ * A request for keys that another refresh is already fetching waits for that result rather than sending its own.
+ * Results are shared for as long as any refresh is running, so wallets that refresh together on connection cost roughly the union of their requests rather than the sum.
+ */
+public class HistoryRefreshCoordinator {
+    private static final Logger log = LoggerFactory.getLogger(HistoryRefreshCoordinator.class);
+
+    private static final Coalescer<String, ScriptHashTx[]> histories = new Coalescer<>("script hash histories");
+    private static final Coalescer<String, String> transactions = new Coalescer<>("transactions");
+    private static final Coalescer<Integer, String> blockHeaders = new Coalescer<>("block headers");
+
+    private static int activeRefreshes;
+
+    public static synchronized void beginRefresh() {
+        activeRefreshes++;
+    }
+
+    public static synchronized void endRefresh() {
+        if(activeRefreshes > 0 && --activeRefreshes == 0) {
+            if(log.isDebugEnabled()) {
+                log.debug("Wallet refreshes complete, shared " + histories.summarize() + ", " + transactions.summarize() + ", " + blockHeaders.summarize());
+            }
+            histories.clear();
+            transactions.clear();
+            blockHeaders.clear();
+        }
+    }
+
+    private static synchronized boolean isRefreshing() {
+        return activeRefreshes > 0;
+    }
+
+    /**
+     * Removes a shared history once the status of its script hash has changed, so that later refreshes fetch it again
+     */
+    public static void invalidateHistory(String scriptHash) {
+        histories.invalidate(scriptHash);
+    }
+
+    public static Map<String, ScriptHashTx[]> getHistories(Collection<String> scriptHashes, Function<Set<String>, Map<String, ScriptHashTx[]>> fetcher) {
+        return histories.fetch(scriptHashes, fetcher);
+    }
+
+    public static Map<String, String> getTransactions(Collection<String> txids, Function<Set<String>, Map<String, String>> fetcher) {
+        return transactions.fetch(txids, fetcher);
+    }
+
+    public static Map<Integer, String> getBlockHeaders(Collection<Integer> blockHeights, Function<Set<Integer>, Map<Integer, String>> fetcher) {
+        return blockHeaders.fetch(blockHeights, fetcher);
+    }
+
+    private static class Coalescer<K, V> {
+        private final String name;
+        private final Map<K, CompletableFuture<V>> requests = new ConcurrentHashMap<>();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicLong shared = new AtomicLong();
+
+        public Coalescer(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Returns the values for the keys, fetching only those not already fetched or being fetched by another refresh.
+         * Keys the fetcher does not return a value for are absent from the result, and a fetcher that returns null fails the fetch. Every key this call fetches is completed before it waits on any other, so concurrent callers cannot deadlock.
+         */
+        public Map<K, V> fetch(Collection<K> keys, Function<Set<K>, Map<K, V>> fetcher) {
+            Map<K, CompletableFuture<V>> owned = new LinkedHashMap<>();
+            Map<K, CompletableFuture<V>> waiting = new LinkedHashMap<>();
+            for(K key : keys) {
+                CompletableFuture<V> future = new CompletableFuture<>();
+                CompletableFuture<V> existing = requests.putIfAbsent(key, future);
+                if(existing == null) {
+                    owned.put(key, future);
+                } else {
+                    waiting.put(key, existing);
+                }
+            }
+
+            requested.addAndGet(owned.size() + waiting.size());
+            shared.addAndGet(waiting.size());
+
+            Map<K, V> results = new HashMap<>();
+            if(!owned.isEmpty()) {
+                Map<K, V> fetched = null;
+                try {
+                    fetched = fetcher.apply(new LinkedHashSet<>(owned.keySet()));
+                } finally {
+                    boolean retain = fetched != null && isRefreshing();
+                    for(Map.Entry<K, CompletableFuture<V>> entry : owned.entrySet()) {
+                        if(fetched == null) {
+                            entry.getValue().completeExceptionally(new IllegalStateException("Could not retrieve " + name));
+                        } else {
+                            entry.getValue().complete(fetched.get(entry.getKey()));
+                        }
+
+                        if(!retain || fetched.get(entry.getKey()) == null) {
+                            requests.remove(entry.getKey(), entry.getValue());
+                        }
+                    }
+                }
+
+                if(fetched == null) {
+                    throw new IllegalStateException("Could not retrieve " + name);
+                }
+
+                for(Map.Entry<K, V> entry : fetched.entrySet()) {
+                    if(owned.containsKey(entry.getKey()) && entry.getValue() != null) {
+                        results.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+
+            //Keys that failed in another refresh are fetched again here, so that errors are reported to this caller
+            Set<K> retryKeys = new LinkedHashSet<>();
+            for(Map.Entry<K, CompletableFuture<V>> entry : waiting.entrySet()) {
+                try {
+                    V value = entry.getValue().join();
+                    if(value != null) {
+                        results.put(entry.getKey(), value);
+                    }
+                } catch(CompletionException e) {
+                    retryKeys.add(entry.getKey());
+                }
+            }
+
+            if(!retryKeys.isEmpty()) {
+                Map<K, V> fetched = fetcher.apply(retryKeys);
+                if(fetched == null) {
+                    throw new IllegalStateException("Could not retrieve " + name);
+                }
+
+                for(K key : retryKeys) {
+                    V value = fetched.get(key);
+                    if(value != null) {
+                        results.put(key, value);
+                    }
+                }
+            }
+
+            return results;
+        }
+
+        public void invalidate(K key) {
+            //A fetch in progress may have been answered before the change, so it is no longer shared with later requests
+            requests.remove(key);
+        }
+
+        public void clear() {
+            requests.values().removeIf(CompletableFuture::isDone);
+            requested.set(0);
+            shared.set(0);
+        }
+
+        public String summarize() {
+            return shared.get() + " of " + requested.get() + " " + name;
+        }
+    }
+}
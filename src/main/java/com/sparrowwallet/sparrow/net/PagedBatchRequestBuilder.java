@@ -1,6 +1,8 @@
 package com.sparrowwallet.sparrow.net;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.github.arteam.simplejsonrpc.client.JsonRpcClient;
 import com.github.arteam.simplejsonrpc.client.Transport;
 import com.github.arteam.simplejsonrpc.client.builder.AbstractBuilder;
@@ -8,11 +10,13 @@ import com.github.arteam.simplejsonrpc.client.builder.BatchRequestBuilder;
 import com.github.arteam.simplejsonrpc.client.exception.JsonRpcBatchException;
 import com.github.arteam.simplejsonrpc.core.domain.ErrorMessage;
 import com.google.common.collect.Lists;
-import com.sparrowwallet.sparrow.io.Config;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static com.sparrowwallet.sparrow.net.BatchedElectrumServerRpc.DEFAULT_MAX_ATTEMPTS;
@@ -21,6 +25,9 @@ import static com.sparrowwallet.sparrow.net.BatchedElectrumServerRpc.RETRY_DELAY
 public class PagedBatchRequestBuilder<K, V> extends AbstractBuilder {
     public static final int DEFAULT_PAGE_SIZE = 100;
 
+    @SuppressWarnings("rawtypes")
+    private static final List<Class> RETRY_EXCEPTION_TYPES = List.of(IllegalStateException.class, IllegalArgumentException.class);
+
     private final AtomicLong counter;
 
     @NotNull
@@ -111,70 +118,170 @@ public class PagedBatchRequestBuilder<K, V> extends AbstractBuilder {
      */
     @NotNull
     public Map<K, V> execute(int maxAttempts) throws Exception {
+        return execute(maxAttempts, BatchPageController.get());
+    }
+
+    Map<K, V> execute(int maxAttempts, BatchPageController pageController) throws Exception {
         Map<K, V> allResults = new HashMap<>();
         JsonRpcClient client = new JsonRpcClient(transport);
 
-        List<List<Request<K>>> pages = Lists.partition(requests, getPageSize());
-        for(List<Request<K>> page : pages) {
-            if(counter != null) {
-                Map<Long, K> counterIdMap = new HashMap<>();
-                BatchRequestBuilder<Long, V> batchRequest = client.createBatchRequest().keysType(Long.class).returnType(returnType);
-                for(Request<K> request : page) {
-                    counterIdMap.put(request.counterId, request.id);
-                    batchRequest.add(request.counterId, request.method, request.params);
-                }
+        List<List<Request<K>>> pages = Lists.partition(requests, pageController.getPageSize(transport));
+        int concurrentPages = Math.min(pageController.getConcurrentPages(transport), pages.size());
+        if(concurrentPages <= 1) {
+            for(List<Request<K>> page : pages) {
+                allResults.putAll(executePage(client, pageController, page, maxAttempts));
+            }
 
-                try {
-                    Map<Long, V> pageResult = new RetryLogic<Map<Long, V>>(maxAttempts, RETRY_DELAY_SECS, List.of(IllegalStateException.class, IllegalArgumentException.class)).getResult(batchRequest::execute);
-                    for(Map.Entry<Long, V> pageEntry : pageResult.entrySet()) {
-                        allResults.put(counterIdMap.get(pageEntry.getKey()), pageEntry.getValue());
-                    }
-                } catch(JsonRpcBatchException e) {
-                    Map<Object, Object> mappedSuccesess = new HashMap<>();
-                    for(Map.Entry<?, ?> successEntry : e.getSuccesses().entrySet()) {
-                        mappedSuccesess.put(counterIdMap.get((Long)successEntry.getKey()), successEntry.getValue());
-                    }
-                    Map<Object, ErrorMessage> mappedErrors = new HashMap<>();
-                    for(Map.Entry<?, ErrorMessage> errorEntry : e.getErrors().entrySet()) {
-                        mappedErrors.put(counterIdMap.get((Long)errorEntry.getKey()), errorEntry.getValue());
+            return allResults;
+        }
+
+        //Pages are sent concurrently on a pipelined transport, with responses matched to their requests by id
+        Semaphore pagePermits = new Semaphore(concurrentPages);
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Future<Map<K, V>>> pageResults = new ArrayList<>(pages.size());
+        try(ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for(List<Request<K>> page : pages) {
+                pagePermits.acquire();
+                pageResults.add(executor.submit(() -> {
+                    try {
+                        return failed.get() ? Collections.<K, V>emptyMap() : executePage(client, pageController, page, maxAttempts);
+                    } catch(Exception e) {
+                        failed.set(true);
+                        throw e;
+                    } finally {
+                        pagePermits.release();
                     }
-                    throw new JsonRpcBatchException(e.getMessage(), mappedSuccesess, mappedErrors);
+                }));
+            }
+        }
+
+        for(Future<Map<K, V>> pageResult : pageResults) {
+            try {
+                allResults.putAll(pageResult.get());
+            } catch(ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        }
+
+        return allResults;
+    }
+
+    /**
+     * Sends a page, splitting it in half to retry if it fails so that the whole page is not resent
+     */
+    private Map<K, V> executePage(JsonRpcClient client, BatchPageController pageController, List<Request<K>> page, int attempts) throws Exception {
+        long start = System.currentTimeMillis();
+        try {
+            Map<K, V> pageResult = sendPage(client, page);
+            pageController.pageSucceeded(transport, page.size(), System.currentTimeMillis() - start);
+            return pageResult;
+        } catch(Exception e) {
+            if(!RETRY_EXCEPTION_TYPES.contains(e.getClass())) {
+                throw e;
+            }
+
+            pageController.pageFailed(transport);
+            if(attempts <= 1) {
+                throw new ServerException("Retries exhausted", e);
+            }
+
+            RetryLogic.waitBeforeRetry(RETRY_DELAY_SECS);
+            if(page.size() == 1) {
+                return executePage(client, pageController, page, attempts - 1);
+            }
+
+            Map<K, V> results = new HashMap<>(executePage(client, pageController, page.subList(0, page.size() / 2), attempts - 1));
+            results.putAll(executePage(client, pageController, page.subList(page.size() / 2, page.size()), attempts - 1));
+            return results;
+        }
+    }
+
+    private Map<K, V> sendPage(JsonRpcClient client, List<Request<K>> page) throws Exception {
+        if(counter != null && returnType != null && transport instanceof TcpTransport tcpTransport) {
+            return streamPage(tcpTransport, page);
+        }
+
+        if(counter != null) {
+            Map<Long, K> counterIdMap = new HashMap<>();
+            BatchRequestBuilder<Long, V> batchRequest = client.createBatchRequest().keysType(Long.class).returnType(returnType);
+            for(Request<K> request : page) {
+                counterIdMap.put(request.counterId, request.id);
+                batchRequest.add(request.counterId, request.method, request.params);
+            }
+
+            try {
+                Map<K, V> pageResult = new HashMap<>();
+                for(Map.Entry<Long, V> pageEntry : batchRequest.execute().entrySet()) {
+                    pageResult.put(counterIdMap.get(pageEntry.getKey()), pageEntry.getValue());
                 }
-            } else {
-                BatchRequestBuilder<K, V> batchRequest = client.createBatchRequest().keysType(keysType).returnType(returnType);
-                for(Request<K> request : page) {
-                    if(request.id instanceof String strReq) {
-                        batchRequest.add(strReq, request.method, request.params);
-                    } else if(request.id instanceof Integer intReq) {
-                        batchRequest.add(intReq, request.method, request.params);
-                    } else {
-                        throw new IllegalArgumentException("Id of class " + request.id.getClass().getName() + " not supported");
-                    }
+                return pageResult;
+            } catch(JsonRpcBatchException e) {
+                Map<Object, Object> mappedSuccesess = new HashMap<>();
+                for(Map.Entry<?, ?> successEntry : e.getSuccesses().entrySet()) {
+                    mappedSuccesess.put(counterIdMap.get((Long)successEntry.getKey()), successEntry.getValue());
+                }
+                Map<Object, ErrorMessage> mappedErrors = new HashMap<>();
+                for(Map.Entry<?, ErrorMessage> errorEntry : e.getErrors().entrySet()) {
+                    mappedErrors.put(counterIdMap.get((Long)errorEntry.getKey()), errorEntry.getValue());
                 }
+                throw new JsonRpcBatchException(e.getMessage(), mappedSuccesess, mappedErrors);
+            }
+        }
 
-                Map<K, V> pageResult = new RetryLogic<Map<K, V>>(maxAttempts, RETRY_DELAY_SECS, List.of(IllegalStateException.class, IllegalArgumentException.class)).getResult(batchRequest::execute);
-                allResults.putAll(pageResult);
+        BatchRequestBuilder<K, V> batchRequest = client.createBatchRequest().keysType(keysType).returnType(returnType);
+        for(Request<K> request : page) {
+            if(request.id instanceof String strReq) {
+                batchRequest.add(strReq, request.method, request.params);
+            } else if(request.id instanceof Integer intReq) {
+                batchRequest.add(intReq, request.method, request.params);
+            } else {
+                throw new IllegalArgumentException("Id of class " + request.id.getClass().getName() + " not supported");
             }
         }
 
-        return allResults;
+        return batchRequest.execute();
     }
 
-    private int getPageSize() {
-        int pageSize = Config.get().getMaxPageSize();
-        if(pageSize < 1) {
-            pageSize = DEFAULT_PAGE_SIZE;
+    /**
+     * Sends a page over a TCP transport, which decodes each result as it is read rather than parsing the full batch response
+     */
+    private Map<K, V> streamPage(TcpTransport tcpTransport, List<Request<K>> page) throws Exception {
+        Map<String, K> counterIdMap = new HashMap<>();
+        ArrayNode batch = mapper.createArrayNode();
+        for(Request<K> request : page) {
+            counterIdMap.put(request.counterId.toString(), request.id);
+            ObjectNode requestNode = batch.addObject();
+            requestNode.put("jsonrpc", "2.0");
+            requestNode.put("method", request.method);
+            requestNode.set("params", mapper.valueToTree(request.params));
+            requestNode.put("id", request.counterId);
+        }
+
+        TcpTransport.BatchResponse<V> batchResponse;
+        try {
+            batchResponse = tcpTransport.passBatch(mapper.writeValueAsString(batch), mapper, returnType);
+        } catch(IOException e) {
+            //Wrapped as the JSON-RPC client does for other transports, so that the page is split and retried
+            throw new IllegalStateException("I/O error during a request processing", e);
+        }
+        if(batchResponse.results().size() + batchResponse.errors().size() < page.size()) {
+            throw new IllegalStateException("Batch response is missing " + (page.size() - batchResponse.results().size() - batchResponse.errors().size()) + " of " + page.size() + " responses");
+        }
+
+        Map<K, V> pageResult = new HashMap<>();
+        for(Map.Entry<String, V> resultEntry : batchResponse.results().entrySet()) {
+            pageResult.put(counterIdMap.get(resultEntry.getKey()), resultEntry.getValue());
         }
 
-        //Halve the page size if there have been timeouts
-        if(transport instanceof TimeoutCounter timeoutCounter) {
-            int timeouts = timeoutCounter.getTimeoutCount();
-            if(timeouts > 0) {
-                return pageSize / 2;
+        if(!batchResponse.errors().isEmpty()) {
+            Map<Object, ErrorMessage> mappedErrors = new HashMap<>();
+            for(Map.Entry<String, ErrorMessage> errorEntry : batchResponse.errors().entrySet()) {
+                mappedErrors.put(counterIdMap.get(errorEntry.getKey()), errorEntry.getValue());
             }
+            throw new JsonRpcBatchException("Errors happened during batch request processing", new HashMap<>(pageResult), mappedErrors);
         }
 
-        return pageSize;
+        return pageResult;
     }
 
     /**
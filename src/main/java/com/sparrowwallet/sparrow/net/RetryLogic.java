@@ -37,12 +37,7 @@ public class RetryLogic<T> {
                     if(--remainingAttempts == 0) {
                         throw new ServerException("Retries exhausted", e);
                     } else {
-                        try {
-                            //Sleep with a +/- 2 seconds random wait time to avoid simultaneous retries
-                            Thread.sleep((1000L * (retryWaitSeconds - 1)) + new Random().nextInt(2000));
-                        } catch(InterruptedException ie) {
-                            //ignore
-                        }
+                        waitBeforeRetry(retryWaitSeconds);
                     }
                 } else {
                     throw e;
@@ -53,4 +48,13 @@ public class RetryLogic<T> {
 
         throw new IllegalStateException("Should be impossible");
     }
+
+    public static void waitBeforeRetry(int retryWaitSeconds) {
+        try {
+            //Sleep with a +/- 2 seconds random wait time to avoid simultaneous retries
+            Thread.sleep((1000L * (Math.max(retryWaitSeconds, 1) - 1)) + new Random().nextInt(2000));
+        } catch(InterruptedException ie) {
+            //ignore
+        }
+    }
 }
\ No newline at end of file
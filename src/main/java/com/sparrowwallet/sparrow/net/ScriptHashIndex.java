@@ -0,0 +1,167 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.sparrowwallet.drongo.KeyPurpose;
+import com.sparrowwallet.drongo.wallet.Wallet;
+import com.sparrowwallet.drongo.wallet.WalletNode;
+import com.sparrowwallet.sparrow.EventManager;
+import com.sparrowwallet.sparrow.event.WalletNodesChangedEvent;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maintains a per wallet index of script hashes to address nodes, so that script hashes are only calculated once per node.
+ * Because node children are added sequentially in WalletNode.fillToIndex, the index catches up by hashing only the nodes added since it was last updated.
+ * Indexes are kept for wallets open in a wallet form, keyed by wallet id, and removed when the wallet tab is closed or the wallet's nodes change.
+ * Other wallet instances, such as copies being edited, get an uncached index.
+ */
+public class ScriptHashIndex {
+    private static final Map<String, ScriptHashIndex> walletIndexes = new ConcurrentHashMap<>();
+
+    private final Wallet wallet;
+    private final boolean cached;
+    private final Map<String, WalletNode> scriptHashNodes = new HashMap<>();
+    private final Map<WalletNode, String> nodeScriptHashes = new IdentityHashMap<>();
+    private final Map<KeyPurpose, IndexedPurpose> indexedPurposes = new EnumMap<>(KeyPurpose.class);
+    private String notificationScriptHash;
+
+    private ScriptHashIndex(Wallet wallet, boolean cached) {
+        this.wallet = wallet;
+        this.cached = cached;
+    }
+
+    /**
+     * Subscribes to the events that invalidate cached indexes, once at startup
+     */
+    public static void subscribe() {
+        EventManager.get().subscribe(ScriptHashIndex.class, WalletNodesChangedEvent.class, ScriptHashIndex::walletNodesChanged);
+    }
+
+    public static ScriptHashIndex get(Wallet wallet) {
+        String walletId = EventManager.get().getWalletId(wallet);
+        if(walletId == null) {
+            return new ScriptHashIndex(wallet, false);
+        }
+
+        ScriptHashIndex scriptHashIndex = walletIndexes.computeIfAbsent(walletId, id -> new ScriptHashIndex(wallet, true));
+        return scriptHashIndex.wallet == wallet ? scriptHashIndex : new ScriptHashIndex(wallet, false);
+    }
+
+    public static void remove(String walletId) {
+        if(walletId != null) {
+            walletIndexes.remove(walletId);
+        }
+    }
+
+    /**
+     * Finds the address node for a script hash in the wallet, its nested wallets, or its BIP47 notification wallet
+     */
+    public static WalletNode getWalletNode(Wallet wallet, String scriptHash) {
+        WalletNode walletNode = get(wallet).getNode(scriptHash);
+        if(walletNode != null) {
+            return walletNode;
+        }
+
+        for(Wallet childWallet : wallet.getChildWallets()) {
+            if(childWallet.isNested()) {
+                walletNode = get(childWallet).getNode(scriptHash);
+                if(walletNode != null) {
+                    return walletNode;
+                }
+            }
+        }
+
+        return get(wallet).getNotificationNode(scriptHash);
+    }
+
+    public synchronized WalletNode getNode(String scriptHash) {
+        update();
+        return scriptHashNodes.get(scriptHash);
+    }
+
+    public synchronized String getScriptHash(WalletNode walletNode) {
+        String scriptHash = nodeScriptHashes.get(walletNode);
+        if(scriptHash == null && cached) {
+            update();
+            scriptHash = nodeScriptHashes.get(walletNode);
+        }
+
+        return scriptHash == null ? ElectrumServer.getScriptHash(walletNode) : scriptHash;
+    }
+
+    public synchronized Map<String, WalletNode> getScriptHashNodes() {
+        update();
+        return new HashMap<>(scriptHashNodes);
+    }
+
+    public synchronized Map<String, WalletNode> getScriptHashNodes(KeyPurpose keyPurpose) {
+        update(keyPurpose);
+        Map<String, WalletNode> purposeScriptHashNodes = new LinkedHashMap<>();
+        for(WalletNode walletNode : getChildren(wallet.getNode(keyPurpose))) {
+            String scriptHash = nodeScriptHashes.get(walletNode);
+            purposeScriptHashNodes.put(scriptHash == null ? ElectrumServer.getScriptHash(walletNode) : scriptHash, walletNode);
+        }
+
+        return purposeScriptHashNodes;
+    }
+
+    public synchronized void update() {
+        for(KeyPurpose keyPurpose : KeyPurpose.DEFAULT_PURPOSES) {
+            update(keyPurpose);
+        }
+    }
+
+    private void update(KeyPurpose keyPurpose) {
+        WalletNode purposeNode = wallet.getNode(keyPurpose);
+        IndexedPurpose indexedPurpose = indexedPurposes.get(keyPurpose);
+        int childCount = purposeNode.getChildren().size();
+        if(indexedPurpose != null && indexedPurpose.purposeNode == purposeNode && indexedPurpose.childCount == childCount) {
+            return;
+        }
+
+        if(indexedPurpose != null && (indexedPurpose.purposeNode != purposeNode || indexedPurpose.childCount > childCount)) {
+            //Nodes have been replaced or removed, so rebuild the index for this purpose
+            scriptHashNodes.values().removeIf(walletNode -> walletNode.getKeyPurpose() == keyPurpose);
+            nodeScriptHashes.keySet().removeIf(walletNode -> walletNode.getKeyPurpose() == keyPurpose);
+        }
+
+        List<WalletNode> children = getChildren(purposeNode);
+        for(WalletNode walletNode : children) {
+            if(!nodeScriptHashes.containsKey(walletNode)) {
+                String scriptHash = ElectrumServer.getScriptHash(walletNode);
+                nodeScriptHashes.put(walletNode, scriptHash);
+                scriptHashNodes.put(scriptHash, walletNode);
+            }
+        }
+
+        indexedPurposes.put(keyPurpose, new IndexedPurpose(purposeNode, children.size()));
+    }
+
+    private static void walletNodesChanged(WalletNodesChangedEvent event) {
+        String walletId = event.getWalletId() != null ? event.getWalletId() : EventManager.get().getWalletId(event.getWallet());
+        //Nodes, or the wallet itself, may have been replaced without changing the number of children, so rebuild on the next lookup
+        remove(walletId);
+    }
+
+    private synchronized WalletNode getNotificationNode(String scriptHash) {
+        Wallet notificationWallet = wallet.getNotificationWallet();
+        if(notificationWallet == null) {
+            return null;
+        }
+
+        //The notification wallet is recreated on each call, but the notification address is fixed for the wallet
+        WalletNode notificationNode = notificationWallet.getNode(KeyPurpose.NOTIFICATION);
+        if(notificationScriptHash == null) {
+            notificationScriptHash = ElectrumServer.getScriptHash(notificationNode);
+        }
+
+        return notificationScriptHash.equals(scriptHash) ? notificationNode : null;
+    }
+
+    private static List<WalletNode> getChildren(WalletNode purposeNode) {
+        //Copy to avoid concurrent modification while nodes are added on other threads
+        return new ArrayList<>(purposeNode.getChildren());
+    }
+
+    private record IndexedPurpose(WalletNode purposeNode, int childCount) {}
+}
@@ -0,0 +1,145 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.sparrowwallet.drongo.wallet.BlockTransaction;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A bounded in-memory cache of data retrieved from the server, evicted least recently used first.
+ * Lookups through get are counted, and the size of the cache is estimated, so that the caches can be inspected while running.
+ */
+public class ServerCache<K, V> {
+    private static final List<ServerCache<?, ?>> caches = new CopyOnWriteArrayList<>();
+
+    //Approximate heap cost of a String with Latin-1 content, including the object and array headers
+    private static final int STRING_OVERHEAD_BYTES = 40;
+    //Parsed transactions hold scripts, inputs and outputs as separate objects, and take several times their serialized size
+    private static final int TRANSACTION_SIZE_FACTOR = 3;
+    private static final int OBJECT_OVERHEAD_BYTES = 64;
+
+    private final String name;
+    private final Weigher<K, V> estimator;
+    private final Cache<K, V> cache;
+
+    private ServerCache(String name, Weigher<K, V> estimator, CacheBuilder<Object, Object> cacheBuilder) {
+        this.name = name;
+        this.estimator = estimator;
+        this.cache = cacheBuilder.recordStats().build();
+        caches.add(this);
+    }
+
+    /**
+     * Creates a cache bounded by the number of entries, for values that change in place after they are added
+     */
+    public static <K, V> ServerCache<K, V> ofSize(String name, long maximumSize, Weigher<K, V> estimator) {
+        return new ServerCache<>(name, estimator, CacheBuilder.newBuilder().maximumSize(maximumSize));
+    }
+
+    /**
+     * Creates a cache bounded by the estimated size of its entries in bytes
+     */
+    public static <K, V> ServerCache<K, V> ofWeight(String name, long maximumBytes, Weigher<K, V> estimator) {
+        return new ServerCache<>(name, estimator, CacheBuilder.newBuilder().maximumWeight(maximumBytes).weigher(estimator));
+    }
+
+    public static List<ServerCache<?, ?>> getCaches() {
+        return List.copyOf(caches);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public V get(K key) {
+        return cache.getIfPresent(key);
+    }
+
+    public boolean containsKey(K key) {
+        return cache.asMap().containsKey(key);
+    }
+
+    /**
+     * Adds an entry to the cache. As the cache cannot hold null values, putting a null value removes any existing entry.
+     */
+    public void put(K key, V value) {
+        if(value == null) {
+            cache.invalidate(key);
+        } else {
+            cache.put(key, value);
+        }
+    }
+
+    public V putIfAbsent(K key, V value) {
+        if(value == null) {
+            return cache.asMap().get(key);
+        }
+
+        return cache.asMap().putIfAbsent(key, value);
+    }
+
+    public V remove(K key) {
+        return cache.asMap().remove(key);
+    }
+
+    public void removeAll(Collection<? extends K> keys) {
+        cache.invalidateAll(keys);
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * A live view of the cache. Reads through this view are not included in the hit rate.
+     */
+    public ConcurrentMap<K, V> asMap() {
+        return cache.asMap();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public long getEstimatedBytes() {
+        long bytes = 0;
+        for(Map.Entry<K, V> entry : cache.asMap().entrySet()) {
+            bytes += estimator.weigh(entry.getKey(), entry.getValue());
+        }
+
+        return bytes;
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public static int estimateBytes(String value) {
+        return value == null ? 0 : STRING_OVERHEAD_BYTES + value.length();
+    }
+
+    public static int estimateBytes(Collection<String> values) {
+        int bytes = OBJECT_OVERHEAD_BYTES;
+        for(String value : values) {
+            bytes += estimateBytes(value);
+        }
+
+        return bytes;
+    }
+
+    public static int estimateBytes(BlockTransaction blockTransaction) {
+        int bytes = OBJECT_OVERHEAD_BYTES * 2;
+        if(blockTransaction.getTransaction() != null) {
+            bytes += blockTransaction.getTransaction().getSize() * TRANSACTION_SIZE_FACTOR;
+        }
+
+        return bytes;
+    }
+}
@@ -194,6 +194,17 @@ public class SimpleElectrumServerRpc implements ElectrumServerRpc {
         return result;
     }
 
+    @Override
+    public BlockHeaderChunk getBlockHeaderChunk(Transport transport, int startHeight, int count) {
+        try {
+            JsonRpcClient client = new JsonRpcClient(transport);
+            return new RetryLogic<BlockHeaderChunk>(MAX_RETRIES, RETRY_DELAY, IllegalStateException.class).getResult(() ->
+                    client.createRequest().returnAs(BlockHeaderChunk.class).method("blockchain.block.headers").id(idCounter.incrementAndGet()).params(startHeight, count).execute());
+        } catch(Exception e) {
+            throw new ElectrumServerRpcException("Failed to retrieve block headers from height " + startHeight, e);
+        }
+    }
+
     @Override
     public Map<Integer, BlockStats> getBlockStats(Transport transport, Set<Integer> blockHeights) {
         JsonRpcClient client = new JsonRpcClient(transport);
@@ -26,7 +26,7 @@ public class SubscriptionService {
 
     @JsonRpcMethod("blockchain.scripthash.subscribe")
     public void scriptHashStatusUpdated(@JsonRpcParam("scripthash") final String scriptHash, @JsonRpcOptional @JsonRpcParam("status") final String status) {
-        List<String> existingStatuses = ElectrumServer.getSubscribedScriptHashes().get(scriptHash);
+        List<String> existingStatuses = ElectrumServer.getSubscribedScriptHashStatuses(scriptHash);
         if(existingStatuses == null) {
             log.trace("Received script hash status update for non-wallet script hash: " + scriptHash);
         } else if(status != null && existingStatuses.contains(status)) {
@@ -35,7 +35,7 @@ public class SubscriptionService {
         } else {
             String oldStatus = Iterables.getLast(existingStatuses);
             log.debug("Status updated for script hash " + scriptHash + ", was " + oldStatus + " now " + status);
-            existingStatuses.add(status);
+            ElectrumServer.updateSubscribedScriptHashStatus(scriptHash, status);
         }
 
         Platform.runLater(() -> EventManager.get().post(new WalletNodeHistoryChangedEvent(scriptHash, status)));
@@ -1,9 +1,14 @@
 package com.sparrowwallet.sparrow.net;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.github.arteam.simplejsonrpc.core.domain.ErrorMessage;
 import com.github.arteam.simplejsonrpc.server.JsonRpcServer;
-import com.google.common.base.Splitter;
 import com.google.common.net.HostAndPort;
-import com.google.gson.Gson;
 import com.sparrowwallet.sparrow.io.Config;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
@@ -16,11 +21,8 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
-import java.util.Objects;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class TcpTransport implements CloseableTransport, TimeoutCounter {
@@ -32,32 +34,31 @@ public class TcpTransport implements CloseableTransport, TimeoutCounter {
     public static final long PER_REQUEST_READ_TIMEOUT_MILLIS = 50;
     public static final int SOCKET_READ_TIMEOUT_MILLIS = 5000;
 
+    private static final ObjectMapper responseMapper = new ObjectMapper();
+
     protected final HostAndPort server;
     protected final SocketFactory socketFactory;
     protected final int[] readTimeouts;
 
     protected Socket socket;
 
-    private String response;
-
     private final CountDownLatch readReadySignal = new CountDownLatch(1);
 
-    private final ReentrantLock readLock = new ReentrantLock();
-    private final Condition readingCondition = readLock.newCondition();
-
     private final ReentrantLock clientRequestLock = new ReentrantLock();
-    private boolean running = false;
-    private volatile boolean reading = true;
+    private final Map<String, PendingRequest> pendingRequests = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private PrintWriter out;
+
+    private volatile boolean running = false;
+    private volatile boolean pipelined = false;
     private boolean closed = false;
-    private boolean firstRead = true;
-    private int readTimeoutIndex;
-    private int requestIdCount = 1;
+    private volatile boolean firstRead = true;
+    private volatile int readTimeoutIndex;
 
     private final JsonRpcServer jsonRpcServer = new JsonRpcServer();
     private final SubscriptionService subscriptionService = new SubscriptionService();
 
-    private Exception lastException;
-    private final Gson gson = new Gson();
+    private volatile Exception lastException;
 
     public TcpTransport(HostAndPort server) {
         this(server, null);
@@ -77,23 +78,57 @@ public class TcpTransport implements CloseableTransport, TimeoutCounter {
 
     @Override
     public @NotNull String pass(@NotNull String request) throws IOException {
-        clientRequestLock.lock();
+        List<String> ids = getRequestIds(request);
+        return send(request, ids, new PendingRequest());
+    }
+
+    /**
+     * Sends a batched request and decodes the result of each response into the result type as it is read from the socket.
+     * Unlike {@link #pass(String)}, the batch response is never held in full as a string or tree.
+     *
+     * @return the results and errors of the batch by request id
+     */
+    @SuppressWarnings("unchecked")
+    public <V> BatchResponse<V> passBatch(String request, ObjectMapper resultMapper, Class<V> resultType) throws IOException {
+        List<String> ids = getRequestIds(request);
+        PendingRequest pendingRequest = new PendingRequest(resultMapper, resultType, ids);
+        send(request, ids, pendingRequest);
+        return new BatchResponse<>((Map<String, V>)pendingRequest.results, pendingRequest.errors);
+    }
+
+    private String send(String request, List<String> ids, PendingRequest pendingRequest) throws IOException {
+        if(ids.isEmpty()) {
+            throw new IOException("Cannot send a request without an id");
+        }
+
+        //Without pipelining, only a single request or batch is in flight at a time
+        boolean lockstep = !pipelined;
+        if(lockstep) {
+            clientRequestLock.lock();
+        }
+
         try {
-            Rpc sentRpc = request.startsWith("{") ? gson.fromJson(request, Rpc.class) : null;
-            Rpc recvRpc;
-            String recv;
-
-            //Count number of requests in batched query to increase read timeout appropriately
-            requestIdCount = Splitter.on("\"id\"").splitToList(request).size() - 1;
-            writeRequest(request);
-            do {
-                recv = readResponse();
-                recvRpc = recv.startsWith("{") ? gson.fromJson(response, Rpc.class) : null;
-            } while(!Objects.equals(recvRpc, sentRpc));
-
-            return recv;
+            for(String id : ids) {
+                pendingRequests.put(id, pendingRequest);
+            }
+
+            try {
+                if(lastException != null) {
+                    throw new IOException("Error reading response: " + lastException.getMessage(), lastException);
+                }
+
+                writeRequest(request);
+                //Count number of requests in batched query to increase read timeout appropriately
+                return readResponse(pendingRequest, ids.size());
+            } finally {
+                for(String id : ids) {
+                    pendingRequests.remove(id, pendingRequest);
+                }
+            }
         } finally {
-            clientRequestLock.unlock();
+            if(lockstep) {
+                clientRequestLock.unlock();
+            }
         }
     }
 
@@ -106,102 +141,61 @@ public class TcpTransport implements CloseableTransport, TimeoutCounter {
             throw new IllegalStateException("Socket connection has not been established.");
         }
 
-        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)));
-        out.println(request);
-        out.flush();
+        synchronized(writeLock) {
+            if(out == null) {
+                out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)));
+            }
+
+            out.println(request);
+            out.flush();
+        }
     }
 
-    private String readResponse() throws IOException {
+    private String readResponse(PendingRequest pendingRequest, int requestIdCount) throws IOException {
         if(firstRead) {
             try {
                 //Ensure read thread has started
                 if(!readReadySignal.await(2, TimeUnit.SECONDS)) {
                     throw new IOException("Read thread did not start");
                 }
+                firstRead = false;
             } catch(InterruptedException e) {
                 throw new IOException("Read ready await interrupted");
             }
         }
 
         try {
-            if(!readLock.tryLock((readTimeouts[readTimeoutIndex] * 1000L) + (requestIdCount * PER_REQUEST_READ_TIMEOUT_MILLIS), TimeUnit.MILLISECONDS)) {
-                readTimeoutIndex = Math.min(readTimeoutIndex + 1, readTimeouts.length - 1);
-                log.warn("No response from server, setting read timeout to " + readTimeouts[readTimeoutIndex] + " secs");
-                throw new IOException("No response from server");
-            }
-        } catch(InterruptedException e) {
-            throw new IOException("Read thread interrupted");
-        }
-
-        if(readTimeoutIndex == readTimeouts.length - 1) {
-            readTimeoutIndex--;
-        }
-
-        try {
-            if(firstRead) {
-                readingCondition.signal();
-                firstRead = false;
+            String response = pendingRequest.response.get((readTimeouts[readTimeoutIndex] * 1000L) + (requestIdCount * PER_REQUEST_READ_TIMEOUT_MILLIS), TimeUnit.MILLISECONDS);
+            if(readTimeoutIndex == readTimeouts.length - 1) {
+                readTimeoutIndex--;
             }
 
-            while(reading) {
-                try {
-                    readingCondition.await();
-                } catch(InterruptedException e) {
-                    //Restore interrupt status and break
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-            }
-
-            if(lastException != null) {
-                throw new IOException("Error reading response: " + lastException.getMessage(), lastException);
-            }
-
-            reading = true;
-
-            readingCondition.signal();
             return response;
-        } finally {
-            readLock.unlock();
+        } catch(TimeoutException e) {
+            readTimeoutIndex = Math.min(readTimeoutIndex + 1, readTimeouts.length - 1);
+            log.warn("No response from server, setting read timeout to " + readTimeouts[readTimeoutIndex] + " secs");
+            throw new IOException("No response from server");
+        } catch(ExecutionException e) {
+            throw new IOException("Error reading response: " + e.getCause().getMessage(), e.getCause());
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Read thread interrupted");
         }
     }
 
     public void readInputLoop() throws ServerException {
-        readLock.lock();
         readReadySignal.countDown();
 
         try {
-            try {
-                //Don't start reading until first RPC request is sent
-                readingCondition.await();
-            } catch(InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-
-            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            MessageReader in = new MessageReader(new InputStreamReader(new SocketInputStream(socket.getInputStream()), StandardCharsets.UTF_8));
 
             while(running) {
                 try {
-                    String received = readInputStream(in);
-                    if(received.contains("method") && !received.contains("error")) {
-                        //Handle subscription notification
-                        jsonRpcServer.handle(received, subscriptionService);
-                    } else {
-                        //Handle client's response
-                        response = received;
-                        reading = false;
-                        readingCondition.signal();
-                        readingCondition.await();
-                    }
-                } catch(InterruptedException e) {
-                    //Restore interrupt status and continue
-                    Thread.currentThread().interrupt();
+                    readMessage(in);
                 } catch(Exception e) {
                     log.trace("Connection error while reading", e);
                     if(running) {
-                        lastException = e;
-                        reading = false;
-                        readingCondition.signal();
+                        failPendingRequests(e);
                         //Allow this thread to terminate as we will need to reconnect with a new transport anyway
                         running = false;
                     }
@@ -212,37 +206,93 @@ public class TcpTransport implements CloseableTransport, TimeoutCounter {
                 log.error("Error opening socket inputstream", e);
             }
             if(running) {
-                lastException = e;
-                reading = false;
-                readingCondition.signal();
+                failPendingRequests(e);
                 //Allow this thread to terminate as we will need to reconnect with a new transport anyway
                 running = false;
             }
-        } finally {
-            readLock.unlock();
         }
     }
 
-    protected String readInputStream(BufferedReader in) throws IOException {
-        String response = readLine(in);
-
-        if(response == null) {
+    private void readMessage(MessageReader in) throws IOException {
+        int first = in.peek();
+        if(first < 0) {
             throw new IOException("Could not connect to server" + (Config.get().hasServer() ? " at " + Config.get().getServer().getUrl() : ""));
         }
 
-        return response;
+        if(first == '[') {
+            readBatchResponse(in.lineReader());
+            return;
+        }
+
+        String received = in.readLine();
+        if(received.contains("method") && !received.contains("error")) {
+            //Handle subscription notification
+            jsonRpcServer.handle(received, subscriptionService);
+        } else {
+            //Handle client's response
+            dispatchResponse(received);
+        }
     }
 
-    private String readLine(BufferedReader in) throws IOException {
-        while(!socket.isClosed()) {
-            try {
-                return in.readLine();
-            } catch(SocketTimeoutException e) {
-                //ignore and continue
+    private void dispatchResponse(String received) throws IOException {
+        String id = getResponseId(received);
+        PendingRequest pendingRequest = (id == null ? null : pendingRequests.get(id));
+        if(pendingRequest == null) {
+            if(log.isDebugEnabled()) {
+                log.debug("Discarding response with unmatched id " + id);
             }
+        } else if(pendingRequest.isStreaming()) {
+            //A batch of one may be answered with a single response
+            pendingRequest.add(readResponseElement(responseMapper.createParser(received), pendingRequest.resultMapper, pendingRequest.resultType));
+            pendingRequest.response.complete(null);
+        } else {
+            pendingRequest.response.complete(received);
         }
+    }
 
-        return null;
+    /**
+     * Reads the responses of a batch. All responses belong to the same request, which is identified by the first response with a known id.
+     * Responses to a streaming request are decoded one at a time as they are read. Other batch responses are completed with the raw text of the line,
+     * which is recorded only until the request is identified.
+     */
+    private void readBatchResponse(LineReader lineReader) throws IOException {
+        JsonParser parser = responseMapper.getFactory().createParser(lineReader);
+        parser.nextToken();
+
+        PendingRequest pendingRequest = null;
+        while(pendingRequest == null && parser.nextToken() == JsonToken.START_OBJECT) {
+            TokenBuffer element = new TokenBuffer(parser);
+            element.copyCurrentStructure(parser);
+            String id = readResponseId(element.asParser());
+            pendingRequest = (id == null ? null : pendingRequests.get(id));
+            if(pendingRequest == null) {
+                if(log.isDebugEnabled()) {
+                    log.debug("Discarding batch response with unmatched id " + id);
+                }
+            } else if(!pendingRequest.isStreaming()) {
+                pendingRequest.response.complete(lineReader.readRecordedLine());
+                return;
+            } else {
+                lineReader.stopRecording();
+                pendingRequest.add(readResponseElement(element.asParserOnFirstToken(), pendingRequest.resultMapper, pendingRequest.resultType));
+            }
+        }
+
+        if(pendingRequest != null) {
+            while(parser.nextToken() == JsonToken.START_OBJECT) {
+                pendingRequest.add(readResponseElement(parser, pendingRequest.resultMapper, pendingRequest.resultType));
+            }
+            pendingRequest.response.complete(null);
+        }
+
+        lineReader.skipLine();
+    }
+
+    private void failPendingRequests(Exception e) {
+        lastException = e;
+        for(PendingRequest pendingRequest : pendingRequests.values()) {
+            pendingRequest.response.completeExceptionally(e);
+        }
     }
 
     public void connect() throws ServerException {
@@ -294,24 +344,383 @@ public class TcpTransport implements CloseableTransport, TimeoutCounter {
         return readTimeoutIndex;
     }
 
-    private static class Rpc {
-        public String id;
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    /**
+     * Returns the ids of a single or batched JSON-RPC request, in order
+     */
+    static List<String> getRequestIds(String json) {
+        List<String> ids = new ArrayList<>();
+        scanIds(json, ids, false);
+        return ids;
+    }
+
+    /**
+     * Returns the first non-null id of a single or batched JSON-RPC response, or null if none is present
+     */
+    static String getResponseId(String json) {
+        List<String> ids = new ArrayList<>(1);
+        scanIds(json, ids, true);
+        return ids.isEmpty() ? null : ids.getFirst();
+    }
+
+    /**
+     * Returns the id of the response object the parser is positioned before or at, or null if none is present
+     */
+    static String readResponseId(JsonParser parser) throws IOException {
+        if(parser.currentToken() == null) {
+            parser.nextToken();
+        }
+
+        while(parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if(field.equals("id")) {
+                return value == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+            }
+            parser.skipChildren();
+        }
+
+        return null;
+    }
+
+    /**
+     * Reads a response object the parser is positioned at, binding its result directly from the parser into the result type
+     */
+    static ResponseElement readResponseElement(JsonParser parser, ObjectMapper resultMapper, Class<?> resultType) throws IOException {
+        if(parser.currentToken() == null) {
+            parser.nextToken();
+        }
+
+        int depth = parser.getParsingContext().getNestingDepth();
+        String id = null;
+        Object result = null;
+        ErrorMessage error = null;
+        Exception failure = null;
+        while(parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch(field) {
+                case "id" -> id = (value == JsonToken.VALUE_NULL ? null : parser.getValueAsString());
+                case "result" -> {
+                    try {
+                        result = (value == JsonToken.VALUE_NULL ? null : resultMapper.readValue(parser, resultType));
+                    } catch(JsonMappingException e) {
+                        failure = e;
+                        //Skip the remainder of the result so the following responses can still be read
+                        while(parser.getParsingContext().getNestingDepth() > depth) {
+                            parser.nextToken();
+                        }
+                    }
+                }
+                case "error" -> {
+                    JsonNode errorNode = responseMapper.readTree(parser);
+                    error = new ErrorMessage(errorNode.path("code").asInt(), errorNode.path("message").asText(null), errorNode.get("data"));
+                }
+                default -> parser.skipChildren();
+            }
+        }
+
+        return new ResponseElement(id, result, error, failure);
+    }
+
+    /**
+     * Scans for the values of "id" members of a top level object, or the objects in a top level array, without parsing the remainder of the document
+     */
+    private static void scanIds(String json, List<String> ids, boolean firstOnly) {
+        int length = json.length();
+        int start = 0;
+        while(start < length && Character.isWhitespace(json.charAt(start))) {
+            start++;
+        }
+        if(start == length) {
+            return;
+        }
+
+        int idDepth = json.charAt(start) == '[' ? 2 : 1;
+        int depth = 0;
+        for(int i = start; i < length; i++) {
+            char c = json.charAt(i);
+            if(c == '{' || c == '[') {
+                depth++;
+            } else if(c == '}' || c == ']') {
+                depth--;
+            } else if(c == '"') {
+                int end = skipString(json, i);
+                if(depth == idDepth && end - i == 3 && json.startsWith("id", i + 1)) {
+                    int valueStart = i + 4;
+                    while(valueStart < length && Character.isWhitespace(json.charAt(valueStart))) {
+                        valueStart++;
+                    }
+                    if(valueStart < length && json.charAt(valueStart) == ':') {
+                        valueStart++;
+                        while(valueStart < length && Character.isWhitespace(json.charAt(valueStart))) {
+                            valueStart++;
+                        }
+
+                        int valueEnd;
+                        String id;
+                        if(valueStart < length && json.charAt(valueStart) == '"') {
+                            valueEnd = skipString(json, valueStart);
+                            id = json.substring(valueStart + 1, valueEnd);
+                        } else {
+                            valueEnd = valueStart;
+                            while(valueEnd < length && ",}] \t\r\n".indexOf(json.charAt(valueEnd)) < 0) {
+                                valueEnd++;
+                            }
+                            id = json.substring(valueStart, valueEnd);
+                            valueEnd--;
+                        }
+
+                        if(!firstOnly || !id.equals("null")) {
+                            ids.add(id);
+                            if(firstOnly) {
+                                return;
+                            }
+                        }
+
+                        i = valueEnd;
+                        continue;
+                    }
+                }
+
+                i = end;
+            }
+        }
+    }
+
+    private static int skipString(String json, int quoteIndex) {
+        for(int i = quoteIndex + 1; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if(c == '\\') {
+                i++;
+            } else if(c == '"') {
+                return i;
+            }
+        }
+
+        return json.length();
+    }
+
+    /**
+     * Reads from the socket input stream, waiting through socket read timeouts until the socket is closed
+     */
+    private class SocketInputStream extends FilterInputStream {
+        public SocketInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            while(!socket.isClosed()) {
+                try {
+                    return super.read();
+                } catch(SocketTimeoutException e) {
+                    //ignore and continue
+                }
+            }
+
+            return -1;
+        }
 
         @Override
-        public boolean equals(Object o) {
-            if(this == o) {
+        public int read(byte[] b, int off, int len) throws IOException {
+            while(!socket.isClosed()) {
+                try {
+                    return super.read(b, off, len);
+                } catch(SocketTimeoutException e) {
+                    //ignore and continue
+                }
+            }
+
+            return -1;
+        }
+    }
+
+    /**
+     * Reads newline delimited messages, either in full as a line of text or through a reader that ends with the line
+     */
+    static class MessageReader {
+        private final Reader in;
+        private final char[] buffer = new char[8192];
+        private int position;
+        private int limit;
+
+        MessageReader(Reader in) {
+            this.in = in;
+        }
+
+        private boolean fill() throws IOException {
+            if(position < limit) {
                 return true;
             }
-            if(o == null || getClass() != o.getClass()) {
-                return false;
+
+            int read = in.read(buffer);
+            position = 0;
+            limit = Math.max(read, 0);
+            return read > 0;
+        }
+
+        /**
+         * Skips whitespace between messages, and returns the first character of the next message without consuming it, or -1 at the end of the stream
+         */
+        int peek() throws IOException {
+            while(fill()) {
+                char c = buffer[position];
+                if(!Character.isWhitespace(c)) {
+                    return c;
+                }
+                position++;
+            }
+
+            return -1;
+        }
+
+        /**
+         * Reads the remainder of the current line, consuming the line terminator
+         */
+        String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            while(fill()) {
+                int start = position;
+                while(position < limit && buffer[position] != '\n') {
+                    position++;
+                }
+                line.append(buffer, start, position - start);
+                if(position < limit) {
+                    position++;
+                    break;
+                }
+            }
+
+            int length = line.length();
+            return length > 0 && line.charAt(length - 1) == '\r' ? line.substring(0, length - 1) : line.toString();
+        }
+
+        LineReader lineReader() {
+            return new LineReader(this);
+        }
+    }
+
+    /**
+     * A reader over the remainder of the current line, which records what it has read until recording is stopped
+     */
+    static class LineReader extends Reader {
+        private final MessageReader messageReader;
+        private StringBuilder recorded = new StringBuilder();
+        private boolean ended;
+
+        LineReader(MessageReader messageReader) {
+            this.messageReader = messageReader;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if(ended || len == 0) {
+                return ended ? -1 : 0;
+            }
+            if(!messageReader.fill()) {
+                ended = true;
+                return -1;
+            }
+
+            char[] buffer = messageReader.buffer;
+            int start = messageReader.position;
+            int end = Math.min(messageReader.limit, start + len);
+            int count = 0;
+            while(start + count < end && buffer[start + count] != '\n') {
+                count++;
+            }
+
+            System.arraycopy(buffer, start, cbuf, off, count);
+            if(recorded != null) {
+                recorded.append(buffer, start, count);
+            }
+            messageReader.position += count;
+            if(start + count < end) {
+                messageReader.position++;
+                ended = true;
+                return count == 0 ? -1 : count;
+            }
+
+            return count;
+        }
+
+        void stopRecording() {
+            recorded = null;
+        }
+
+        /**
+         * Returns the full text of the line, from what has been recorded and the remainder of the line that has not yet been read
+         */
+        String readRecordedLine() throws IOException {
+            String line = recorded + (ended ? "" : messageReader.readLine());
+            recorded = null;
+            ended = true;
+            return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+        }
+
+        /**
+         * Consumes any remainder of the line
+         */
+        void skipLine() throws IOException {
+            recorded = null;
+            if(!ended) {
+                messageReader.readLine();
+                ended = true;
             }
-            Rpc rpc = (Rpc) o;
-            return Objects.equals(id, rpc.id);
         }
 
         @Override
-        public int hashCode() {
-            return Objects.hash(id);
+        public void close() {
+            //The underlying reader continues with the next message
+        }
+    }
+
+    public record BatchResponse<V>(Map<String, V> results, Map<String, ErrorMessage> errors) {}
+
+    record ResponseElement(String id, Object result, ErrorMessage error, Exception failure) {}
+
+    private static class PendingRequest {
+        private final CompletableFuture<String> response = new CompletableFuture<>();
+        private final ObjectMapper resultMapper;
+        private final Class<?> resultType;
+        private final Set<String> ids;
+        private final Map<String, Object> results = new HashMap<>();
+        private final Map<String, ErrorMessage> errors = new HashMap<>();
+
+        public PendingRequest() {
+            this(null, null, Collections.emptyList());
+        }
+
+        public PendingRequest(ObjectMapper resultMapper, Class<?> resultType, Collection<String> ids) {
+            this.resultMapper = resultMapper;
+            this.resultType = resultType;
+            this.ids = new HashSet<>(ids);
+        }
+
+        public boolean isStreaming() {
+            return resultType != null;
+        }
+
+        public void add(ResponseElement element) {
+            if(element.failure() != null) {
+                response.completeExceptionally(new IllegalStateException("Could not read result for id " + element.id(), element.failure()));
+            } else if(element.id() == null && element.error() != null) {
+                response.completeExceptionally(new IllegalStateException("Server error " + element.error().getCode() + ": " + element.error().getMessage()));
+            } else if(element.id() != null && ids.contains(element.id())) {
+                if(element.error() != null) {
+                    errors.put(element.id(), element.error());
+                } else {
+                    results.put(element.id(), element.result());
+                }
+            }
         }
     }
 }
@@ -0,0 +1,80 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.sparrowwallet.drongo.KeyPurpose;
+import com.sparrowwallet.drongo.wallet.Wallet;
+import com.sparrowwallet.drongo.wallet.WalletNode;
+
+import java.util.*;
+
+/**
+ * Records the address nodes whose history changes during a wallet history refresh, so that changes can be notified without copying the wallet beforehand.
+ * Nodes are recorded as their transaction outputs are updated or cleared, and nodes added to the wallet during the refresh are always considered changed.
+ */
+public class WalletHistoryJournal {
+    private final Map<Wallet, WalletEntry> walletEntries = new IdentityHashMap<>();
+
+    public WalletHistoryJournal(Wallet wallet) {
+        walletEntries.put(wallet, new WalletEntry(wallet));
+        for(Wallet childWallet : wallet.getChildWallets()) {
+            if(childWallet.isNested()) {
+                walletEntries.put(childWallet, new WalletEntry(childWallet));
+            }
+        }
+    }
+
+    public synchronized boolean isRecording(Wallet wallet) {
+        return walletEntries.containsKey(wallet);
+    }
+
+    public synchronized void recordChanged(WalletNode walletNode) {
+        WalletEntry walletEntry = walletEntries.get(walletNode.getWallet());
+        if(walletEntry != null) {
+            walletEntry.changedNodes.add(walletNode);
+        }
+    }
+
+    public synchronized Integer getStoredBlockHeight(Wallet wallet) {
+        WalletEntry walletEntry = walletEntries.get(wallet);
+        return walletEntry == null ? null : walletEntry.storedBlockHeight;
+    }
+
+    public synchronized List<WalletNode> getHistoryChangedNodes(Wallet wallet) {
+        WalletEntry walletEntry = walletEntries.get(wallet);
+        if(walletEntry == null) {
+            return Collections.emptyList();
+        }
+
+        List<WalletNode> changedNodes = new ArrayList<>();
+        for(KeyPurpose keyPurpose : KeyPurpose.DEFAULT_PURPOSES) {
+            Set<WalletNode> purposeChangedNodes = new TreeSet<>();
+            walletEntry.changedNodes.stream().filter(node -> node.getKeyPurpose() == keyPurpose && node.getDerivation().size() > 1).forEach(purposeChangedNodes::add);
+
+            Set<WalletNode> children = wallet.getNode(keyPurpose).getChildren();
+            int previousChildCount = walletEntry.childCounts.getOrDefault(keyPurpose, 0);
+            if(children.size() > previousChildCount) {
+                for(WalletNode childNode : new ArrayList<>(children)) {
+                    if(childNode.getIndex() >= previousChildCount) {
+                        purposeChangedNodes.add(childNode);
+                    }
+                }
+            }
+
+            changedNodes.addAll(purposeChangedNodes);
+        }
+
+        return changedNodes;
+    }
+
+    private static class WalletEntry {
+        private final Integer storedBlockHeight;
+        private final Map<KeyPurpose, Integer> childCounts = new EnumMap<>(KeyPurpose.class);
+        private final Set<WalletNode> changedNodes = new HashSet<>();
+
+        public WalletEntry(Wallet wallet) {
+            this.storedBlockHeight = wallet.getStoredBlockHeight();
+            for(KeyPurpose keyPurpose : KeyPurpose.DEFAULT_PURPOSES) {
+                childCounts.put(keyPurpose, wallet.getNode(keyPurpose).getChildren().size());
+            }
+        }
+    }
+}
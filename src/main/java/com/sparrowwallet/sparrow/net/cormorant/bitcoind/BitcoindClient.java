@@ -1,8 +1,12 @@
 package com.sparrowwallet.sparrow.net.cormorant.bitcoind;
 
 import com.github.arteam.simplejsonrpc.client.JsonRpcClient;
+import com.github.arteam.simplejsonrpc.client.builder.BatchRequestBuilder;
+import com.github.arteam.simplejsonrpc.client.exception.JsonRpcBatchException;
 import com.github.arteam.simplejsonrpc.client.exception.JsonRpcException;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.net.HostAndPort;
 import com.sparrowwallet.drongo.KeyPurpose;
 import com.sparrowwallet.drongo.OutputDescriptor;
 import com.sparrowwallet.drongo.Utils;
@@ -16,6 +20,7 @@ import com.sparrowwallet.sparrow.event.CormorantPruneStatusEvent;
 import com.sparrowwallet.sparrow.event.CormorantScanStatusEvent;
 import com.sparrowwallet.sparrow.event.CormorantSyncStatusEvent;
 import com.sparrowwallet.sparrow.io.Config;
+import com.sparrowwallet.sparrow.io.Storage;
 import com.sparrowwallet.sparrow.net.Bwt;
 import com.sparrowwallet.sparrow.net.ConfigurationException;
 import com.sparrowwallet.sparrow.net.CoreAuthType;
@@ -32,13 +37,17 @@ import javafx.concurrent.Task;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class BitcoindClient {
     private static final Logger log = LoggerFactory.getLogger(BitcoindClient.class);
@@ -49,6 +58,14 @@ public class BitcoindClient {
 
     private static final long PRUNED_RESCAN_TIMEGAP_MILLIS = 7200*1000;
 
+    //When updates are pushed over ZMQ, poll only every minute as a fallback, and coalesce notifications into a poll at most every second
+    private static final int PUSH_FALLBACK_POLL_TICKS = 12;
+    private static final long PUSH_POLL_DELAY_MILLIS = 1000;
+    private static final Set<String> ZMQ_TOPICS = Set.of("hashblock", "rawtx", "sequence");
+
+    //Lookups of many txids are sent to Bitcoin Core as JSON-RPC batches of this many requests
+    public static final int DEFAULT_CORE_PAGE_SIZE = 500;
+
     //Error codes from https://github.com/bitcoin/bitcoin/blob/master/src/rpc/protocol.h
     public static final int RPC_METHOD_NOT_FOUND = -32601;
     public static final int RPC_WALLET_NOT_FOUND = -18;
@@ -95,6 +112,12 @@ public class BitcoindClient {
     private MempoolEntriesState mempoolEntriesState = MempoolEntriesState.UNINITIALIZED;
     private long timerTaskCount;
 
+    private final List<ZmqSubscriber> zmqSubscribers = new ArrayList<>();
+    private final AtomicBoolean pollRequested = new AtomicBoolean();
+    private final AtomicBoolean blockNotified = new AtomicBoolean();
+    private final AtomicBoolean mempoolRefreshRequired = new AtomicBoolean();
+    private final Set<Sha256Hash> pushedMempoolTxids = ConcurrentHashMap.newKeySet();
+
     public BitcoindClient(boolean useWallets) {
         BitcoindTransport bitcoindTransport;
 
@@ -122,6 +145,7 @@ public class BitcoindClient {
         VerboseBlockHeader blockHeader = getBitcoindService().getBlockHeader(blockchainInfo.bestblockhash());
         tip = blockHeader.getBlockHeader();
         timer.schedule(new PollTask(), 5000, 5000);
+        startZmqSubscribers();
 
         if(blockchainInfo.initialblockdownload() && networkInfo.networkactive()) {
             syncingLock.lock();
@@ -173,10 +197,113 @@ public class BitcoindClient {
             }
         }
 
-        ListSinceBlock listSinceBlock = getListSinceBlock(null);
+        ListSinceBlock listSinceBlock = null;
+        String persistedBlock = readStore();
+        if(persistedBlock != null) {
+            try {
+                //Resume from the last block processed, with transactions in any blocks reorged out since then returned as removed
+                listSinceBlock = getListSinceBlock(persistedBlock);
+            } catch(JsonRpcException e) {
+                log.warn("Could not resume index from block " + persistedBlock + ", rebuilding", e);
+                store.clear();
+            }
+        }
+
+        if(listSinceBlock == null) {
+            listSinceBlock = getListSinceBlock(null);
+        }
         updateStore(listSinceBlock);
     }
 
+    private File getStoreFile() {
+        String server = Config.get().getCoreServer() == null ? "default" : Config.get().getCoreServer().getHostAndPort().toString();
+        return new File(Storage.getCormorantDir(), server.replaceAll("[^A-Za-z0-9.\\-]", "_") + "-" + CORE_WALLET_NAME + ".idx");
+    }
+
+    private synchronized String readStore() {
+        File storeFile = getStoreFile();
+        if(!storeFile.exists()) {
+            return null;
+        }
+
+        try {
+            long start = System.currentTimeMillis();
+            String persistedBlock = store.read(storeFile);
+            log.debug("Read index at block " + persistedBlock + " in " + (System.currentTimeMillis() - start) + "ms");
+            return persistedBlock;
+        } catch(IOException e) {
+            log.warn("Error reading index from " + storeFile.getAbsolutePath() + ", rebuilding", e);
+            return null;
+        }
+    }
+
+    private synchronized void writeStore() {
+        if(lastBlock == null) {
+            return;
+        }
+
+        File storeFile = getStoreFile();
+        try {
+            store.write(storeFile, lastBlock);
+        } catch(IOException e) {
+            log.warn("Error writing index to " + storeFile.getAbsolutePath(), e);
+        }
+    }
+
+    private void startZmqSubscribers() {
+        List<ZmqNotification> zmqNotifications;
+        try {
+            zmqNotifications = getBitcoindService().getZmqNotifications();
+        } catch(Exception e) {
+            log.debug("Could not retrieve ZMQ notifications, polling for updates", e);
+            return;
+        }
+
+        Map<String, Set<String>> endpointTopics = new LinkedHashMap<>();
+        for(ZmqNotification zmqNotification : zmqNotifications) {
+            if(ZMQ_TOPICS.contains(zmqNotification.getTopic()) && zmqNotification.address() != null && zmqNotification.address().startsWith("tcp://")) {
+                endpointTopics.computeIfAbsent(zmqNotification.address(), k -> new LinkedHashSet<>()).add(zmqNotification.getTopic());
+            }
+        }
+
+        for(Map.Entry<String, Set<String>> entry : endpointTopics.entrySet()) {
+            HostAndPort hostAndPort = HostAndPort.fromString(entry.getKey().substring("tcp://".length()));
+            String host = hostAndPort.getHost();
+            if(Config.get().getCoreServer() != null && (host.equals("*") || host.equals("0.0.0.0") || host.equals("::") || host.equals("::1") || host.equals("localhost") || host.startsWith("127."))) {
+                //Wildcard and loopback endpoints are reached at the configured Bitcoin Core host
+                host = Config.get().getCoreServer().getHost();
+            }
+
+            ZmqSubscriber zmqSubscriber = new ZmqSubscriber(host, hostAndPort.getPort(), entry.getValue(), new ZmqListener());
+            zmqSubscribers.add(zmqSubscriber);
+            zmqSubscriber.start();
+        }
+
+        if(!endpointTopics.isEmpty()) {
+            log.info("Subscribing to Bitcoin Core ZMQ notifications " + endpointTopics);
+        }
+    }
+
+    private boolean isZmqConnected(String topic) {
+        return zmqSubscribers.stream().anyMatch(zmqSubscriber -> zmqSubscriber.isConnected() && zmqSubscriber.getTopics().contains(topic));
+    }
+
+    private boolean isPushActive() {
+        boolean blocksPushed = isZmqConnected("hashblock") || isZmqConnected("sequence");
+        boolean transactionsPushed = isZmqConnected("rawtx") || isZmqConnected("sequence");
+        return blocksPushed && transactionsPushed;
+    }
+
+    private void requestPoll() {
+        if(!stopped && pollRequested.compareAndSet(false, true)) {
+            try {
+                timer.schedule(new PollTask(true), PUSH_POLL_DELAY_MILLIS);
+            } catch(IllegalStateException e) {
+                //Timer has been cancelled
+            }
+        }
+    }
+
     private ListSinceBlock getListSinceBlock(String blockHash) {
         try {
             return getBitcoindService().listSinceBlock(blockHash, 1, true, true, true);
@@ -434,8 +561,10 @@ public class BitcoindClient {
 
     public void stop() {
         timer.cancel();
+        zmqSubscribers.forEach(ZmqSubscriber::close);
         pruneWarnedDescriptors.clear();
         stopped = true;
+        writeStore();
     }
 
     private void updateStore(ListSinceBlock listSinceBlock, Set<String> descriptors) {
@@ -448,9 +577,7 @@ public class BitcoindClient {
         Set<String> updatedScriptHashes = new HashSet<>();
 
         for(ListTransaction removedTransaction : listSinceBlock.removed()) {
-            if(removedTransaction.confirmations() < 0) {
-                updatedScriptHashes.addAll(store.purgeTransaction(removedTransaction.txid()));
-            }
+            updatedScriptHashes.addAll(store.disconnectTransaction(removedTransaction.txid(), removedTransaction.confirmations()));
         }
 
         List<ListTransaction> sentTransactions = new ArrayList<>();
@@ -480,9 +607,12 @@ public class BitcoindClient {
             }
         }
 
+        Set<String> unseenSentTxids = sentTransactions.stream().map(ListTransaction::txid).filter(txid -> !store.getSpentOutputs().containsKey(txid)).collect(Collectors.toSet());
+        Map<String, String> sentTransactionHexes = getTransactions(unseenSentTxids);
+
         for(ListTransaction sentTransaction : sentTransactions) {
             Set<HashIndex> spentOutputs = store.getSpentOutputs().computeIfAbsent(sentTransaction.txid(), txid -> {
-                String txhex = getTransaction(txid);
+                String txhex = sentTransactionHexes.containsKey(txid) ? sentTransactionHexes.get(txid) : getTransaction(txid);
                 Transaction tx = new Transaction(Utils.hexToBytes(txhex));
                 return tx.getInputs().stream().map(txInput -> new HashIndex(txInput.getOutpoint().getHash(), txInput.getOutpoint().getIndex())).collect(Collectors.toSet());
             });
@@ -504,10 +634,14 @@ public class BitcoindClient {
             }
         }
 
-        syncMempool(!listSinceBlock.lastblock().equals(lastBlock));
+        boolean newBlock = !listSinceBlock.lastblock().equals(lastBlock);
+        syncMempool(newBlock);
         updatedScriptHashes.addAll(store.updateMempoolTransactions());
 
         lastBlock = listSinceBlock.lastblock();
+        if(newBlock || !listSinceBlock.removed().isEmpty()) {
+            writeStore();
+        }
 
         for(String updatedScriptHash : updatedScriptHashes) {
             Cormorant.getEventBus().post(new ScriptHashStatus(updatedScriptHash, store.getStatus(updatedScriptHash)));
@@ -522,17 +656,105 @@ public class BitcoindClient {
         }
     }
 
+    private Map<String, String> getTransactions(Collection<String> txids) {
+        Map<String, String> transactionHexes = new HashMap<>();
+        Map<String, WalletTransaction> walletTransactions = getBatchResults("gettransaction", txids, WalletTransaction.class, true, false);
+        walletTransactions.forEach((txid, walletTransaction) -> {
+            if(walletTransaction.hex() != null) {
+                transactionHexes.put(txid, walletTransaction.hex());
+            }
+        });
+
+        Set<String> missingTxids = new HashSet<>(Sets.difference(new HashSet<>(txids), transactionHexes.keySet()));
+        if(!missingTxids.isEmpty()) {
+            Map<String, Object> rawTransactions = getBatchResults("getrawtransaction", missingTxids, Object.class, false);
+            rawTransactions.forEach((txid, rawTransaction) -> transactionHexes.put(txid, rawTransaction.toString()));
+        }
+
+        return transactionHexes;
+    }
+
+    /**
+     * Returns the concatenated hex headers of up to count blocks from the start height, stopping at the chain tip
+     */
+    public String getBlockHeaders(int startHeight, int count) {
+        Map<Integer, String> blockHashes = new HashMap<>();
+        for(List<Integer> page : Lists.partition(IntStream.range(startHeight, startHeight + count).boxed().toList(), Config.get().getMaxCorePageSize())) {
+            BatchRequestBuilder<Integer, String> batchRequest = jsonRpcClient.createBatchRequest().keysType(Integer.class).returnType(String.class);
+            for(Integer height : page) {
+                batchRequest.add(height, "getblockhash", height);
+            }
+
+            try {
+                blockHashes.putAll(batchRequest.execute());
+            } catch(JsonRpcBatchException e) {
+                //Heights above the chain tip are not found
+                for(Map.Entry<?, ?> success : e.getSuccesses().entrySet()) {
+                    blockHashes.put((Integer)success.getKey(), (String)success.getValue());
+                }
+            }
+        }
+
+        Map<String, String> blockHeaders = getBatchResults("getblockheader", blockHashes.values(), String.class, false);
+
+        StringBuilder headers = new StringBuilder();
+        for(int height = startHeight; height < startHeight + count; height++) {
+            String blockHeader = blockHashes.containsKey(height) ? blockHeaders.get(blockHashes.get(height)) : null;
+            if(blockHeader == null) {
+                break;
+            }
+            headers.append(blockHeader);
+        }
+
+        return headers.toString();
+    }
+
+    private Map<String, MempoolEntry> getMempoolEntries(Collection<String> txids) {
+        return getBatchResults("getmempoolentry", txids, MempoolEntry.class);
+    }
+
+    /**
+     * Calls a method taking a txid as its first parameter for each of the provided txids, sending the calls in batches of the configured page size.
+     * Results for failed calls, such as for transactions no longer in the mempool, are omitted from the returned map.
+     */
+    private <V> Map<String, V> getBatchResults(String method, Collection<String> txids, Class<V> returnType, Object... params) {
+        Map<String, V> results = new HashMap<>();
+        for(List<String> page : Lists.partition(new ArrayList<>(txids), Config.get().getMaxCorePageSize())) {
+            BatchRequestBuilder<String, V> batchRequest = jsonRpcClient.createBatchRequest().keysType(String.class).returnType(returnType);
+            for(String txid : page) {
+                Object[] txidParams = new Object[params.length + 1];
+                txidParams[0] = txid;
+                System.arraycopy(params, 0, txidParams, 1, params.length);
+                batchRequest.add(txid, method, txidParams);
+            }
+
+            try {
+                results.putAll(batchRequest.execute());
+            } catch(JsonRpcBatchException e) {
+                for(Map.Entry<?, ?> success : e.getSuccesses().entrySet()) {
+                    results.put((String)success.getKey(), returnType.cast(success.getValue()));
+                }
+            }
+        }
+
+        return results;
+    }
+
     private void syncMempool(boolean forceRefresh) {
         Map<String, MempoolEntry> mempoolEntries = store.getMempoolEntries();
 
-        for(String txid : new HashSet<>(mempoolEntries.keySet())) {
-            if(forceRefresh || mempoolEntries.get(txid) == null) {
-                try {
-                    MempoolEntry mempoolEntry = getBitcoindService().getMempoolEntry(txid);
-                    mempoolEntries.put(txid, mempoolEntry);
-                } catch(JsonRpcException e) {
-                    mempoolEntries.remove(txid);
-                }
+        Set<String> txids = new HashSet<>(mempoolEntries.keySet());
+        if(!forceRefresh) {
+            txids.removeIf(txid -> mempoolEntries.get(txid) != null);
+        }
+
+        Map<String, MempoolEntry> updatedEntries = getMempoolEntries(txids);
+        for(String txid : txids) {
+            MempoolEntry mempoolEntry = updatedEntries.get(txid);
+            if(mempoolEntry != null) {
+                mempoolEntries.put(txid, mempoolEntry);
+            } else {
+                mempoolEntries.remove(txid);
             }
         }
     }
@@ -598,15 +820,8 @@ public class BitcoindClient {
                     .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().getVsizeFeerate(), (u, v) -> u, HashMap::new));
             mempoolEntries.putAll(entries);
         } else {
-            //Slow system, fetch mempool entries one-by-one to avoid risking a node crash
-            for(Sha256Hash txid : txids) {
-                try {
-                    MempoolEntry mempoolEntry = getBitcoindService().getMempoolEntry(txid.toString());
-                    mempoolEntries.put(txid, mempoolEntry.getVsizeFeerate());
-                } catch(JsonRpcException e) {
-                    //ignore, probably tx has been removed from mempool
-                }
-            }
+            //Slow system, fetch mempool entries a page at a time to avoid risking a node crash
+            putMempoolEntries(txids);
         }
 
         mempoolEntriesState = MempoolEntriesState.INITIALIZED;
@@ -618,14 +833,27 @@ public class BitcoindClient {
         Set<Sha256Hash> removed = new HashSet<>(Sets.difference(mempoolEntries.keySet(), txids));
         mempoolEntries.keySet().removeAll(removed);
 
-        Set<Sha256Hash> added = Sets.difference(txids, mempoolEntries.keySet());
-        for(Sha256Hash txid : added) {
-            try {
-                MempoolEntry mempoolEntry = getBitcoindService().getMempoolEntry(txid.toString());
-                mempoolEntries.put(txid, mempoolEntry.getVsizeFeerate());
-            } catch(JsonRpcException e) {
-                //ignore, probably tx has been removed from mempool
-            }
+        Set<Sha256Hash> added = new HashSet<>(Sets.difference(txids, mempoolEntries.keySet()));
+        putMempoolEntries(added);
+    }
+
+    private void updatePushedMempoolEntries() {
+        if(mempoolRefreshRequired.getAndSet(false)) {
+            pushedMempoolTxids.clear();
+            updateMempoolEntries();
+            return;
+        }
+
+        List<Sha256Hash> txids = new ArrayList<>(pushedMempoolTxids);
+        txids.forEach(pushedMempoolTxids::remove);
+        putMempoolEntries(txids);
+    }
+
+    private void putMempoolEntries(Collection<Sha256Hash> txids) {
+        //Entries for txs that have since been removed from the mempool are not returned
+        Map<String, MempoolEntry> entries = getMempoolEntries(txids.stream().map(Sha256Hash::toString).toList());
+        for(Map.Entry<String, MempoolEntry> entry : entries.entrySet()) {
+            mempoolEntries.put(Sha256Hash.wrap(entry.getKey()), entry.getValue().getVsizeFeerate());
         }
     }
 
@@ -662,14 +890,32 @@ public class BitcoindClient {
     }
 
     private class PollTask extends TimerTask {
+        private final boolean pushed;
+
+        public PollTask() {
+            this(false);
+        }
+
+        public PollTask(boolean pushed) {
+            this.pushed = pushed;
+        }
+
         @Override
         public void run() {
             if(stopped) {
                 timer.cancel();
             }
 
+            if(pushed) {
+                pollRequested.set(false);
+            }
+
             try {
                 if(syncing) {
+                    if(pushed) {
+                        return;
+                    }
+
                     BlockchainInfo blockchainInfo = getBitcoindService().getBlockchainInfo();
                     if(blockchainInfo.initialblockdownload() && !isEmptyBlockchain(blockchainInfo)) {
                         int percent = blockchainInfo.getProgressPercent();
@@ -687,26 +933,44 @@ public class BitcoindClient {
                     }
                 }
 
-                if(lastBlock != null && tip != null) {
-                    String blockhash = getBitcoindService().getBlockHash(tip.height());
-                    if(!lastBlock.equals(blockhash)) {
-                        log.warn("Reorg detected, block height " + tip.height() + " was " + lastBlock + " and now is " + blockhash);
-                        lastBlock = null;
+                boolean pushActive = isPushActive();
+                boolean mempoolDue = !pushed && (++timerTaskCount+1) % 12 == 0;
+                boolean fallbackDue = !pushed && (timerTaskCount % PUSH_FALLBACK_POLL_TICKS == 0);
+
+                if(pushed || !pushActive || fallbackDue) {
+                    //When blocks are pushed, a reorg is only possible after a block notification
+                    boolean checkReorg = !pushActive || !pushed || blockNotified.getAndSet(false);
+                    if(checkReorg && lastBlock != null && tip != null) {
+                        String blockhash = getBitcoindService().getBlockHash(tip.height());
+                        if(!lastBlock.equals(blockhash)) {
+                            //Listing since the reorged block returns transactions from the fork point, and those in blocks no longer in the main chain as removed
+                            log.warn("Reorg detected, block height " + tip.height() + " was " + lastBlock + " and now is " + blockhash);
+                        }
+                    }
+
+                    if(mempoolEntriesState == MempoolEntriesState.INITIALIZED) {
+                        if(isZmqConnected("sequence")) {
+                            updatePushedMempoolEntries();
+                        } else if(mempoolDue) {
+                            updateMempoolEntries();
+                        }
                     }
-                }
 
-                if(mempoolEntriesState == MempoolEntriesState.INITIALIZED && (++timerTaskCount+1) % 12 == 0) {
+                    ListSinceBlock listSinceBlock = getListSinceBlock(lastBlock);
+                    String currentBlock = lastBlock;
+                    updateStore(listSinceBlock);
+
+                    if(currentBlock == null || !currentBlock.equals(listSinceBlock.lastblock())) {
+                        VerboseBlockHeader blockHeader = getBitcoindService().getBlockHeader(listSinceBlock.lastblock());
+                        tip = blockHeader.getBlockHeader();
+                        Cormorant.getEventBus().post(tip);
+                    }
+                } else if(mempoolDue && mempoolEntriesState == MempoolEntriesState.INITIALIZED && !isZmqConnected("sequence")) {
                     updateMempoolEntries();
                 }
 
-                ListSinceBlock listSinceBlock = getListSinceBlock(lastBlock);
-                String currentBlock = lastBlock;
-                updateStore(listSinceBlock);
-
-                if(currentBlock == null || !currentBlock.equals(listSinceBlock.lastblock())) {
-                    VerboseBlockHeader blockHeader = getBitcoindService().getBlockHeader(listSinceBlock.lastblock());
-                    tip = blockHeader.getBlockHeader();
-                    Cormorant.getEventBus().post(tip);
+                if(pushed) {
+                    return;
                 }
 
                 if(scanningLock.tryLock()) {
@@ -738,6 +1002,46 @@ public class BitcoindClient {
         }
     }
 
+    private class ZmqListener implements ZmqSubscriber.Listener {
+        @Override
+        public void onMessage(String topic, byte[] body) {
+            switch(topic) {
+                case "hashblock" -> {
+                    blockNotified.set(true);
+                    mempoolRefreshRequired.set(true);
+                }
+                case "sequence" -> {
+                    //Sequence messages are a 32 byte hash, a label, and for mempool events an 8 byte sequence number
+                    if(body.length < 33) {
+                        return;
+                    }
+
+                    Sha256Hash hash = Sha256Hash.wrap(Arrays.copyOfRange(body, 0, 32));
+                    char label = (char)body[32];
+                    if(label == 'C' || label == 'D') {
+                        blockNotified.set(true);
+                        mempoolRefreshRequired.set(true);
+                    } else if(label == 'A') {
+                        pushedMempoolTxids.add(hash);
+                    } else if(label == 'R') {
+                        pushedMempoolTxids.remove(hash);
+                        mempoolEntries.remove(hash);
+                    }
+                }
+            }
+
+            requestPoll();
+        }
+
+        @Override
+        public void onConnected() {
+            //Notifications may have been missed while disconnected
+            blockNotified.set(true);
+            mempoolRefreshRequired.set(true);
+            requestPoll();
+        }
+    }
+
     private Set<Wallet> getScanningWallets() {
         Set<Wallet> scanningWallets = new HashSet<>();
         Set<Wallet> openWallets = AppServices.get().getOpenWallets().keySet();
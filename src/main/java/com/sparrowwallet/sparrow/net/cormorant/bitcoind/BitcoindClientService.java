@@ -40,6 +40,9 @@ public interface BitcoindClientService {
     @JsonRpcMethod("getwalletinfo")
     WalletInfo getWalletInfo();
 
+    @JsonRpcMethod("getzmqnotifications")
+    List<ZmqNotification> getZmqNotifications();
+
     @JsonRpcMethod("getblockhash")
     String getBlockHash(@JsonRpcParam("height") int height);
 
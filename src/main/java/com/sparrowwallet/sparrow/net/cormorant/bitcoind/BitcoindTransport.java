@@ -98,15 +98,26 @@ public class BitcoindTransport implements Transport {
         }
 
         if(statusCode == 401) {
+            //Consume the response so the connection can still be reused
+            InputStream errorStream = connection.getErrorStream();
+            if(errorStream != null) {
+                try(errorStream) {
+                    errorStream.readAllBytes();
+                }
+            }
             throw new IOException((cookieFile == null ? "User/pass" : "Cookie file") + " authentication failed");
         }
         InputStream inputStream = connection.getErrorStream() == null ? connection.getInputStream() : connection.getErrorStream();
 
+        //Batch responses are returned with a 200 status, but still contain a null result for failed requests
+        boolean batch = request.startsWith("[");
+
+        //Reading the response fully and closing the stream returns the connection to the keep-alive cache for reuse
         StringBuilder res = new StringBuilder();
         try(BufferedReader br = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
             String responseLine;
             while((responseLine = br.readLine()) != null) {
-                if(statusCode == 500) {
+                if(statusCode == 500 || batch) {
                     responseLine = responseLine.replace("\"result\":null,", "");
                 }
 
@@ -0,0 +1,7 @@
+package com.sparrowwallet.sparrow.net.cormorant.bitcoind;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record WalletTransaction(String txid, String hex) {
+}
@@ -0,0 +1,228 @@
+package com.sparrowwallet.sparrow.net.cormorant.bitcoind;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A minimal ZeroMQ SUB socket for Bitcoin Core's ZMQ notifications, implementing the ZMTP 3.0 greeting and NULL mechanism handshake over a plain TCP socket.
+ * Received messages are passed to the listener as a topic and body, and the connection is reestablished with backoff if it is lost.
+ */
+public class ZmqSubscriber {
+    private static final Logger log = LoggerFactory.getLogger(ZmqSubscriber.class);
+
+    private static final int GREETING_LENGTH = 64;
+    private static final int FLAG_MORE = 0x01;
+    private static final int FLAG_LONG = 0x02;
+    private static final int FLAG_COMMAND = 0x04;
+    private static final int MAX_FRAME_SIZE = 8 * 1024 * 1024;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final long MIN_RECONNECT_DELAY_MILLIS = 1000;
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 60000;
+
+    private final String host;
+    private final int port;
+    private final Set<String> topics;
+    private final Listener listener;
+
+    private Thread thread;
+    private volatile Socket socket;
+    private volatile boolean connected;
+    private volatile boolean closed;
+
+    public ZmqSubscriber(String host, int port, Collection<String> topics, Listener listener) {
+        this.host = host;
+        this.port = port;
+        this.topics = new LinkedHashSet<>(topics);
+        this.listener = listener;
+    }
+
+    public synchronized void start() {
+        if(thread == null) {
+            thread = new Thread(this::run, "Cormorant ZMQ " + host + ":" + port);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public void close() {
+        closed = true;
+        closeSocket();
+        if(thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public Set<String> getTopics() {
+        return Collections.unmodifiableSet(topics);
+    }
+
+    private void run() {
+        long reconnectDelay = MIN_RECONNECT_DELAY_MILLIS;
+        while(!closed) {
+            try(Socket zmqSocket = new Socket()) {
+                socket = zmqSocket;
+                zmqSocket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+                zmqSocket.setTcpNoDelay(true);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(zmqSocket.getInputStream()));
+                OutputStream out = new BufferedOutputStream(zmqSocket.getOutputStream());
+
+                handshake(in, out);
+                for(String topic : topics) {
+                    //ZMTP 3.0 subscriptions are messages starting with 0x01 followed by the topic prefix
+                    byte[] topicBytes = topic.getBytes(StandardCharsets.US_ASCII);
+                    byte[] subscription = new byte[topicBytes.length + 1];
+                    subscription[0] = 0x01;
+                    System.arraycopy(topicBytes, 0, subscription, 1, topicBytes.length);
+                    writeFrame(out, 0, subscription);
+                }
+                out.flush();
+
+                connected = true;
+                reconnectDelay = MIN_RECONNECT_DELAY_MILLIS;
+                log.debug("Subscribed to " + topics + " at tcp://" + host + ":" + port);
+                listener.onConnected();
+
+                readMessages(in);
+            } catch(IOException e) {
+                if(!closed) {
+                    log.debug("ZMQ connection to tcp://" + host + ":" + port + " failed", e);
+                }
+            } finally {
+                connected = false;
+                socket = null;
+            }
+
+            if(!closed) {
+                try {
+                    Thread.sleep(reconnectDelay);
+                } catch(InterruptedException e) {
+                    break;
+                }
+                reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY_MILLIS);
+            }
+        }
+    }
+
+    private void readMessages(DataInputStream in) throws IOException {
+        List<byte[]> frames = new ArrayList<>();
+        while(!closed) {
+            int flags = in.readUnsignedByte();
+            byte[] body = readFrameBody(in, flags);
+            if((flags & FLAG_COMMAND) != 0) {
+                continue;
+            }
+
+            frames.add(body);
+            if((flags & FLAG_MORE) == 0) {
+                if(frames.size() >= 2) {
+                    try {
+                        listener.onMessage(new String(frames.get(0), StandardCharsets.US_ASCII), frames.get(1));
+                    } catch(Exception e) {
+                        log.error("Error handling ZMQ message", e);
+                    }
+                }
+                frames.clear();
+            }
+        }
+    }
+
+    private static void handshake(DataInputStream in, OutputStream out) throws IOException {
+        byte[] greeting = new byte[GREETING_LENGTH];
+        greeting[0] = (byte)0xFF;
+        greeting[9] = 0x7F;
+        greeting[10] = 3;
+        greeting[11] = 0;
+        byte[] mechanism = "NULL".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(mechanism, 0, greeting, 12, mechanism.length);
+        out.write(greeting);
+        out.flush();
+
+        byte[] peerGreeting = new byte[GREETING_LENGTH];
+        in.readFully(peerGreeting);
+        if((peerGreeting[0] & 0xFF) != 0xFF || (peerGreeting[9] & 0x01) == 0 || peerGreeting[10] < 3) {
+            throw new IOException("Unsupported ZMQ peer greeting");
+        }
+
+        writeFrame(out, FLAG_COMMAND, getReadyCommand("SUB"));
+        out.flush();
+
+        int flags = in.readUnsignedByte();
+        byte[] command = readFrameBody(in, flags);
+        if((flags & FLAG_COMMAND) == 0 || command.length < 1) {
+            throw new IOException("Expected ZMQ READY command");
+        }
+
+        String name = new String(command, 1, Math.min(command[0] & 0xFF, command.length - 1), StandardCharsets.US_ASCII);
+        if(!name.equals("READY")) {
+            throw new IOException("ZMQ handshake failed with " + name + " command");
+        }
+    }
+
+    static byte[] getReadyCommand(String socketType) {
+        ByteArrayOutputStream command = new ByteArrayOutputStream();
+        writeShortString(command, "READY");
+        writeShortString(command, "Socket-Type");
+        byte[] value = socketType.getBytes(StandardCharsets.US_ASCII);
+        command.write(0);
+        command.write(0);
+        command.write(0);
+        command.write(value.length);
+        command.writeBytes(value);
+        return command.toByteArray();
+    }
+
+    private static void writeShortString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        out.write(bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    static void writeFrame(OutputStream out, int flags, byte[] body) throws IOException {
+        if(body.length > 255) {
+            out.write(flags | FLAG_LONG);
+            new DataOutputStream(out).writeLong(body.length);
+        } else {
+            out.write(flags);
+            out.write(body.length);
+        }
+        out.write(body);
+    }
+
+    static byte[] readFrameBody(DataInputStream in, int flags) throws IOException {
+        long size = (flags & FLAG_LONG) != 0 ? in.readLong() : in.readUnsignedByte();
+        if(size < 0 || size > MAX_FRAME_SIZE) {
+            throw new IOException("Invalid ZMQ frame size " + size);
+        }
+
+        byte[] body = new byte[(int)size];
+        in.readFully(body);
+        return body;
+    }
+
+    private void closeSocket() {
+        Socket zmqSocket = socket;
+        if(zmqSocket != null) {
+            try {
+                zmqSocket.close();
+            } catch(IOException e) {
+                //ignore
+            }
+        }
+    }
+
+    public interface Listener {
+        void onMessage(String topic, byte[] body);
+
+        default void onConnected() {}
+    }
+}
@@ -25,6 +25,8 @@ public class ElectrumServerService {
     private static final Version VERSION = new Version("1.4");
     private static final long VSIZE_BIN_WIDTH = 50000;
     private static final double DEFAULT_FEE_RATE = 0.00001d;
+    private static final int MAX_BLOCK_HEADERS = 2016;
+    private static final int BLOCK_HEADER_LENGTH = 80;
 
     private final BitcoindClient bitcoindClient;
     private final RequestHandler requestHandler;
@@ -159,6 +161,16 @@ public class ElectrumServerService {
         }
     }
 
+    @JsonRpcMethod("blockchain.block.headers")
+    public ElectrumBlockHeaders getBlockHeaders(@JsonRpcParam("start_height") int startHeight, @JsonRpcParam("count") int count) throws BitcoindIOException {
+        try {
+            String hex = bitcoindClient.getBlockHeaders(startHeight, Math.min(count, MAX_BLOCK_HEADERS));
+            return new ElectrumBlockHeaders(hex.length() / (BLOCK_HEADER_LENGTH * 2), hex, MAX_BLOCK_HEADERS);
+        } catch(IllegalStateException e) {
+            throw new BitcoindIOException(e);
+        }
+    }
+
     @JsonRpcMethod("blockchain.block.stats")
     public BlockStats getBlockStats(@JsonRpcParam("height") int height) throws BitcoindIOException, BlockNotFoundException {
         try {
@@ -11,32 +11,46 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class RequestHandler implements Runnable {
     private static final Logger log = LoggerFactory.getLogger(RequestHandler.class);
+
+    //Requests on a connection are handled concurrently up to this limit, with responses matched by id on the client
+    private static final int MAX_CONCURRENT_REQUESTS = 16;
+
+    //The server caches method metadata per service class, so it is shared across connections. Batch arrays are handled in a single call.
+    private static final JsonRpcServer rpcServer = new JsonRpcServer();
+
     private final Socket clientSocket;
     private final ElectrumServerService electrumServerService;
-    private final JsonRpcServer rpcServer = new JsonRpcServer();
+    private final ElectrumNotificationService electrumNotificationService;
+    private final Semaphore requestPermits = new Semaphore(MAX_CONCURRENT_REQUESTS);
+    private final AtomicBoolean flushPending = new AtomicBoolean();
+    private PrintWriter out;
 
-    private boolean headersSubscribed;
-    private final Set<String> scriptHashesSubscribed = new HashSet<>();
+    private volatile boolean headersSubscribed;
+    private final Set<String> scriptHashesSubscribed = ConcurrentHashMap.newKeySet();
 
     public RequestHandler(Socket clientSocket, BitcoindClient bitcoindClient) {
         this.clientSocket = clientSocket;
         this.electrumServerService = new ElectrumServerService(bitcoindClient, this);
+        this.electrumNotificationService = new JsonRpcClient(new ElectrumNotificationTransport(this)).onDemand(ElectrumNotificationService.class);
     }
 
     public void run() {
-        Cormorant.getEventBus().register(this);
-
         try {
             InputStream input  = clientSocket.getInputStream();
             BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
 
+            //Responses and notifications share a single buffered writer for the connection
             OutputStream output = clientSocket.getOutputStream();
-            PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)));
+            out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)));
+
+            Cormorant.getEventBus().register(this);
 
             while(true) {
                 String request = reader.readLine();
@@ -44,17 +58,53 @@ public class RequestHandler implements Runnable {
                     break;
                 }
 
-                String response = rpcServer.handle(request, electrumServerService);
-                out.println(response);
-                out.flush();
+                requestPermits.acquire();
+                Thread.ofVirtual().start(() -> {
+                    try {
+                        handle(request);
+                    } finally {
+                        requestPermits.release();
+                    }
+                });
             }
         } catch(IOException e) {
             log.error("Could not communicate with client socket", e);
+        } catch(InterruptedException e) {
+            //ignore, server is stopping
         }
 
         Cormorant.getEventBus().unregister(this);
     }
 
+    private void handle(String request) {
+        String response = rpcServer.handle(request, electrumServerService);
+        //A batch consisting only of notifications has no response
+        if(!response.isEmpty()) {
+            write(response);
+        }
+    }
+
+    private synchronized void write(String response) {
+        out.println(response);
+        out.flush();
+    }
+
+    void writeNotification(String notification) {
+        synchronized(this) {
+            out.println(notification);
+        }
+
+        //Notifications posted together are coalesced into a single flush of the connection
+        if(flushPending.compareAndSet(false, true)) {
+            Thread.ofVirtual().start(this::flush);
+        }
+    }
+
+    private synchronized void flush() {
+        flushPending.set(false);
+        out.flush();
+    }
+
     public void setHeadersSubscribed(boolean headersSubscribed) {
         this.headersSubscribed = headersSubscribed;
     }
@@ -70,18 +120,14 @@ public class RequestHandler implements Runnable {
     @Subscribe
     public void newBlock(ElectrumBlockHeader electrumBlockHeader) {
         if(headersSubscribed) {
-            ElectrumNotificationTransport electrumNotificationTransport = new ElectrumNotificationTransport(clientSocket);
-            JsonRpcClient jsonRpcClient = new JsonRpcClient(electrumNotificationTransport);
-            jsonRpcClient.onDemand(ElectrumNotificationService.class).notifyHeaders(electrumBlockHeader);
+            electrumNotificationService.notifyHeaders(electrumBlockHeader);
         }
     }
 
     @Subscribe
     public void scriptHashStatus(ScriptHashStatus scriptHashStatus) {
         if(isScriptHashSubscribed(scriptHashStatus.scriptHash())) {
-            ElectrumNotificationTransport electrumNotificationTransport = new ElectrumNotificationTransport(clientSocket);
-            JsonRpcClient jsonRpcClient = new JsonRpcClient(electrumNotificationTransport);
-            jsonRpcClient.onDemand(ElectrumNotificationService.class).notifyScriptHash(scriptHashStatus.scriptHash(), scriptHashStatus.status());
+            electrumNotificationService.notifyScriptHash(scriptHashStatus.scriptHash(), scriptHashStatus.status());
         }
     }
 }
@@ -1,6 +1,7 @@
 package com.sparrowwallet.sparrow.net.cormorant.index;
 
 import com.sparrowwallet.drongo.address.Address;
+import com.sparrowwallet.drongo.address.InvalidAddressException;
 import com.sparrowwallet.sparrow.net.cormorant.bitcoind.Category;
 import com.sparrowwallet.sparrow.net.cormorant.bitcoind.ListTransaction;
 import com.sparrowwallet.sparrow.net.cormorant.bitcoind.MempoolEntry;
@@ -8,22 +9,34 @@ import com.sparrowwallet.drongo.protocol.HashIndex;
 import com.sparrowwallet.drongo.protocol.Sha256Hash;
 import com.sparrowwallet.drongo.Utils;
 
+import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 
+/**
+ * The index of wallet transactions by script hash. It is updated by the bitcoind polling thread and read concurrently by client requests, so access is synchronized.
+ * The spent outputs and mempool entries maps are only accessed on the polling thread.
+ */
 public class Store {
+    private static final int PERSISTED_VERSION = 1;
+    private static final int HASH_LENGTH = 32;
+
     private final Map<String, Set<TxEntry>> scriptHashEntries = new HashMap<>();
     private final Map<HashIndex, Address> fundingAddresses = new HashMap<>();
     private final Map<String, Set<HashIndex>> spentOutputs = new HashMap<>();
     private final Map<Integer, String> blockHeightHashes = new HashMap<>();
     private final Map<String, MempoolEntry> mempoolEntries = new HashMap<>();
 
-    public String addAddressTransaction(Address address, ListTransaction listTransaction) {
+    public synchronized String addAddressTransaction(Address address, ListTransaction listTransaction) {
         if(listTransaction.category() == Category.receive || listTransaction.category() == Category.immature || listTransaction.category() == Category.generate) {
             fundingAddresses.put(new HashIndex(Sha256Hash.wrap(listTransaction.txid()), listTransaction.vout()), address);
         }
 
-        blockHeightHashes.put(listTransaction.blockheight(), listTransaction.blockhash());
+        if(listTransaction.confirmations() > 0 && listTransaction.blockhash() != null) {
+            blockHeightHashes.put(listTransaction.blockheight(), listTransaction.blockhash());
+        }
 
         String scriptHash = getScriptHash(address);
         Set<TxEntry> entries = scriptHashEntries.computeIfAbsent(scriptHash, k -> new TreeSet<>());
@@ -49,7 +62,7 @@ public class Store {
         return null;
     }
 
-    public Set<String> updateMempoolTransactions() {
+    public synchronized Set<String> updateMempoolTransactions() {
         Set<String> updatedScriptHashes = new HashSet<>();
 
         for(Map.Entry<String, Set<TxEntry>> scriptHashEntry : scriptHashEntries.entrySet()) {
@@ -80,7 +93,7 @@ public class Store {
         return updatedScriptHashes;
     }
 
-    public Set<String> purgeTransaction(String txid) {
+    public synchronized Set<String> purgeTransaction(String txid) {
         Set<String> updatedScriptHashes = new HashSet<>();
 
         for(Map.Entry<String, Set<TxEntry>> scriptHashEntry : scriptHashEntries.entrySet()) {
@@ -98,7 +111,50 @@ public class Store {
         return updatedScriptHashes;
     }
 
-    public String getStatus(String scriptHash) {
+    /**
+     * Handles a transaction from a block disconnected by a reorg, as returned in the removed list of listsinceblock.
+     * The hashes of the blocks from the lowest height the transaction was indexed at are dropped, since those blocks may no longer be in the main chain.
+     * A conflicted transaction is purged, and one back in the mempool is indexed as unconfirmed. One confirmed again is updated when the block it is now in is listed.
+     */
+    public synchronized Set<String> disconnectTransaction(String txid, int confirmations) {
+        int disconnectedHeight = Integer.MAX_VALUE;
+        for(Set<TxEntry> txEntries : scriptHashEntries.values()) {
+            for(TxEntry txEntry : txEntries) {
+                if(txEntry.height > 0 && txEntry.tx_hash.equals(txid)) {
+                    disconnectedHeight = Math.min(disconnectedHeight, txEntry.height);
+                }
+            }
+        }
+
+        int fromHeight = disconnectedHeight;
+        blockHeightHashes.keySet().removeIf(height -> height >= fromHeight);
+
+        if(confirmations < 0) {
+            return purgeTransaction(txid);
+        }
+
+        Set<String> updatedScriptHashes = new HashSet<>();
+        if(confirmations == 0) {
+            for(Map.Entry<String, Set<TxEntry>> scriptHashEntry : scriptHashEntries.entrySet()) {
+                Set<TxEntry> txEntries = scriptHashEntry.getValue();
+                Optional<TxEntry> optConfirmed = txEntries.stream().filter(txEntry -> txEntry.height > 0 && txEntry.tx_hash.equals(txid)).findFirst();
+                if(optConfirmed.isPresent()) {
+                    txEntries.remove(optConfirmed.get());
+                    txEntries.add(new TxEntry(0, 0, txid, optConfirmed.get().fee));
+                    updatedScriptHashes.add(scriptHashEntry.getKey());
+                }
+            }
+
+            if(!updatedScriptHashes.isEmpty() && !mempoolEntries.containsKey(txid)) {
+                //The mempool entry is fetched on the next mempool sync
+                mempoolEntries.put(txid, null);
+            }
+        }
+
+        return updatedScriptHashes;
+    }
+
+    public synchronized String getStatus(String scriptHash) {
         Set<TxEntry> entries = scriptHashEntries.get(scriptHash);
         if(entries == null || entries.isEmpty()) {
             return null;
@@ -112,7 +168,7 @@ public class Store {
         return Utils.bytesToHex(Sha256Hash.hash(scriptHashStatus.toString().getBytes(StandardCharsets.UTF_8)));
     }
 
-    public Address getFundingAddress(HashIndex spentOutput) {
+    public synchronized Address getFundingAddress(HashIndex spentOutput) {
         return fundingAddresses.get(spentOutput);
     }
 
@@ -124,19 +180,151 @@ public class Store {
         return mempoolEntries;
     }
 
-    public Set<TxEntry> getHistory(String scriptHash) {
+    public synchronized Set<TxEntry> getHistory(String scriptHash) {
         Set<TxEntry> entries = scriptHashEntries.get(scriptHash);
         if(entries == null) {
             return Collections.emptySet();
         }
 
-        return entries;
+        //Copied as the history is serialized after the lock is released
+        return new TreeSet<>(entries);
     }
 
-    public String getBlockHash(int height) {
+    public synchronized String getBlockHash(int height) {
         return blockHeightHashes.get(height);
     }
 
+    public synchronized void clear() {
+        scriptHashEntries.clear();
+        fundingAddresses.clear();
+        spentOutputs.clear();
+        blockHeightHashes.clear();
+        mempoolEntries.clear();
+    }
+
+    /**
+     * Writes the index to the provided file, recording the last block processed so that indexing can later resume from it.
+     * The file is written to a temporary file first and then moved into place, so an interrupted write does not corrupt the previous index.
+     */
+    public synchronized void write(File file, String lastBlock) throws IOException {
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(PERSISTED_VERSION);
+            out.writeUTF(lastBlock);
+
+            out.writeInt(scriptHashEntries.size());
+            for(Map.Entry<String, Set<TxEntry>> scriptHashEntry : scriptHashEntries.entrySet()) {
+                out.writeUTF(scriptHashEntry.getKey());
+                out.writeInt(scriptHashEntry.getValue().size());
+                for(TxEntry txEntry : scriptHashEntry.getValue()) {
+                    out.writeInt(txEntry.height);
+                    out.writeInt(txEntry.getIndex());
+                    out.writeUTF(txEntry.tx_hash);
+                    out.writeLong(txEntry.fee == null ? -1 : txEntry.fee);
+                }
+            }
+
+            out.writeInt(fundingAddresses.size());
+            for(Map.Entry<HashIndex, Address> fundingAddress : fundingAddresses.entrySet()) {
+                writeHashIndex(out, fundingAddress.getKey());
+                out.writeUTF(fundingAddress.getValue().toString());
+            }
+
+            out.writeInt(spentOutputs.size());
+            for(Map.Entry<String, Set<HashIndex>> spentOutput : spentOutputs.entrySet()) {
+                out.writeUTF(spentOutput.getKey());
+                out.writeInt(spentOutput.getValue().size());
+                for(HashIndex hashIndex : spentOutput.getValue()) {
+                    writeHashIndex(out, hashIndex);
+                }
+            }
+
+            out.writeInt(blockHeightHashes.size());
+            for(Map.Entry<Integer, String> blockHeightHash : blockHeightHashes.entrySet()) {
+                out.writeInt(blockHeightHash.getKey());
+                out.writeUTF(blockHeightHash.getValue());
+            }
+        }
+
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Replaces the contents of the index with those read from the provided file, returning the last block processed when the file was written
+     */
+    public synchronized String read(File file) throws IOException {
+        clear();
+
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = in.readInt();
+            if(version != PERSISTED_VERSION) {
+                throw new IOException("Unsupported index version " + version);
+            }
+
+            String lastBlock = in.readUTF();
+
+            int scriptHashCount = in.readInt();
+            for(int i = 0; i < scriptHashCount; i++) {
+                String scriptHash = in.readUTF();
+                Set<TxEntry> entries = new TreeSet<>();
+                int entryCount = in.readInt();
+                for(int j = 0; j < entryCount; j++) {
+                    int height = in.readInt();
+                    int index = in.readInt();
+                    String txid = in.readUTF();
+                    long fee = in.readLong();
+                    entries.add(new TxEntry(height, index, txid, fee < 0 ? null : fee));
+                    if(height <= 0) {
+                        //Mempool entries are refreshed on the next sync
+                        mempoolEntries.put(txid, null);
+                    }
+                }
+                scriptHashEntries.put(scriptHash, entries);
+            }
+
+            int fundingCount = in.readInt();
+            for(int i = 0; i < fundingCount; i++) {
+                HashIndex hashIndex = readHashIndex(in);
+                fundingAddresses.put(hashIndex, Address.fromString(in.readUTF()));
+            }
+
+            int spentCount = in.readInt();
+            for(int i = 0; i < spentCount; i++) {
+                String txid = in.readUTF();
+                Set<HashIndex> hashIndexes = new HashSet<>();
+                int outputCount = in.readInt();
+                for(int j = 0; j < outputCount; j++) {
+                    hashIndexes.add(readHashIndex(in));
+                }
+                spentOutputs.put(txid, hashIndexes);
+            }
+
+            int blockCount = in.readInt();
+            for(int i = 0; i < blockCount; i++) {
+                blockHeightHashes.put(in.readInt(), in.readUTF());
+            }
+
+            return lastBlock;
+        } catch(InvalidAddressException e) {
+            clear();
+            throw new IOException("Invalid address in index", e);
+        } catch(IOException e) {
+            clear();
+            throw e;
+        }
+    }
+
+    private static void writeHashIndex(DataOutputStream out, HashIndex hashIndex) throws IOException {
+        out.write(hashIndex.getHash().getBytes());
+        out.writeLong(hashIndex.getIndex());
+    }
+
+    private static HashIndex readHashIndex(DataInputStream in) throws IOException {
+        byte[] hash = new byte[HASH_LENGTH];
+        in.readFully(hash);
+        return new HashIndex(Sha256Hash.wrap(hash), in.readLong());
+    }
+
     public static String getScriptHash(Address address) {
         byte[] hash = Sha256Hash.hash(address.getOutputScript().getProgram());
         byte[] reversed = Utils.reverseBytes(hash);
@@ -26,6 +26,17 @@ public class TxEntry implements Comparable<TxEntry> {
         this.fee = btcFee > 0.0 ? (long)(btcFee * Transaction.SATOSHIS_PER_BITCOIN) : null;
     }
 
+    TxEntry(int height, int index, String tx_hash, Long fee) {
+        this.height = height;
+        this.index = index;
+        this.tx_hash = tx_hash;
+        this.fee = fee;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
     @Override
     public boolean equals(Object o) {
         if(this == o) {
@@ -78,7 +78,7 @@ public class SparrowTerminal extends Application {
 
     @Override
     public void stop() throws Exception {
-
+        Config.get().flushNow();
     }
 
     public Screen getScreen() {
@@ -123,7 +123,7 @@ public class TransactionsDialog extends WalletDialog {
     public void walletHistoryChanged(WalletHistoryChangedEvent event) {
         if(event.getWallet().equals(getWalletForm().getWallet())) {
             WalletTransactionsEntry walletTransactionsEntry = getWalletForm().getWalletTransactionsEntry();
-            walletTransactionsEntry.updateTransactions();
+            walletTransactionsEntry.updateTransactions(event.getAllHistoryChangedNodes());
             updateHistory(walletTransactionsEntry);
             updateLabels(walletTransactionsEntry);
         }
@@ -0,0 +1,77 @@
+package com.sparrowwallet.sparrow.wallet;
+
+import com.google.common.collect.MapMaker;
+import com.sparrowwallet.drongo.wallet.Wallet;
+import com.sparrowwallet.sparrow.EventManager;
+import com.sparrowwallet.sparrow.WalletTabData;
+import com.sparrowwallet.sparrow.event.WalletBlockHeightChangedEvent;
+import com.sparrowwallet.sparrow.event.WalletTabsClosedEvent;
+
+import java.util.*;
+
+/**
+ * Updates the confirmation counts of transaction entries that are not yet fully confirmed when their wallet's block height changes, from a single subscription.
+ * Entries are held weakly per wallet, so entries that are discarded, such as search results, need not be removed and are no longer updated once collected.
+ * Wallets are matched by their wallet id, so entries created for a wallet instance that has since been replaced continue to be updated.
+ */
+public class ConfirmationsTicker {
+    private static final ConfirmationsTicker INSTANCE = new ConfirmationsTicker();
+
+    private final Map<Wallet, Set<TransactionEntry>> confirmingEntries = new MapMaker().weakKeys().makeMap();
+
+    private ConfirmationsTicker() {
+        EventManager.get().subscribe(this, WalletBlockHeightChangedEvent.class, this::walletBlockHeightChanged);
+        EventManager.get().subscribe(this, WalletTabsClosedEvent.class, this::walletTabsClosed);
+    }
+
+    public static ConfirmationsTicker get() {
+        return INSTANCE;
+    }
+
+    public void track(TransactionEntry transactionEntry) {
+        confirmingEntries.computeIfAbsent(transactionEntry.getWallet(), k -> Collections.newSetFromMap(new MapMaker().weakKeys().makeMap())).add(transactionEntry);
+    }
+
+    boolean isTracked(TransactionEntry transactionEntry) {
+        Set<TransactionEntry> entries = confirmingEntries.get(transactionEntry.getWallet());
+        return entries != null && entries.contains(transactionEntry);
+    }
+
+    private void walletBlockHeightChanged(WalletBlockHeightChangedEvent event) {
+        for(Wallet wallet : getTrackedWallets(event.getWallet(), event.getWalletId())) {
+            Set<TransactionEntry> entries = confirmingEntries.get(wallet);
+            if(entries != null) {
+                for(TransactionEntry transactionEntry : entries) {
+                    transactionEntry.setConfirmations(transactionEntry.calculateConfirmations());
+                    if(!transactionEntry.isFullyConfirming()) {
+                        entries.remove(transactionEntry);
+                    }
+                }
+            }
+        }
+    }
+
+    private void walletTabsClosed(WalletTabsClosedEvent event) {
+        for(WalletTabData tabData : event.getClosedWalletTabData()) {
+            WalletForm walletForm = tabData.getWalletForm();
+            for(Wallet wallet : getTrackedWallets(walletForm.getWallet(), walletForm.getWalletId())) {
+                confirmingEntries.remove(wallet);
+            }
+        }
+    }
+
+    /**
+     * Returns the tracked wallet instances that are either the given wallet, or are bound to the same wallet id
+     */
+    private List<Wallet> getTrackedWallets(Wallet wallet, String walletId) {
+        String id = walletId == null ? EventManager.get().getWalletId(wallet) : walletId;
+        List<Wallet> wallets = new ArrayList<>();
+        for(Wallet trackedWallet : confirmingEntries.keySet()) {
+            if(trackedWallet == wallet || (id != null && id.equals(EventManager.get().getWalletId(trackedWallet)))) {
+                wallets.add(trackedWallet);
+            }
+        }
+
+        return wallets;
+    }
+}
@@ -1,6 +1,5 @@
 package com.sparrowwallet.sparrow.wallet;
 
-import com.google.common.eventbus.Subscribe;
 import com.sparrowwallet.drongo.KeyPurpose;
 import com.sparrowwallet.drongo.protocol.HashIndex;
 import com.sparrowwallet.drongo.protocol.TransactionInput;
@@ -8,10 +7,7 @@ import com.sparrowwallet.drongo.protocol.TransactionOutput;
 import com.sparrowwallet.drongo.wallet.*;
 import com.sparrowwallet.sparrow.AppServices;
 import com.sparrowwallet.sparrow.EventManager;
-import com.sparrowwallet.sparrow.WalletTabData;
-import com.sparrowwallet.sparrow.event.WalletBlockHeightChangedEvent;
 import com.sparrowwallet.sparrow.event.WalletEntryLabelsChangedEvent;
-import com.sparrowwallet.sparrow.event.WalletTabsClosedEvent;
 import com.sparrowwallet.sparrow.net.MempoolRateSize;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.IntegerPropertyBase;
@@ -27,6 +23,7 @@ public class TransactionEntry extends Entry implements Comparable<TransactionEnt
     private static final Logger log = LoggerFactory.getLogger(TransactionEntry.class);
 
     private final BlockTransaction blockTransaction;
+    private Long value;
 
     public TransactionEntry(Wallet wallet, BlockTransaction blockTransaction, Map<BlockTransactionHashIndex, KeyPurpose> inputs, Map<BlockTransactionHashIndex, KeyPurpose> outputs) {
         super(wallet.isNested() ? wallet.getMasterWallet() : wallet, blockTransaction.getLabel(), createChildEntries(wallet, inputs, outputs));
@@ -52,7 +49,7 @@ public class TransactionEntry extends Entry implements Comparable<TransactionEnt
         };
 
         if(isFullyConfirming()) {
-            EventManager.get().register(this);
+            ConfirmationsTicker.get().track(this);
         }
     }
 
@@ -62,14 +59,18 @@ public class TransactionEntry extends Entry implements Comparable<TransactionEnt
 
     @Override
     public Long getValue() {
-        long value = 0L;
-        for(Entry entry : getChildren()) {
-            HashIndexEntry hashIndexEntry = (HashIndexEntry)entry;
-            if(hashIndexEntry.getType().equals(HashIndexEntry.Type.INPUT)) {
-                value -= hashIndexEntry.getValue();
-            } else {
-                value += hashIndexEntry.getValue();
+        //Child entries are fixed on creation, so the value is only summed once
+        if(value == null) {
+            long total = 0L;
+            for(Entry entry : getChildren()) {
+                HashIndexEntry hashIndexEntry = (HashIndexEntry)entry;
+                if(hashIndexEntry.getType().equals(HashIndexEntry.Type.INPUT)) {
+                    total -= hashIndexEntry.getValue();
+                } else {
+                    total += hashIndexEntry.getValue();
+                }
             }
+            value = total;
         }
 
         return value;
@@ -252,28 +253,4 @@ public class TransactionEntry extends Entry implements Comparable<TransactionEnt
 
         return null;
     }
-
-    @Subscribe
-    public void blockHeightChanged(WalletBlockHeightChangedEvent event) {
-        if(event.getWallet().equals(getWallet())) {
-            setConfirmations(calculateConfirmations());
-
-            if(!isFullyConfirming()) {
-                EventManager.get().unregister(this);
-            }
-        }
-    }
-
-    @Subscribe
-    public void walletTabsClosed(WalletTabsClosedEvent event) {
-        for(WalletTabData tabData : event.getClosedWalletTabData()) {
-            if(tabData.getWalletForm().getWallet() == getWallet()) {
-                try {
-                    EventManager.get().unregister(this);
-                } catch(IllegalArgumentException e) {
-                    //Safe to ignore
-                }
-            }
-        }
-    }
 }
@@ -165,7 +165,7 @@ public class TransactionsController extends WalletFormController implements Init
             WalletTransactionsEntry walletTransactionsEntry = getWalletForm().getWalletTransactionsEntry();
 
             //Will automatically update transactionsTable transactions and recalculate balances
-            walletTransactionsEntry.updateTransactions();
+            walletTransactionsEntry.updateTransactions(event.getAllHistoryChangedNodes());
 
             transactionsTable.updateHistory();
             balance.setValue(walletTransactionsEntry.getBalance());
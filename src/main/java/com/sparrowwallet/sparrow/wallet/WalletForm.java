@@ -4,7 +4,9 @@ import com.google.common.eventbus.Subscribe;
 import com.sparrowwallet.drongo.KeyPurpose;
 import com.sparrowwallet.drongo.wallet.*;
 import com.sparrowwallet.sparrow.AppServices;
+import com.sparrowwallet.sparrow.EventChannel;
 import com.sparrowwallet.sparrow.EventManager;
+import com.sparrowwallet.sparrow.WalletEventSubscriber;
 import com.sparrowwallet.sparrow.WalletTabData;
 import com.sparrowwallet.sparrow.control.WalletIcon;
 import com.sparrowwallet.sparrow.event.*;
@@ -12,6 +14,8 @@ import com.sparrowwallet.sparrow.io.ImageUtils;
 import com.sparrowwallet.sparrow.io.StorageException;
 import com.sparrowwallet.sparrow.net.AllHistoryChangedException;
 import com.sparrowwallet.sparrow.net.ElectrumServer;
+import com.sparrowwallet.sparrow.net.ScriptHashIndex;
+import com.sparrowwallet.sparrow.net.WalletHistoryJournal;
 import com.sparrowwallet.sparrow.io.Storage;
 import io.reactivex.rxjavafx.schedulers.JavaFxScheduler;
 import io.reactivex.subjects.PublishSubject;
@@ -33,7 +37,7 @@ import java.util.stream.Collectors;
 
 import static com.sparrowwallet.drongo.wallet.WalletNode.nodeRangesToString;
 
-public class WalletForm {
+public class WalletForm implements WalletEventSubscriber {
     private static final Logger log = LoggerFactory.getLogger(WalletForm.class);
 
     private final Storage storage;
@@ -149,7 +153,6 @@ public class WalletForm {
     }
 
     public void refreshHistory(Integer blockHeight, List<Wallet> filterToWallets, Set<WalletNode> nodes) {
-        Wallet previousWallet = wallet.copy();
         if(wallet.isValid() && AppServices.isConnected()) {
             if(log.isDebugEnabled()) {
                 log.debug(nodes == null ? wallet.getFullName() + " refreshing full wallet history" : wallet.getFullName() + " requesting node wallet history for " + nodeRangesToString(nodes));
@@ -157,11 +160,12 @@ public class WalletForm {
 
             Set<WalletNode> walletTransactionNodes = getWalletTransactionNodes(nodes);
             if(!wallet.isNested() && (walletTransactionNodes == null || !walletTransactionNodes.isEmpty())) {
-                ElectrumServer.TransactionHistoryService historyService = new ElectrumServer.TransactionHistoryService(wallet, filterToWallets, walletTransactionNodes);
+                WalletHistoryJournal historyJournal = new WalletHistoryJournal(wallet);
+                ElectrumServer.TransactionHistoryService historyService = new ElectrumServer.TransactionHistoryService(wallet, filterToWallets, walletTransactionNodes, historyJournal);
                 historyService.setOnSucceeded(workerStateEvent -> {
                     if(historyService.getValue()) {
                         EventManager.get().post(new WalletHistoryFinishedEvent(wallet));
-                        updateWallets(blockHeight, previousWallet);
+                        updateWallets(blockHeight, historyJournal);
                     }
                 });
                 historyService.setOnFailed(workerStateEvent -> {
@@ -186,9 +190,10 @@ public class WalletForm {
                             log.error("Error backing up wallet", e);
                         }
 
+                        Wallet pastWallet = wallet.copy();
                         wallet.clearHistory();
                         AppServices.clearTransactionHistoryCache(wallet);
-                        EventManager.get().post(new WalletHistoryClearedEvent(wallet, previousWallet, getWalletId()));
+                        EventManager.get().post(new WalletHistoryClearedEvent(wallet, pastWallet, getWalletId()));
                     } else {
                         if(AppServices.isConnected()) {
                             log.error("Error retrieving wallet history", workerStateEvent.getSource().getException());
@@ -231,33 +236,27 @@ public class WalletForm {
         }
     }
 
-    private void updateWallets(Integer blockHeight, Wallet previousWallet) {
+    private void updateWallets(Integer blockHeight, WalletHistoryJournal historyJournal) {
         List<WalletNode> nestedHistoryChangedNodes = new ArrayList<>();
         for(Wallet childWallet : new ArrayList<>(wallet.getChildWallets())) {
-            if(childWallet.isNested()) {
-                Wallet previousChildWallet = previousWallet.getChildWallet(childWallet.getName());
-                if(previousChildWallet != null) {
-                    nestedHistoryChangedNodes.addAll(updateWallet(blockHeight, childWallet, previousChildWallet, Collections.emptyList()));
-                }
+            if(childWallet.isNested() && historyJournal.isRecording(childWallet)) {
+                nestedHistoryChangedNodes.addAll(updateWallet(blockHeight, childWallet, historyJournal.getStoredBlockHeight(childWallet),
+                        historyJournal.getHistoryChangedNodes(childWallet), Collections.emptyList()));
             }
         }
 
-        updateWallet(blockHeight, wallet, previousWallet, nestedHistoryChangedNodes);
+        updateWallet(blockHeight, wallet, historyJournal.getStoredBlockHeight(wallet), historyJournal.getHistoryChangedNodes(wallet), nestedHistoryChangedNodes);
     }
 
-    private List<WalletNode> updateWallet(Integer blockHeight, Wallet currentWallet, Wallet previousWallet, List<WalletNode> nestedHistoryChangedNodes) {
+    private List<WalletNode> updateWallet(Integer blockHeight, Wallet currentWallet, Integer previousBlockHeight, List<WalletNode> historyChangedNodes, List<WalletNode> nestedHistoryChangedNodes) {
         if(blockHeight != null) {
             currentWallet.setStoredBlockHeight(blockHeight);
         }
 
-        return notifyIfChanged(blockHeight, currentWallet, previousWallet, nestedHistoryChangedNodes);
+        return notifyIfChanged(blockHeight, currentWallet, previousBlockHeight, historyChangedNodes, nestedHistoryChangedNodes);
     }
 
-    private List<WalletNode> notifyIfChanged(Integer blockHeight, Wallet currentWallet, Wallet previousWallet, List<WalletNode> nestedHistoryChangedNodes) {
-        List<WalletNode> historyChangedNodes = new ArrayList<>();
-        historyChangedNodes.addAll(getHistoryChangedNodes(previousWallet.getNode(KeyPurpose.RECEIVE).getChildren(), currentWallet.getNode(KeyPurpose.RECEIVE).getChildren()));
-        historyChangedNodes.addAll(getHistoryChangedNodes(previousWallet.getNode(KeyPurpose.CHANGE).getChildren(), currentWallet.getNode(KeyPurpose.CHANGE).getChildren()));
-
+    private List<WalletNode> notifyIfChanged(Integer blockHeight, Wallet currentWallet, Integer previousBlockHeight, List<WalletNode> historyChangedNodes, List<WalletNode> nestedHistoryChangedNodes) {
         boolean changed = false;
         if(!historyChangedNodes.isEmpty() || !nestedHistoryChangedNodes.isEmpty()) {
             Platform.runLater(() -> EventManager.get().post(new WalletHistoryChangedEvent(currentWallet, storage, historyChangedNodes, nestedHistoryChangedNodes)));
@@ -266,7 +265,7 @@ public class WalletForm {
             }
         }
 
-        if(blockHeight != null && !blockHeight.equals(previousWallet.getStoredBlockHeight())) {
+        if(blockHeight != null && !blockHeight.equals(previousBlockHeight)) {
             Platform.runLater(() -> EventManager.get().post(new WalletBlockHeightChangedEvent(currentWallet, blockHeight)));
             changed = true;
         }
@@ -278,25 +277,6 @@ public class WalletForm {
         return historyChangedNodes;
     }
 
-    private List<WalletNode> getHistoryChangedNodes(Set<WalletNode> previousNodes, Set<WalletNode> currentNodes) {
-        Map<String, WalletNode> previousNodeMap = new HashMap<>(previousNodes.size());
-        previousNodes.forEach(walletNode -> previousNodeMap.put(walletNode.getDerivationPath(), walletNode));
-
-        List<WalletNode> changedNodes = new ArrayList<>();
-        for(WalletNode currentNode : currentNodes) {
-            WalletNode previousNode = previousNodeMap.get(currentNode.getDerivationPath());
-            if(previousNode != null) {
-                if(!currentNode.getTransactionOutputs().equals(previousNode.getTransactionOutputs())) {
-                    changedNodes.add(currentNode);
-                }
-            } else {
-                changedNodes.add(currentNode);
-            }
-        }
-
-        return changedNodes;
-    }
-
     public void addWalletTransactionNodes(Set<WalletNode> transactionNodes) {
         walletTransactionNodes.add(transactionNodes);
     }
@@ -401,18 +381,38 @@ public class WalletForm {
         return accountEntries;
     }
 
-    @Subscribe
+    @Override
+    public void subscribe(EventChannel channel) {
+        channel.subscribe(this, WalletDataChangedEvent.class, this::walletDataChanged);
+        channel.subscribe(this, WalletHistoryClearedEvent.class, this::walletHistoryCleared);
+        channel.subscribe(this, KeystoreLabelsChangedEvent.class, this::keystoreLabelsChanged);
+        channel.subscribe(this, WalletWatchLastChangedEvent.class, this::walletWatchLastChanged);
+        channel.subscribe(this, KeystoreEncryptionChangedEvent.class, this::keystoreEncryptionChanged);
+        channel.subscribe(this, WalletPasswordChangedEvent.class, this::walletPasswordChanged);
+        channel.subscribe(this, WalletHistoryChangedEvent.class, this::walletHistoryChanged);
+        channel.subscribe(this, WalletDeletedEvent.class, this::walletDeleted);
+        channel.subscribe(this, WalletUtxoStatusChangedEvent.class, this::walletUtxoStatusChanged);
+        channel.subscribe(this, WalletConfigChangedEvent.class, this::walletConfigChanged);
+        channel.subscribe(this, WalletTableChangedEvent.class, this::walletTableChanged);
+        channel.subscribe(this, WalletMixConfigChangedEvent.class, this::walletMixConfigChanged);
+        channel.subscribe(this, WalletUtxoMixesChangedEvent.class, this::walletUtxoMixesChanged);
+        channel.subscribe(this, WalletLabelChangedEvent.class, this::walletLabelChanged);
+        channel.subscribe(this, WalletGapLimitChangedEvent.class, this::walletGapLimitChanged);
+        channel.subscribe(this, KeystoreDeviceRegistrationsChangedEvent.class, this::keystoreDeviceRegistrationsChanged);
+        channel.subscribe(this, ChildWalletsAddedEvent.class, this::childWalletsAdded);
+    }
+
     public void walletDataChanged(WalletDataChangedEvent event) {
         if(event.getWallet().equals(wallet)) {
             backgroundUpdate();
         }
     }
 
-    @Subscribe
     public void walletHistoryCleared(WalletHistoryClearedEvent event) {
         if(event.getWalletId().equals(getWalletId())) {
             //Replacing the WalletForm's wallet here is only possible because we immediately clear all derived structures and do a full wallet refresh
             wallet = event.getWallet();
+            EventManager.get().bindWallet(wallet, getWalletId());
 
             walletTransactionsEntry = null;
             walletUtxosEntry = null;
@@ -425,28 +425,24 @@ public class WalletForm {
         }
     }
 
-    @Subscribe
     public void keystoreLabelsChanged(KeystoreLabelsChangedEvent event) {
         if(event.getWalletId().equals(getWalletId())) {
             Platform.runLater(() -> EventManager.get().post(new WalletDataChangedEvent(wallet)));
         }
     }
 
-    @Subscribe
     public void walletWatchLastChanged(WalletWatchLastChangedEvent event) {
         if(event.getWalletId().equals(getWalletId())) {
             Platform.runLater(() -> EventManager.get().post(new WalletDataChangedEvent(wallet)));
         }
     }
 
-    @Subscribe
     public void keystoreEncryptionChanged(KeystoreEncryptionChangedEvent event) {
         if(event.getWalletId().equals(getWalletId())) {
             Platform.runLater(() -> EventManager.get().post(new WalletDataChangedEvent(wallet)));
         }
     }
 
-    @Subscribe
     public void walletPasswordChanged(WalletPasswordChangedEvent event) {
         if(event.getWalletId().equals(getWalletId())) {
             Platform.runLater(() -> EventManager.get().post(new WalletDataChangedEvent(wallet)));
@@ -457,7 +453,8 @@ public class WalletForm {
     public void newBlock(NewBlockEvent event) {
         //Check if wallet is valid to avoid saving wallets in initial setup
         if(wallet.isValid()) {
-            updateWallet(event.getHeight(), wallet, wallet.copy(), Collections.emptyList());
+            //Only the block height can change here, so there is no need to compare history
+            updateWallet(event.getHeight(), wallet, wallet.getStoredBlockHeight(), Collections.emptyList(), Collections.emptyList());
         }
     }
 
@@ -481,7 +478,6 @@ public class WalletForm {
         }
     }
 
-    @Subscribe
     public void walletHistoryChanged(WalletHistoryChangedEvent event) {
         if(event.getWalletId().equals(getWalletId())) {
             for(WalletNode changedNode : event.getHistoryChangedNodes()) {
@@ -571,7 +567,6 @@ public class WalletForm {
         }
     }
 
-    @Subscribe
     public void walletDeleted(WalletDeletedEvent event) {
         if(event.getWallet() == wallet && !wallet.isMasterWallet()) {
             wallet.getMasterWallet().getChildWallets().remove(wallet);
@@ -579,42 +574,36 @@ public class WalletForm {
         }
     }
 
-    @Subscribe
     public void walletUtxoStatusChanged(WalletUtxoStatusChangedEvent event) {
         if(event.getWallet() == wallet) {
             Platform.runLater(() -> EventManager.get().post(new WalletDataChangedEvent(wallet)));
         }
     }
 
-    @Subscribe
     public void walletConfigChanged(WalletConfigChangedEvent event) {
         if(event.getWallet() == wallet) {
             Platform.runLater(() -> EventManager.get().post(new WalletDataChangedEvent(wallet)));
         }
     }
 
-    @Subscribe
     public void walletTableChanged(WalletTableChangedEvent event) {
         if(event.getWallet() == wallet && event.getTableType() != null) {
             Platform.runLater(() -> EventManager.get().post(new WalletDataChangedEvent(wallet)));
         }
     }
 
-    @Subscribe
     public void walletMixConfigChanged(WalletMixConfigChangedEvent event) {
         if(event.getWallet() == wallet) {
             Platform.runLater(() -> EventManager.get().post(new WalletDataChangedEvent(wallet)));
         }
     }
 
-    @Subscribe
     public void walletUtxoMixesChanged(WalletUtxoMixesChangedEvent event) {
         if(event.getWallet() == wallet) {
             Platform.runLater(() -> EventManager.get().post(new WalletDataChangedEvent(wallet)));
         }
     }
 
-    @Subscribe
     public void walletLabelChanged(WalletLabelChangedEvent event) {
         if(event.getWallet() == wallet) {
             Platform.runLater(() -> EventManager.get().post(new WalletDataChangedEvent(wallet)));
@@ -625,7 +614,6 @@ public class WalletForm {
         }
     }
 
-    @Subscribe
     public void walletGapLimitChanged(WalletGapLimitChangedEvent event) {
         if(event.getWallet() == wallet) {
             Platform.runLater(() -> EventManager.get().post(new WalletDataChangedEvent(wallet)));
@@ -636,6 +624,7 @@ public class WalletForm {
                 if(optPurposeNode.isPresent()) {
                     WalletNode purposeNode = optPurposeNode.get();
                     purposeNode.fillToIndex(wallet, wallet.getLookAheadIndex(purposeNode));
+                    ScriptHashIndex.get(wallet).update();
                     int previousLookAheadIndex = event.getPreviousLookAheadIndex(purposeNode);
                     newNodes.addAll(purposeNode.getChildren().stream().filter(node -> node.getIndex() > previousLookAheadIndex).collect(Collectors.toList()));
                 }
@@ -647,7 +636,6 @@ public class WalletForm {
         }
     }
 
-    @Subscribe
     public void keystoreDeviceRegistrationsChanged(KeystoreDeviceRegistrationsChangedEvent event) {
         if(event.getWallet() == wallet) {
             Platform.runLater(() -> EventManager.get().post(new WalletDataChangedEvent(wallet)));
@@ -663,9 +651,12 @@ public class WalletForm {
                 }
                 if(wallet.isValid()) {
                     AppServices.clearTransactionHistoryCache(wallet);
+                    ElectrumServer.evictWalletCaches(wallet);
                 }
+                ScriptHashIndex.remove(getWalletId());
                 EventManager.get().unregister(this);
                 for(WalletForm nestedWalletForm : nestedWalletForms) {
+                    ScriptHashIndex.remove(nestedWalletForm.getWalletId());
                     EventManager.get().unregister(nestedWalletForm);
                 }
             }
@@ -678,7 +669,6 @@ public class WalletForm {
         EventManager.get().post(new WalletAddressesStatusEvent(wallet));
     }
 
-    @Subscribe
     public void childWalletsAdded(ChildWalletsAddedEvent event) {
         if(event.getWallet() == wallet) {
             List<Wallet> nestedWallets = event.getChildWallets().stream().filter(Wallet::isNested).collect(Collectors.toList());
@@ -0,0 +1,431 @@
+package com.sparrowwallet.sparrow.wallet;
+
+import com.google.common.collect.MapMaker;
+import com.sparrowwallet.drongo.KeyPurpose;
+import com.sparrowwallet.drongo.address.Address;
+import com.sparrowwallet.drongo.protocol.Transaction;
+import com.sparrowwallet.drongo.protocol.TransactionOutput;
+import com.sparrowwallet.drongo.wallet.BlockTransaction;
+import com.sparrowwallet.sparrow.EventManager;
+import com.sparrowwallet.sparrow.WalletTabData;
+import com.sparrowwallet.sparrow.event.*;
+import com.sparrowwallet.sparrow.io.db.LazyBlockTransaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * An in-memory index over the transactions, addresses and UTXOs shown for a wallet form and its nested wallet forms, so that searches do not scan every entry.
+ * Labels are indexed by word, with prefix lookup, transaction ids, outpoints, addresses and values are indexed for exact lookup, and addresses are matched by substring.
+ * Label changes are applied as they happen. Other changes to the wallet's entries mark the index stale, and it is rebuilt on the next search.
+ * The entries are captured on the FX thread by {@link #prepare()}, while indexing and searching may be done on a background thread.
+ * Searches read an immutable snapshot of the index, so the FX thread only waits for the snapshot to be swapped, never for it to be built.
+ */
+public class WalletSearchIndex {
+    private static final Logger log = LoggerFactory.getLogger(WalletSearchIndex.class);
+
+    private static final Map<WalletForm, WalletSearchIndex> formIndexes = new MapMaker().weakKeys().makeMap();
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final WalletForm walletForm;
+    private final Object lock = new Object();
+    private boolean stale = true;
+    private List<IndexedEntry> pendingEntries;
+    private Snapshot snapshot = Snapshot.EMPTY;
+
+    private WalletSearchIndex(WalletForm walletForm) {
+        this.walletForm = walletForm;
+        EventManager.get().subscribe(this, WalletEntryLabelsChangedEvent.class, this::walletEntryLabelsChanged);
+        EventManager.get().subscribe(this, WalletHistoryChangedEvent.class, event -> markStale(event.fromThisOrNested(walletForm.getWallet())));
+        EventManager.get().subscribe(this, WalletNodesChangedEvent.class, event -> markStale(event.fromThisOrNested(walletForm.getWallet())));
+        EventManager.get().subscribe(this, WalletGapLimitChangedEvent.class, event -> markStale(event.fromThisOrNested(walletForm.getWallet())));
+        EventManager.get().subscribe(this, WalletAddressesStatusEvent.class, event -> markStale(event.getWallet() == walletForm.getWallet()));
+        EventManager.get().subscribe(this, WalletTabsClosedEvent.class, this::walletTabsClosed);
+    }
+
+    public static WalletSearchIndex get(WalletForm walletForm) {
+        return formIndexes.computeIfAbsent(walletForm, WalletSearchIndex::new);
+    }
+
+    /**
+     * Captures the entries to index if the index is stale. Must be called on the FX thread before searching.
+     */
+    public void prepare() {
+        synchronized(lock) {
+            if(stale) {
+                pendingEntries = getIndexedEntries();
+                stale = false;
+            }
+        }
+    }
+
+    public List<Match> search(String searchText, Long searchValue) {
+        return search(searchText, searchValue, () -> false);
+    }
+
+    /**
+     * Returns the entries matching the search text, each with the best rank it matched with, ordered by rank and then by their order in the wallet
+     *
+     * @param searchText the text to search for, compared case insensitively except for the case sensitive parts of addresses
+     * @param searchValue the absolute value to match, or null
+     * @param cancelled checked while the index is rebuilt, returning no matches if it becomes true
+     */
+    public List<Match> search(String searchText, Long searchValue, BooleanSupplier cancelled) {
+        List<IndexedEntry> indexedEntries;
+        Snapshot current;
+        synchronized(lock) {
+            indexedEntries = pendingEntries;
+            current = snapshot;
+        }
+
+        if(indexedEntries != null) {
+            long start = System.currentTimeMillis();
+            current = Snapshot.build(indexedEntries, cancelled);
+            if(current == null) {
+                return Collections.emptyList();
+            }
+
+            synchronized(lock) {
+                //Entries captured again while building replace this snapshot on the next search
+                if(pendingEntries == indexedEntries) {
+                    snapshot = current;
+                    pendingEntries = null;
+                }
+            }
+
+            log.debug("Indexed " + indexedEntries.size() + " entries for " + walletForm.getWallet().getFullName() + " search in " + (System.currentTimeMillis() - start) + "ms");
+        }
+
+        return current.search(searchText, searchValue);
+    }
+
+    private static List<String> getWords(String lowerText) {
+        return Arrays.stream(WORD_SEPARATOR.split(lowerText)).filter(word -> !word.isEmpty()).distinct().toList();
+    }
+
+    /**
+     * Returns the key shared by entries for the same transaction, address or output, so that a changed entry can be matched to the indexed entries it updates
+     */
+    private static Object getKey(Entry entry) {
+        if(entry instanceof TransactionEntry transactionEntry) {
+            return transactionEntry.getBlockTransaction().getHash();
+        } else if(entry instanceof NodeEntry nodeEntry) {
+            return nodeEntry.getNode();
+        } else if(entry instanceof HashIndexEntry hashIndexEntry) {
+            return hashIndexEntry.getHashIndex();
+        }
+
+        return entry;
+    }
+
+    private List<IndexedEntry> getIndexedEntries() {
+        List<IndexedEntry> indexedEntries = new ArrayList<>();
+        for(Entry entry : walletForm.getWalletTransactionsEntry().getChildren()) {
+            if(entry instanceof TransactionEntry) {
+                indexedEntries.add(new IndexedEntry(entry));
+            }
+        }
+
+        addNodeEntries(walletForm, KeyPurpose.DEFAULT_PURPOSES, indexedEntries);
+        for(WalletForm nestedWalletForm : walletForm.getNestedWalletForms()) {
+            addNodeEntries(nestedWalletForm, nestedWalletForm.getWallet().getWalletKeyPurposes(), indexedEntries);
+        }
+
+        for(Entry entry : walletForm.getWalletUtxosEntry().getChildren()) {
+            if(entry instanceof HashIndexEntry) {
+                indexedEntries.add(new IndexedEntry(entry));
+            }
+        }
+
+        return indexedEntries;
+    }
+
+    private static void addNodeEntries(WalletForm walletForm, Collection<KeyPurpose> keyPurposes, List<IndexedEntry> indexedEntries) {
+        for(KeyPurpose keyPurpose : keyPurposes) {
+            for(Entry entry : walletForm.getNodeEntry(keyPurpose).getChildren()) {
+                if(entry instanceof NodeEntry) {
+                    indexedEntries.add(new IndexedEntry(entry));
+                }
+            }
+        }
+    }
+
+    private void walletEntryLabelsChanged(WalletEntryLabelsChangedEvent event) {
+        if(!event.fromThisOrNested(walletForm.getWallet())) {
+            return;
+        }
+
+        synchronized(lock) {
+            if(stale) {
+                return;
+            }
+
+            if(pendingEntries != null) {
+                //The captured labels may predate this change
+                stale = true;
+                return;
+            }
+
+            snapshot = snapshot.withLabels(event.getEntries());
+        }
+    }
+
+    private void markStale(boolean affected) {
+        if(affected) {
+            synchronized(lock) {
+                stale = true;
+                pendingEntries = null;
+            }
+        }
+    }
+
+    private void walletTabsClosed(WalletTabsClosedEvent event) {
+        for(WalletTabData tabData : event.getClosedWalletTabData()) {
+            if(tabData.getWalletForm() == walletForm) {
+                EventManager.get().unsubscribe(this);
+                formIndexes.remove(walletForm);
+            }
+        }
+    }
+
+    /**
+     * An immutable index over captured entries. Label changes create a new snapshot sharing everything but the changed labels.
+     */
+    static final class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(Map.of(), Map.of(), Map.of(), Collections.emptyNavigableMap(), List.of(), new String[0], Map.of(), Map.of());
+
+        private final Map<Entry, Integer> entryOrder;
+        private final Map<Object, List<Entry>> keyEntries;
+        private final Map<Entry, String> entryLabels;
+        private final NavigableMap<String, Set<Entry>> labelWords;
+        private final List<Entry> addressEntries;
+        private final String[] lowerAddresses;
+        private final Map<String, Set<Entry>> idEntries;
+        private final Map<Long, Set<Entry>> valueEntries;
+
+        private Snapshot(Map<Entry, Integer> entryOrder, Map<Object, List<Entry>> keyEntries, Map<Entry, String> entryLabels, NavigableMap<String, Set<Entry>> labelWords,
+                         List<Entry> addressEntries, String[] lowerAddresses, Map<String, Set<Entry>> idEntries, Map<Long, Set<Entry>> valueEntries) {
+            this.entryOrder = entryOrder;
+            this.keyEntries = keyEntries;
+            this.entryLabels = entryLabels;
+            this.labelWords = labelWords;
+            this.addressEntries = addressEntries;
+            this.lowerAddresses = lowerAddresses;
+            this.idEntries = idEntries;
+            this.valueEntries = valueEntries;
+        }
+
+        /**
+         * Indexes the captured entries, returning null if cancelled before complete
+         */
+        static Snapshot build(List<IndexedEntry> indexedEntries, BooleanSupplier cancelled) {
+            Map<Entry, Integer> entryOrder = new IdentityHashMap<>();
+            Map<Object, List<Entry>> keyEntries = new HashMap<>();
+            Map<Entry, String> entryLabels = new IdentityHashMap<>();
+            NavigableMap<String, Set<Entry>> labelWords = new TreeMap<>();
+            List<Entry> addressEntries = new ArrayList<>();
+            List<String> lowerAddresses = new ArrayList<>();
+            Map<String, Set<Entry>> idEntries = new HashMap<>();
+            Map<Long, Set<Entry>> valueEntries = new HashMap<>();
+
+            for(IndexedEntry indexedEntry : indexedEntries) {
+                if(cancelled.getAsBoolean()) {
+                    return null;
+                }
+
+                Entry entry = indexedEntry.entry();
+                entryOrder.put(entry, entryOrder.size());
+                keyEntries.computeIfAbsent(getKey(entry), k -> new ArrayList<>()).add(entry);
+                addLabel(entryLabels, labelWords, entry, indexedEntry.label());
+
+                if(indexedEntry.value() != null) {
+                    valueEntries.computeIfAbsent(Math.abs(indexedEntry.value()), k -> new LinkedHashSet<>()).add(entry);
+                }
+
+                if(entry instanceof TransactionEntry transactionEntry) {
+                    BlockTransaction blockTransaction = transactionEntry.getBlockTransaction();
+                    addIdentifier(idEntries, blockTransaction.getHash().toString(), entry);
+                    //Lazily loaded transactions are read for their output addresses without being cached, so that indexing does not evict those in use
+                    Transaction transaction = blockTransaction instanceof LazyBlockTransaction lazyBlockTransaction ? lazyBlockTransaction.getUncachedTransaction() : blockTransaction.getTransaction();
+                    if(transaction != null) {
+                        for(TransactionOutput output : transaction.getOutputs()) {
+                            Address address = output.getScript().getToAddress();
+                            if(address != null) {
+                                addIdentifier(idEntries, address.toString(), entry);
+                            }
+                        }
+                    }
+                } else if(entry instanceof NodeEntry nodeEntry) {
+                    String address = nodeEntry.getAddress().toString();
+                    addIdentifier(idEntries, address, entry);
+                    addressEntries.add(entry);
+                    lowerAddresses.add(address.toLowerCase(Locale.ROOT));
+                } else if(entry instanceof HashIndexEntry hashIndexEntry) {
+                    addIdentifier(idEntries, hashIndexEntry.getBlockTransaction().getHash().toString(), entry);
+                    addIdentifier(idEntries, hashIndexEntry.getHashIndex().toString().toLowerCase(Locale.ROOT), entry);
+                }
+            }
+
+            return new Snapshot(entryOrder, keyEntries, entryLabels, labelWords, addressEntries, lowerAddresses.toArray(new String[0]), idEntries, valueEntries);
+        }
+
+        List<Match> search(String searchText, Long searchValue) {
+            Map<Entry, Rank> ranks = new IdentityHashMap<>();
+            String lowerText = searchText.toLowerCase(Locale.ROOT);
+
+            addMatches(ranks, idEntries.get(searchText), Rank.IDENTIFIER);
+            addMatches(ranks, idEntries.get(lowerText), Rank.IDENTIFIER);
+
+            if(searchValue != null) {
+                addMatches(ranks, valueEntries.get(searchValue), Rank.VALUE);
+            }
+
+            if(!lowerText.isEmpty()) {
+                for(int i = 0; i < lowerAddresses.length; i++) {
+                    if(lowerAddresses[i].contains(lowerText)) {
+                        addMatches(ranks, List.of(addressEntries.get(i)), Rank.PARTIAL_ADDRESS);
+                    }
+                }
+            }
+
+            for(Entry entry : getLabelMatches(lowerText)) {
+                String label = entryLabels.get(entry);
+                addMatches(ranks, List.of(entry), label.equals(lowerText) ? Rank.LABEL : (label.contains(lowerText) ? Rank.LABEL_PHRASE : Rank.LABEL_WORDS));
+            }
+
+            List<Match> matches = new ArrayList<>(ranks.size());
+            for(Map.Entry<Entry, Rank> entryRank : ranks.entrySet()) {
+                matches.add(new Match(entryRank.getKey(), entryRank.getValue(), entryOrder.get(entryRank.getKey())));
+            }
+            matches.sort(Comparator.comparing(Match::rank).thenComparingInt(Match::order));
+
+            return matches;
+        }
+
+        /**
+         * Returns a snapshot with the labels of the indexed entries for the changed entries updated, copying only the label word sets that change
+         */
+        Snapshot withLabels(Collection<Entry> changedEntries) {
+            Map<Entry, String> labels = new IdentityHashMap<>(entryLabels);
+            NavigableMap<String, Set<Entry>> words = new TreeMap<>(labelWords);
+            Set<String> copiedWords = new HashSet<>();
+
+            for(Entry changedEntry : changedEntries) {
+                List<Entry> entries = keyEntries.get(getKey(changedEntry));
+                if(entries != null) {
+                    for(Entry entry : entries) {
+                        String previousLabel = labels.remove(entry);
+                        if(previousLabel != null) {
+                            for(String word : getWords(previousLabel)) {
+                                Set<Entry> wordEntries = getCopiedWordEntries(words, copiedWords, word);
+                                wordEntries.remove(entry);
+                                if(wordEntries.isEmpty()) {
+                                    words.remove(word);
+                                }
+                            }
+                        }
+
+                        String label = changedEntry.getLabel();
+                        if(label != null && !label.isEmpty()) {
+                            String lowerLabel = label.toLowerCase(Locale.ROOT);
+                            labels.put(entry, lowerLabel);
+                            for(String word : getWords(lowerLabel)) {
+                                getCopiedWordEntries(words, copiedWords, word).add(entry);
+                            }
+                        }
+                    }
+                }
+            }
+
+            return new Snapshot(entryOrder, keyEntries, labels, words, addressEntries, lowerAddresses, idEntries, valueEntries);
+        }
+
+        private static Set<Entry> getCopiedWordEntries(NavigableMap<String, Set<Entry>> words, Set<String> copiedWords, String word) {
+            if(copiedWords.add(word)) {
+                Set<Entry> wordEntries = Collections.newSetFromMap(new IdentityHashMap<>());
+                Set<Entry> existing = words.get(word);
+                if(existing != null) {
+                    wordEntries.addAll(existing);
+                }
+                words.put(word, wordEntries);
+                return wordEntries;
+            }
+
+            return words.get(word);
+        }
+
+        /**
+         * Returns entries with a word starting with each word of the text. Text with no words matches labels containing it.
+         */
+        private Collection<Entry> getLabelMatches(String lowerText) {
+            List<String> words = getWords(lowerText);
+            if(words.isEmpty()) {
+                if(lowerText.isEmpty()) {
+                    return Collections.emptyList();
+                }
+
+                return entryLabels.entrySet().stream().filter(entry -> entry.getValue().contains(lowerText)).map(Map.Entry::getKey).toList();
+            }
+
+            Set<Entry> matches = null;
+            for(String word : words) {
+                Set<Entry> wordMatches = Collections.newSetFromMap(new IdentityHashMap<>());
+                for(Set<Entry> entries : labelWords.subMap(word, true, word + Character.MAX_VALUE, false).values()) {
+                    wordMatches.addAll(entries);
+                }
+
+                if(matches == null) {
+                    matches = wordMatches;
+                } else {
+                    matches.retainAll(wordMatches);
+                }
+
+                if(matches.isEmpty()) {
+                    break;
+                }
+            }
+
+            return matches;
+        }
+
+        private static void addLabel(Map<Entry, String> entryLabels, NavigableMap<String, Set<Entry>> labelWords, Entry entry, String label) {
+            if(label != null && !label.isEmpty()) {
+                String lowerLabel = label.toLowerCase(Locale.ROOT);
+                entryLabels.put(entry, lowerLabel);
+                for(String word : getWords(lowerLabel)) {
+                    labelWords.computeIfAbsent(word, k -> Collections.newSetFromMap(new IdentityHashMap<>())).add(entry);
+                }
+            }
+        }
+
+        private static void addIdentifier(Map<String, Set<Entry>> idEntries, String identifier, Entry entry) {
+            idEntries.computeIfAbsent(identifier, k -> new LinkedHashSet<>()).add(entry);
+        }
+
+        private static void addMatches(Map<Entry, Rank> ranks, Collection<Entry> entries, Rank rank) {
+            if(entries != null) {
+                for(Entry entry : entries) {
+                    ranks.merge(entry, rank, (previous, current) -> previous.compareTo(current) <= 0 ? previous : current);
+                }
+            }
+        }
+    }
+
+    record IndexedEntry(Entry entry, String label, Long value) {
+        IndexedEntry(Entry entry) {
+            this(entry, entry.getLabel(), entry.getValue());
+        }
+    }
+
+    public record Match(Entry entry, Rank rank, int order) {}
+
+    /**
+     * How closely an entry matches a search, from the closest
+     */
+    public enum Rank {
+        IDENTIFIER, LABEL, VALUE, LABEL_PHRASE, LABEL_WORDS, PARTIAL_ADDRESS
+    }
+}
@@ -1,8 +1,9 @@
 package com.sparrowwallet.sparrow.wallet;
 
-import com.google.common.collect.Sets;
 import com.sparrowwallet.drongo.KeyPurpose;
 import com.sparrowwallet.drongo.protocol.HashIndex;
+import com.sparrowwallet.drongo.protocol.Sha256Hash;
+import com.sparrowwallet.drongo.protocol.TransactionInput;
 import com.sparrowwallet.drongo.wallet.BlockTransaction;
 import com.sparrowwallet.drongo.wallet.BlockTransactionHashIndex;
 import com.sparrowwallet.drongo.wallet.Wallet;
@@ -22,13 +23,43 @@ import java.util.stream.Collectors;
 public class WalletTransactionsEntry extends Entry {
     private static final Logger log = LoggerFactory.getLogger(WalletTransactionsEntry.class);
 
+    //Beyond this proportion of changed entries, resorting all entries is cheaper than inserting each at its sorted position
+    private static final int RESORT_DIVISOR = 8;
+
+    //Note transaction entries must be in ascending order. This sorting is ultimately done according to BlockTransactions' comparator
+    private static final Comparator<Entry> ENTRY_ORDER = Comparator.comparing(TransactionEntry.class::cast);
+
+    private final boolean includeAllChildWallets;
+
+    private final Map<Sha256Hash, TransactionEntry> transactionEntries = new HashMap<>();
+
+    //Index of the transactions each address node takes part in, and the reverse, so that a history change only revisits the transactions of the changed nodes
+    private final Map<Sha256Hash, Set<WalletNode>> transactionNodes = new HashMap<>();
+    private final Map<WalletNode, Set<Sha256Hash>> nodeTransactions = new IdentityHashMap<>();
+    private final Set<WalletNode> pendingNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+
     public WalletTransactionsEntry(Wallet wallet) {
         this(wallet, false);
     }
 
     public WalletTransactionsEntry(Wallet wallet, boolean includeAllChildWallets) {
-        super(wallet, wallet.getDisplayName(), getWalletTransactions(wallet, includeAllChildWallets).stream().map(WalletTransaction::getTransactionEntry).collect(Collectors.toList()));
-        calculateBalances(false); //No need to resort
+        super(wallet, wallet.getDisplayName(), new ArrayList<>());
+        this.includeAllChildWallets = includeAllChildWallets;
+
+        List<WalletNode> nodes = getTrackedNodes();
+        nodes.forEach(this::indexNode);
+
+        List<WalletTransaction> walletTransactions = new ArrayList<>(getWalletTransactions(nodes, null).values());
+        Collections.sort(walletTransactions);
+        List<Entry> entries = new ArrayList<>(walletTransactions.size());
+        for(WalletTransaction walletTransaction : walletTransactions) {
+            TransactionEntry transactionEntry = walletTransaction.getTransactionEntry();
+            transactionEntries.put(walletTransaction.blockTransaction.getHash(), transactionEntry);
+            entries.add(transactionEntry);
+        }
+
+        getChildren().setAll(entries);
+        calculateBalances(0); //No need to resort
     }
 
     @Override
@@ -47,15 +78,28 @@ public class WalletTransactionsEntry extends Entry {
     }
 
     private void calculateBalances(boolean resort) {
-        long balance = 0L;
-        long mempoolBalance = 0L;
-
         if(resort) {
-            //Note transaction entries must be in ascending order. This sorting is ultimately done according to BlockTransactions' comparator
-            getChildren().sort(Comparator.comparing(TransactionEntry.class::cast));
+            getChildren().sort(ENTRY_ORDER);
         }
 
-        for(Entry entry : getChildren()) {
+        calculateBalances(0);
+    }
+
+    /**
+     * Recalculates running balances from the entry at the given index onwards, continuing from the balance of the entry before it.
+     * Unconfirmed transactions sort last, so the calculation starts no later than the first of them to recalculate the mempool balance.
+     */
+    private void calculateBalances(int fromIndex) {
+        List<Entry> children = getChildren();
+        int start = Math.min(fromIndex, children.size());
+        while(start > 0 && ((TransactionEntry)children.get(start - 1)).getConfirmations() == 0) {
+            start--;
+        }
+
+        long balance = start == 0 ? 0L : ((TransactionEntry)children.get(start - 1)).getBalance();
+        long mempoolBalance = 0L;
+
+        for(Entry entry : children.subList(start, children.size())) {
             TransactionEntry transactionEntry = (TransactionEntry)entry;
             if(transactionEntry.getConfirmations() != 0 || transactionEntry.getValue() < 0 || Config.get().isIncludeMempoolOutputs()) {
                 balance += entry.getValue();
@@ -72,90 +116,251 @@ public class WalletTransactionsEntry extends Entry {
         setMempoolBalance(mempoolBalance);
     }
 
+    /**
+     * Updates the transaction entries from all address nodes of the wallet, rebuilding the node index
+     */
     public void updateTransactions() {
-        Map<HashIndex, BlockTransactionHashIndex> walletTxos = getWallet().getWalletTxos().entrySet().stream()
-                .collect(Collectors.toUnmodifiableMap(entry -> new HashIndex(entry.getKey().getHash(), entry.getKey().getIndex()), Map.Entry::getKey,
-                        BinaryOperator.maxBy(BlockTransactionHashIndex::compareTo)));
+        Set<Sha256Hash> affectedTxids = new HashSet<>(transactionEntries.keySet());
+        nodeTransactions.clear();
+        transactionNodes.clear();
+        pendingNodes.clear();
 
-        Collection<WalletTransactionsEntry.WalletTransaction> entries = getWalletTransactions(getWallet(), false);
-        Set<Entry> current = entries.stream().map(WalletTransaction::getTransactionEntry).collect(Collectors.toCollection(LinkedHashSet::new));
-        Set<Entry> previous = new LinkedHashSet<>(getChildren());
+        List<WalletNode> nodes = getTrackedNodes();
+        nodes.forEach(this::indexNode);
+        affectedTxids.addAll(transactionNodes.keySet());
 
-        Set<Entry> entriesAdded = Sets.difference(current, previous);
-        getChildren().addAll(entriesAdded);
+        updateTransactions(affectedTxids);
+    }
+
+    /**
+     * Updates only the transaction entries for transactions the given address nodes take, or took, part in
+     */
+    public void updateTransactions(Collection<WalletNode> historyChangedNodes) {
+        Set<WalletNode> changedNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        changedNodes.addAll(pendingNodes);
+        pendingNodes.clear();
+        historyChangedNodes.stream().filter(this::isTracked).forEach(changedNodes::add);
+
+        Set<Sha256Hash> affectedTxids = new HashSet<>();
+        for(WalletNode changedNode : changedNodes) {
+            Set<Sha256Hash> txids = nodeTransactions.remove(changedNode);
+            if(txids != null) {
+                affectedTxids.addAll(txids);
+                for(Sha256Hash txid : txids) {
+                    Set<WalletNode> nodes = transactionNodes.get(txid);
+                    if(nodes != null) {
+                        nodes.remove(changedNode);
+                        if(nodes.isEmpty()) {
+                            transactionNodes.remove(txid);
+                        }
+                    }
+                }
+            }
+
+            indexNode(changedNode);
+            affectedTxids.addAll(nodeTransactions.getOrDefault(changedNode, Collections.emptySet()));
+        }
+
+        updateTransactions(affectedTxids);
+    }
+
+    private void updateTransactions(Set<Sha256Hash> affectedTxids) {
+        Set<WalletNode> affectedNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(Sha256Hash txid : affectedTxids) {
+            affectedNodes.addAll(transactionNodes.getOrDefault(txid, Collections.emptySet()));
+        }
+        Map<Sha256Hash, WalletTransaction> walletTransactions = getWalletTransactions(affectedNodes, affectedTxids);
+
+        List<TransactionEntry> entriesRemoved = new ArrayList<>();
+        List<TransactionEntry> entriesAdded = new ArrayList<>();
+        for(Sha256Hash txid : affectedTxids) {
+            TransactionEntry previous = transactionEntries.get(txid);
+            WalletTransaction walletTransaction = walletTransactions.get(txid);
+            if(walletTransaction != null && walletTransaction.matches(previous)) {
+                continue;
+            }
+
+            if(previous != null) {
+                entriesRemoved.add(previous);
+                transactionEntries.remove(txid);
+            }
+            if(walletTransaction != null) {
+                entriesAdded.add(walletTransaction.getTransactionEntry());
+            }
+        }
+
+        List<TransactionEntry> entriesComplete = new ArrayList<>(entriesAdded.size());
+        if(!entriesAdded.isEmpty()) {
+            Map<HashIndex, BlockTransactionHashIndex> walletTxos = getWalletTxos(entriesAdded);
+            for(TransactionEntry txEntry : entriesAdded) {
+                if(txEntry.isComplete(walletTxos)) {
+                    entriesComplete.add(txEntry);
+                    transactionEntries.put(txEntry.getBlockTransaction().getHash(), txEntry);
+                } else {
+                    //The wallet is still updating, so look at this transaction again on the next history change
+                    pendingNodes.addAll(transactionNodes.getOrDefault(txEntry.getBlockTransaction().getHash(), Collections.emptySet()));
+                    log.warn("Removing and not notifying incomplete entry " + txEntry.getBlockTransaction().getHashAsString() + " value " + txEntry.getValue()
+                            + " children " + txEntry.getChildren().stream().map(e -> e.getEntryType() + " " + ((HashIndexEntry)e).getHashIndex()).collect(Collectors.toList()));
+                }
+            }
+        }
 
-        Set<Entry> entriesRemoved = Sets.difference(previous, current);
-        getChildren().removeAll(entriesRemoved);
+        if(entriesRemoved.isEmpty() && entriesComplete.isEmpty()) {
+            return;
+        }
 
-        calculateBalances(true);
+        if(entriesRemoved.size() + entriesComplete.size() > getChildren().size() / RESORT_DIVISOR) {
+            Set<Entry> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+            removed.addAll(entriesRemoved);
+            getChildren().removeAll(removed);
+            getChildren().addAll(entriesComplete);
+            calculateBalances(true);
+        } else {
+            int fromIndex = getChildren().size();
+            for(TransactionEntry txEntry : entriesRemoved) {
+                int index = indexOf(txEntry);
+                if(index >= 0) {
+                    getChildren().remove(index);
+                    fromIndex = Math.min(fromIndex, index);
+                }
+            }
+            for(TransactionEntry txEntry : entriesComplete) {
+                int index = Collections.binarySearch(getChildren(), txEntry, ENTRY_ORDER);
+                int insertionIndex = index < 0 ? -index - 1 : index;
+                getChildren().add(insertionIndex, txEntry);
+                fromIndex = Math.min(fromIndex, insertionIndex);
+            }
+            calculateBalances(fromIndex);
+        }
 
-        List<Entry> entriesComplete = entriesAdded.stream().filter(txEntry -> ((TransactionEntry)txEntry).isComplete(walletTxos)).collect(Collectors.toList());
         if(!entriesComplete.isEmpty()) {
-            EventManager.get().post(new NewWalletTransactionsEvent(getWallet(), entriesAdded.stream().map(entry -> (TransactionEntry)entry).collect(Collectors.toList())));
+            EventManager.get().post(new NewWalletTransactionsEvent(getWallet(), entriesComplete));
         }
+    }
 
-        if(entriesAdded.size() > entriesComplete.size()) {
-            Set<Entry> incompleteEntries = new HashSet<>(entriesAdded);
-            entriesComplete.forEach(incompleteEntries::remove);
-            for(Entry entry : incompleteEntries) {
-                TransactionEntry txEntry = (TransactionEntry)entry;
-                getChildren().remove(txEntry);
-                log.warn("Removing and not notifying incomplete entry " + ((TransactionEntry)entry).getBlockTransaction().getHashAsString() + " value " + txEntry.getValue()
-                        + " children " + entry.getChildren().stream().map(e -> e.getEntryType() + " " + ((HashIndexEntry)e).getHashIndex()).collect(Collectors.toList()));
+    private int indexOf(TransactionEntry txEntry) {
+        int index = Collections.binarySearch(getChildren(), txEntry, ENTRY_ORDER);
+        if(index >= 0 && getChildren().get(index) == txEntry) {
+            return index;
+        }
+
+        for(int i = 0; i < getChildren().size(); i++) {
+            if(getChildren().get(i) == txEntry) {
+                return i;
             }
         }
+
+        return -1;
     }
 
-    private static Collection<WalletTransaction> getWalletTransactions(Wallet wallet, boolean includeAllChildWallets) {
-        Map<BlockTransaction, WalletTransaction> walletTransactionMap = new HashMap<>(wallet.getTransactions().size());
+    /**
+     * Returns the wallet outputs that the given entries may spend or create, found from the nodes that take part in their transactions and the transactions they spend
+     */
+    private Map<HashIndex, BlockTransactionHashIndex> getWalletTxos(List<TransactionEntry> txEntries) {
+        Set<WalletNode> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(TransactionEntry txEntry : txEntries) {
+            BlockTransaction blockTransaction = txEntry.getBlockTransaction();
+            nodes.addAll(transactionNodes.getOrDefault(blockTransaction.getHash(), Collections.emptySet()));
+            if(blockTransaction.getTransaction() != null) {
+                for(TransactionInput txInput : blockTransaction.getTransaction().getInputs()) {
+                    nodes.addAll(transactionNodes.getOrDefault(txInput.getOutpoint().getHash(), Collections.emptySet()));
+                }
+            }
+        }
 
-        for(KeyPurpose keyPurpose : wallet.getWalletKeyPurposes()) {
-            getWalletTransactions(wallet, walletTransactionMap, wallet.getNode(keyPurpose));
+        Map<HashIndex, BlockTransactionHashIndex> walletTxos = new HashMap<>();
+        for(WalletNode node : nodes) {
+            for(BlockTransactionHashIndex txo : node.getTransactionOutputs()) {
+                walletTxos.merge(new HashIndex(txo.getHash(), txo.getIndex()), txo, BinaryOperator.maxBy(BlockTransactionHashIndex::compareTo));
+            }
         }
 
-        for(Wallet childWallet : wallet.getChildWallets()) {
+        return walletTxos;
+    }
+
+    private List<WalletNode> getTrackedNodes() {
+        List<WalletNode> nodes = new ArrayList<>();
+        addAddressNodes(getWallet(), nodes);
+        for(Wallet childWallet : getWallet().getChildWallets()) {
             if(includeAllChildWallets || childWallet.isNested()) {
-                for(KeyPurpose keyPurpose : childWallet.getWalletKeyPurposes()) {
-                    getWalletTransactions(childWallet, walletTransactionMap, childWallet.getNode(keyPurpose));
+                addAddressNodes(childWallet, nodes);
+            }
+        }
+
+        return nodes;
+    }
+
+    private static void addAddressNodes(Wallet wallet, List<WalletNode> nodes) {
+        for(KeyPurpose keyPurpose : wallet.getWalletKeyPurposes()) {
+            nodes.addAll(wallet.getNode(keyPurpose).getChildren());
+        }
+    }
+
+    private boolean isTracked(WalletNode node) {
+        Wallet nodeWallet = node.getWallet();
+        return nodeWallet == getWallet() || ((includeAllChildWallets || nodeWallet.isNested()) && getWallet().getChildWallets().contains(nodeWallet));
+    }
+
+    private void indexNode(WalletNode addressNode) {
+        Wallet transactionsWallet = getTransactionsWallet(addressNode.getWallet());
+        Set<Sha256Hash> txids = new HashSet<>();
+        for(BlockTransactionHashIndex hashIndex : addressNode.getTransactionOutputs()) {
+            //A missing transaction means the wallet is still updating, so the node is looked at again on the next history change
+            if(transactionsWallet.getWalletTransaction(hashIndex.getHash()) == null) {
+                pendingNodes.add(addressNode);
+                continue;
+            }
+            txids.add(hashIndex.getHash());
+
+            if(hashIndex.getSpentBy() != null) {
+                if(transactionsWallet.getWalletTransaction(hashIndex.getSpentBy().getHash()) == null) {
+                    pendingNodes.add(addressNode);
+                } else {
+                    txids.add(hashIndex.getSpentBy().getHash());
                 }
             }
         }
 
-        List<WalletTransaction> walletTransactions = new ArrayList<>(walletTransactionMap.values());
-        Collections.sort(walletTransactions);
-        return walletTransactions;
+        if(!txids.isEmpty()) {
+            nodeTransactions.put(addressNode, txids);
+            for(Sha256Hash txid : txids) {
+                transactionNodes.computeIfAbsent(txid, k -> Collections.newSetFromMap(new IdentityHashMap<>())).add(addressNode);
+            }
+        }
+    }
+
+    private static Wallet getTransactionsWallet(Wallet wallet) {
+        return wallet.isNested() ? wallet.getMasterWallet() : wallet;
     }
 
-    private static void getWalletTransactions(Wallet wallet, Map<BlockTransaction, WalletTransaction> walletTransactionMap, WalletNode purposeNode) {
-        KeyPurpose keyPurpose = purposeNode.getKeyPurpose();
-        List<WalletNode> childNodes = new ArrayList<>(purposeNode.getChildren());
-        Wallet transactionsWallet = wallet.isNested() ? wallet.getMasterWallet() : wallet;
-        for(WalletNode addressNode : childNodes) {
+    /**
+     * Collects the outputs received and spent by the given address nodes into wallet transactions, limited to the given txids if not null
+     */
+    private static Map<Sha256Hash, WalletTransaction> getWalletTransactions(Collection<WalletNode> addressNodes, Set<Sha256Hash> txids) {
+        Map<Sha256Hash, WalletTransaction> walletTransactionMap = new HashMap<>();
+        for(WalletNode addressNode : addressNodes) {
+            Wallet wallet = addressNode.getWallet();
+            KeyPurpose keyPurpose = addressNode.getKeyPurpose();
+            Wallet transactionsWallet = getTransactionsWallet(wallet);
             for(BlockTransactionHashIndex hashIndex : addressNode.getTransactionOutputs()) {
                 BlockTransaction inputTx = transactionsWallet.getWalletTransaction(hashIndex.getHash());
                 //A null inputTx here means the wallet is still updating - ignore as the WalletHistoryChangedEvent will run this again
                 if(inputTx != null) {
-                    WalletTransaction inputWalletTx = walletTransactionMap.get(inputTx);
-                    if(inputWalletTx == null) {
-                        inputWalletTx = new WalletTransaction(wallet, inputTx);
-                        walletTransactionMap.put(inputTx, inputWalletTx);
+                    if(txids == null || txids.contains(inputTx.getHash())) {
+                        walletTransactionMap.computeIfAbsent(inputTx.getHash(), k -> new WalletTransaction(wallet, inputTx)).incoming.put(hashIndex, keyPurpose);
                     }
-                    inputWalletTx.incoming.put(hashIndex, keyPurpose);
 
                     if(hashIndex.getSpentBy() != null) {
                         BlockTransaction outputTx = transactionsWallet.getWalletTransaction(hashIndex.getSpentBy().getHash());
-                        if(outputTx != null) {
-                            WalletTransaction outputWalletTx = walletTransactionMap.get(outputTx);
-                            if(outputWalletTx == null) {
-                                outputWalletTx = new WalletTransaction(wallet, outputTx);
-                                walletTransactionMap.put(outputTx, outputWalletTx);
-                            }
-                            outputWalletTx.outgoing.put(hashIndex.getSpentBy(), keyPurpose);
+                        if(outputTx != null && (txids == null || txids.contains(outputTx.getHash()))) {
+                            walletTransactionMap.computeIfAbsent(outputTx.getHash(), k -> new WalletTransaction(wallet, outputTx)).outgoing.put(hashIndex.getSpentBy(), keyPurpose);
                         }
                     }
                 }
             }
         }
+
+        return walletTransactionMap;
     }
 
     /**
@@ -247,6 +452,14 @@ public class WalletTransactionsEntry extends Entry {
             return new TransactionEntry(wallet, blockTransaction, incoming, outgoing);
         }
 
+        /**
+         * Returns true if the given entry would be considered equal to the entry created for this transaction, without creating it
+         */
+        public boolean matches(TransactionEntry transactionEntry) {
+            return transactionEntry != null && transactionEntry.getBlockTransaction().equals(blockTransaction)
+                    && transactionEntry.getChildren().size() == incoming.size() + outgoing.size();
+        }
+
         public long getValue() {
             long value = 0L;
             for(BlockTransactionHashIndex in : incoming.keySet()) {
@@ -0,0 +1,126 @@
+package com.sparrowwallet.sparrow;
+
+import com.sparrowwallet.drongo.wallet.Wallet;
+import com.sparrowwallet.sparrow.event.WalletChangedEvent;
+import com.sparrowwallet.sparrow.event.WalletGapLimitChangedEvent;
+import com.sparrowwallet.sparrow.event.WalletLabelChangedEvent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RoutedEventBusTest {
+    private final RoutedEventBus eventBus = new RoutedEventBus();
+
+    @Test
+    public void testNestedPostOrdering() {
+        List<String> received = new ArrayList<>();
+        Object owner = new Object();
+        eventBus.subscribe(owner, String.class, event -> {
+            received.add("first " + event);
+            if(event.equals("outer")) {
+                eventBus.post("inner");
+            }
+        });
+        eventBus.subscribe(owner, String.class, event -> received.add("second " + event));
+
+        //An event posted while handling another is only dispatched once the current event has reached every subscriber
+        eventBus.post("outer");
+        Assertions.assertEquals(List.of("first outer", "second outer", "first inner", "second inner"), received);
+    }
+
+    @Test
+    public void testWalletRouting() {
+        TestSubscriber subscriberA = new TestSubscriber("a", new Wallet("A"));
+        TestSubscriber subscriberB = new TestSubscriber("b", new Wallet("B"));
+        eventBus.register(subscriberA);
+        eventBus.register(subscriberB);
+
+        //Routed by the wallet id carried by the event
+        WalletGapLimitChangedEvent gapLimitEvent = new WalletGapLimitChangedEvent("a", new Wallet("Copy of A"), 20);
+        eventBus.post(gapLimitEvent);
+        Assertions.assertEquals(List.of(gapLimitEvent), subscriberA.received);
+        Assertions.assertTrue(subscriberB.received.isEmpty());
+
+        //Routed by the wallet instance bound on registration
+        WalletLabelChangedEvent labelEvent = new WalletLabelChangedEvent(subscriberB.wallet);
+        eventBus.post(labelEvent);
+        Assertions.assertEquals(List.of(gapLimitEvent), subscriberA.received);
+        Assertions.assertEquals(List.of(labelEvent), subscriberB.received);
+
+        //Events for other wallets reach neither channel
+        eventBus.post(new WalletLabelChangedEvent(new Wallet("C")));
+        Assertions.assertEquals(1, subscriberA.received.size());
+        Assertions.assertEquals(1, subscriberB.received.size());
+    }
+
+    @Test
+    public void testUnsubscribe() {
+        Wallet wallet = new Wallet("A");
+        TestSubscriber subscriber = new TestSubscriber("a", wallet);
+        eventBus.register(subscriber);
+        Assertions.assertEquals("a", eventBus.getWalletId(wallet));
+
+        List<Object> received = new ArrayList<>();
+        Object owner = new Object();
+        eventBus.subscribe("a", owner, WalletChangedEvent.class, received::add, Runnable::run);
+        eventBus.subscribe(owner, WalletLabelChangedEvent.class, received::add);
+        eventBus.post(new WalletLabelChangedEvent(wallet));
+        Assertions.assertEquals(2, received.size());
+
+        eventBus.unsubscribe(owner);
+        eventBus.post(new WalletLabelChangedEvent(wallet));
+        Assertions.assertEquals(2, received.size());
+        Assertions.assertEquals(2, subscriber.received.size());
+
+        //Unregistering removes the subscriber's handlers and unbinds its wallet
+        eventBus.unregister(subscriber);
+        eventBus.post(new WalletGapLimitChangedEvent("a", wallet, 20));
+        Assertions.assertEquals(2, subscriber.received.size());
+        Assertions.assertNull(eventBus.getWalletId(wallet));
+    }
+
+    @Test
+    public void testNullWalletId() {
+        Wallet wallet = new Wallet("A");
+        TestSubscriber subscriber = new TestSubscriber(null, wallet);
+        eventBus.register(subscriber);
+        Assertions.assertNull(eventBus.getWalletId(wallet));
+
+        //Without a wallet id the subscriber is on the global channel, and receives events for every wallet
+        eventBus.post(new WalletLabelChangedEvent(wallet));
+        eventBus.post(new WalletGapLimitChangedEvent("b", new Wallet("B"), 20));
+        Assertions.assertEquals(2, subscriber.received.size());
+
+        eventBus.unregister(subscriber);
+        eventBus.post(new WalletLabelChangedEvent(wallet));
+        Assertions.assertEquals(2, subscriber.received.size());
+    }
+
+    private static class TestSubscriber implements WalletEventSubscriber {
+        private final String walletId;
+        private final Wallet wallet;
+        private final List<WalletChangedEvent> received = new ArrayList<>();
+
+        public TestSubscriber(String walletId, Wallet wallet) {
+            this.walletId = walletId;
+            this.wallet = wallet;
+        }
+
+        @Override
+        public String getWalletId() {
+            return walletId;
+        }
+
+        @Override
+        public Wallet getWallet() {
+            return wallet;
+        }
+
+        @Override
+        public void subscribe(EventChannel channel) {
+            channel.subscribe(this, WalletChangedEvent.class, received::add);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.sparrowwallet.sparrow;
+
+import com.sparrowwallet.drongo.KeyPurpose;
+import com.sparrowwallet.drongo.OutputDescriptor;
+import com.sparrowwallet.drongo.address.Address;
+import com.sparrowwallet.drongo.protocol.*;
+import com.sparrowwallet.drongo.wallet.*;
+import com.sparrowwallet.sparrow.net.ElectrumServer;
+
+import java.util.*;
+
+/**
+ * Generates watch only wallets with a synthetic but internally consistent transaction history, for benchmarks and tests that need large wallets without a server.
+ * The same seed always generates the same wallet.
+ */
+public class SyntheticWalletGenerator {
+    public static final int START_HEIGHT = 800000;
+
+    private static final String SINGLESIG_DESCRIPTOR = "wpkh([a262308d/84h/0h/0h]xpub6DM7CYgaTMdMbhTcLTUWmNUE5WLXK5hx8ZMa4sRw8qYJPqtqKYiKnwsmT8A6AijDVAUZRivdBnXdR8QE7Y9vVnqvzPL3fXCmu1WtCRLdAoz/<0;1>/*)";
+    private static final String MULTISIG_DESCRIPTOR = "wsh(sortedmulti(2," +
+            "[0f056943/48h/0h/0h/2h]xpub6EfEGa5isJbQFSswM5Uptw5BSq2Td1ZDJr3QUNUcMySpC7itZ3ccypVHtLPnvMzKQ2qxrAgH49vhVxRcaQLFbixAVRR8RACrYTp88Uv9h8Z/<0;1>/*," +
+            "[6ba6cfd0/48h/0h/0h/2h]xpub6FFEQVG6QR28giDuML74Y7EMPwqEiKftNjScLzg5WKM41bf6LMP2XspjBgNp28tvkNUZdokmTY4TcRbuGZBSMvNoUECrKW1y3TBPeQJVmAg/<0;1>/*," +
+            "[747b698e/48h/0h/0h/2h]xpub6Eb6Z1xtmWRiWKgRpHf6dHiEagGd6FLiBXrnma1nFK4PGRYqSVqVyJaxna5Mb8etSP4ATKVAvKnXG1a9HZauoAawuSDJT5RgH2HqEVHZVHY/<0;1>/*))";
+
+    //Proportion of transactions that spend existing wallet outputs rather than receive from outside the wallet
+    private static final double SPEND_PROPORTION = 0.35;
+    private static final int TRANSACTIONS_PER_BLOCK = 3;
+
+    private final Random random;
+
+    public SyntheticWalletGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generates a wallet with the given number of receive addresses (and half as many change addresses), holding the given number of transactions
+     *
+     * @param labelDensity the proportion of transactions, addresses and outputs that are labelled
+     * @param multisig whether to generate a 2 of 3 P2WSH wallet rather than a P2WPKH wallet
+     */
+    public SyntheticWallet generate(int addresses, int transactions, double labelDensity, boolean multisig) {
+        Wallet wallet = OutputDescriptor.getOutputDescriptor(multisig ? MULTISIG_DESCRIPTOR : SINGLESIG_DESCRIPTOR).toWallet();
+        wallet.setName("Synthetic " + (multisig ? "multisig " : "") + addresses + "x" + transactions);
+
+        wallet.getNode(KeyPurpose.RECEIVE).fillToIndex(wallet, Math.max(addresses, 1) - 1);
+        wallet.getNode(KeyPurpose.CHANGE).fillToIndex(wallet, Math.max(addresses / 2, 1) - 1);
+        List<WalletNode> receiveNodes = new ArrayList<>(wallet.getNode(KeyPurpose.RECEIVE).getChildren());
+        List<WalletNode> changeNodes = new ArrayList<>(wallet.getNode(KeyPurpose.CHANGE).getChildren());
+
+        Map<Sha256Hash, BlockTransaction> blockTransactions = new LinkedHashMap<>();
+        Map<WalletNode, Set<BlockTransactionHash>> nodeTransactionMap = new LinkedHashMap<>();
+        List<Utxo> utxos = new ArrayList<>();
+
+        for(int i = 0; i < transactions; i++) {
+            int height = START_HEIGHT + i / TRANSACTIONS_PER_BLOCK;
+            Transaction transaction;
+            Set<WalletNode> touchedNodes = new LinkedHashSet<>();
+
+            if(!utxos.isEmpty() && random.nextDouble() < SPEND_PROPORTION) {
+                transaction = new Transaction();
+                transaction.setVersion(2);
+                long total = 0;
+                int inputs = Math.min(utxos.size(), 1 + random.nextInt(3));
+                for(int j = 0; j < inputs; j++) {
+                    Utxo utxo = utxos.remove(random.nextInt(utxos.size()));
+                    transaction.addInput(utxo.hash(), utxo.index(), new Script(new byte[0]));
+                    touchedNodes.add(utxo.node());
+                    total += utxo.value();
+                }
+
+                long fee = 200L * (1 + random.nextInt(20));
+                long sent = (total - fee) * (20 + random.nextInt(60)) / 100;
+                transaction.addOutput(new TransactionOutput(transaction, sent, getExternalAddress().getOutputScript()));
+                WalletNode changeNode = changeNodes.get(random.nextInt(changeNodes.size()));
+                transaction.addOutput(new TransactionOutput(transaction, total - fee - sent, changeNode.getAddress().getOutputScript()));
+                touchedNodes.add(changeNode);
+                addTransaction(blockTransactions, transaction, height, fee);
+                utxos.add(new Utxo(transaction.getTxId(), 1, total - fee - sent, changeNode));
+            } else {
+                WalletNode receiveNode = receiveNodes.get(random.nextInt(receiveNodes.size()));
+                transaction = createIncomingTransaction(receiveNode);
+                touchedNodes.add(receiveNode);
+                addTransaction(blockTransactions, transaction, height, null);
+                utxos.add(new Utxo(transaction.getTxId(), 0, transaction.getOutputs().get(0).getValue(), receiveNode));
+            }
+
+            BlockTransaction blockTransaction = blockTransactions.get(transaction.getTxId());
+            for(WalletNode node : touchedNodes) {
+                nodeTransactionMap.computeIfAbsent(node, k -> new LinkedHashSet<>()).add(blockTransaction);
+            }
+        }
+
+        wallet.updateTransactions(blockTransactions);
+        wallet.setStoredBlockHeight(START_HEIGHT + transactions / TRANSACTIONS_PER_BLOCK + 1);
+        new ElectrumServer().calculateNodeHistory(wallet, nodeTransactionMap);
+        addLabels(wallet, receiveNodes, labelDensity);
+
+        return new SyntheticWallet(wallet, nodeTransactionMap, new ArrayList<>(blockTransactions.values()));
+    }
+
+    /**
+     * Creates a transaction from outside the wallet paying to the given node in its first output, with a second output to an external address
+     */
+    public Transaction createIncomingTransaction(WalletNode node) {
+        Transaction transaction = new Transaction();
+        transaction.setVersion(2);
+        transaction.addInput(getRandomHash(), random.nextInt(4), new Script(new byte[0]));
+        transaction.addOutput(new TransactionOutput(transaction, 10000L + random.nextInt(5000000), node.getAddress().getOutputScript()));
+        transaction.addOutput(new TransactionOutput(transaction, 10000L + random.nextInt(50000000), getExternalAddress().getOutputScript()));
+        return transaction;
+    }
+
+    /**
+     * Returns an address outside the wallet of the same script type, suitable as a payment destination
+     */
+    public Address getExternalAddress(Wallet wallet) {
+        return wallet.getScriptType() == ScriptType.P2WSH ? ScriptType.P2WSH.getAddress(getRandomBytes(32)) : getExternalAddress();
+    }
+
+    private Address getExternalAddress() {
+        return ScriptType.P2WPKH.getAddress(getRandomBytes(20));
+    }
+
+    private void addTransaction(Map<Sha256Hash, BlockTransaction> blockTransactions, Transaction transaction, int height, Long fee) {
+        Date date = new Date((1690000000L + (long)(height - START_HEIGHT) * 600) * 1000);
+        blockTransactions.put(transaction.getTxId(), new BlockTransaction(transaction.getTxId(), height, date, fee, transaction));
+    }
+
+    private void addLabels(Wallet wallet, List<WalletNode> receiveNodes, double labelDensity) {
+        for(BlockTransaction blockTransaction : wallet.getTransactions().values()) {
+            if(random.nextDouble() < labelDensity) {
+                blockTransaction.setLabel("Transaction " + blockTransaction.getHashAsString().substring(0, 8));
+            }
+        }
+
+        for(WalletNode receiveNode : receiveNodes) {
+            if(random.nextDouble() < labelDensity) {
+                receiveNode.setLabel("Address " + receiveNode.getIndex());
+            }
+        }
+
+        for(BlockTransactionHashIndex utxo : wallet.getWalletUtxos().keySet()) {
+            if(random.nextDouble() < labelDensity) {
+                utxo.setLabel("Output " + utxo.getHashAsString().substring(0, 8) + ":" + utxo.getIndex());
+            }
+        }
+    }
+
+    private Sha256Hash getRandomHash() {
+        return Sha256Hash.wrap(getRandomBytes(32));
+    }
+
+    private byte[] getRandomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * A generated wallet, with the transactions the server would report for each address node, and all transactions in the order they were confirmed
+     */
+    public record SyntheticWallet(Wallet wallet, Map<WalletNode, Set<BlockTransactionHash>> nodeTransactionMap, List<BlockTransaction> transactions) {}
+
+    private record Utxo(Sha256Hash hash, long index, long value, WalletNode node) {}
+}
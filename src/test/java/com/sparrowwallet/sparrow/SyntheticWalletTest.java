@@ -0,0 +1,25 @@
+package com.sparrowwallet.sparrow;
+
+import com.sparrowwallet.drongo.wallet.Wallet;
+import com.sparrowwallet.sparrow.io.PersistenceType;
+import com.sparrowwallet.sparrow.io.Storage;
+import com.sparrowwallet.sparrow.wallet.WalletForm;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+public class SyntheticWalletTest {
+    @TempDir
+    protected Path tempDir;
+
+    protected Wallet generateWallet(long seed, int addresses, int transactions, double labelDensity) {
+        return new SyntheticWalletGenerator(seed).generate(addresses, transactions, labelDensity, false).wallet();
+    }
+
+    /**
+     * Returns a form for the wallet, stored as JSON in a temporary directory that is deleted after each test
+     */
+    protected WalletForm createWalletForm(Wallet wallet) {
+        return new WalletForm(new Storage(PersistenceType.JSON, tempDir.resolve(wallet.getFullName() + ".json").toFile()), wallet);
+    }
+}
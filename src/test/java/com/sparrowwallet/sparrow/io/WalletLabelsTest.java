@@ -0,0 +1,99 @@
+package com.sparrowwallet.sparrow.io;
+
+import com.sparrowwallet.drongo.KeyPurpose;
+import com.sparrowwallet.drongo.wallet.*;
+import com.sparrowwallet.sparrow.SyntheticWalletTest;
+import com.sparrowwallet.sparrow.event.HideEmptyUsedAddressesStatusEvent;
+import com.sparrowwallet.sparrow.wallet.Entry;
+import com.sparrowwallet.sparrow.wallet.NodeEntry;
+import com.sparrowwallet.sparrow.wallet.TransactionEntry;
+import com.sparrowwallet.sparrow.wallet.WalletForm;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class WalletLabelsTest extends SyntheticWalletTest {
+    private Wallet wallet;
+    private WalletForm walletForm;
+    private WalletLabels walletLabels;
+
+    @BeforeEach
+    public void setUp() {
+        wallet = generateWallet(5, 10, 30, 0.0);
+        walletForm = createWalletForm(wallet);
+        walletLabels = new WalletLabels(List.of(walletForm));
+    }
+
+    @Test
+    public void testImport() throws ImportException {
+        TransactionEntry transactionEntry = (TransactionEntry)walletForm.getWalletTransactionsEntry().getChildren().get(3);
+        String txid = transactionEntry.getBlockTransaction().getHashAsString();
+        WalletNode addressNode = wallet.getNode(KeyPurpose.RECEIVE).getChildren().iterator().next();
+        List<BlockTransactionHashIndex> utxos = new ArrayList<>(wallet.getWalletUtxos().keySet());
+        BlockTransactionHashIndex labelledUtxo = utxos.get(0);
+        BlockTransactionHashIndex frozenUtxo = utxos.get(1);
+        Keystore keystore = wallet.getKeystores().getFirst();
+        String xpub = keystore.getExtendedPublicKey().toString();
+
+        List<String> lines = List.of(
+                "{\"type\":\"tx\",\"ref\":\"" + txid + "\",\"label\":\"Salary\"}",
+                "{\"type\":\"addr\",\"ref\":\"" + addressNode.getAddress() + "\",\"label\":\"Donations\"}",
+                "{\"type\":\"output\",\"ref\":\"" + labelledUtxo + "\",\"label\":\"Change\",\"spendable\":false}",
+                "{\"type\":\"output\",\"ref\":\"" + frozenUtxo + "\",\"spendable\":false}",
+                "{\"type\":\"xpub\",\"ref\":\"" + xpub + "\",\"label\":\"First\"}",
+                "{\"type\":\"xpub\",\"ref\":\"" + xpub + "\",\"label\":\"Second\"}",
+                "{\"type\":\"tx\",\"ref\":\"" + "f".repeat(64) + "\",\"label\":\"Not in wallet\"}",
+                "not a label");
+
+        Assertions.assertSame(wallet, walletLabels.importWallet(toInputStream(lines), null));
+        Assertions.assertEquals("Salary", transactionEntry.getBlockTransaction().getLabel());
+        Assertions.assertEquals("Salary", transactionEntry.getLabel());
+        Assertions.assertEquals("Donations", addressNode.getLabel());
+        Assertions.assertEquals("Change", labelledUtxo.getLabel());
+        Assertions.assertEquals(Status.FROZEN, labelledUtxo.getStatus());
+        Assertions.assertNull(frozenUtxo.getLabel());
+        Assertions.assertEquals(Status.FROZEN, frozenUtxo.getStatus());
+
+        //The last of several labels for the same reference takes precedence
+        Assertions.assertEquals("Second", keystore.getLabel());
+
+        //An output label marking a frozen output as spendable unfreezes it
+        walletLabels.importWallet(toInputStream(List.of("{\"type\":\"output\",\"ref\":\"" + frozenUtxo + "\",\"spendable\":true}")), null);
+        Assertions.assertNull(frozenUtxo.getStatus());
+    }
+
+    @Test
+    public void testEntriesReplacedWhileReading() throws ImportException {
+        WalletNode addressNode = wallet.getNode(KeyPurpose.RECEIVE).getChildren().iterator().next();
+        NodeEntry readEntry = getAddressEntry(addressNode);
+        WalletLabels.ImportedLabels importedLabels = walletLabels.readLabels(toInputStream(List.of("{\"type\":\"addr\",\"ref\":\"" + addressNode.getAddress() + "\",\"label\":\"Donations\"}")));
+
+        //The address entries are recreated before the labels are applied, so the label is set on the current entry
+        walletForm.hideEmptyUsedAddressesStatusChanged(new HideEmptyUsedAddressesStatusEvent(false));
+        NodeEntry currentEntry = getAddressEntry(addressNode);
+        Assertions.assertNotSame(readEntry, currentEntry);
+
+        importedLabels.apply();
+        Assertions.assertEquals("Donations", addressNode.getLabel());
+        Assertions.assertEquals("Donations", currentEntry.getLabel());
+    }
+
+    private NodeEntry getAddressEntry(WalletNode addressNode) {
+        for(Entry entry : walletForm.getNodeEntry(KeyPurpose.RECEIVE).getChildren()) {
+            if(entry instanceof NodeEntry nodeEntry && nodeEntry.getNode().equals(addressNode)) {
+                return nodeEntry;
+            }
+        }
+
+        return null;
+    }
+
+    private static ByteArrayInputStream toInputStream(List<String> lines) {
+        return new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+}
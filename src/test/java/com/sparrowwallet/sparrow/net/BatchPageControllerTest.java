@@ -0,0 +1,111 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.github.arteam.simplejsonrpc.client.Transport;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.sparrowwallet.sparrow.net.PagedBatchRequestBuilder.DEFAULT_PAGE_SIZE;
+
+public class BatchPageControllerTest {
+    private final List<BatchSettings> stored = new ArrayList<>();
+
+    @Test
+    public void testGrowth() {
+        BatchPageController controller = new BatchPageController("server", null, null, stored::add);
+        Assertions.assertEquals(DEFAULT_PAGE_SIZE, controller.getPageSize(null));
+
+        //Fast full pages grow the page size, but partial pages do not
+        controller.pageSucceeded(null, DEFAULT_PAGE_SIZE, 100);
+        Assertions.assertEquals(125, controller.getPageSize(null));
+        controller.pageSucceeded(null, 10, 100);
+        Assertions.assertEquals(125, controller.getPageSize(null));
+
+        for(int i = 0; i < 50; i++) {
+            controller.pageSucceeded(null, controller.getPageSize(null), 100);
+        }
+        Assertions.assertEquals(BatchPageController.MAX_PAGE_SIZE, controller.getPageSize(null));
+        Assertions.assertEquals(BatchPageController.MAX_PAGE_SIZE, stored.getLast().pageSize());
+
+        //Pages are never sent concurrently to a transport that is not pipelined
+        Assertions.assertEquals(1, controller.getConcurrentPages(null));
+    }
+
+    @Test
+    public void testShrinkOnFailure() {
+        BatchPageController controller = new BatchPageController("server", null, new BatchSettings(400, 3), stored::add);
+        controller.pageFailed(null);
+        Assertions.assertEquals(new BatchSettings(200, 1), stored.getLast());
+        Assertions.assertEquals(200, controller.getPageSize(null));
+
+        //Slow pages shrink more gently
+        controller.pageSucceeded(null, 200, 5000);
+        Assertions.assertEquals(150, controller.getPageSize(null));
+
+        for(int i = 0; i < 20; i++) {
+            controller.pageFailed(null);
+        }
+        Assertions.assertEquals(BatchPageController.MIN_PAGE_SIZE, controller.getPageSize(null));
+    }
+
+    @Test
+    public void testShrinkOnTimeout() {
+        BatchPageController controller = new BatchPageController("server", null, new BatchSettings(400, 1), stored::add);
+        CountingTransport transport = new CountingTransport();
+        Assertions.assertEquals(400, controller.getPageSize(transport));
+
+        //A read timeout halves the page size, and the fast page it was measured against is not counted as growth
+        transport.timeouts++;
+        controller.pageSucceeded(transport, 400, 100);
+        Assertions.assertEquals(200, controller.getPageSize(transport));
+        controller.pageSucceeded(transport, 200, 100);
+        Assertions.assertEquals(250, controller.getPageSize(transport));
+
+        //A new transport starts counting again without shrinking the page size
+        CountingTransport newTransport = new CountingTransport();
+        Assertions.assertEquals(250, controller.getPageSize(newTransport));
+        newTransport.timeouts++;
+        Assertions.assertEquals(125, controller.getPageSize(newTransport));
+    }
+
+    @Test
+    public void testPersistedRestore() {
+        BatchPageController controller = new BatchPageController("server", null, new BatchSettings(600, 2), stored::add);
+        Assertions.assertEquals(600, controller.getPageSize(null));
+        Assertions.assertTrue(stored.isEmpty());
+
+        //Stored settings outside the limits are clamped
+        Assertions.assertEquals(BatchPageController.MAX_PAGE_SIZE, new BatchPageController("server", null, new BatchSettings(5000, 9), stored::add).getPageSize(null));
+        Assertions.assertEquals(BatchPageController.MIN_PAGE_SIZE, new BatchPageController("server", null, new BatchSettings(1, 0), stored::add).getPageSize(null));
+    }
+
+    @Test
+    public void testConfiguredLimit() {
+        //An explicitly configured page size is the upper limit, even when it is the default
+        BatchPageController controller = new BatchPageController("server", DEFAULT_PAGE_SIZE, null, stored::add);
+        for(int i = 0; i < 10; i++) {
+            controller.pageSucceeded(null, controller.getPageSize(null), 100);
+        }
+        Assertions.assertEquals(DEFAULT_PAGE_SIZE, controller.getPageSize(null));
+        Assertions.assertTrue(stored.stream().allMatch(batchSettings -> batchSettings.pageSize() == DEFAULT_PAGE_SIZE));
+
+        Assertions.assertEquals(50, new BatchPageController("server", 50, null, stored::add).getPageSize(null));
+        Assertions.assertEquals(50, new BatchPageController("server", 50, new BatchSettings(600, 1), stored::add).getPageSize(null));
+    }
+
+    private static class CountingTransport implements Transport, TimeoutCounter {
+        private int timeouts;
+
+        @Override
+        public String pass(String request) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getTimeoutCount() {
+            return timeouts;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.sparrowwallet.drongo.protocol.*;
+import com.sparrowwallet.drongo.wallet.BlockTransaction;
+import com.sparrowwallet.sparrow.SyntheticWalletGenerator;
+import com.sparrowwallet.sparrow.net.cormorant.electrum.ElectrumBlockHeader;
+import com.sparrowwallet.sparrow.net.cormorant.index.TxEntry;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The chain and script hash histories served by {@link FakeElectrumServer}, built from the transactions of a synthetic wallet.
+ * Headers start at the difficulty period containing the first transaction, link to each other and pass proof of work at the minimum difficulty, so they are accepted by {@link HeaderChainStore}.
+ * Transactions may be added to the mempool and mined into new blocks while the server is running.
+ */
+public class FakeChain {
+    private static final int HEADER_LENGTH = HeaderChainStore.HEADER_LENGTH;
+    private static final int MIN_DIFFICULTY_BITS = 0x207fffff;
+    private static final long START_TIME = 1690000000L;
+
+    private final int baseHeight;
+    private final List<byte[]> headers = new ArrayList<>();
+    private final Map<String, String> transactions = new HashMap<>();
+    private final Map<String, Integer> transactionHeights = new HashMap<>();
+    private final Map<String, Set<String>> transactionScriptHashes = new HashMap<>();
+    private final Map<String, String> outputScriptHashes = new HashMap<>();
+    private final Map<String, TreeSet<TxEntry>> histories = new HashMap<>();
+    private final Map<String, String> statuses = new HashMap<>();
+    private final Map<String, Long> mempoolFees = new LinkedHashMap<>();
+
+    public FakeChain(SyntheticWalletGenerator.SyntheticWallet syntheticWallet) {
+        Map<Integer, List<BlockTransaction>> blocks = new TreeMap<>();
+        for(BlockTransaction blockTransaction : syntheticWallet.transactions()) {
+            blocks.computeIfAbsent(blockTransaction.getHeight(), k -> new ArrayList<>()).add(blockTransaction);
+        }
+
+        int firstHeight = blocks.isEmpty() ? SyntheticWalletGenerator.START_HEIGHT : blocks.keySet().iterator().next();
+        this.baseHeight = firstHeight - (firstHeight % HeaderChainStore.CHUNK_SIZE);
+        int tipHeight = Math.max(syntheticWallet.wallet().getStoredBlockHeight() == null ? 0 : syntheticWallet.wallet().getStoredBlockHeight(), firstHeight);
+
+        for(int height = baseHeight; height <= tipHeight; height++) {
+            List<BlockTransaction> block = blocks.getOrDefault(height, Collections.emptyList());
+            List<String> txids = new ArrayList<>(block.size());
+            for(int index = 0; index < block.size(); index++) {
+                Transaction transaction = block.get(index).getTransaction();
+                addTransaction(transaction, height, index, null);
+                txids.add(transaction.getTxId().toString());
+            }
+            addHeader(txids);
+        }
+    }
+
+    public synchronized int getBaseHeight() {
+        return baseHeight;
+    }
+
+    public synchronized int getTipHeight() {
+        return baseHeight + headers.size() - 1;
+    }
+
+    public synchronized ElectrumBlockHeader getTip() {
+        return new ElectrumBlockHeader(getTipHeight(), HexCodec.encode(headers.getLast()));
+    }
+
+    /**
+     * Returns the header at the given height, or null if it is outside the chain
+     */
+    public synchronized String getHeader(int height) {
+        byte[] header = getHeaderBytes(height);
+        return header == null ? null : HexCodec.encode(header);
+    }
+
+    /**
+     * Returns up to count contiguous headers from the given height as a single hex string
+     */
+    public synchronized String getHeaders(int startHeight, int count) {
+        StringBuilder hex = new StringBuilder();
+        for(int height = startHeight; height < startHeight + count && getHeaderBytes(height) != null; height++) {
+            hex.append(HexCodec.encode(getHeaderBytes(height)));
+        }
+
+        return hex.toString();
+    }
+
+    public synchronized String getBlockHash(int height) {
+        byte[] header = getHeaderBytes(height);
+        return header == null ? null : HexCodec.encodeReversed(Sha256Hash.twiceOf(header).getBytes());
+    }
+
+    public long getBlockTime(int height) {
+        return START_TIME + (long)(height - SyntheticWalletGenerator.START_HEIGHT) * 600;
+    }
+
+    public synchronized String getTransaction(String txid) {
+        return transactions.get(txid);
+    }
+
+    /**
+     * Returns the confirmation height of a transaction, 0 if it is in the mempool or null if it is unknown
+     */
+    public synchronized Integer getTransactionHeight(String txid) {
+        return transactionHeights.get(txid);
+    }
+
+    public synchronized int getTransactionCount(int height) {
+        return (int)transactionHeights.values().stream().filter(txHeight -> txHeight == height).count();
+    }
+
+    public synchronized List<TxEntry> getHistory(String scriptHash) {
+        TreeSet<TxEntry> history = histories.get(scriptHash);
+        return history == null ? Collections.emptyList() : new ArrayList<>(history);
+    }
+
+    public synchronized List<TxEntry> getMempool(String scriptHash) {
+        return getHistory(scriptHash).stream().filter(txEntry -> txEntry.height <= 0).toList();
+    }
+
+    /**
+     * Returns the Electrum protocol status of the script hash, or null if it has no history
+     */
+    public synchronized String getStatus(String scriptHash) {
+        TreeSet<TxEntry> history = histories.get(scriptHash);
+        if(history == null) {
+            return null;
+        }
+
+        return statuses.computeIfAbsent(scriptHash, k -> {
+            StringBuilder status = new StringBuilder();
+            for(TxEntry txEntry : history) {
+                status.append(txEntry.tx_hash).append(":").append(txEntry.height).append(":");
+            }
+
+            return HexCodec.encode(Sha256Hash.hash(status.toString().getBytes(StandardCharsets.UTF_8)));
+        });
+    }
+
+    /**
+     * Adds a transaction to the mempool, returning the script hashes whose history has changed
+     */
+    public synchronized Set<String> addMempoolTransaction(Transaction transaction, long fee) {
+        mempoolFees.put(transaction.getTxId().toString(), fee);
+        return addTransaction(transaction, 0, 0, fee);
+    }
+
+    /**
+     * Mines a new block at the tip containing all mempool transactions, returning the script hashes whose history has changed
+     */
+    public synchronized Set<String> mineBlock() {
+        int height = getTipHeight() + 1;
+        List<String> txids = new ArrayList<>(mempoolFees.keySet());
+        Set<String> changedScriptHashes = new LinkedHashSet<>();
+        for(int index = 0; index < txids.size(); index++) {
+            String txid = txids.get(index);
+            for(String scriptHash : transactionScriptHashes.get(txid)) {
+                TreeSet<TxEntry> history = histories.get(scriptHash);
+                history.removeIf(txEntry -> txEntry.tx_hash.equals(txid));
+                history.add(new TxEntry(height, index, txid));
+                statuses.remove(scriptHash);
+                changedScriptHashes.add(scriptHash);
+            }
+            transactionHeights.put(txid, height);
+        }
+
+        mempoolFees.clear();
+        addHeader(txids);
+        return changedScriptHashes;
+    }
+
+    private Set<String> addTransaction(Transaction transaction, int height, int index, Long fee) {
+        String txid = transaction.getTxId().toString();
+        transactions.put(txid, HexCodec.encode(transaction.bitcoinSerialize()));
+        transactionHeights.put(txid, height);
+
+        Set<String> scriptHashes = new LinkedHashSet<>();
+        for(TransactionInput input : transaction.getInputs()) {
+            String scriptHash = outputScriptHashes.get(input.getOutpoint().getHash().toString() + ":" + input.getOutpoint().getIndex());
+            if(scriptHash != null) {
+                scriptHashes.add(scriptHash);
+            }
+        }
+        for(TransactionOutput output : transaction.getOutputs()) {
+            String scriptHash = ElectrumServer.getScriptHash(output);
+            outputScriptHashes.put(txid + ":" + output.getIndex(), scriptHash);
+            scriptHashes.add(scriptHash);
+        }
+
+        TxEntry txEntry = fee == null ? new TxEntry(height, index, txid) : new TxEntry(height, index, txid, (double)fee / Transaction.SATOSHIS_PER_BITCOIN);
+        for(String scriptHash : scriptHashes) {
+            histories.computeIfAbsent(scriptHash, k -> new TreeSet<>()).add(txEntry);
+            statuses.remove(scriptHash);
+        }
+        transactionScriptHashes.put(txid, scriptHashes);
+
+        return scriptHashes;
+    }
+
+    private void addHeader(List<String> txids) {
+        int height = baseHeight + headers.size();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(2);
+        buffer.put(headers.isEmpty() ? new byte[32] : Sha256Hash.twiceOf(headers.getLast()).getBytes());
+        //The client does not check merkle proofs, so a hash of the txids stands in for the merkle root
+        buffer.put(Sha256Hash.twiceOf(String.join("", txids).getBytes(StandardCharsets.UTF_8)).getBytes());
+        buffer.putInt((int)getBlockTime(height));
+        buffer.putInt(MIN_DIFFICULTY_BITS);
+
+        byte[] header = buffer.array();
+        for(int nonce = 1; !HeaderChainStore.hasValidProofOfWork(header); nonce++) {
+            buffer.putInt(HEADER_LENGTH - 4, nonce);
+        }
+
+        headers.add(header);
+    }
+
+    private byte[] getHeaderBytes(int height) {
+        int index = height - baseHeight;
+        return index < 0 || index >= headers.size() ? null : headers.get(index);
+    }
+}
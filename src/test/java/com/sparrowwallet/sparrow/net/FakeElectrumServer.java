@@ -0,0 +1,380 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.arteam.simplejsonrpc.client.JsonRpcClient;
+import com.github.arteam.simplejsonrpc.server.JsonRpcServer;
+import com.google.common.net.HostAndPort;
+import com.sparrowwallet.drongo.protocol.Transaction;
+import com.sparrowwallet.sparrow.net.cormorant.electrum.ElectrumBlockHeader;
+import com.sparrowwallet.sparrow.net.cormorant.electrum.ElectrumNotificationService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An embeddable stand-in for an Electrum server, serving a {@link FakeChain} over plain TCP on a local port so that the client can be tested and benchmarked end to end without a live server.
+ * Latency, bandwidth, batch limits and injected errors can be configured, and changed while clients are connected.
+ * Transactions added to the mempool and newly mined blocks are notified to subscribed connections, as a real server would.
+ */
+public class FakeElectrumServer implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(FakeElectrumServer.class);
+
+    public static final String SERVER_NAME = "FakeElectrum 1.0";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final JsonRpcServer rpcServer = new JsonRpcServer();
+    private static final int INVALID_REQUEST_CODE = -32600;
+    private static final int INJECTED_ERROR_CODE = -32603;
+    private static final int WRITE_CHUNK_BYTES = 8192;
+
+    private final FakeChain chain;
+    private final ServerSocket serverSocket;
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final Random random;
+    private volatile boolean stopped;
+
+    private volatile long latencyMillis;
+    private volatile long bytesPerSecond;
+    private volatile int maxBatchSize;
+    private volatile double errorRate;
+    private volatile int disconnectAfterMessages;
+    private volatile boolean pipelined = true;
+
+    public FakeElectrumServer(FakeChain chain) throws IOException {
+        this(chain, 0L);
+    }
+
+    /**
+     * @param seed the seed used to choose which requests fail when errors are injected
+     */
+    public FakeElectrumServer(FakeChain chain, long seed) throws IOException {
+        this.chain = chain;
+        this.random = new Random(seed);
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    }
+
+    public FakeElectrumServer start() {
+        Thread.ofVirtual().name("FakeElectrumServer").start(this::acceptConnections);
+        return this;
+    }
+
+    private void acceptConnections() {
+        while(!stopped) {
+            try {
+                Connection connection = new Connection(serverSocket.accept());
+                connections.add(connection);
+                Thread.ofVirtual().name("FakeElectrumConnection").start(connection);
+            } catch(IOException e) {
+                if(!stopped) {
+                    log.error("Error accepting client connection", e);
+                }
+            }
+        }
+    }
+
+    public FakeChain getChain() {
+        return chain;
+    }
+
+    public HostAndPort getHostAndPort() {
+        return HostAndPort.fromParts(serverSocket.getInetAddress().getHostAddress(), serverSocket.getLocalPort());
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Sets the delay before each request or batch is answered
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Limits the rate at which responses and notifications are written to each connection, or 0 for no limit
+     */
+    public void setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Sets the largest batch that will be served. Every request in a larger batch is answered with an error. 0 allows any size.
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Sets the proportion of requests, including those within batches, that are answered with an error instead of a result
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Closes each connection without a response once it has received the given number of requests or batches, or 0 to keep connections open
+     */
+    public void setDisconnectAfterMessages(int disconnectAfterMessages) {
+        this.disconnectAfterMessages = disconnectAfterMessages;
+    }
+
+    /**
+     * Sets whether requests on a connection are handled concurrently, or one at a time in the order they were received
+     */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    /**
+     * Adds transactions to the mempool, notifying connections subscribed to the script hashes they touch
+     */
+    public void addMempoolTransactions(Collection<Transaction> transactions, long fee) {
+        Set<String> changedScriptHashes = new LinkedHashSet<>();
+        for(Transaction transaction : transactions) {
+            changedScriptHashes.addAll(chain.addMempoolTransaction(transaction, fee));
+        }
+
+        notifyScriptHashes(changedScriptHashes);
+    }
+
+    /**
+     * Mines the mempool into a new block, notifying the new tip and the status of script hashes with newly confirmed transactions
+     */
+    public void mineBlock() {
+        Set<String> changedScriptHashes = chain.mineBlock();
+        ElectrumBlockHeader tip = chain.getTip();
+        for(Connection connection : connections) {
+            connection.notifyHeaders(tip);
+        }
+
+        notifyScriptHashes(changedScriptHashes);
+    }
+
+    private void notifyScriptHashes(Collection<String> scriptHashes) {
+        for(String scriptHash : scriptHashes) {
+            String status = chain.getStatus(scriptHash);
+            for(Connection connection : connections) {
+                connection.notifyScriptHash(scriptHash, status);
+            }
+        }
+    }
+
+    /**
+     * Closes all client connections while continuing to accept new ones
+     */
+    public void disconnectAll() {
+        for(Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        stopped = true;
+        serverSocket.close();
+        disconnectAll();
+    }
+
+    private boolean isInjectedError() {
+        double rate = errorRate;
+        return rate > 0 && random.nextDouble() < rate;
+    }
+
+    private static ObjectNode createError(JsonNode id, int code, String message) {
+        ObjectNode response = mapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        ObjectNode error = response.putObject("error");
+        error.put("code", code);
+        error.put("message", message);
+        response.set("id", id);
+        return response;
+    }
+
+    class Connection implements Runnable {
+        private final Socket socket;
+        private final FakeElectrumServerService service;
+        private final ElectrumNotificationService notificationService;
+        private final Set<String> scriptHashesSubscribed = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger messages = new AtomicInteger();
+        private volatile boolean headersSubscribed;
+        private OutputStream out;
+
+        Connection(Socket socket) {
+            this.socket = socket;
+            this.service = new FakeElectrumServerService(chain, this);
+            this.notificationService = new JsonRpcClient(request -> {
+                write(request);
+                return "{\"result\":{},\"error\":null,\"id\":1}";
+            }).onDemand(ElectrumNotificationService.class);
+        }
+
+        public void run() {
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                out = new BufferedOutputStream(socket.getOutputStream());
+
+                String request;
+                while((request = reader.readLine()) != null) {
+                    if(request.isBlank()) {
+                        continue;
+                    }
+
+                    int limit = disconnectAfterMessages;
+                    if(limit > 0 && messages.incrementAndGet() > limit) {
+                        break;
+                    }
+
+                    if(pipelined) {
+                        String pipelinedRequest = request;
+                        Thread.ofVirtual().start(() -> handle(pipelinedRequest));
+                    } else {
+                        handle(request);
+                    }
+                }
+            } catch(IOException e) {
+                log.debug("Fake server connection closed", e);
+            } finally {
+                close();
+            }
+        }
+
+        private void handle(String request) {
+            try {
+                long latency = latencyMillis;
+                if(latency > 0) {
+                    Thread.sleep(latency);
+                }
+
+                String response = respond(request);
+                if(!response.isEmpty()) {
+                    write(response);
+                }
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch(IOException e) {
+                log.debug("Could not respond to request", e);
+            }
+        }
+
+        private String respond(String request) throws IOException {
+            JsonNode message = mapper.readTree(request);
+            if(!message.isArray()) {
+                return isInjectedError() ? mapper.writeValueAsString(createError(message.get("id"), INJECTED_ERROR_CODE, "Injected error")) : rpcServer.handle(request, service);
+            }
+
+            ArrayNode responses = mapper.createArrayNode();
+            int limit = maxBatchSize;
+            if(limit > 0 && message.size() > limit) {
+                for(JsonNode element : message) {
+                    responses.add(createError(element.get("id"), INVALID_REQUEST_CODE, "Batch of " + message.size() + " requests exceeds limit of " + limit));
+                }
+                return mapper.writeValueAsString(responses);
+            }
+
+            ArrayNode served = mapper.createArrayNode();
+            for(JsonNode element : message) {
+                if(isInjectedError()) {
+                    responses.add(createError(element.get("id"), INJECTED_ERROR_CODE, "Injected error"));
+                } else {
+                    served.add(element);
+                }
+            }
+
+            if(responses.isEmpty()) {
+                return rpcServer.handle(request, service);
+            }
+
+            if(!served.isEmpty()) {
+                String servedResponses = rpcServer.handle(mapper.writeValueAsString(served), service);
+                if(!servedResponses.isEmpty()) {
+                    responses.addAll((ArrayNode)mapper.readTree(servedResponses));
+                }
+            }
+
+            return mapper.writeValueAsString(responses);
+        }
+
+        private synchronized void write(String message) throws IOException {
+            if(out == null) {
+                throw new IOException("Connection is not open");
+            }
+
+            byte[] bytes = (message + "\n").getBytes(StandardCharsets.UTF_8);
+            long rate = bytesPerSecond;
+            if(rate <= 0) {
+                out.write(bytes);
+            } else {
+                for(int offset = 0; offset < bytes.length; offset += WRITE_CHUNK_BYTES) {
+                    int length = Math.min(WRITE_CHUNK_BYTES, bytes.length - offset);
+                    out.write(bytes, offset, length);
+                    out.flush();
+                    try {
+                        Thread.sleep(Duration.ofNanos(length * 1_000_000_000L / rate));
+                    } catch(InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while writing");
+                    }
+                }
+            }
+            out.flush();
+        }
+
+        FakeElectrumServer getServer() {
+            return FakeElectrumServer.this;
+        }
+
+        void setHeadersSubscribed(boolean headersSubscribed) {
+            this.headersSubscribed = headersSubscribed;
+        }
+
+        void subscribeScriptHash(String scriptHash) {
+            scriptHashesSubscribed.add(scriptHash);
+        }
+
+        boolean unsubscribeScriptHash(String scriptHash) {
+            return scriptHashesSubscribed.remove(scriptHash);
+        }
+
+        private void notifyHeaders(ElectrumBlockHeader electrumBlockHeader) {
+            if(headersSubscribed) {
+                try {
+                    notificationService.notifyHeaders(electrumBlockHeader);
+                } catch(Exception e) {
+                    log.debug("Could not notify headers", e);
+                }
+            }
+        }
+
+        private void notifyScriptHash(String scriptHash, String status) {
+            if(scriptHashesSubscribed.contains(scriptHash)) {
+                try {
+                    notificationService.notifyScriptHash(scriptHash, status);
+                } catch(Exception e) {
+                    log.debug("Could not notify script hash " + scriptHash, e);
+                }
+            }
+        }
+
+        private void close() {
+            connections.remove(this);
+            try {
+                socket.close();
+            } catch(IOException e) {
+                log.debug("Error closing fake server connection", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.github.arteam.simplejsonrpc.core.annotation.JsonRpcMethod;
+import com.github.arteam.simplejsonrpc.core.annotation.JsonRpcOptional;
+import com.github.arteam.simplejsonrpc.core.annotation.JsonRpcParam;
+import com.github.arteam.simplejsonrpc.core.annotation.JsonRpcService;
+import com.sparrowwallet.drongo.protocol.Transaction;
+import com.sparrowwallet.sparrow.net.cormorant.electrum.ElectrumBlockHeader;
+import com.sparrowwallet.sparrow.net.cormorant.electrum.ElectrumBlockHeaders;
+import com.sparrowwallet.sparrow.net.cormorant.index.TxEntry;
+
+import java.util.*;
+
+/**
+ * The Electrum methods served by {@link FakeElectrumServer} for a single connection, following the surface of the Cormorant ElectrumServerService
+ */
+@JsonRpcService
+public class FakeElectrumServerService {
+    private static final String VERSION = "1.4";
+    private static final int MAX_BLOCK_HEADERS = 2016;
+
+    private final FakeChain chain;
+    private final FakeElectrumServer.Connection connection;
+
+    FakeElectrumServerService(FakeChain chain, FakeElectrumServer.Connection connection) {
+        this.chain = chain;
+        this.connection = connection;
+    }
+
+    @JsonRpcMethod("server.version")
+    public List<String> getServerVersion(@JsonRpcParam("client_name") String clientName, @JsonRpcParam("protocol_version") String[] protocolVersion) {
+        return List.of(FakeElectrumServer.SERVER_NAME, VERSION);
+    }
+
+    @JsonRpcMethod("server.banner")
+    public String getServerBanner() {
+        return FakeElectrumServer.SERVER_NAME;
+    }
+
+    @JsonRpcMethod("server.ping")
+    public void ping() {
+    }
+
+    @JsonRpcMethod("blockchain.estimatefee")
+    public Double estimateFee(@JsonRpcParam("number") int blocks) {
+        return 0.0001d / Math.max(blocks, 1);
+    }
+
+    @JsonRpcMethod("mempool.get_fee_histogram")
+    public List<List<Number>> getFeeHistogram() {
+        return List.of(List.of(20.0, 50000), List.of(10.0, 100000), List.of(5.0, 400000), List.of(1.0, 1000000));
+    }
+
+    @JsonRpcMethod("blockchain.relayfee")
+    public Double getRelayFee() {
+        return 0.00001d;
+    }
+
+    @JsonRpcMethod("blockchain.headers.subscribe")
+    public ElectrumBlockHeader subscribeHeaders() {
+        connection.setHeadersSubscribed(true);
+        return chain.getTip();
+    }
+
+    @JsonRpcMethod("blockchain.scripthash.subscribe")
+    public String subscribeScriptHash(@JsonRpcParam("scripthash") String scriptHash) {
+        connection.subscribeScriptHash(scriptHash);
+        return chain.getStatus(scriptHash);
+    }
+
+    @JsonRpcMethod("blockchain.scripthash.unsubscribe")
+    public boolean unsubscribeScriptHash(@JsonRpcParam("scripthash") String scriptHash) {
+        return connection.unsubscribeScriptHash(scriptHash);
+    }
+
+    @JsonRpcMethod("blockchain.scripthash.get_history")
+    public Collection<TxEntry> getHistory(@JsonRpcParam("scripthash") String scriptHash) {
+        return chain.getHistory(scriptHash);
+    }
+
+    @JsonRpcMethod("blockchain.scripthash.get_mempool")
+    public Collection<TxEntry> getMempool(@JsonRpcParam("scripthash") String scriptHash) {
+        return chain.getMempool(scriptHash);
+    }
+
+    @JsonRpcMethod("blockchain.block.header")
+    public String getBlockHeader(@JsonRpcParam("height") int height) throws FakeServerException {
+        String header = chain.getHeader(height);
+        if(header == null) {
+            throw new FakeServerException("No header at height " + height);
+        }
+
+        return header;
+    }
+
+    @JsonRpcMethod("blockchain.block.headers")
+    public ElectrumBlockHeaders getBlockHeaders(@JsonRpcParam("start_height") int startHeight, @JsonRpcParam("count") int count) throws FakeServerException {
+        if(startHeight < chain.getBaseHeight()) {
+            throw new FakeServerException("No headers below height " + chain.getBaseHeight());
+        }
+
+        String hex = chain.getHeaders(startHeight, Math.min(count, MAX_BLOCK_HEADERS));
+        return new ElectrumBlockHeaders(hex.length() / (HeaderChainStore.HEADER_LENGTH * 2), hex, MAX_BLOCK_HEADERS);
+    }
+
+    @JsonRpcMethod("blockchain.block.stats")
+    public BlockStats getBlockStats(@JsonRpcParam("height") int height) throws FakeServerException {
+        String blockHash = chain.getBlockHash(height);
+        if(blockHash == null) {
+            throw new FakeServerException("No block at height " + height);
+        }
+
+        return new BlockStats(height, blockHash, new double[] {1, 2, 5, 10, 20}, 4000000, chain.getTransactionCount(height), chain.getBlockTime(height));
+    }
+
+    @JsonRpcMethod("blockchain.transaction.get")
+    public Object getTransaction(@JsonRpcParam("tx_hash") String tx_hash, @JsonRpcParam("verbose") @JsonRpcOptional boolean verbose) throws FakeServerException {
+        String hex = chain.getTransaction(tx_hash);
+        if(hex == null) {
+            throw new FakeServerException("No transaction matching " + tx_hash);
+        }
+
+        if(!verbose) {
+            return hex;
+        }
+
+        Map<String, Object> verboseTransaction = new LinkedHashMap<>();
+        verboseTransaction.put("txid", tx_hash);
+        verboseTransaction.put("hash", tx_hash);
+        verboseTransaction.put("hex", hex);
+        verboseTransaction.put("size", hex.length() / 2);
+        int height = chain.getTransactionHeight(tx_hash);
+        if(height > 0) {
+            verboseTransaction.put("confirmations", chain.getTipHeight() - height + 1);
+            verboseTransaction.put("blockhash", chain.getBlockHash(height));
+            verboseTransaction.put("blocktime", chain.getBlockTime(height));
+            verboseTransaction.put("time", chain.getBlockTime(height));
+        }
+
+        return verboseTransaction;
+    }
+
+    @JsonRpcMethod("blockchain.transaction.broadcast")
+    public String broadcastTransaction(@JsonRpcParam("raw_tx") String rawTx) throws FakeServerException {
+        try {
+            Transaction transaction = new Transaction(HexCodec.decode(rawTx));
+            //Fees are not known without the spent outputs, so broadcast transactions are added to the mempool without one
+            connection.getServer().addMempoolTransactions(List.of(transaction), 0);
+            return transaction.getTxId().toString();
+        } catch(Exception e) {
+            throw new FakeServerException("Invalid transaction: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sparrowwallet.drongo.KeyPurpose;
+import com.sparrowwallet.drongo.protocol.Sha256Hash;
+import com.sparrowwallet.drongo.wallet.WalletNode;
+import com.sparrowwallet.sparrow.SyntheticWalletGenerator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+public class FakeElectrumServerTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testHistoryAndHeaders() throws IOException {
+        SyntheticWalletGenerator generator = new SyntheticWalletGenerator(1);
+        SyntheticWalletGenerator.SyntheticWallet syntheticWallet = generator.generate(20, 60, 0, false);
+        WalletNode node = syntheticWallet.nodeTransactionMap().keySet().iterator().next();
+        String scriptHash = ElectrumServer.getScriptHash(node);
+
+        try(FakeElectrumServer server = new FakeElectrumServer(new FakeChain(syntheticWallet)).start();
+            Client client = new Client(server)) {
+            JsonNode history = client.send("{\"jsonrpc\":\"2.0\",\"method\":\"blockchain.scripthash.get_history\",\"params\":[\"" + scriptHash + "\"],\"id\":1}");
+            Assertions.assertEquals(syntheticWallet.nodeTransactionMap().get(node).size(), history.get("result").size());
+
+            FakeChain chain = server.getChain();
+            JsonNode headers = client.send("[{\"jsonrpc\":\"2.0\",\"method\":\"blockchain.block.headers\",\"params\":[" + chain.getBaseHeight() + ",2016],\"id\":2}]");
+            byte[] chunk = HexCodec.decode(headers.get(0).get("result").get("hex").asText());
+            int count = chain.getTipHeight() - chain.getBaseHeight() + 1;
+            Assertions.assertEquals(count * 80, chunk.length);
+            for(int i = 0; i < count; i++) {
+                byte[] header = Arrays.copyOfRange(chunk, i * 80, (i + 1) * 80);
+                Assertions.assertTrue(HeaderChainStore.hasValidProofOfWork(header));
+                if(i > 0) {
+                    Assertions.assertArrayEquals(Sha256Hash.twiceOf(Arrays.copyOfRange(chunk, (i - 1) * 80, i * 80)).getBytes(), Arrays.copyOfRange(header, 4, 36));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNotificationsAndLimits() throws IOException {
+        SyntheticWalletGenerator generator = new SyntheticWalletGenerator(2);
+        SyntheticWalletGenerator.SyntheticWallet syntheticWallet = generator.generate(20, 30, 0, false);
+        WalletNode node = syntheticWallet.wallet().getNode(KeyPurpose.RECEIVE).getChildren().iterator().next();
+        String scriptHash = ElectrumServer.getScriptHash(node);
+
+        try(FakeElectrumServer server = new FakeElectrumServer(new FakeChain(syntheticWallet)).start();
+            Client client = new Client(server)) {
+            String previousStatus = client.send("{\"jsonrpc\":\"2.0\",\"method\":\"blockchain.scripthash.subscribe\",\"params\":[\"" + scriptHash + "\"],\"id\":1}").get("result").asText(null);
+
+            server.addMempoolTransactions(List.of(generator.createIncomingTransaction(node)), 500);
+            JsonNode notification = mapper.readTree(client.reader.readLine());
+            Assertions.assertEquals("blockchain.scripthash.subscribe", notification.get("method").asText());
+            Assertions.assertEquals(server.getChain().getStatus(scriptHash), notification.get("params").get("status").asText());
+            Assertions.assertNotEquals(previousStatus, notification.get("params").get("status").asText());
+
+            server.setMaxBatchSize(1);
+            JsonNode limited = client.send("[{\"jsonrpc\":\"2.0\",\"method\":\"server.ping\",\"id\":2},{\"jsonrpc\":\"2.0\",\"method\":\"server.ping\",\"id\":3}]");
+            Assertions.assertEquals(2, limited.size());
+            Assertions.assertTrue(limited.get(0).has("error"));
+
+            server.setMaxBatchSize(0);
+            server.setErrorRate(1.0);
+            Assertions.assertTrue(client.send("{\"jsonrpc\":\"2.0\",\"method\":\"server.ping\",\"id\":4}").has("error"));
+        }
+    }
+
+    private class Client implements Closeable {
+        private final Socket socket;
+        private final PrintWriter writer;
+        private final BufferedReader reader;
+
+        Client(FakeElectrumServer server) throws IOException {
+            socket = new Socket(server.getHostAndPort().getHost(), server.getHostAndPort().getPort());
+            writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        JsonNode send(String request) throws IOException {
+            writer.println(request);
+            return mapper.readTree(reader.readLine());
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.github.arteam.simplejsonrpc.core.annotation.JsonRpcError;
+
+/**
+ * A request to the {@link FakeElectrumServer} that cannot be answered from its chain, reported with the Electrum protocol bad request code
+ */
+@JsonRpcError(code=1)
+public class FakeServerException extends Exception {
+    public FakeServerException(String message) {
+        super(message);
+    }
+}
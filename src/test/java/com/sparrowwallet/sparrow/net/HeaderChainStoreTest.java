@@ -0,0 +1,173 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.sparrowwallet.drongo.Network;
+import com.sparrowwallet.drongo.Utils;
+import com.sparrowwallet.drongo.protocol.BlockHeader;
+import com.sparrowwallet.drongo.protocol.Sha256Hash;
+import com.sparrowwallet.sparrow.SparrowWallet;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class HeaderChainStoreTest {
+    private static final String GENESIS_HEADER = "0100000000000000000000000000000000000000000000000000000000000000000000003ba3edfd7a7b12b27ac72c3e67768f617fc81bc3888a51323a9fb8aa4b1e5e4a29ab5f49ffff001d1dac2b7c";
+    private static final long REGTEST_BITS = 0x207fffffL;
+
+    private HeaderChainStore store;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        //Replaced headers invalidate the blockchain cache, which is kept in a temporary home
+        File home = Files.createTempDirectory("sparrow-headers").toFile();
+        System.setProperty(SparrowWallet.APP_HOME_PROPERTY, home.getAbsolutePath());
+        Network.set(Network.REGTEST);
+        store = new HeaderChainStore(new File(home, HeaderChainStore.HEADERS_FILENAME));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        store.closeStore();
+        BlockchainCache.close();
+        Network.set(null);
+        System.clearProperty(SparrowWallet.APP_HOME_PROPERTY);
+    }
+
+    @Test
+    public void testProofOfWork() {
+        Network.set(Network.MAINNET);
+        byte[] header = Utils.hexToBytes(GENESIS_HEADER);
+        Assertions.assertTrue(HeaderChainStore.hasValidProofOfWork(header));
+        Assertions.assertTrue(HeaderChainStore.matchesCheckpoint(0, header));
+
+        header[79] ^= 1;
+        Assertions.assertFalse(HeaderChainStore.hasValidProofOfWork(header));
+    }
+
+    @Test
+    public void testMinimumDifficulty() {
+        //A header mined at regtest difficulty satisfies its own bits, but not the mainnet minimum difficulty
+        byte[] header = mine(new byte[32], 1, REGTEST_BITS);
+        Assertions.assertTrue(HeaderChainStore.hasValidProofOfWork(header));
+
+        Network.set(Network.MAINNET);
+        Assertions.assertFalse(HeaderChainStore.hasValidProofOfWork(header));
+        Assertions.assertFalse(HeaderChainStore.matchesCheckpoint(0, header));
+    }
+
+    @Test
+    public void testCompactEncoding() {
+        for(long bits : List.of(0x1d00ffffL, 0x1b0404cbL, 0x17034219L, 0x207fffffL, 0x1e0377aeL)) {
+            Assertions.assertEquals(bits, HeaderChainStore.encodeCompact(HeaderChainStore.decodeCompact(bits)));
+        }
+        Assertions.assertEquals(0x1d00ffffL, HeaderChainStore.encodeCompact(BigInteger.valueOf(0xffff).shiftLeft(208)));
+    }
+
+    @Test
+    public void testLinkage() {
+        List<byte[]> chain = mineChain(new byte[32], 0, 5);
+        Assertions.assertTrue(store.putBlockHeaders(100, concat(chain)));
+        for(int i = 0; i < chain.size(); i++) {
+            Assertions.assertArrayEquals(chain.get(i), store.getBlockHeader(100 + i).bitcoinSerialize());
+        }
+
+        //A run with a header that does not link to the one before it is rejected without storing any of it
+        List<byte[]> unlinked = new ArrayList<>(mineChain(new byte[32], 1, 3));
+        unlinked.set(2, mine(new byte[32], 99, REGTEST_BITS));
+        Assertions.assertFalse(store.putBlockHeaders(200, concat(unlinked)));
+        Assertions.assertNull(store.getBlockHeader(200));
+
+        //A run that is not a whole number of headers is rejected
+        Assertions.assertFalse(store.putBlockHeaders(300, new byte[HeaderChainStore.HEADER_LENGTH + 1]));
+    }
+
+    @Test
+    public void testRejectsChangedDifficulty() {
+        List<byte[]> chain = mineChain(new byte[32], 0, 3);
+        Assertions.assertTrue(store.putBlockHeaders(10, concat(chain)));
+
+        //Regtest does not retarget, so a linked header with different bits is rejected
+        byte[] easier = mine(hash(chain.getLast()), 7, 0x207ffffeL);
+        Assertions.assertTrue(HeaderChainStore.hasValidProofOfWork(easier));
+        Assertions.assertFalse(store.putTipHeader(13, new BlockHeader(easier)));
+        Assertions.assertNull(store.getBlockHeader(13));
+    }
+
+    @Test
+    public void testReorg() {
+        List<byte[]> chain = mineChain(new byte[32], 0, 5);
+        for(int i = 0; i < chain.size(); i++) {
+            Assertions.assertTrue(store.putTipHeader(i + 1, new BlockHeader(chain.get(i))));
+        }
+        Assertions.assertEquals(5, store.getTipHeight());
+
+        //A lower tip matching the stored header is from a server that is behind, and keeps the headers above it
+        Assertions.assertTrue(store.putTipHeader(3, new BlockHeader(chain.get(2))));
+        Assertions.assertEquals(5, store.getTipHeight());
+        Assertions.assertNotNull(store.getBlockHeader(5));
+
+        //A competing header replaces the stored header at its height and removes the headers above it that no longer link
+        byte[] fork = mine(hash(chain.get(2)), 1000, REGTEST_BITS);
+        Assertions.assertTrue(store.putTipHeader(4, new BlockHeader(fork)));
+        Assertions.assertEquals(4, store.getTipHeight());
+        Assertions.assertArrayEquals(fork, store.getBlockHeader(4).bitcoinSerialize());
+        Assertions.assertArrayEquals(chain.get(2), store.getBlockHeader(3).bitcoinSerialize());
+        Assertions.assertNull(store.getBlockHeader(5));
+
+        store.clear();
+        Assertions.assertNull(store.getBlockHeader(3));
+        Assertions.assertEquals(0, store.getTipHeight());
+    }
+
+    private static List<byte[]> mineChain(byte[] previousHash, int seed, int length) {
+        List<byte[]> chain = new ArrayList<>();
+        byte[] previous = previousHash;
+        for(int i = 0; i < length; i++) {
+            byte[] header = mine(previous, seed * 1000 + i, REGTEST_BITS);
+            chain.add(header);
+            previous = hash(header);
+        }
+
+        return chain;
+    }
+
+    private static byte[] mine(byte[] previousHash, int time, long bits) {
+        byte[] header = new byte[HeaderChainStore.HEADER_LENGTH];
+        header[0] = 1;
+        System.arraycopy(previousHash, 0, header, 4, 32);
+        putUInt32(time, header, 68);
+        putUInt32(bits, header, 72);
+        for(long nonce = 0; ; nonce++) {
+            putUInt32(nonce, header, 76);
+            if(HeaderChainStore.hasValidProofOfWork(header)) {
+                return header;
+            }
+        }
+    }
+
+    private static void putUInt32(long value, byte[] bytes, int offset) {
+        for(int i = 0; i < 4; i++) {
+            bytes[offset + i] = (byte)(value >>> (8 * i));
+        }
+    }
+
+    private static byte[] hash(byte[] header) {
+        return Sha256Hash.twiceOf(header).getBytes();
+    }
+
+    private static byte[] concat(List<byte[]> headers) {
+        byte[] bytes = new byte[headers.size() * HeaderChainStore.HEADER_LENGTH];
+        for(int i = 0; i < headers.size(); i++) {
+            System.arraycopy(headers.get(i), 0, bytes, i * HeaderChainStore.HEADER_LENGTH, HeaderChainStore.HEADER_LENGTH);
+        }
+
+        return bytes;
+    }
+}
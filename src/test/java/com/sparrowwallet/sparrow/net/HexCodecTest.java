@@ -0,0 +1,34 @@
+package com.sparrowwallet.sparrow.net;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class HexCodecTest {
+    @Test
+    public void testRoundTrip() {
+        byte[] bytes = new byte[256];
+        for(int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte)i;
+        }
+
+        String hex = HexCodec.encode(bytes);
+        Assertions.assertTrue(hex.startsWith("000102"));
+        Assertions.assertTrue(hex.endsWith("fdfeff"));
+        Assertions.assertArrayEquals(bytes, HexCodec.decode(hex));
+        Assertions.assertArrayEquals(bytes, HexCodec.decode(hex.toUpperCase()));
+        Assertions.assertEquals("030201", HexCodec.encodeReversed(new byte[] {1, 2, 3}));
+    }
+
+    @Test
+    public void testDecodeIntoBuffer() {
+        byte[] buffer = new byte[4];
+        Assertions.assertEquals(2, HexCodec.decode("abcd", buffer));
+        Assertions.assertEquals((byte)0xab, buffer[0]);
+        Assertions.assertEquals((byte)0xcd, buffer[1]);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> HexCodec.decode("0011223344", buffer));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> HexCodec.decode("abc"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> HexCodec.decode("0g"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> HexCodec.decode("0٠"));
+    }
+}
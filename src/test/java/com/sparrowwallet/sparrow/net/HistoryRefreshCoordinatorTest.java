@@ -0,0 +1,144 @@
+package com.sparrowwallet.sparrow.net;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+public class HistoryRefreshCoordinatorTest {
+    @Test
+    public void testSharedDuringRefresh() {
+        List<Set<String>> fetches = new ArrayList<>();
+        Function<Set<String>, Map<String, String>> fetcher = txids -> {
+            fetches.add(txids);
+            return txids.stream().collect(Collectors.toMap(txid -> txid, txid -> txid + "hex"));
+        };
+
+        HistoryRefreshCoordinator.beginRefresh();
+        HistoryRefreshCoordinator.beginRefresh();
+        Assertions.assertEquals(Map.of("a", "ahex", "b", "bhex"), HistoryRefreshCoordinator.getTransactions(List.of("a", "b"), fetcher));
+        HistoryRefreshCoordinator.endRefresh();
+        Assertions.assertEquals(Map.of("b", "bhex", "c", "chex"), HistoryRefreshCoordinator.getTransactions(List.of("b", "c"), fetcher));
+        Assertions.assertEquals(List.of(Set.of("a", "b"), Set.of("c")), fetches);
+        HistoryRefreshCoordinator.endRefresh();
+
+        HistoryRefreshCoordinator.getTransactions(List.of("a"), fetcher);
+        Assertions.assertEquals(Set.of("a"), fetches.getLast());
+    }
+
+    @Test
+    public void testFailedFetchNotShared() {
+        HistoryRefreshCoordinator.beginRefresh();
+        try {
+            Assertions.assertThrows(IllegalStateException.class, () -> HistoryRefreshCoordinator.getBlockHeaders(List.of(1), heights -> {
+                throw new IllegalStateException("Server error");
+            }));
+            Assertions.assertEquals(Map.of(1, "header"), HistoryRefreshCoordinator.getBlockHeaders(List.of(1), heights -> Map.of(1, "header")));
+        } finally {
+            HistoryRefreshCoordinator.endRefresh();
+        }
+    }
+
+    @Test
+    public void testNullFetchResult() {
+        Assertions.assertThrows(IllegalStateException.class, () -> HistoryRefreshCoordinator.getTransactions(List.of("null"), txids -> null));
+        Assertions.assertEquals(Map.of("null", "nullhex"), HistoryRefreshCoordinator.getTransactions(List.of("null"), txids -> Map.of("null", "nullhex")));
+    }
+
+    @Test
+    public void testConcurrentCallersShareFetch() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger fetches = new AtomicInteger();
+        Function<Set<String>, Map<String, String>> fetcher = txids -> {
+            fetches.incrementAndGet();
+            started.countDown();
+            awaitLatch(release);
+            return Map.of("shared", "sharedhex");
+        };
+
+        Map<Thread, Object> results = new ConcurrentHashMap<>();
+        Thread owner = startFetch(fetcher, results);
+        started.await();
+        List<Thread> waiters = new ArrayList<>();
+        for(int i = 0; i < 3; i++) {
+            waiters.add(startFetch(fetcher, results));
+        }
+        awaitWaiting(waiters);
+
+        //Callers that arrive while the fetch is in flight wait for its result rather than fetching again
+        release.countDown();
+        owner.join();
+        for(Thread waiter : waiters) {
+            waiter.join();
+        }
+
+        Assertions.assertEquals(1, fetches.get());
+        Assertions.assertEquals(4, results.size());
+        Assertions.assertTrue(results.values().stream().allMatch(result -> result.equals(Map.of("shared", "sharedhex"))));
+    }
+
+    @Test
+    public void testFailurePropagatesToWaiters() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger fetches = new AtomicInteger();
+        Function<Set<String>, Map<String, String>> fetcher = txids -> {
+            fetches.incrementAndGet();
+            started.countDown();
+            awaitLatch(release);
+            throw new IllegalStateException("Server error");
+        };
+
+        Map<Thread, Object> results = new ConcurrentHashMap<>();
+        Thread owner = startFetch(fetcher, results);
+        started.await();
+        List<Thread> waiters = new ArrayList<>();
+        for(int i = 0; i < 3; i++) {
+            waiters.add(startFetch(fetcher, results));
+        }
+        awaitWaiting(waiters);
+
+        //Each waiter fetches again once the shared fetch fails, and reports the failure of its own fetch
+        release.countDown();
+        owner.join();
+        for(Thread waiter : waiters) {
+            waiter.join();
+        }
+
+        Assertions.assertEquals(4, fetches.get());
+        Assertions.assertEquals(4, results.size());
+        Assertions.assertTrue(results.values().stream().allMatch(result -> result instanceof IllegalStateException));
+    }
+
+    private static Thread startFetch(Function<Set<String>, Map<String, String>> fetcher, Map<Thread, Object> results) {
+        return Thread.ofPlatform().start(() -> {
+            try {
+                results.put(Thread.currentThread(), HistoryRefreshCoordinator.getTransactions(List.of("shared"), fetcher));
+            } catch(IllegalStateException e) {
+                results.put(Thread.currentThread(), e);
+            }
+        });
+    }
+
+    private static void awaitWaiting(List<Thread> threads) throws InterruptedException {
+        for(Thread thread : threads) {
+            while(thread.getState() != Thread.State.WAITING) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    private static void awaitLatch(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch(InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.net.HostAndPort;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PagedBatchRequestBuilderTest {
+    @Test
+    public void testStreamedPageTimeoutSplit() throws Exception {
+        //Pages of more than 4 requests time out, so the first page is split in half and each half retried
+        TimingOutTransport transport = new TimingOutTransport(4);
+        BatchPageController pageController = new BatchPageController("server", null, null, batchSettings -> {});
+        PagedBatchRequestBuilder<String, String> batchRequest = new PagedBatchRequestBuilder<>(transport, new ObjectMapper(), new ArrayList<>(), String.class, String.class, new AtomicLong());
+        for(int i = 0; i < 8; i++) {
+            batchRequest.add("key" + i, "blockchain.scripthash.get_history", "hash" + i);
+        }
+
+        Map<String, String> results = batchRequest.execute(3, pageController);
+        Assertions.assertEquals(8, results.size());
+        for(int i = 0; i < 8; i++) {
+            Assertions.assertEquals("result for hash" + i, results.get("key" + i));
+        }
+
+        Assertions.assertEquals(1, transport.timeouts);
+        Assertions.assertEquals(List.of(8, 4, 4), transport.pageSizes);
+        Assertions.assertEquals(PagedBatchRequestBuilder.DEFAULT_PAGE_SIZE / 2, pageController.getPageSize(transport));
+    }
+
+    @Test
+    public void testStreamedPageRetriesExhausted() {
+        TimingOutTransport transport = new TimingOutTransport(0);
+        BatchPageController pageController = new BatchPageController("server", null, null, batchSettings -> {});
+        PagedBatchRequestBuilder<String, String> batchRequest = new PagedBatchRequestBuilder<>(transport, new ObjectMapper(), new ArrayList<>(), String.class, String.class, new AtomicLong());
+        batchRequest.add("key", "blockchain.scripthash.get_history", "hash");
+
+        Assertions.assertThrows(ServerException.class, () -> batchRequest.execute(2, pageController));
+        Assertions.assertEquals(2, transport.timeouts);
+    }
+
+    /**
+     * Answers batches from the request params, but times out on batches larger than the given size
+     */
+    private static class TimingOutTransport extends TcpTransport {
+        private final ObjectMapper mapper = new ObjectMapper();
+        private final int maxBatchSize;
+        private final List<Integer> pageSizes = Collections.synchronizedList(new ArrayList<>());
+        private int timeouts;
+
+        public TimingOutTransport(int maxBatchSize) {
+            super(HostAndPort.fromParts("localhost", 50001));
+            this.maxBatchSize = maxBatchSize;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <V> BatchResponse<V> passBatch(String request, ObjectMapper resultMapper, Class<V> resultType) throws IOException {
+            List<Map<String, Object>> batch = mapper.readValue(request, List.class);
+            pageSizes.add(batch.size());
+            if(batch.size() > maxBatchSize) {
+                timeouts++;
+                throw new IOException("No response from server");
+            }
+
+            Map<String, V> results = new HashMap<>();
+            for(Map<String, Object> batchRequest : batch) {
+                results.put(batchRequest.get("id").toString(), (V)("result for " + ((List<?>)batchRequest.get("params")).getFirst()));
+            }
+
+            return new BatchResponse<>(results, Collections.emptyMap());
+        }
+    }
+}
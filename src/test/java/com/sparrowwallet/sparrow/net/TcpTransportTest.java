@@ -0,0 +1,89 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+public class TcpTransportTest {
+    @Test
+    public void testRequestIds() {
+        String request = "{\"jsonrpc\":\"2.0\",\"method\":\"server.ping\",\"params\":[\"id\"],\"id\":5}";
+        Assertions.assertEquals(List.of("5"), TcpTransport.getRequestIds(request));
+
+        String batchRequest = "[{\"jsonrpc\":\"2.0\",\"method\":\"blockchain.scripthash.subscribe\",\"params\":[\"ab\"],\"id\":1}," +
+                "{\"id\" : \"m/0/1\",\"method\":\"blockchain.scripthash.subscribe\",\"params\":[\"cd\"]}]";
+        Assertions.assertEquals(List.of("1", "m/0/1"), TcpTransport.getRequestIds(batchRequest));
+    }
+
+    @Test
+    public void testResponseId() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        String response = "{\"jsonrpc\":\"2.0\",\"result\":{\"id\":9,\"label\":\"a\\\"id\"},\"id\":12}";
+        Assertions.assertEquals("12", TcpTransport.readResponseId(mapper.createParser(response)));
+        Assertions.assertNull(TcpTransport.readResponseId(mapper.createParser("{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32600},\"id\":null}")));
+        Assertions.assertNull(TcpTransport.readResponseId(mapper.createParser("{\"jsonrpc\":\"2.0\",\"result\":null}")));
+    }
+
+    @Test
+    public void testResponseElements() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        String batchResponse = "[{\"jsonrpc\":\"2.0\",\"result\":[{\"height\":100,\"tx_hash\":\"ab\"}],\"id\":7}," +
+                "{\"jsonrpc\":\"2.0\",\"error\":{\"code\":1,\"message\":\"history too large\"},\"id\":8}," +
+                "{\"jsonrpc\":\"2.0\",\"result\":\"not a history\",\"id\":9}]";
+        JsonParser parser = mapper.createParser(batchResponse);
+        Assertions.assertEquals(JsonToken.START_ARRAY, parser.nextToken());
+
+        parser.nextToken();
+        TcpTransport.ResponseElement result = TcpTransport.readResponseElement(parser, mapper, ScriptHashTx[].class);
+        Assertions.assertEquals("7", result.id());
+        Assertions.assertEquals(100, ((ScriptHashTx[])result.result())[0].height);
+        Assertions.assertEquals("ab", ((ScriptHashTx[])result.result())[0].tx_hash);
+
+        parser.nextToken();
+        TcpTransport.ResponseElement error = TcpTransport.readResponseElement(parser, mapper, ScriptHashTx[].class);
+        Assertions.assertEquals("8", error.id());
+        Assertions.assertEquals("history too large", error.error().getMessage());
+
+        parser.nextToken();
+        TcpTransport.ResponseElement failure = TcpTransport.readResponseElement(parser, mapper, ScriptHashTx[].class);
+        Assertions.assertEquals("9", failure.id());
+        Assertions.assertNotNull(failure.failure());
+        Assertions.assertEquals(JsonToken.END_ARRAY, parser.nextToken());
+    }
+
+    @Test
+    public void testMessageReader() throws IOException {
+        String batchResponse = "[{\"jsonrpc\":\"2.0\",\"result\":\"ab\",\"id\":7},{\"jsonrpc\":\"2.0\",\"result\":\"cd\",\"id\":8}]";
+        String response = "{\"jsonrpc\":\"2.0\",\"result\":null,\"id\":9}";
+        TcpTransport.MessageReader in = new TcpTransport.MessageReader(new StringReader(response + "\r\n" + batchResponse + "\n" + batchResponse + "\n"));
+
+        //Single responses are passed through as the raw text of the line
+        Assertions.assertEquals('{', in.peek());
+        Assertions.assertEquals(response, in.readLine());
+
+        //A batch response read partly through the parser is recovered in full
+        Assertions.assertEquals('[', in.peek());
+        TcpTransport.LineReader lineReader = in.lineReader();
+        JsonParser parser = new ObjectMapper().getFactory().createParser(lineReader);
+        Assertions.assertEquals(JsonToken.START_ARRAY, parser.nextToken());
+        Assertions.assertEquals(JsonToken.START_OBJECT, parser.nextToken());
+        Assertions.assertEquals(batchResponse, lineReader.readRecordedLine());
+
+        //A streamed batch response ends with its line
+        Assertions.assertEquals('[', in.peek());
+        lineReader = in.lineReader();
+        lineReader.stopRecording();
+        parser = new ObjectMapper().getFactory().createParser(lineReader);
+        parser.nextToken();
+        parser.skipChildren();
+        Assertions.assertNull(parser.nextToken());
+        lineReader.skipLine();
+        Assertions.assertEquals(-1, in.peek());
+    }
+}
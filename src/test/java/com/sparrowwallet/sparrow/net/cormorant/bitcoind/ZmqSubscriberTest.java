@@ -0,0 +1,77 @@
+package com.sparrowwallet.sparrow.net.cormorant.bitcoind;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class ZmqSubscriberTest {
+    @Test
+    public void testSubscribe() throws Exception {
+        byte[] blockHash = new byte[32];
+        blockHash[0] = 0x01;
+        blockHash[31] = 0x7f;
+
+        try(ServerSocket serverSocket = new ServerSocket(0)) {
+            BlockingQueue<String> subscriptions = new ArrayBlockingQueue<>(1);
+            Thread publisher = new Thread(() -> publish(serverSocket, subscriptions, blockHash));
+            publisher.setDaemon(true);
+            publisher.start();
+
+            BlockingQueue<byte[]> messages = new ArrayBlockingQueue<>(1);
+            ZmqSubscriber zmqSubscriber = new ZmqSubscriber("127.0.0.1", serverSocket.getLocalPort(), List.of("hashblock"), (topic, body) -> {
+                if(topic.equals("hashblock")) {
+                    messages.add(body);
+                }
+            });
+
+            try {
+                zmqSubscriber.start();
+                Assertions.assertEquals("hashblock", subscriptions.poll(5, TimeUnit.SECONDS));
+                Assertions.assertArrayEquals(blockHash, messages.poll(5, TimeUnit.SECONDS));
+                Assertions.assertTrue(zmqSubscriber.isConnected());
+            } finally {
+                zmqSubscriber.close();
+            }
+        }
+    }
+
+    private static void publish(ServerSocket serverSocket, BlockingQueue<String> subscriptions, byte[] blockHash) {
+        try(Socket socket = serverSocket.accept()) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            OutputStream out = socket.getOutputStream();
+
+            byte[] greeting = new byte[64];
+            in.readFully(greeting);
+            byte[] serverGreeting = new byte[64];
+            serverGreeting[0] = (byte)0xFF;
+            serverGreeting[9] = 0x7F;
+            serverGreeting[10] = 3;
+            serverGreeting[11] = 1;
+            System.arraycopy("NULL".getBytes(StandardCharsets.US_ASCII), 0, serverGreeting, 12, 4);
+            out.write(serverGreeting);
+
+            ZmqSubscriber.readFrameBody(in, in.readUnsignedByte());
+            ZmqSubscriber.writeFrame(out, 0x04, ZmqSubscriber.getReadyCommand("PUB"));
+
+            byte[] subscription = ZmqSubscriber.readFrameBody(in, in.readUnsignedByte());
+            subscriptions.add(new String(subscription, 1, subscription.length - 1, StandardCharsets.US_ASCII));
+
+            ZmqSubscriber.writeFrame(out, 0x01, "hashblock".getBytes(StandardCharsets.US_ASCII));
+            ZmqSubscriber.writeFrame(out, 0x01, blockHash);
+            ZmqSubscriber.writeFrame(out, 0x00, new byte[] {0, 0, 0, 0});
+            out.flush();
+
+            in.read();
+        } catch(IOException e) {
+            //subscriber closed
+        }
+    }
+}
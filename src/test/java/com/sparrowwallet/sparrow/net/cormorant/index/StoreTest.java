@@ -0,0 +1,67 @@
+package com.sparrowwallet.sparrow.net.cormorant.index;
+
+import com.sparrowwallet.drongo.address.Address;
+import com.sparrowwallet.drongo.protocol.ScriptType;
+import com.sparrowwallet.sparrow.net.cormorant.bitcoind.Category;
+import com.sparrowwallet.sparrow.net.cormorant.bitcoind.ListTransaction;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+
+public class StoreTest {
+    private static final String TXID_1 = "a".repeat(64);
+    private static final String TXID_2 = "b".repeat(64);
+    private static final String BLOCK_100 = "1".repeat(64);
+    private static final String BLOCK_101 = "2".repeat(64);
+
+    @Test
+    public void testReorgToMempool() throws IOException {
+        Store store = new Store();
+        Address address = ScriptType.P2WPKH.getAddress(new byte[20]);
+        String scriptHash = Store.getScriptHash(address);
+        store.addAddressTransaction(address, receive(TXID_1, 2, BLOCK_100, 100));
+        store.addAddressTransaction(address, receive(TXID_2, 1, BLOCK_101, 101));
+        store.addAddressTransaction(address, receive(TXID_2, 0, null, 0));
+        Assertions.assertEquals(BLOCK_100, store.getBlockHash(100));
+        Assertions.assertNull(store.getBlockHash(0));
+
+        //The block at height 100 is disconnected, and its transaction returns to the mempool
+        Assertions.assertEquals(Set.of(scriptHash), store.disconnectTransaction(TXID_1, 0));
+        Assertions.assertNull(store.getBlockHash(100));
+        Assertions.assertTrue(store.getHistory(scriptHash).stream().allMatch(txEntry -> txEntry.height == 0));
+        Assertions.assertTrue(store.getMempoolEntries().containsKey(TXID_1));
+
+        //The disconnected block hashes are not persisted
+        File file = Files.createTempFile("cormorant", ".idx").toFile();
+        try {
+            store.write(file, BLOCK_101);
+            Store readStore = new Store();
+            Assertions.assertEquals(BLOCK_101, readStore.read(file));
+            Assertions.assertNull(readStore.getBlockHash(100));
+            Assertions.assertEquals(store.getStatus(scriptHash), readStore.getStatus(scriptHash));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testReorgConflicted() {
+        Store store = new Store();
+        Address address = ScriptType.P2WPKH.getAddress(new byte[20]);
+        String scriptHash = Store.getScriptHash(address);
+        store.addAddressTransaction(address, receive(TXID_1, 1, BLOCK_100, 100));
+
+        Assertions.assertEquals(Set.of(scriptHash), store.disconnectTransaction(TXID_1, -1));
+        Assertions.assertTrue(store.getHistory(scriptHash).isEmpty());
+        Assertions.assertNull(store.getBlockHash(100));
+    }
+
+    private static ListTransaction receive(String txid, int confirmations, String blockhash, int blockheight) {
+        return new ListTransaction(null, null, Category.receive, 0.001, 0, 0, confirmations, blockhash, 0, 0, blockheight, txid, 0, 0, List.of());
+    }
+}
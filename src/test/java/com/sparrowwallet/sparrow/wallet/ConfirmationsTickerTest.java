@@ -0,0 +1,74 @@
+package com.sparrowwallet.sparrow.wallet;
+
+import com.sparrowwallet.drongo.wallet.BlockTransactionHash;
+import com.sparrowwallet.drongo.wallet.Wallet;
+import com.sparrowwallet.sparrow.EventManager;
+import com.sparrowwallet.sparrow.SyntheticWalletTest;
+import com.sparrowwallet.sparrow.TabData;
+import com.sparrowwallet.sparrow.WalletTabData;
+import com.sparrowwallet.sparrow.event.WalletBlockHeightChangedEvent;
+import com.sparrowwallet.sparrow.event.WalletTabsClosedEvent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class ConfirmationsTickerTest extends SyntheticWalletTest {
+    @Test
+    public void testFullyConfirmed() {
+        Wallet wallet = generateWallet(7, 10, 30, 0.0);
+        List<TransactionEntry> entries = getTransactionEntries(wallet);
+        List<TransactionEntry> confirming = entries.stream().filter(TransactionEntry::isFullyConfirming).toList();
+        Assertions.assertFalse(confirming.isEmpty());
+        Assertions.assertTrue(entries.stream().allMatch(entry -> entry.isFullyConfirming() == ConfirmationsTicker.get().isTracked(entry)));
+
+        //Confirmations are updated as blocks arrive, and entries are no longer tracked once fully confirmed
+        wallet.setStoredBlockHeight(wallet.getStoredBlockHeight() + 1);
+        EventManager.get().post(new WalletBlockHeightChangedEvent(wallet, wallet.getStoredBlockHeight()));
+        for(TransactionEntry entry : confirming) {
+            Assertions.assertEquals(entry.calculateConfirmations(), entry.getConfirmations());
+            Assertions.assertEquals(entry.isFullyConfirming(), ConfirmationsTicker.get().isTracked(entry));
+        }
+
+        wallet.setStoredBlockHeight(wallet.getStoredBlockHeight() + BlockTransactionHash.BLOCKS_TO_FULLY_CONFIRM);
+        EventManager.get().post(new WalletBlockHeightChangedEvent(wallet, wallet.getStoredBlockHeight()));
+        for(TransactionEntry entry : confirming) {
+            Assertions.assertFalse(entry.isFullyConfirming());
+            Assertions.assertFalse(ConfirmationsTicker.get().isTracked(entry));
+        }
+    }
+
+    @Test
+    public void testTabClosed() {
+        Wallet wallet = generateWallet(8, 10, 30, 0.0);
+        List<TransactionEntry> confirming = getTransactionEntries(wallet).stream().filter(TransactionEntry::isFullyConfirming).toList();
+        Assertions.assertFalse(confirming.isEmpty());
+        Assertions.assertTrue(confirming.stream().allMatch(entry -> ConfirmationsTicker.get().isTracked(entry)));
+
+        WalletForm walletForm = createWalletForm(wallet);
+        EventManager.get().post(new WalletTabsClosedEvent(List.of(new WalletTabData(TabData.TabType.WALLET, walletForm))));
+        Assertions.assertTrue(confirming.stream().noneMatch(entry -> ConfirmationsTicker.get().isTracked(entry)));
+    }
+
+    @Test
+    public void testWalletReplaced() {
+        Wallet wallet = generateWallet(9, 10, 30, 0.0);
+        EventManager.get().bindWallet(wallet, "replaced");
+        List<TransactionEntry> confirming = getTransactionEntries(wallet).stream().filter(TransactionEntry::isFullyConfirming).toList();
+        Assertions.assertFalse(confirming.isEmpty());
+
+        //Entries created for the previous wallet instance are updated by events for the instance that replaced it
+        Wallet replacement = wallet.copy();
+        EventManager.get().bindWallet(replacement, "replaced");
+        wallet.setStoredBlockHeight(wallet.getStoredBlockHeight() + BlockTransactionHash.BLOCKS_TO_FULLY_CONFIRM);
+        EventManager.get().post(new WalletBlockHeightChangedEvent(replacement, wallet.getStoredBlockHeight()));
+        for(TransactionEntry entry : confirming) {
+            Assertions.assertEquals(entry.calculateConfirmations(), entry.getConfirmations());
+            Assertions.assertFalse(ConfirmationsTicker.get().isTracked(entry));
+        }
+    }
+
+    private static List<TransactionEntry> getTransactionEntries(Wallet wallet) {
+        return new WalletTransactionsEntry(wallet).getChildren().stream().map(entry -> (TransactionEntry)entry).toList();
+    }
+}
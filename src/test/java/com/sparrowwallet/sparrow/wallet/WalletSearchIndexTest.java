@@ -0,0 +1,109 @@
+package com.sparrowwallet.sparrow.wallet;
+
+import com.sparrowwallet.drongo.KeyPurpose;
+import com.sparrowwallet.drongo.protocol.TransactionOutput;
+import com.sparrowwallet.drongo.wallet.BlockTransaction;
+import com.sparrowwallet.drongo.wallet.Wallet;
+import com.sparrowwallet.drongo.wallet.WalletNode;
+import com.sparrowwallet.sparrow.SyntheticWalletTest;
+import com.sparrowwallet.sparrow.io.db.LazyBlockTransaction;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class WalletSearchIndexTest extends SyntheticWalletTest {
+    private Wallet wallet;
+    private List<Entry> transactionEntries;
+    private List<NodeEntry> nodeEntries;
+    private WalletSearchIndex.Snapshot snapshot;
+
+    @BeforeEach
+    public void setUp() {
+        wallet = generateWallet(1, 20, 40, 1.0);
+        transactionEntries = new ArrayList<>(new WalletTransactionsEntry(wallet).getChildren());
+        nodeEntries = wallet.getNode(KeyPurpose.RECEIVE).getChildren().stream().map(node -> new NodeEntry(wallet, node)).toList();
+
+        List<WalletSearchIndex.IndexedEntry> indexedEntries = new ArrayList<>();
+        transactionEntries.forEach(entry -> indexedEntries.add(new WalletSearchIndex.IndexedEntry(entry)));
+        nodeEntries.forEach(entry -> indexedEntries.add(new WalletSearchIndex.IndexedEntry(entry)));
+        snapshot = WalletSearchIndex.Snapshot.build(indexedEntries, () -> false);
+    }
+
+    @Test
+    public void testIdentifiersAndValues() {
+        TransactionEntry transactionEntry = (TransactionEntry)transactionEntries.get(5);
+        String txid = transactionEntry.getBlockTransaction().getHashAsString();
+        Assertions.assertEquals(WalletSearchIndex.Rank.IDENTIFIER, getRank(snapshot.search(txid, null), transactionEntry));
+        Assertions.assertEquals(WalletSearchIndex.Rank.IDENTIFIER, getRank(snapshot.search(txid.toUpperCase(), null), transactionEntry));
+
+        long value = Math.abs(transactionEntry.getValue());
+        Assertions.assertEquals(WalletSearchIndex.Rank.VALUE, getRank(snapshot.search(Long.toString(value), value), transactionEntry));
+    }
+
+    @Test
+    public void testAddressSubstrings() {
+        NodeEntry nodeEntry = nodeEntries.get(3);
+        String address = nodeEntry.getAddress().toString();
+        Assertions.assertEquals(WalletSearchIndex.Rank.IDENTIFIER, getRank(snapshot.search(address, null), nodeEntry));
+
+        //Addresses match on any part, not only a prefix, regardless of case
+        Assertions.assertEquals(WalletSearchIndex.Rank.PARTIAL_ADDRESS, getRank(snapshot.search(address.substring(10, 24), null), nodeEntry));
+        Assertions.assertEquals(WalletSearchIndex.Rank.PARTIAL_ADDRESS, getRank(snapshot.search(address.substring(address.length() - 8).toUpperCase(), null), nodeEntry));
+        Assertions.assertNull(getRank(snapshot.search(address.substring(10, 24) + "zz", null), nodeEntry));
+    }
+
+    @Test
+    public void testLabels() {
+        NodeEntry nodeEntry = nodeEntries.get(7);
+        Assertions.assertEquals(WalletSearchIndex.Rank.LABEL, getRank(snapshot.search("address 7", null), nodeEntry));
+        Assertions.assertEquals(WalletSearchIndex.Rank.LABEL_PHRASE, getRank(snapshot.search("ADDR", null), nodeEntry));
+        Assertions.assertEquals(WalletSearchIndex.Rank.LABEL_WORDS, getRank(snapshot.search("7 addr", null), nodeEntry));
+        Assertions.assertNull(getRank(snapshot.search("address 8", null), nodeEntry));
+    }
+
+    @Test
+    public void testLabelChangesCopyOnWrite() {
+        WalletNode node = nodeEntries.get(7).getNode();
+        node.setLabel("Cold storage");
+        WalletSearchIndex.Snapshot relabelled = snapshot.withLabels(List.of(new NodeEntry(wallet, node)));
+
+        Assertions.assertEquals(WalletSearchIndex.Rank.LABEL_WORDS, getRank(relabelled.search("stor cold", null), nodeEntries.get(7)));
+        Assertions.assertNull(getRank(relabelled.search("address 7", null), nodeEntries.get(7)));
+        Assertions.assertNotNull(getRank(relabelled.search("address 8", null), nodeEntries.get(8)));
+
+        //The snapshot being searched is not changed
+        Assertions.assertNull(getRank(snapshot.search("cold", null), nodeEntries.get(7)));
+        Assertions.assertEquals(WalletSearchIndex.Rank.LABEL, getRank(snapshot.search("address 7", null), nodeEntries.get(7)));
+    }
+
+    @Test
+    public void testLazyOutputAddresses() {
+        BlockTransaction blockTransaction = ((TransactionEntry)transactionEntries.get(5)).getBlockTransaction();
+        LazyBlockTransaction lazyBlockTransaction = new LazyBlockTransaction(blockTransaction.getHash(), blockTransaction.getHeight(), blockTransaction.getDate(),
+                blockTransaction.getFee(), blockTransaction.getBlockHash(), null);
+        byte[] txBytes = blockTransaction.getTransaction().bitcoinSerialize();
+        lazyBlockTransaction.setTransactionLoader(hash -> txBytes);
+        TransactionEntry lazyEntry = new TransactionEntry(wallet, lazyBlockTransaction, Map.of(), Map.of());
+        WalletSearchIndex.Snapshot lazySnapshot = WalletSearchIndex.Snapshot.build(List.of(new WalletSearchIndex.IndexedEntry(lazyEntry)), () -> false);
+
+        //Every output address is indexed, including payees outside the wallet, without caching the transaction
+        for(TransactionOutput output : blockTransaction.getTransaction().getOutputs()) {
+            Assertions.assertEquals(WalletSearchIndex.Rank.IDENTIFIER, getRank(lazySnapshot.search(output.getScript().getToAddress().toString(), null), lazyEntry));
+        }
+        Assertions.assertFalse(lazyBlockTransaction.isLoaded());
+    }
+
+    @Test
+    public void testCancelledBuild() {
+        List<WalletSearchIndex.IndexedEntry> indexedEntries = nodeEntries.stream().map(WalletSearchIndex.IndexedEntry::new).toList();
+        Assertions.assertNull(WalletSearchIndex.Snapshot.build(indexedEntries, () -> true));
+    }
+
+    private static WalletSearchIndex.Rank getRank(List<WalletSearchIndex.Match> matches, Entry entry) {
+        return matches.stream().filter(match -> match.entry() == entry).map(WalletSearchIndex.Match::rank).findFirst().orElse(null);
+    }
+}
@@ -0,0 +1,95 @@
+package com.sparrowwallet.sparrow.wallet;
+
+import com.sparrowwallet.drongo.protocol.Sha256Hash;
+import com.sparrowwallet.drongo.wallet.BlockTransaction;
+import com.sparrowwallet.drongo.wallet.BlockTransactionHash;
+import com.sparrowwallet.drongo.wallet.Wallet;
+import com.sparrowwallet.drongo.wallet.WalletNode;
+import com.sparrowwallet.sparrow.SyntheticWalletGenerator;
+import com.sparrowwallet.sparrow.net.ElectrumServer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+public class WalletTransactionsEntryTest {
+    private static final int STEPS = 40;
+
+    @Test
+    public void testIncrementalUpdates() {
+        SyntheticWalletGenerator.SyntheticWallet syntheticWallet = new SyntheticWalletGenerator(3).generate(30, 120, 0.2, false);
+        Wallet wallet = syntheticWallet.wallet();
+        List<BlockTransaction> transactions = syntheticWallet.transactions();
+        Map<WalletNode, Set<BlockTransactionHash>> fullHistory = syntheticWallet.nodeTransactionMap();
+
+        WalletTransactionsEntry walletTransactionsEntry = new WalletTransactionsEntry(wallet);
+        Map<WalletNode, Set<String>> appliedHistory = new HashMap<>();
+        for(Map.Entry<WalletNode, Set<BlockTransactionHash>> nodeHistory : fullHistory.entrySet()) {
+            appliedHistory.put(nodeHistory.getKey(), getReferences(nodeHistory.getValue()));
+        }
+        Random random = new Random(3);
+
+        for(int step = 0; step < STEPS; step++) {
+            //Move the wallet to a random point in its history, so that transactions are added, removed, confirmed and unconfirmed
+            int count = 1 + random.nextInt(transactions.size());
+            int unconfirmed = Math.min(count, random.nextInt(4));
+            Map<Sha256Hash, BlockTransaction> included = new LinkedHashMap<>();
+            for(int i = 0; i < count; i++) {
+                BlockTransaction blockTransaction = transactions.get(i);
+                if(i >= count - unconfirmed) {
+                    blockTransaction = new BlockTransaction(blockTransaction.getHash(), 0, null, blockTransaction.getFee(), blockTransaction.getTransaction());
+                }
+                included.put(blockTransaction.getHash(), blockTransaction);
+            }
+            wallet.updateTransactions(included);
+
+            Map<WalletNode, Set<BlockTransactionHash>> changedHistory = new LinkedHashMap<>();
+            for(Map.Entry<WalletNode, Set<BlockTransactionHash>> nodeHistory : fullHistory.entrySet()) {
+                Set<BlockTransactionHash> history = new LinkedHashSet<>();
+                for(BlockTransactionHash reference : nodeHistory.getValue()) {
+                    BlockTransaction blockTransaction = included.get(reference.getHash());
+                    if(blockTransaction != null) {
+                        history.add(blockTransaction);
+                    }
+                }
+
+                //Only nodes with a changed history are updated, as they would be by the server
+                Set<String> references = getReferences(history);
+                if(!references.equals(appliedHistory.get(nodeHistory.getKey()))) {
+                    changedHistory.put(nodeHistory.getKey(), history);
+                    appliedHistory.put(nodeHistory.getKey(), references);
+                }
+            }
+
+            new ElectrumServer().calculateNodeHistory(wallet, changedHistory);
+            walletTransactionsEntry.updateTransactions(changedHistory.keySet());
+            assertSameEntries(new WalletTransactionsEntry(wallet), walletTransactionsEntry, "step " + step + " with " + count + " transactions");
+        }
+    }
+
+    private static Set<String> getReferences(Set<BlockTransactionHash> history) {
+        Set<String> references = new HashSet<>();
+        for(BlockTransactionHash reference : history) {
+            references.add(reference.getHashAsString() + ":" + reference.getHeight());
+        }
+
+        return references;
+    }
+
+    private static void assertSameEntries(WalletTransactionsEntry expected, WalletTransactionsEntry actual, String message) {
+        Assertions.assertEquals(getHashes(expected), getHashes(actual), message);
+        for(int i = 0; i < expected.getChildren().size(); i++) {
+            TransactionEntry expectedEntry = (TransactionEntry)expected.getChildren().get(i);
+            TransactionEntry actualEntry = (TransactionEntry)actual.getChildren().get(i);
+            Assertions.assertEquals(expectedEntry.getValue(), actualEntry.getValue(), message);
+            Assertions.assertEquals(expectedEntry.getBalance(), actualEntry.getBalance(), message);
+            Assertions.assertEquals(expectedEntry.getConfirmations(), actualEntry.getConfirmations(), message);
+        }
+        Assertions.assertEquals(expected.getBalance(), actual.getBalance(), message);
+        Assertions.assertEquals(expected.getMempoolBalance(), actual.getMempoolBalance(), message);
+    }
+
+    private static List<Sha256Hash> getHashes(WalletTransactionsEntry walletTransactionsEntry) {
+        return walletTransactionsEntry.getChildren().stream().map(entry -> ((TransactionEntry)entry).getBlockTransaction().getHash()).toList();
+    }
+}